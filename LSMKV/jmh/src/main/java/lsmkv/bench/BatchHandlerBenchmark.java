@@ -0,0 +1,50 @@
+// BatchHandlerBenchmark.java
+package src.main.java.lsmkv.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import src.main.java.lsmkv.network.handlers.BatchHandler;
+import src.main.java.lsmkv.util.Slice;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Parsing of {@code POST /batch} bodies into the key/value map handed to the engine. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchHandlerBenchmark {
+
+    @Param({"16", "64"})
+    public int keySize;
+
+    @Param({"100", "1024"})
+    public int valueSize;
+
+    @Param({"10", "100", "1000"})
+    public int batchSize;
+
+    private String body;
+
+    @Setup
+    public void prepare() {
+        body = BenchData.batchJson(batchSize, keySize, valueSize);
+    }
+
+    @Benchmark
+    public Map<Slice, byte[]> parse() {
+        return BatchHandler.parseJsonToMap(body);
+    }
+}
@@ -0,0 +1,70 @@
+// BenchData.java
+package src.main.java.lsmkv.bench;
+
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** Keys, values and scratch directories shared by the benchmarks. */
+final class BenchData {
+    private BenchData() { }
+
+    /** Key {@code i}, zero-padded to {@code size} bytes so keys sort by index. */
+    static Slice key(long i, int size) {
+        String digits = Long.toString(i);
+        StringBuilder sb = new StringBuilder(Math.max(size, digits.length() + 1)).append('k');
+        for (int n = digits.length() + 1; n < size; n++) sb.append('0');
+        return Slice.utf8(sb.append(digits).toString());
+    }
+
+    static Slice[] keys(int count, int size) {
+        Slice[] keys = new Slice[count];
+        for (int i = 0; i < count; i++) keys[i] = key(i, size);
+        return keys;
+    }
+
+    /** Random printable value; compressible about as well as typical text. */
+    static byte[] value(int size, long seed) {
+        Random rnd = new Random(seed);
+        byte[] v = new byte[size];
+        for (int i = 0; i < size; i++) v[i] = (byte) ('a' + rnd.nextInt(16));
+        return v;
+    }
+
+    /** Body of a {@code POST /batch} request with {@code count} entries. */
+    static String batchJson(int count, int keySize, int valueSize) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(',');
+            sb.append('"').append(key(i, keySize).toStringUtf8()).append("\":\"")
+              .append(new String(value(valueSize, i), StandardCharsets.US_ASCII)).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    static Path tempDir(String prefix) {
+        try {
+            return Files.createTempDirectory("lsmkv-bench-" + prefix);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void deleteDir(Path dir) {
+        if (dir == null || !Files.exists(dir)) return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(p);
+            }
+        } catch (IOException e) {
+            System.err.println("[WARN] could not delete " + dir + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+// Benchmarks.java
+package src.main.java.lsmkv.bench;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry point for the benchmark jar and {@code gradle :jmh:jmh}. Takes the usual
+ * JMH options, plus {@code -threads 1,4,16} to run the selection once per thread
+ * count (JMH's own {@code -t} takes a single value).
+ */
+public final class Benchmarks {
+    private Benchmarks() { }
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> threads = new ArrayList<>();
+        List<String> jmhArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length) {
+                for (String t : args[++i].split(",")) threads.add(Integer.parseInt(t.trim()));
+            } else {
+                jmhArgs.add(args[i]);
+            }
+        }
+        if (threads.isEmpty()) {
+            Main.main(args);
+            return;
+        }
+        CommandLineOptions cli = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+        for (int t : threads) {
+            new Runner(new OptionsBuilder().parent(cli).threads(t).build()).run();
+        }
+    }
+}
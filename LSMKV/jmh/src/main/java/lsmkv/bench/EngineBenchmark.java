@@ -0,0 +1,113 @@
+// EngineBenchmark.java
+package src.main.java.lsmkv.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batched writes, multi-gets and range scans through a whole {@link StorageEngine}
+ * (write queue, WAL, MemTable, flushes and compaction), pre-loaded with
+ * {@code keyCount} keys. The small MemTable makes most reads go to SSTables.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EngineBenchmark {
+
+    @Param({"16", "64"})
+    public int keySize;
+
+    @Param({"100", "1024"})
+    public int valueSize;
+
+    @Param({"10", "100"})
+    public int batchSize;
+
+    @Param({"200000"})
+    public int keyCount;
+
+    @Param({"false", "true"})
+    public boolean offHeapMemtable;
+
+    private Path dir;
+    private Slice[] keys;
+    private byte[] value;
+    private StorageEngine engine;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        dir = BenchData.tempDir("engine");
+        keys = BenchData.keys(keyCount, keySize);
+        value = BenchData.value(valueSize, 42);
+        Config cfg = new Config(4L * 1024 * 1024, Duration.ofMillis(50), 32, 4, 1000)
+                .setOffHeapMemtable(offHeapMemtable);
+        engine = new StorageEngine(dir, cfg, null);
+        engine.start();
+        Map<Slice, byte[]> batch = new HashMap<>();
+        for (Slice k : keys) {
+            batch.put(k, value);
+            if (batch.size() == 1000) {
+                engine.putBatch(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) engine.putBatch(batch);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        engine.close();
+        BenchData.deleteDir(dir);
+    }
+
+    @Benchmark
+    public void putBatch() throws IOException {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        Map<Slice, byte[]> batch = new HashMap<>(batchSize * 2);
+        for (int i = 0; i < batchSize; i++) batch.put(keys[rnd.nextInt(keyCount)], value);
+        engine.putBatch(batch);
+    }
+
+    @Benchmark
+    public Map<Slice, byte[]> getBatch() throws IOException {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        List<Slice> lookups = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) lookups.add(keys[rnd.nextInt(keyCount)]);
+        return engine.getBatch(lookups);
+    }
+
+    /** Scans {@code batchSize} consecutive keys from a random start. */
+    @Benchmark
+    public SortedMap<Slice, byte[]> getRange() throws IOException {
+        int from = ThreadLocalRandom.current().nextInt(keyCount - batchSize);
+        return engine.getRange(keys[from], keys[from + batchSize - 1]);
+    }
+}
@@ -0,0 +1,78 @@
+// MemTableBenchmark.java
+package src.main.java.lsmkv.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import src.main.java.lsmkv.engine.ArenaMemTable;
+import src.main.java.lsmkv.engine.Entry;
+import src.main.java.lsmkv.engine.HeapMemTable;
+import src.main.java.lsmkv.engine.MemTable;
+import src.main.java.lsmkv.util.Slice;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/** Point put/get on the heap and arena MemTables, shared by all benchmark threads. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemTableBenchmark {
+
+    @Param({"heap", "arena"})
+    public String impl;
+
+    @Param({"16", "64"})
+    public int keySize;
+
+    @Param({"100", "1024"})
+    public int valueSize;
+
+    @Param({"100000"})
+    public int keyCount;
+
+    private Slice[] keys;
+    private byte[] value;
+    private MemTable table;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        keys = BenchData.keys(keyCount, keySize);
+        value = BenchData.value(valueSize, 42);
+    }
+
+    // a fresh, pre-filled table per iteration, so puts into the arena don't grow it without bound
+    @Setup(Level.Iteration)
+    public void fill() {
+        table = impl.equals("arena") ? new ArenaMemTable(4 * 1024 * 1024) : new HeapMemTable();
+        for (Slice k : keys) table.put(k, value);
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() {
+        table.close();
+    }
+
+    @Benchmark
+    public void put() {
+        table.put(keys[ThreadLocalRandom.current().nextInt(keyCount)], value);
+    }
+
+    @Benchmark
+    public Entry get() {
+        return table.get(keys[ThreadLocalRandom.current().nextInt(keyCount)]);
+    }
+}
@@ -0,0 +1,96 @@
+// SSTableBenchmark.java
+package src.main.java.lsmkv.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.BlockCache;
+import src.main.java.lsmkv.engine.Entry;
+import src.main.java.lsmkv.engine.SSTable;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point lookups in one SSTable. {@code cacheBytes} of 0 decodes a block on every
+ * lookup; the default cache holds the whole table, so hits measure the index
+ * search and in-block binary search only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SSTableBenchmark {
+
+    @Param({"16", "64"})
+    public int keySize;
+
+    @Param({"100", "1024"})
+    public int valueSize;
+
+    @Param({"none", "lz"})
+    public String compression;
+
+    @Param({"0", "268435456"})
+    public long cacheBytes;
+
+    @Param({"100000"})
+    public int keyCount;
+
+    private Path dir;
+    private Slice[] keys;
+    private Slice[] missing;
+    private SSTable table;
+
+    @Setup(Level.Trial)
+    public void write() throws IOException {
+        dir = BenchData.tempDir("sst");
+        // stored keys are the even indices, so misses fall between them and still search a block
+        keys = new Slice[keyCount];
+        missing = new Slice[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = BenchData.key(2L * i, keySize);
+            missing[i] = BenchData.key(2L * i + 1, keySize);
+        }
+        byte[] value = BenchData.value(valueSize, 42);
+        Config cfg = new Config(64L * 1024 * 1024, Duration.ofMillis(50), 32, 4, 1000)
+                .setCompression(compression);
+        table = SSTable.write(1, dir.resolve("sstable-00000001.sst"),
+                Arrays.stream(keys).map(k -> Entry.put(k, value)).iterator(), keyCount,
+                cfg, new BlockCache(cacheBytes));
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        table.close();
+        BenchData.deleteDir(dir);
+    }
+
+    @Benchmark
+    public Entry hit() throws IOException {
+        return table.get(keys[ThreadLocalRandom.current().nextInt(keyCount)]);
+    }
+
+    @Benchmark
+    public Entry miss() throws IOException {
+        return table.get(missing[ThreadLocalRandom.current().nextInt(keyCount)]);
+    }
+}
@@ -0,0 +1,85 @@
+// WalBenchmark.java
+package src.main.java.lsmkv.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.WAL;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WAL appends under each fsync policy: {@code always} forces every record,
+ * {@code interval} at most every 50 ms (the server default) and {@code never}
+ * leaves it to the OS. Each iteration writes a fresh log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WalBenchmark {
+
+    @Param({"always", "interval", "never"})
+    public String fsync;
+
+    @Param({"16", "64"})
+    public int keySize;
+
+    @Param({"100", "1024"})
+    public int valueSize;
+
+    private static final int KEYS = 65536;
+
+    private Slice[] keys;
+    private byte[] value;
+    private Path dir;
+    private WAL wal;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        keys = BenchData.keys(KEYS, keySize);
+        value = BenchData.value(valueSize, 42);
+    }
+
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+        Duration interval = switch (fsync) {
+            case "always" -> Duration.ZERO;
+            case "interval" -> Duration.ofMillis(50);
+            case "never" -> Duration.ofDays(365);
+            default -> throw new IllegalArgumentException("fsync must be always, interval or never: " + fsync);
+        };
+        dir = BenchData.tempDir("wal");
+        wal = new WAL(dir, new Config(64L * 1024 * 1024, interval, 32, 4, 1000));
+        wal.open(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() throws IOException {
+        wal.close();
+        BenchData.deleteDir(dir);
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        return wal.appendPut(keys[ThreadLocalRandom.current().nextInt(KEYS)], value);
+    }
+}
@@ -0,0 +1,52 @@
+// EngineTarget.java
+package src.main.java.lsmkv.loadgen;
+
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.KeyValueStore;
+import src.main.java.lsmkv.engine.ShardedEngine;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Drives a {@link StorageEngine} (or {@link ShardedEngine}) opened in this JVM, with the server's defaults. */
+final class EngineTarget implements Target {
+    private final KeyValueStore engine;
+
+    EngineTarget(Path dataDir, int shards) throws IOException {
+        Config cfg = new Config(8L * 1024 * 1024, Duration.ofMillis(50), 32, 4, 1000).setShards(shards);
+        this.engine = shards > 1 ? new ShardedEngine(dataDir, cfg, shards) : new StorageEngine(dataDir, cfg, null);
+        engine.start();
+    }
+
+    @Override
+    public byte[] read(String key) throws IOException {
+        return engine.get(Slice.utf8(key));
+    }
+
+    @Override
+    public void write(String key, byte[] value) throws IOException {
+        engine.put(Slice.utf8(key), value);
+    }
+
+    @Override
+    public void writeBatch(Map<String, byte[]> entries) throws IOException {
+        Map<Slice, byte[]> batch = new HashMap<>(entries.size() * 2);
+        for (Map.Entry<String, byte[]> e : entries.entrySet()) batch.put(Slice.utf8(e.getKey()), e.getValue());
+        engine.putBatch(batch);
+    }
+
+    @Override
+    public int scan(String startKey, String endKey) throws IOException {
+        return engine.getRange(Slice.utf8(startKey), Slice.utf8(endKey)).size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        engine.close();
+    }
+}
@@ -0,0 +1,97 @@
+// HttpTarget.java
+package src.main.java.lsmkv.loadgen;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Drives a running server: reads and writes through {@code /kv}, loads through
+ * {@code POST /batch} and scans through {@code /range}. Keys and values must not
+ * contain JSON metacharacters, since the batch endpoint parses them naively.
+ */
+final class HttpTarget implements Target {
+    private final String base;
+    private final HttpClient client;
+    private final Duration timeout;
+
+    HttpTarget(String base, Duration timeout) {
+        this.base = base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    @Override
+    public byte[] read(String key) throws IOException {
+        HttpResponse<byte[]> r = send(request("/kv/" + key).GET().build());
+        if (r.statusCode() == 404) return null;
+        check(r, "GET /kv");
+        return r.body();
+    }
+
+    @Override
+    public void write(String key, byte[] value) throws IOException {
+        check(send(request("/kv/" + key).PUT(HttpRequest.BodyPublishers.ofByteArray(value)).build()), "PUT /kv");
+    }
+
+    @Override
+    public void writeBatch(Map<String, byte[]> entries) throws IOException {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+            if (json.length() > 1) json.append(',');
+            json.append('"').append(e.getKey()).append("\":\"")
+                .append(new String(e.getValue(), StandardCharsets.UTF_8)).append('"');
+        }
+        json.append('}');
+        check(send(request("/batch").header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json.toString())).build()), "POST /batch");
+    }
+
+    @Override
+    public int scan(String startKey, String endKey) throws IOException {
+        HttpResponse<byte[]> r = send(request("/range?start=" + enc(startKey) + "&end=" + enc(endKey)).GET().build());
+        check(r, "GET /range");
+        // count the "key": pairs instead of parsing the whole document
+        int n = 0;
+        for (byte b : r.body()) if (b == ':') n++;
+        return n;
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(base + path)).timeout(timeout);
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest req) throws IOException {
+        try {
+            return client.send(req, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted: " + req.uri(), ie);
+        }
+    }
+
+    private static void check(HttpResponse<byte[]> r, String what) throws IOException {
+        if (r.statusCode() != 200) {
+            throw new IOException(what + " returned " + r.statusCode() + ": "
+                    + new String(r.body(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String enc(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        // HttpClient has no close() before Java 21; its threads are daemons
+    }
+}
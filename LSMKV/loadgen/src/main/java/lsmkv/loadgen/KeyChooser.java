@@ -0,0 +1,119 @@
+// KeyChooser.java
+package src.main.java.lsmkv.loadgen;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks record numbers for reads, updates and scans. Records are numbered in
+ * insert order; {@code inserted} is the shared count, which grows as workloads
+ * D and E insert.
+ */
+abstract class KeyChooser {
+    final AtomicLong inserted;
+
+    KeyChooser(AtomicLong inserted) {
+        this.inserted = inserted;
+    }
+
+    abstract long next();
+
+    static KeyChooser forName(String name, long records, AtomicLong inserted) {
+        switch (name) {
+            case "uniform": return new Uniform(inserted);
+            case "zipfian": return new ScrambledZipfian(records, inserted);
+            case "latest": return new Latest(records, inserted);
+            default: throw new IllegalArgumentException("distribution must be uniform, zipfian or latest: " + name);
+        }
+    }
+
+    /** Every record equally likely. */
+    static final class Uniform extends KeyChooser {
+        Uniform(AtomicLong inserted) {
+            super(inserted);
+        }
+
+        @Override
+        long next() {
+            return ThreadLocalRandom.current().nextLong(Math.max(1, inserted.get()));
+        }
+    }
+
+    /**
+     * Zipfian popularity (YCSB's constant 0.99) over the loaded records, with the
+     * popular items hashed across the key space rather than clustered at the
+     * start. Records inserted later are only reached through {@link Latest}.
+     */
+    static final class ScrambledZipfian extends KeyChooser {
+        private final Zipf zipf;
+        private final long items;
+
+        ScrambledZipfian(long items, AtomicLong inserted) {
+            super(inserted);
+            this.items = Math.max(1, items);
+            this.zipf = new Zipf(this.items);
+        }
+
+        @Override
+        long next() {
+            return Long.remainderUnsigned(fnv64(zipf.next()), items);
+        }
+    }
+
+    /** Zipfian over recency: the newest record is the most popular. */
+    static final class Latest extends KeyChooser {
+        private final Zipf zipf;
+
+        Latest(long items, AtomicLong inserted) {
+            super(inserted);
+            this.zipf = new Zipf(Math.max(1, items));
+        }
+
+        @Override
+        long next() {
+            long newest = inserted.get() - 1;
+            return Math.max(0, newest - zipf.next());
+        }
+    }
+
+    /** Gray et al.'s zipfian generator ("Quickly generating billion-record synthetic databases"), as used by YCSB. */
+    static final class Zipf {
+        private static final double THETA = 0.99;
+        private final long items;
+        private final double alpha;
+        private final double zetan;
+        private final double eta;
+
+        Zipf(long items) {
+            this.items = items;
+            double zeta2 = zeta(2);
+            this.zetan = zeta(items);
+            this.alpha = 1.0 / (1.0 - THETA);
+            this.eta = (1 - Math.pow(2.0 / items, 1 - THETA)) / (1 - zeta2 / zetan);
+        }
+
+        private static double zeta(long n) {
+            double sum = 0;
+            for (long i = 1; i <= n; i++) sum += 1 / Math.pow(i, THETA);
+            return sum;
+        }
+
+        long next() {
+            double u = ThreadLocalRandom.current().nextDouble();
+            double uz = u * zetan;
+            if (uz < 1.0) return 0;
+            if (uz < 1.0 + Math.pow(0.5, THETA)) return Math.min(1, items - 1);
+            return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+        }
+    }
+
+    static long fnv64(long v) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < 8; i++) {
+            h ^= v & 0xFF;
+            h *= 0x100000001B3L;
+            v >>>= 8;
+        }
+        return h;
+    }
+}
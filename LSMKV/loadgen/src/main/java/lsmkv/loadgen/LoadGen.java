@@ -0,0 +1,342 @@
+// LoadGen.java
+package src.main.java.lsmkv.loadgen;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * YCSB-style load generator for LSMKV.
+ * <pre>
+ * LoadGen load,run --target http://localhost:8080 --workload a --records 1000000 --threads 32 --duration 120
+ * LoadGen run --target engine:/tmp/lsmkv --workload e --rate 20000 --hlog e.hlog
+ * </pre>
+ * {@code load} inserts {@code --records} keys through batches; {@code run} executes
+ * a core workload (A-F) with {@code --distribution} uniform, zipfian or latest.
+ *
+ * Closed loop (default): each thread issues its next request when the previous
+ * one completes. Open loop ({@code --rate} ops/s): requests are scheduled at a
+ * fixed rate and latency is measured from the scheduled start, so a stalled
+ * server shows up as queueing delay instead of as fewer, faster requests.
+ *
+ * Latencies go into HDR histograms per operation; every {@code --interval}
+ * seconds a line with throughput and p50/p99/p99.9/max is printed (and written
+ * to {@code --hlog} for HistogramLogAnalyzer), followed by a summary at the end.
+ */
+public final class LoadGen {
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final Map<String, String> opts;
+    private final Target target;
+    private final int threads;
+    private final long records;
+    private final int valueSize;
+    private final Duration interval;
+    private final PrintStream out = System.out;
+    private final HistogramLogWriter hlog;
+
+    private LoadGen(Map<String, String> opts, Target target) throws FileNotFoundException {
+        this.opts = opts;
+        this.target = target;
+        this.threads = intOpt("threads", 16);
+        this.records = longOpt("records", 100_000);
+        this.valueSize = intOpt("value-size", 100);
+        this.interval = Duration.ofSeconds(longOpt("interval", 1));
+        String hlogFile = opts.get("hlog");
+        this.hlog = hlogFile == null ? null : new HistogramLogWriter(new File(hlogFile));
+        if (hlog != null) {
+            hlog.outputLogFormatVersion();
+            hlog.outputStartTime(System.currentTimeMillis());
+            hlog.outputLegend();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0 || args[0].startsWith("--")) {
+            System.err.println("usage: LoadGen load|run|load,run --target http://host:port|engine:<dataDir> [options]\n"
+                    + "  --workload a..f  --records N  --operations N  --duration seconds  --threads N\n"
+                    + "  --rate ops/s (open loop; default closed loop)  --distribution uniform|zipfian|latest\n"
+                    + "  --value-size bytes  --max-scan-length N  --load-batch N  --interval seconds\n"
+                    + "  --shards N (engine target)  --hlog file  --timeout seconds");
+            System.exit(2);
+        }
+        Map<String, String> opts = parseOptions(args);
+        try (Target target = openTarget(opts)) {
+            LoadGen gen = new LoadGen(opts, target);
+            for (String phase : args[0].split(",")) {
+                switch (phase) {
+                    case "load": gen.load(); break;
+                    case "run": gen.run(); break;
+                    default: throw new IllegalArgumentException("unknown phase: " + phase);
+                }
+            }
+            if (gen.hlog != null) gen.hlog.close();
+        }
+    }
+
+    // -------------------- phases --------------------
+
+    /** Inserts records 0..records-1, {@code --load-batch} at a time, split across the threads. */
+    private void load() throws InterruptedException {
+        int batch = intOpt("load-batch", 100);
+        Stats stats = new Stats(List.of("LOAD"));
+        AtomicLong next = new AtomicLong();
+        out.printf(Locale.ROOT, "load: %d records, batches of %d, %d threads%n", records, batch, threads);
+        runThreads(stats, "LOAD", () -> {
+            Map<String, byte[]> entries = new LinkedHashMap<>();
+            long first;
+            while ((first = next.getAndAdd(batch)) < records) {
+                entries.clear();
+                for (long n = first; n < Math.min(records, first + batch); n++) entries.put(key(n), value());
+                long start = System.nanoTime();
+                try {
+                    target.writeBatch(entries);
+                    stats.record("LOAD", start, System.nanoTime(), entries.size());
+                } catch (IOException e) {
+                    stats.error("LOAD", e);
+                }
+            }
+        });
+    }
+
+    /** Runs the workload until {@code --operations} are done or {@code --duration} has passed. */
+    private void run() throws InterruptedException {
+        Workload w = Workload.valueOf(opts.getOrDefault("workload", "a").toUpperCase(Locale.ROOT));
+        AtomicLong inserted = new AtomicLong(records);
+        KeyChooser keys = KeyChooser.forName(opts.getOrDefault("distribution", w.defaultDistribution), records, inserted);
+        int maxScan = intOpt("max-scan-length", 100);
+        long operations = longOpt("operations", 0);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(longOpt("duration", operations > 0 ? 3600 : 60));
+        AtomicLong remaining = new AtomicLong(operations > 0 ? operations : Long.MAX_VALUE);
+        double rate = Double.parseDouble(opts.getOrDefault("rate", "0"));
+        // open loop: each thread runs its share of the rate on its own schedule
+        long periodNanos = rate > 0 ? (long) (threads * 1e9 / rate) : 0;
+
+        List<String> ops = new ArrayList<>();
+        for (Workload.Op op : Workload.Op.values()) ops.add(op.name());
+        Stats stats = new Stats(ops);
+        out.printf(Locale.ROOT, "run: workload %s, %s keys over %d records, %d threads, %s%n", w,
+                opts.getOrDefault("distribution", w.defaultDistribution), records, threads,
+                rate > 0 ? String.format(Locale.ROOT, "open loop at %.0f ops/s", rate) : "closed loop");
+
+        AtomicLong threadIndex = new AtomicLong();
+        runThreads(stats, "RUN", () -> {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            long intended = System.nanoTime() + periodNanos * threadIndex.getAndIncrement() / threads;
+            while (remaining.getAndDecrement() > 0 && System.nanoTime() < deadline) {
+                long start;
+                if (periodNanos > 0) {
+                    for (long now; (now = System.nanoTime()) < intended; ) LockSupport.parkNanos(intended - now);
+                    start = intended;
+                    intended += periodNanos;
+                } else {
+                    start = System.nanoTime();
+                }
+                Workload.Op op = w.choose(rnd.nextDouble());
+                try {
+                    switch (op) {
+                        case READ:
+                            target.read(key(keys.next()));
+                            break;
+                        case UPDATE:
+                            target.write(key(keys.next()), value());
+                            break;
+                        case INSERT:
+                            target.write(key(inserted.getAndIncrement()), value());
+                            break;
+                        case SCAN: {
+                            long first = keys.next();
+                            target.scan(key(first), key(first + rnd.nextInt(maxScan)));
+                            break;
+                        }
+                        case READ_MODIFY_WRITE: {
+                            String k = key(keys.next());
+                            target.read(k);
+                            target.write(k, value());
+                            break;
+                        }
+                    }
+                    stats.record(op.name(), start, System.nanoTime(), 1);
+                } catch (IOException e) {
+                    stats.error(op.name(), e);
+                }
+            }
+        });
+    }
+
+    /** Runs {@code body} on every thread, printing interval lines until they finish, then the summary. */
+    private void runThreads(Stats stats, String phase, Runnable body) throws InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(body, "loadgen-" + i);
+            t.setDaemon(true);
+            workers.add(t);
+        }
+        long begin = System.nanoTime();
+        for (Thread t : workers) t.start();
+        long nextReport = begin + interval.toNanos();
+        for (Thread t : workers) {
+            while (t.isAlive()) {
+                long wait = nextReport - System.nanoTime();
+                if (wait > 0) {
+                    t.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+                } else {
+                    stats.report(out, hlog, System.nanoTime() - begin);
+                    nextReport += interval.toNanos();
+                }
+            }
+        }
+        stats.report(out, hlog, System.nanoTime() - begin);
+        stats.summary(out, phase, System.nanoTime() - begin);
+    }
+
+    // -------------------- stats --------------------
+
+    /** Per-operation interval recorders and running totals. */
+    private static final class Stats {
+        private final Map<String, Recorder> recorders = new LinkedHashMap<>();
+        private final Map<String, Histogram> totals = new HashMap<>();
+        private final Map<String, LongAdder> items = new HashMap<>();
+        private final Map<String, LongAdder> errors = new HashMap<>();
+        private final Map<String, Histogram> intervalScratch = new HashMap<>();
+        private final Map<String, Long> lastErrorLog = new HashMap<>();
+        private long lastReportNanos;
+
+        Stats(List<String> ops) {
+            for (String op : ops) {
+                recorders.put(op, new Recorder(MAX_LATENCY_MICROS, 3));
+                totals.put(op, new Histogram(MAX_LATENCY_MICROS, 3));
+                items.put(op, new LongAdder());
+                errors.put(op, new LongAdder());
+            }
+        }
+
+        void record(String op, long startNanos, long endNanos, int count) {
+            long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(endNanos - startNanos));
+            recorders.get(op).recordValue(Math.min(micros, MAX_LATENCY_MICROS));
+            items.get(op).add(count);
+        }
+
+        void error(String op, IOException e) {
+            errors.get(op).increment();
+            // at most one message per operation type per second
+            synchronized (lastErrorLog) {
+                long now = System.nanoTime();
+                Long last = lastErrorLog.get(op);
+                if (last == null || now - last > TimeUnit.SECONDS.toNanos(1)) {
+                    lastErrorLog.put(op, now);
+                    System.err.println("[WARN] " + op + " failed: " + e.getMessage());
+                }
+            }
+        }
+
+        /** Prints one line covering the requests completed since the previous report. */
+        synchronized void report(PrintStream out, HistogramLogWriter hlog, long elapsedNanos) {
+            double seconds = (elapsedNanos - lastReportNanos) / 1e9;
+            lastReportNanos = elapsedNanos;
+            StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "[%6.1fs]", elapsedNanos / 1e9));
+            long all = 0;
+            StringBuilder perOp = new StringBuilder();
+            for (Map.Entry<String, Recorder> e : recorders.entrySet()) {
+                Histogram h = e.getValue().getIntervalHistogram(intervalScratch.get(e.getKey()));
+                intervalScratch.put(e.getKey(), h);
+                if (h.getTotalCount() == 0) continue;
+                totals.get(e.getKey()).add(h);
+                all += h.getTotalCount();
+                perOp.append(String.format(Locale.ROOT, " | %s %.0f/s p50=%s p99=%s p99.9=%s max=%s", e.getKey(),
+                        h.getTotalCount() / seconds, fmt(h.getValueAtPercentile(50)), fmt(h.getValueAtPercentile(99)),
+                        fmt(h.getValueAtPercentile(99.9)), fmt(h.getMaxValue())));
+                if (hlog != null) {
+                    h.setTag(e.getKey());
+                    hlog.outputIntervalHistogram(h);
+                }
+            }
+            line.append(String.format(Locale.ROOT, " %.0f ops/s", all / seconds)).append(perOp);
+            out.println(line);
+        }
+
+        void summary(PrintStream out, String phase, long elapsedNanos) {
+            double seconds = elapsedNanos / 1e9;
+            out.printf(Locale.ROOT, "== %s summary (%.1fs, latencies in microseconds) ==%n", phase, seconds);
+            out.printf(Locale.ROOT, "%-18s %10s %10s %10s %9s %9s %9s %9s %9s %9s %7s%n", "op", "requests", "items/s",
+                    "mean", "p50", "p90", "p99", "p99.9", "p99.99", "max", "errors");
+            for (String op : recorders.keySet()) {
+                Histogram h = totals.get(op);
+                if (h.getTotalCount() == 0 && errors.get(op).sum() == 0) continue;
+                out.printf(Locale.ROOT, "%-18s %10d %10.0f %10.1f %9d %9d %9d %9d %9d %9d %7d%n", op, h.getTotalCount(),
+                        items.get(op).sum() / seconds, h.getMean(), h.getValueAtPercentile(50),
+                        h.getValueAtPercentile(90), h.getValueAtPercentile(99), h.getValueAtPercentile(99.9),
+                        h.getValueAtPercentile(99.99), h.getMaxValue(), errors.get(op).sum());
+            }
+        }
+
+        private static String fmt(long micros) {
+            if (micros < 1000) return micros + "us";
+            if (micros < 1_000_000) return String.format(Locale.ROOT, "%.1fms", micros / 1e3);
+            return String.format(Locale.ROOT, "%.2fs", micros / 1e6);
+        }
+    }
+
+    // -------------------- keys, values, options --------------------
+
+    /** Keys sort in record order, so a scan of n records is a range over n consecutive keys. */
+    static String key(long n) {
+        return String.format(Locale.ROOT, "user%012d", n);
+    }
+
+    /** Random lowercase letters: safe for the batch endpoint's JSON parsing. */
+    private byte[] value() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        byte[] v = new byte[valueSize];
+        for (int i = 0; i < v.length; i++) v[i] = (byte) ('a' + rnd.nextInt(26));
+        return v;
+    }
+
+    private static Target openTarget(Map<String, String> opts) throws IOException {
+        String t = opts.getOrDefault("target", "http://localhost:8080");
+        if (t.startsWith("engine:")) {
+            return new EngineTarget(Path.of(t.substring("engine:".length())), Integer.parseInt(opts.getOrDefault("shards", "1")));
+        }
+        if (t.startsWith("http://") || t.startsWith("https://")) {
+            return new HttpTarget(t, Duration.ofSeconds(Long.parseLong(opts.getOrDefault("timeout", "10"))));
+        }
+        throw new IllegalArgumentException("--target must be http://host:port or engine:<dataDir>: " + t);
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("expected --name value, got: " + args[i]);
+            }
+            opts.put(args[i].substring(2), args[++i]);
+        }
+        return opts;
+    }
+
+    private int intOpt(String name, int dflt) {
+        return opts.containsKey(name) ? Integer.parseInt(opts.get(name)) : dflt;
+    }
+
+    private long longOpt(String name, long dflt) {
+        return opts.containsKey(name) ? Long.parseLong(opts.get(name)) : dflt;
+    }
+}
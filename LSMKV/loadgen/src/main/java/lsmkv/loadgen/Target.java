@@ -0,0 +1,20 @@
+// Target.java
+package src.main.java.lsmkv.loadgen;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/** What the load generator drives: the HTTP API or an engine in this JVM. */
+interface Target extends Closeable {
+
+    /** Value of {@code key}, or null if absent. */
+    byte[] read(String key) throws IOException;
+
+    void write(String key, byte[] value) throws IOException;
+
+    void writeBatch(Map<String, byte[]> entries) throws IOException;
+
+    /** Number of live keys in {@code [startKey, endKey]}. */
+    int scan(String startKey, String endKey) throws IOException;
+}
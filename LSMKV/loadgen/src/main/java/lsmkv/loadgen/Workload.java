@@ -0,0 +1,49 @@
+// Workload.java
+package src.main.java.lsmkv.loadgen;
+
+/**
+ * The YCSB core workloads, as operation proportions over the loaded records.
+ * Read-modify-write reads a key and writes it back, timed as one operation.
+ */
+enum Workload {
+    /** Update heavy: 50/50 reads and updates. */
+    A(0.50, 0.50, 0, 0, 0, "zipfian"),
+    /** Read mostly: 95/5 reads and updates. */
+    B(0.95, 0.05, 0, 0, 0, "zipfian"),
+    /** Read only. */
+    C(1.00, 0, 0, 0, 0, "zipfian"),
+    /** Read latest: 95% reads skewed to recent inserts, 5% inserts. */
+    D(0.95, 0, 0.05, 0, 0, "latest"),
+    /** Short ranges: 95% scans, 5% inserts. */
+    E(0, 0, 0.05, 0.95, 0, "zipfian"),
+    /** Read-modify-write: 50% reads, 50% read-modify-writes. */
+    F(0.50, 0, 0, 0, 0.50, "zipfian");
+
+    final double read;
+    final double update;
+    final double insert;
+    final double scan;
+    final double readModifyWrite;
+    final String defaultDistribution;
+
+    Workload(double read, double update, double insert, double scan, double readModifyWrite,
+             String defaultDistribution) {
+        this.read = read;
+        this.update = update;
+        this.insert = insert;
+        this.scan = scan;
+        this.readModifyWrite = readModifyWrite;
+        this.defaultDistribution = defaultDistribution;
+    }
+
+    /** Picks an operation for a uniform random {@code r} in [0, 1). */
+    Op choose(double r) {
+        if ((r -= read) < 0) return Op.READ;
+        if ((r -= update) < 0) return Op.UPDATE;
+        if ((r -= insert) < 0) return Op.INSERT;
+        if ((r -= scan) < 0) return Op.SCAN;
+        return readModifyWrite > 0 ? Op.READ_MODIFY_WRITE : Op.READ;
+    }
+
+    enum Op { READ, UPDATE, INSERT, SCAN, READ_MODIFY_WRITE }
+}
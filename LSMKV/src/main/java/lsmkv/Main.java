@@ -4,7 +4,10 @@ package src.main.java.lsmkv;
 import com.sun.net.httpserver.HttpServer;
 import src.main.java.lsmkv.config.Config;
 import src.main.java.lsmkv.network.HttpServerWrapper;
+import src.main.java.lsmkv.replication.LeaderFollowerReplicator;
 import src.main.java.lsmkv.replication.Replicator;
+import src.main.java.lsmkv.engine.KeyValueStore;
+import src.main.java.lsmkv.engine.ShardedEngine;
 import src.main.java.lsmkv.engine.StorageEngine;
 import src.main.java.lsmkv.network.handlers.KvHandler;
 
@@ -14,10 +17,13 @@ import java.time.Duration;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
+/**
+ * Usage: {@code Main [httpPort] [dataDir] [leader <replPort> | follower <leaderHost:replPort> | shards <n>]}
+ */
 public class Main {
     public static void main(String[] args) throws Exception {
-        String dataDir = "./data";
-        int port = 8080;
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        String dataDir = args.length > 1 ? args[1] : "./data";
 
 
          long memtableFlushBytes = 8L * 1024 * 1024; // 8 MiB
@@ -28,19 +34,32 @@ public class Main {
 
         // initialize config with defaults
         Config cfg = new Config(memtableFlushBytes,fsyncInterval,sparseIndexEvery,compactionFanIn,writeQueueCapacity);
+        cfg.setBackupDir(Path.of(dataDir).toAbsolutePath().normalize().resolveSibling("backups")); // same file system, for hard links
 
-        // Create replicator and storage engine
-        Replicator replicator = new Replicator(Path.of(dataDir));
-        StorageEngine engine = new StorageEngine(Path.of(dataDir),cfg,replicator);
+        // Optional replication role; standalone by default
+        Replicator replicator = null;
+        if (args.length > 3 && args[2].equals("leader")) {
+            replicator = LeaderFollowerReplicator.leader(Integer.parseInt(args[3]), cfg);
+        } else if (args.length > 3 && args[2].equals("follower")) {
+            String[] hostPort = args[3].split(":");
+            replicator = LeaderFollowerReplicator.follower(hostPort[0], Integer.parseInt(hostPort[1]), cfg);
+        } else if (args.length > 3 && args[2].equals("shards")) {
+            cfg.setShards(Integer.parseInt(args[3]));
+        }
+        KeyValueStore engine = cfg.getShards() > 1
+                ? new ShardedEngine(Path.of(dataDir), cfg, cfg.getShards())
+                : new StorageEngine(Path.of(dataDir), cfg, replicator);
         engine.start();
 
         //HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
         //server.createContext("/
         //server.start();
 
-        HttpServerWrapper serverWrapper = new HttpServerWrapper(engine,8080, Executors.newFixedThreadPool(10));
+        HttpServerWrapper serverWrapper = new HttpServerWrapper(engine, port, Executors.newFixedThreadPool(10),
+                cfg.getSlowRequestThreshold(), cfg.getBackupDir());
         serverWrapper.start();
 
-        System.out.println("LSMKV listening on :" + port + "  dataDir=" + dataDir);
+        System.out.println("LSMKV listening on :" + port + "  dataDir=" + dataDir
+                + (args.length > 3 ? "  " + args[2] + " " + args[3] : ""));
     }
 }
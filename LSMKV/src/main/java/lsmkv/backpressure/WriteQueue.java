@@ -1,21 +1,172 @@
-// TODO: Implement WriteQueue.java
+// WriteQueue.java
 package src.main.java.lsmkv.backpressure;
 
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
+/**
+ * Bounded queue drained by a single writer thread, so every mutation of the
+ * WAL and MemTable is serialized. Callers block until their task has run, or
+ * hand it over with {@link #submit}; a full queue rejects instead of blocking
+ * (backpressure). An optional hook runs on the writer thread after each task,
+ * and once more before the thread exits.
+ *
+ * The writer thread is never interrupted: it may be inside FileChannel I/O, which
+ * an interrupt would close. {@link #shutdown()} wakes it with a marker task queued
+ * behind every accepted one instead.
+ */
 public class WriteQueue {
-    private final BlockingQueue<Runnable> queue;
+    private static final Task STOP = new Task(() -> { }, e -> { });
+
+    private final BlockingQueue<Task> queue;
+    private final Thread worker;
+    private final Runnable afterTask;
+    private final LongAdder failures;
+    // Guards closed together with offers, so nothing is accepted behind STOP.
+    private final Object lock = new Object();
+    private boolean closed;
+
+    /** An accepted task, and how to fail it if the writer thread never runs it. */
+    private static final class Task {
+        final Runnable run;
+        final Consumer<IllegalStateException> onAbandoned;
+
+        Task(Runnable run, Consumer<IllegalStateException> onAbandoned) {
+            this.run = run;
+            this.onAbandoned = onAbandoned;
+        }
+    }
 
     public WriteQueue(int capacity) {
-        this.queue = new ArrayBlockingQueue<>(capacity);
+        this(capacity, () -> { });
     }
 
+    /** {@code afterTask} runs on the writer thread after every task, e.g. to commit a group of writes. */
+    public WriteQueue(int capacity, Runnable afterTask) {
+        this(capacity, afterTask, new LongAdder());
+    }
+
+    /** As above, counting in {@code failures} every task or hook that throws on the writer thread. */
+    public WriteQueue(int capacity, Runnable afterTask, LongAdder failures) {
+        // one extra slot so shutdown() can always queue STOP
+        this.queue = new ArrayBlockingQueue<>(capacity + 1);
+        this.afterTask = afterTask;
+        this.failures = failures;
+        this.worker = new Thread(this::drain, "lsmkv-writer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Runs {@code task} on the writer thread and waits for it. Exceptions thrown
+     * by the task are rethrown here.
+     *
+     * @throws IllegalStateException if the queue is full or shut down
+     */
     public void enqueue(Runnable task) {
-        queue.offer(task);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        submit(() -> {
+            try {
+                task.run();
+                future.complete(null);
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }, future::completeExceptionally);
+        try {
+            future.get();
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for write", ie);
+        }
+    }
+
+    /**
+     * Queues {@code task} for the writer thread without waiting for it. The task
+     * reports its own outcome; anything it throws is only logged. If the writer
+     * thread exits without running it, {@code onAbandoned} is called instead.
+     *
+     * @throws IllegalStateException if the queue is full or shut down
+     */
+    public void submit(Runnable task, Consumer<IllegalStateException> onAbandoned) {
+        synchronized (lock) {
+            if (closed) throw new IllegalStateException("write queue is shut down");
+            if (queue.remainingCapacity() <= 1 || !queue.offer(new Task(task, onAbandoned))) {
+                throw new IllegalStateException("write queue full (capacity=" + (queue.size() + queue.remainingCapacity() - 1) + ")");
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                Task task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException ie) {
+                    continue; // not ours to act on; only STOP ends the loop
+                }
+                if (task == STOP) break;
+                run(task.run);
+                run(afterTask);
+            }
+            run(afterTask);
+        } finally {
+            abandonQueued();
+        }
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException re) {
+            failures.increment();
+            System.err.println("[WARN] Write task failed on the writer thread: " + re);
+        }
+    }
+
+    /** Fails whatever is still queued once the writer thread is gone; only non-empty if it died. */
+    private void abandonQueued() {
+        synchronized (lock) {
+            closed = true;
+        }
+        Task task;
+        while ((task = queue.poll()) != null) {
+            if (task != STOP) task.onAbandoned.accept(new IllegalStateException("write queue is shut down"));
+        }
+    }
+
+    /** Writes queued but not yet started. */
+    public int size() {
+        return queue.size();
     }
 
+    /** Stops accepting writes and waits for already queued ones to finish. */
     public void shutdown() {
-        queue.clear();
+        synchronized (lock) {
+            if (!closed) {
+                closed = true;
+                queue.add(STOP); // the spare slot is never taken by submit()
+            }
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                worker.join();
+                break;
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
     }
 }
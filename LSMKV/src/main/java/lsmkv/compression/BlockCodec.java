@@ -0,0 +1,46 @@
+// BlockCodec.java
+package src.main.java.lsmkv.compression;
+
+import java.io.IOException;
+
+/**
+ * Compression codec for one SSTable block. The codec id is written into every
+ * block header, so tables written with different codecs (or blocks that were
+ * stored raw because they didn't shrink) can always be read back.
+ */
+public interface BlockCodec {
+    byte NONE_ID = 0;
+    byte DEFLATE_ID = 1;
+    byte LZ_ID = 2;
+
+    byte id();
+
+    String name();
+
+    /** Upper bound on the output of {@link #compress} for {@code len} input bytes. */
+    int maxCompressedLength(int len);
+
+    /** Compresses src[off, off+len) into dst and returns the number of bytes written. */
+    int compress(byte[] src, int off, int len, byte[] dst);
+
+    /** Decompresses exactly {@code rawLen} bytes from src[off, off+len) into dst. */
+    void decompress(byte[] src, int off, int len, byte[] dst, int rawLen) throws IOException;
+
+    static BlockCodec forId(byte id) throws IOException {
+        switch (id) {
+            case NONE_ID: return NoneCodec.INSTANCE;
+            case DEFLATE_ID: return new DeflateCodec();
+            case LZ_ID: return LzCodec.INSTANCE;
+            default: throw new IOException("Unknown block codec id: " + id);
+        }
+    }
+
+    static BlockCodec forName(String name) {
+        switch (name.toLowerCase()) {
+            case "none": return NoneCodec.INSTANCE;
+            case "deflate": return new DeflateCodec();
+            case "lz": return LzCodec.INSTANCE;
+            default: throw new IllegalArgumentException("Unknown compression codec: " + name);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+// DeflateCodec.java
+package src.main.java.lsmkv.compression;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** Raw DEFLATE (no zlib header) via the JDK's Deflater/Inflater. Slower, denser than {@link LzCodec}. */
+public final class DeflateCodec implements BlockCodec {
+    private final int level;
+
+    public DeflateCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public DeflateCodec(int level) {
+        this.level = level;
+    }
+
+    @Override public byte id() { return DEFLATE_ID; }
+    @Override public String name() { return "deflate"; }
+
+    @Override
+    public int maxCompressedLength(int len) {
+        // stored-block fallback costs 5 bytes per 16 KiB plus stream overhead
+        return len + 5 * (len / 16383 + 1) + 64;
+    }
+
+    @Override
+    public int compress(byte[] src, int off, int len, byte[] dst) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(src, off, len);
+            deflater.finish();
+            int n = 0;
+            while (!deflater.finished()) {
+                if (n == dst.length) throw new IllegalStateException("deflate output exceeds bound");
+                n += deflater.deflate(dst, n, dst.length - n);
+            }
+            return n;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public void decompress(byte[] src, int off, int len, byte[] dst, int rawLen) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(src, off, len);
+            int n = 0;
+            while (n < rawLen) {
+                int r = inflater.inflate(dst, n, rawLen - n);
+                if (r == 0 && (inflater.finished() || inflater.needsInput())) break;
+                n += r;
+            }
+            if (n != rawLen) throw new IOException("Inflated " + n + " bytes, expected " + rawLen);
+        } catch (DataFormatException dfe) {
+            throw new IOException("Corrupt deflate block", dfe);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+// LzCodec.java
+package src.main.java.lsmkv.compression;
+
+import java.io.IOException;
+
+/**
+ * Pure-Java LZ77 codec in the style of the LZ4 block format: a single-probe
+ * hash table finds 4-byte matches within a 64 KiB window and output is a
+ * sequence of
+ *
+ * [token: literalLen(4 bits) | matchLen-4 (4 bits)][literalLen ext][literals][offset u16 LE][matchLen ext]
+ *
+ * where a nibble of 15 is extended by bytes of 255 terminated by one < 255.
+ * The final sequence carries literals only. Favours speed over ratio.
+ */
+public final class LzCodec implements BlockCodec {
+    public static final LzCodec INSTANCE = new LzCodec();
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_LOG = 14;
+    private static final int SKIP_TRIGGER = 6;
+
+    private LzCodec() { }
+
+    @Override public byte id() { return LZ_ID; }
+    @Override public String name() { return "lz"; }
+
+    @Override
+    public int maxCompressedLength(int len) {
+        return len + len / 255 + 16;
+    }
+
+    @Override
+    public int compress(byte[] src, int off, int len, byte[] dst) {
+        int[] table = new int[1 << HASH_LOG]; // position + 1, 0 = empty
+        int end = off + len;
+        int matchLimit = end - MIN_MATCH;
+        int anchor = off;
+        int ip = off;
+        int op = 0;
+        int misses = 0;
+
+        while (ip <= matchLimit) {
+            int seq = readInt(src, ip);
+            int h = hash(seq);
+            int ref = table[h] - 1;
+            table[h] = ip + 1;
+            if (ref < off || ip - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+                // Step faster through incompressible data.
+                ip += 1 + (misses++ >>> SKIP_TRIGGER);
+                continue;
+            }
+            misses = 0;
+            int matchLen = MIN_MATCH;
+            while (ip + matchLen < end && src[ref + matchLen] == src[ip + matchLen]) matchLen++;
+
+            int token = op;
+            op = writeLiterals(src, anchor, ip - anchor, dst, op);
+            int offset = ip - ref;
+            dst[op++] = (byte) offset;
+            dst[op++] = (byte) (offset >>> 8);
+            int extra = matchLen - MIN_MATCH;
+            if (extra >= 15) {
+                dst[token] |= 0x0F;
+                op = writeExt(dst, op, extra - 15);
+            } else {
+                dst[token] |= (byte) extra;
+            }
+
+            ip += matchLen;
+            anchor = ip;
+        }
+        // trailing literals, no match part
+        return writeLiterals(src, anchor, end - anchor, dst, op);
+    }
+
+    /** Writes a token carrying the literal length (match nibble left 0) followed by the literals. */
+    private static int writeLiterals(byte[] src, int litStart, int litLen, byte[] dst, int op) {
+        int token = op++;
+        if (litLen >= 15) {
+            dst[token] = (byte) 0xF0;
+            op = writeExt(dst, op, litLen - 15);
+        } else {
+            dst[token] = (byte) (litLen << 4);
+        }
+        System.arraycopy(src, litStart, dst, op, litLen);
+        return op + litLen;
+    }
+
+    private static int writeExt(byte[] dst, int op, int n) {
+        while (n >= 255) {
+            dst[op++] = (byte) 255;
+            n -= 255;
+        }
+        dst[op++] = (byte) n;
+        return op;
+    }
+
+    @Override
+    public void decompress(byte[] src, int off, int len, byte[] dst, int rawLen) throws IOException {
+        int ip = off;
+        int end = off + len;
+        int op = 0;
+        try {
+            while (ip < end) {
+                int token = src[ip++] & 0xFF;
+
+                int litLen = token >>> 4;
+                if (litLen == 15) {
+                    int b;
+                    do { b = src[ip++] & 0xFF; litLen += b; } while (b == 255);
+                }
+                if (op + litLen > rawLen || ip + litLen > end) throw new IOException("Corrupt LZ block: literal overrun");
+                System.arraycopy(src, ip, dst, op, litLen);
+                ip += litLen;
+                op += litLen;
+                if (ip == end) break; // last sequence has no match
+
+                int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+                ip += 2;
+                int matchLen = token & 0x0F;
+                if (matchLen == 15) {
+                    int b;
+                    do { b = src[ip++] & 0xFF; matchLen += b; } while (b == 255);
+                }
+                matchLen += MIN_MATCH;
+                int ref = op - offset;
+                if (offset == 0 || ref < 0 || op + matchLen > rawLen) throw new IOException("Corrupt LZ block: bad match");
+                if (offset >= matchLen) {
+                    System.arraycopy(dst, ref, dst, op, matchLen);
+                    op += matchLen;
+                } else {
+                    // overlapping copy replicates the pattern byte by byte
+                    for (int i = 0; i < matchLen; i++) dst[op++] = dst[ref + i];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupt LZ block: truncated input", e);
+        }
+        if (op != rawLen) throw new IOException("LZ block decoded " + op + " bytes, expected " + rawLen);
+    }
+
+    private static int hash(int seq) {
+        return (seq * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,27 @@
+// NoneCodec.java
+package src.main.java.lsmkv.compression;
+
+import java.io.IOException;
+
+/** Stores blocks as-is. */
+public final class NoneCodec implements BlockCodec {
+    public static final NoneCodec INSTANCE = new NoneCodec();
+
+    private NoneCodec() { }
+
+    @Override public byte id() { return NONE_ID; }
+    @Override public String name() { return "none"; }
+    @Override public int maxCompressedLength(int len) { return len; }
+
+    @Override
+    public int compress(byte[] src, int off, int len, byte[] dst) {
+        System.arraycopy(src, off, dst, 0, len);
+        return len;
+    }
+
+    @Override
+    public void decompress(byte[] src, int off, int len, byte[] dst, int rawLen) throws IOException {
+        if (len != rawLen) throw new IOException("Stored block length " + len + " != raw length " + rawLen);
+        System.arraycopy(src, off, dst, 0, len);
+    }
+}
@@ -1,6 +1,12 @@
 // TODO: Implement Config.java
 package src.main.java.lsmkv.config;
 
+import src.main.java.lsmkv.merge.CounterMergeOperator;
+import src.main.java.lsmkv.merge.MergeOperator;
+import src.main.java.lsmkv.metrics.Metrics;
+import src.main.java.lsmkv.replication.AckMode;
+
+import java.nio.file.Path;
 import java.time.Duration;
 
 
@@ -12,8 +18,34 @@ public class Config {
     private final int compactionFanIn;
     private final int writeQueueCapacity;
 
-
-
+    // Optional tuning, set after construction; defaults keep the original behaviour.
+    private boolean offHeapMemtable = false;
+    private int arenaChunkBytes = 1 << 20;
+    private int blockSizeBytes = 4096;
+    private int blockRestartInterval = 16;
+    private String compression = "none";
+    private long blockCacheBytes = 8L * 1024 * 1024;
+    private long valueCacheBytes = 8L * 1024 * 1024;
+    private int valueLogThreshold = 0;
+    private long valueLogFileBytes = 64L * 1024 * 1024;
+    private double valueLogGcRatio = 0.5;
+    private long walRetentionBytes = 64L * 1024 * 1024;
+    private AckMode replicationAckMode = AckMode.ASYNC;
+    private int replicationFactor = 3;
+    private Duration replicationAckTimeout = Duration.ofSeconds(5);
+    private int replicationBatchBytes = 1024 * 1024;
+    private int shards = 1;
+    private int merkleDepth = 12;
+    private Duration antiEntropyInterval = Duration.ofMinutes(5);
+    private double ttlCompactionRatio = 0.5;
+    private double compactionSizeRatio = 2.0;
+    private int compactionThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private long subcompactionBytes = 4L * 1024 * 1024;
+    private int ioThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private MergeOperator mergeOperator = CounterMergeOperator.INSTANCE;
+    private Metrics metrics = new Metrics();
+    private Duration slowRequestThreshold = Duration.ofMillis(100);
+    private Path backupDir = null;
 
     public Config(long memtableFlushBytes, Duration fsyncInterval,
                   int sparseIndexEvery, int compactionFanIn, int writeQueueCapacity) {
@@ -29,4 +61,208 @@ public class Config {
     public int getSparseIndexEvery() { return sparseIndexEvery; }
     public int getCompactionFanIn() { return compactionFanIn; }
     public int getWriteQueueCapacity() { return writeQueueCapacity; }
+
+    public boolean isOffHeapMemtable() { return offHeapMemtable; }
+    public int getArenaChunkBytes() { return arenaChunkBytes; }
+    public int getBlockSizeBytes() { return blockSizeBytes; }
+    public int getBlockRestartInterval() { return blockRestartInterval; }
+    public String getCompression() { return compression; }
+    public long getBlockCacheBytes() { return blockCacheBytes; }
+    public long getValueCacheBytes() { return valueCacheBytes; }
+    public int getValueLogThreshold() { return valueLogThreshold; }
+    public long getValueLogFileBytes() { return valueLogFileBytes; }
+    public double getValueLogGcRatio() { return valueLogGcRatio; }
+    public long getWalRetentionBytes() { return walRetentionBytes; }
+    public AckMode getReplicationAckMode() { return replicationAckMode; }
+    public int getReplicationFactor() { return replicationFactor; }
+    public Duration getReplicationAckTimeout() { return replicationAckTimeout; }
+    public int getReplicationBatchBytes() { return replicationBatchBytes; }
+    public int getShards() { return shards; }
+    public int getMerkleDepth() { return merkleDepth; }
+    public Duration getAntiEntropyInterval() { return antiEntropyInterval; }
+    public double getTtlCompactionRatio() { return ttlCompactionRatio; }
+    public double getCompactionSizeRatio() { return compactionSizeRatio; }
+    public int getCompactionThreads() { return compactionThreads; }
+    public long getSubcompactionBytes() { return subcompactionBytes; }
+    public int getIoThreads() { return ioThreads; }
+    public MergeOperator getMergeOperator() { return mergeOperator; }
+    public Metrics getMetrics() { return metrics; }
+    public Duration getSlowRequestThreshold() { return slowRequestThreshold; }
+    public Path getBackupDir() { return backupDir; }
+
+    /** Use {@code ArenaMemTable} (off-heap arena) instead of the on-heap skip list. */
+    public Config setOffHeapMemtable(boolean offHeapMemtable) {
+        this.offHeapMemtable = offHeapMemtable;
+        return this;
+    }
+
+    public Config setArenaChunkBytes(int arenaChunkBytes) {
+        this.arenaChunkBytes = arenaChunkBytes;
+        return this;
+    }
+
+    /** Target uncompressed size of an SSTable data block. */
+    public Config setBlockSizeBytes(int blockSizeBytes) {
+        this.blockSizeBytes = blockSizeBytes;
+        return this;
+    }
+
+    /** Entries between full (non prefix-compressed) keys inside a block. */
+    public Config setBlockRestartInterval(int blockRestartInterval) {
+        this.blockRestartInterval = blockRestartInterval;
+        return this;
+    }
+
+    /** Block codec for new SSTables: "none", "lz" or "deflate". */
+    public Config setCompression(String compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /** Capacity of the shared cache of decoded blocks. */
+    public Config setBlockCacheBytes(long blockCacheBytes) {
+        this.blockCacheBytes = blockCacheBytes;
+        return this;
+    }
+
+    /**
+     * Capacity of the decoded-value cache in front of point reads. 0 caches nothing;
+     * concurrent misses on one key still share a single lookup.
+     */
+    public Config setValueCacheBytes(long valueCacheBytes) {
+        this.valueCacheBytes = valueCacheBytes;
+        return this;
+    }
+
+    /** Values of at least this many bytes are moved to the value log on flush; 0 disables. */
+    public Config setValueLogThreshold(int valueLogThreshold) {
+        this.valueLogThreshold = valueLogThreshold;
+        return this;
+    }
+
+    public Config setValueLogFileBytes(long valueLogFileBytes) {
+        this.valueLogFileBytes = valueLogFileBytes;
+        return this;
+    }
+
+    /** Fraction of a value-log file that must be garbage before it is collected. */
+    public Config setValueLogGcRatio(double valueLogGcRatio) {
+        this.valueLogGcRatio = valueLogGcRatio;
+        return this;
+    }
+
+    /** Flushed WAL segments kept (newest first) so followers can catch up by tailing. */
+    public Config setWalRetentionBytes(long walRetentionBytes) {
+        this.walRetentionBytes = walRetentionBytes;
+        return this;
+    }
+
+    public Config setReplicationAckMode(AckMode replicationAckMode) {
+        this.replicationAckMode = replicationAckMode;
+        return this;
+    }
+
+    /** Total replicas including the leader; QUORUM waits for a majority of them. */
+    public Config setReplicationFactor(int replicationFactor) {
+        this.replicationFactor = replicationFactor;
+        return this;
+    }
+
+    public Config setReplicationAckTimeout(Duration replicationAckTimeout) {
+        this.replicationAckTimeout = replicationAckTimeout;
+        return this;
+    }
+
+    /** Upper bound on the WAL bytes shipped to a follower in one frame. */
+    public Config setReplicationBatchBytes(int replicationBatchBytes) {
+        this.replicationBatchBytes = replicationBatchBytes;
+        return this;
+    }
+
+    /** Hash partitions served by a {@code ShardedEngine}; fixed once a data dir exists. */
+    public Config setShards(int shards) {
+        this.shards = shards;
+        return this;
+    }
+
+    /** Merkle tree leaves = 2^depth key-hash ranges; deeper trees localise drift more finely. */
+    public Config setMerkleDepth(int merkleDepth) {
+        this.merkleDepth = merkleDepth;
+        return this;
+    }
+
+    /** How often a follower compares its Merkle tree with the leader's; zero disables. */
+    public Config setAntiEntropyInterval(Duration antiEntropyInterval) {
+        this.antiEntropyInterval = antiEntropyInterval;
+        return this;
+    }
+
+    /** Fraction of one SSTable's entries that must have expired before it triggers a compaction. */
+    public Config setTtlCompactionRatio(double ttlCompactionRatio) {
+        this.ttlCompactionRatio = ttlCompactionRatio;
+        return this;
+    }
+
+    /**
+     * A merge takes the newest tables and each older one that is at most this many
+     * times the size of those taken so far; larger, older tables wait until the newer
+     * data has grown, so each byte is rewritten a logarithmic number of times.
+     */
+    public Config setCompactionSizeRatio(double compactionSizeRatio) {
+        this.compactionSizeRatio = compactionSizeRatio;
+        return this;
+    }
+
+    /** Threads that run sub-compactions and flush partitions in parallel; 1 keeps both on a single thread. */
+    public Config setCompactionThreads(int compactionThreads) {
+        this.compactionThreads = compactionThreads;
+        return this;
+    }
+
+    /**
+     * A compaction or flush is split into disjoint key ranges of about this many bytes
+     * each, at most one per compaction thread, which are written to separate SSTables.
+     */
+    public Config setSubcompactionBytes(long subcompactionBytes) {
+        this.subcompactionBytes = subcompactionBytes;
+        return this;
+    }
+
+    /** Threads per engine that serve the async reads and complete async writes. */
+    public Config setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+        return this;
+    }
+
+    /** Folds merge operands; must not change for an existing data dir. Defaults to decimal counters. */
+    public Config setMergeOperator(MergeOperator mergeOperator) {
+        this.mergeOperator = mergeOperator;
+        return this;
+    }
+
+    /** Registry every engine built from this config reports into; exposed at {@code /metrics}. */
+    public Config setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Engine operations and HTTP requests at least this slow are counted and
+     * emitted as JFR events ({@code lsmkv.SlowRequest}, {@code lsmkv.HttpRequest}).
+     * {@code Duration.ZERO} traces every request.
+     */
+    public Config setSlowRequestThreshold(Duration slowRequestThreshold) {
+        this.slowRequestThreshold = slowRequestThreshold;
+        return this;
+    }
+
+    /**
+     * Directory {@code POST /admin/checkpoint} writes checkpoints into, by name. It should
+     * be on the data directory's file system so files can be hard-linked; null (the
+     * default) disables the endpoint.
+     */
+    public Config setBackupDir(Path backupDir) {
+        this.backupDir = backupDir;
+        return this;
+    }
 }
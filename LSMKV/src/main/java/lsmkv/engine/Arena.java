@@ -0,0 +1,100 @@
+// Arena.java
+package src.main.java.lsmkv.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bump allocator over large direct (off-heap) chunks.
+ *
+ * An address is {@code (chunkIndex << 32) | offset}; address 0 is reserved as null.
+ * Allocations are 8-byte aligned and never freed individually: the whole arena
+ * is released at once by dropping it.
+ */
+final class Arena {
+    static final long NULL = 0L;
+    private static final int MAX_CHUNKS = 1 << 16;
+
+    private final int chunkSize;
+    private final AtomicReferenceArray<ByteBuffer> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    private final AtomicInteger chunkCount = new AtomicInteger();
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong reserved = new AtomicLong();
+    private volatile Chunk current;
+
+    private static final class Chunk {
+        final int index;
+        final int capacity;
+        final AtomicInteger top;
+
+        Chunk(int index, int capacity, int start) {
+            this.index = index;
+            this.capacity = capacity;
+            this.top = new AtomicInteger(start);
+        }
+    }
+
+    Arena(int chunkSize) {
+        if (chunkSize < 4096) throw new IllegalArgumentException("chunkSize too small: " + chunkSize);
+        this.chunkSize = chunkSize & ~7;
+        // offset 0 of chunk 0 is the null address
+        this.current = newChunk(this.chunkSize, 8);
+    }
+
+    /** Returns the address of {@code size} fresh bytes, rounded up to a multiple of 8. */
+    long allocate(int size) {
+        int aligned = (size + 7) & ~7;
+        if (aligned > chunkSize / 4) {
+            // Large records get a dedicated chunk so they don't waste the shared one's tail.
+            Chunk c = newChunk(aligned, 0);
+            c.top.set(aligned);
+            allocated.addAndGet(aligned);
+            return address(c.index, 0);
+        }
+        while (true) {
+            Chunk c = current;
+            int pos = c.top.getAndAdd(aligned);
+            if (pos >= 0 && pos + aligned <= c.capacity) {
+                allocated.addAndGet(aligned);
+                return address(c.index, pos);
+            }
+            synchronized (this) {
+                if (current == c) current = newChunk(chunkSize, 0);
+            }
+        }
+    }
+
+    private synchronized Chunk newChunk(int capacity, int start) {
+        int index = chunkCount.get();
+        if (index >= MAX_CHUNKS) throw new IllegalStateException("arena exhausted (" + MAX_CHUNKS + " chunks)");
+        chunks.set(index, ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder()));
+        chunkCount.set(index + 1);
+        reserved.addAndGet(capacity);
+        return new Chunk(index, capacity, start);
+    }
+
+    ByteBuffer buffer(long address) {
+        return chunks.get((int) (address >>> 32));
+    }
+
+    static int offset(long address) {
+        return (int) address;
+    }
+
+    private static long address(int chunk, int offset) {
+        return ((long) chunk << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    /** Exact bytes handed out, including alignment padding. */
+    long allocatedBytes() {
+        return allocated.get();
+    }
+
+    /** Direct memory held by the arena's chunks. */
+    long reservedBytes() {
+        return reserved.get();
+    }
+}
@@ -0,0 +1,279 @@
+// ArenaMemTable.java
+package src.main.java.lsmkv.engine;
+
+import src.main.java.lsmkv.util.Slice;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Off-heap MemTable: keys, values and skip list nodes all live in an {@link Arena},
+ * and links between nodes are arena addresses rather than object references.
+ *
+ * Inserts are lock-free (CAS on the links, never unlinking), so readers and
+ * writers never block each other. Overwrites and deletes allocate a new value
+ * record and CAS the node's value pointer; the old record stays in the arena
+ * until the whole table is dropped after flush. A range delete turns the nodes
+ * in the range into tombstones, which the range itself makes redundant.
+ *
+ * Node layout:   [long valuePtr][int keyLen][int height][long next * height][key bytes]
+ * Value record:  [int len][byte kind][long expiresAt][value bytes]
+ */
+public class ArenaMemTable implements MemTable {
+    private static final int MAX_HEIGHT = 12;
+    private static final int VALUE_PTR = 0;
+    private static final int KEY_LEN = 8;
+    private static final int HEIGHT = 12;
+    private static final int NEXT = 16;
+    private static final int VALUE_HEADER = 4 + 1 + 8;
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final Arena arena;
+    private final long head;
+    private final AtomicInteger count = new AtomicInteger();
+    private final RangeTombstones ranges = new RangeTombstones(); // on heap; few and small
+    private volatile boolean closed;
+
+    public ArenaMemTable(int chunkBytes) {
+        this.arena = new Arena(chunkBytes);
+        this.head = allocateNode(Slice.EMPTY, MAX_HEIGHT, Arena.NULL);
+    }
+
+    // -------------------- MemTable --------------------
+
+    @Override
+    public void put(Slice key, byte[] value, long expiresAt) {
+        upsert(key, allocateValue(Entry.PUT, value, expiresAt));
+    }
+
+    @Override
+    public void delete(Slice key) {
+        upsert(key, allocateValue(Entry.DELETE, null, 0));
+    }
+
+    @Override
+    public void deleteRange(Slice start, Slice end) {
+        if (closed) throw new IllegalStateException("MemTable is closed");
+        ranges.add(start, end);
+        long tombstone = allocateValue(Entry.DELETE, null, 0);
+        long[] preds = new long[MAX_HEIGHT];
+        long[] succs = new long[MAX_HEIGHT];
+        findSplice(start, preds, succs);
+        for (long node = succs[0]; node != Arena.NULL && compareKey(node, end) <= 0; node = next(node, 0)) {
+            setValuePtr(node, tombstone);
+        }
+    }
+
+    @Override
+    public RangeTombstones rangeTombstones() {
+        return ranges;
+    }
+
+    @Override
+    public void putOperand(Slice key, byte[] operand, long expiresAt) {
+        upsert(key, allocateValue(Entry.MERGE, operand, expiresAt));
+    }
+
+    @Override
+    public Entry get(Slice key) {
+        long[] preds = new long[MAX_HEIGHT];
+        long[] succs = new long[MAX_HEIGHT];
+        long node = findSplice(key, preds, succs);
+        if (node != Arena.NULL) return decode(node);
+        return ranges.covers(key) ? Entry.delete(key) : null;
+    }
+
+    @Override
+    public long sizeBytes() {
+        return arena.allocatedBytes();
+    }
+
+    /** Direct memory reserved by the arena, which is at least {@link #sizeBytes()}. */
+    public long reservedBytes() {
+        return arena.reservedBytes();
+    }
+
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    @Override
+    public Iterator<Entry> iterator() {
+        return iteratorAt(next(head, 0));
+    }
+
+    @Override
+    public Iterator<Entry> iterator(Slice from) {
+        long[] preds = new long[MAX_HEIGHT];
+        long[] succs = new long[MAX_HEIGHT];
+        findSplice(from, preds, succs);
+        return iteratorAt(succs[0]);
+    }
+
+    private Iterator<Entry> iteratorAt(long first) {
+        return new Iterator<>() {
+            long node = first;
+
+            @Override
+            public boolean hasNext() {
+                return node != Arena.NULL;
+            }
+
+            @Override
+            public Entry next() {
+                if (node == Arena.NULL) throw new NoSuchElementException();
+                Entry e = decode(node);
+                node = ArenaMemTable.this.next(node, 0);
+                return e;
+            }
+        };
+    }
+
+    /**
+     * Marks the table read-only. The chunks are not unmapped eagerly because
+     * in-flight readers may still hold the table; they are reclaimed together
+     * once the table becomes unreachable.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    // -------------------- skip list --------------------
+
+    private void upsert(Slice key, long valuePtr) {
+        if (closed) throw new IllegalStateException("MemTable is closed");
+        long[] preds = new long[MAX_HEIGHT];
+        long[] succs = new long[MAX_HEIGHT];
+        int height = randomHeight();
+        long node = Arena.NULL;
+
+        while (true) {
+            long found = findSplice(key, preds, succs);
+            if (found != Arena.NULL) {
+                setValuePtr(found, valuePtr);
+                return;
+            }
+            if (node == Arena.NULL) node = allocateNode(key, height, valuePtr);
+            setNext(node, 0, succs[0]);
+            if (casNext(preds[0], 0, succs[0], node)) break;
+        }
+        count.incrementAndGet();
+
+        for (int level = 1; level < height; level++) {
+            while (true) {
+                setNext(node, level, succs[level]);
+                if (casNext(preds[level], level, succs[level], node)) break;
+                findSplice(key, preds, succs);
+            }
+        }
+    }
+
+    /** Fills preds/succs at every level and returns the node holding {@code key}, if any. */
+    private long findSplice(Slice key, long[] preds, long[] succs) {
+        long x = head;
+        for (int level = MAX_HEIGHT - 1; level >= 0; level--) {
+            long next = next(x, level);
+            while (next != Arena.NULL && compareKey(next, key) < 0) {
+                x = next;
+                next = next(x, level);
+            }
+            preds[level] = x;
+            succs[level] = next;
+        }
+        long candidate = succs[0];
+        return candidate != Arena.NULL && compareKey(candidate, key) == 0 ? candidate : Arena.NULL;
+    }
+
+    private static int randomHeight() {
+        int h = 1;
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        while (h < MAX_HEIGHT && rnd.nextInt(4) == 0) h++;
+        return h;
+    }
+
+    // -------------------- arena layout --------------------
+
+    private long allocateNode(Slice key, int height, long valuePtr) {
+        int keyOffset = NEXT + height * 8;
+        long addr = arena.allocate(keyOffset + key.length());
+        ByteBuffer buf = arena.buffer(addr);
+        int base = Arena.offset(addr);
+        buf.putLong(base + VALUE_PTR, valuePtr);
+        buf.putInt(base + KEY_LEN, key.length());
+        buf.putInt(base + HEIGHT, height);
+        for (int i = 0; i < height; i++) buf.putLong(base + NEXT + i * 8, Arena.NULL);
+        ByteBuffer dst = buf.duplicate();
+        dst.position(base + keyOffset);
+        key.writeTo(dst);
+        return addr;
+    }
+
+    private long allocateValue(byte kind, byte[] value, long expiresAt) {
+        int len = value == null ? 0 : value.length;
+        long addr = arena.allocate(VALUE_HEADER + len);
+        ByteBuffer buf = arena.buffer(addr);
+        int base = Arena.offset(addr);
+        buf.putInt(base, len);
+        buf.put(base + 4, kind);
+        buf.putLong(base + 5, expiresAt);
+        if (len > 0) buf.put(base + VALUE_HEADER, value, 0, len);
+        return addr;
+    }
+
+    private int compareKey(long node, Slice key) {
+        ByteBuffer buf = arena.buffer(node);
+        int base = Arena.offset(node);
+        int len = buf.getInt(base + KEY_LEN);
+        int off = base + NEXT + buf.getInt(base + HEIGHT) * 8;
+        int n = Math.min(len, key.length());
+        for (int i = 0; i < n; i++) {
+            int c = (buf.get(off + i) & 0xFF) - (key.get(i) & 0xFF);
+            if (c != 0) return c;
+        }
+        return len - key.length();
+    }
+
+    private Entry decode(long node) {
+        ByteBuffer buf = arena.buffer(node);
+        int base = Arena.offset(node);
+        int keyLen = buf.getInt(base + KEY_LEN);
+        byte[] key = new byte[keyLen];
+        buf.get(base + NEXT + buf.getInt(base + HEIGHT) * 8, key, 0, keyLen);
+
+        long valuePtr = (long) LONGS.getVolatile(buf, base + VALUE_PTR);
+        ByteBuffer vbuf = arena.buffer(valuePtr);
+        int vbase = Arena.offset(valuePtr);
+        int len = vbuf.getInt(vbase);
+        byte kind = vbuf.get(vbase + 4);
+        if (kind == Entry.DELETE) return Entry.delete(Slice.wrap(key));
+        byte[] value = new byte[len];
+        vbuf.get(vbase + VALUE_HEADER, value, 0, len);
+        return Entry.of(Slice.wrap(key), kind, value, vbuf.getLong(vbase + 5));
+    }
+
+    private long next(long node, int level) {
+        return (long) LONGS.getVolatile(arena.buffer(node), Arena.offset(node) + NEXT + level * 8);
+    }
+
+    private void setNext(long node, int level, long value) {
+        LONGS.setVolatile(arena.buffer(node), Arena.offset(node) + NEXT + level * 8, value);
+    }
+
+    private boolean casNext(long node, int level, long expect, long update) {
+        return LONGS.compareAndSet(arena.buffer(node), Arena.offset(node) + NEXT + level * 8, expect, update);
+    }
+
+    private void setValuePtr(long node, long valuePtr) {
+        LONGS.setVolatile(arena.buffer(node), Arena.offset(node) + VALUE_PTR, valuePtr);
+    }
+}
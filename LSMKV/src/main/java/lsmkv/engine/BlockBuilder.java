@@ -0,0 +1,104 @@
+// BlockBuilder.java
+package src.main.java.lsmkv.engine;
+
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Builds the uncompressed contents of one SSTable data block.
+ *
+ * Keys are delta-encoded against the previous key; every {@code restartInterval}
+ * entries the full key is stored again (a restart point) so readers can binary
+ * search the restarts and scan at most one interval.
+ * <pre>
+ * entry:    [varint shared][varint unshared][byte kind][long expiresAt]?[varint vlen][key suffix][value]
+ * trailer:  [int restartOffset]* [int restartCount]
+ * </pre>
+ * The expiry is only present when the kind byte has {@link #EXPIRES} set.
+ */
+final class BlockBuilder {
+    static final int EXPIRES = 0x80;
+
+    private final int restartInterval;
+    private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    private int[] restarts = new int[16];
+    private int restartCount;
+    private int sinceRestart;
+    private byte[] lastKey = new byte[0];
+    private int entries;
+
+    BlockBuilder(int restartInterval) {
+        this.restartInterval = Math.max(1, restartInterval);
+    }
+
+    void add(Entry e) {
+        byte[] key = e.key().toByteArray();
+        int keyLen = e.key().length();
+        int shared = 0;
+        if (sinceRestart >= restartInterval || entries == 0) {
+            if (restartCount == restarts.length) restarts = Arrays.copyOf(restarts, restartCount * 2);
+            restarts[restartCount++] = buf.size();
+            sinceRestart = 0;
+        } else {
+            int max = Math.min(lastKey.length, keyLen);
+            while (shared < max && lastKey[shared] == key[shared]) shared++;
+        }
+        byte[] value = e.isTombstone() ? null : e.value();
+        writeVarint(shared);
+        writeVarint(keyLen - shared);
+        if (e.expiresAt() != 0) {
+            buf.write(e.kind() | EXPIRES);
+            writeLong(e.expiresAt());
+        } else {
+            buf.write(e.kind());
+        }
+        writeVarint(value == null ? 0 : value.length);
+        buf.write(key, shared, keyLen - shared);
+        if (value != null) buf.write(value, 0, value.length);
+
+        lastKey = key;
+        sinceRestart++;
+        entries++;
+    }
+
+    boolean isEmpty() { return entries == 0; }
+
+    /** Size the block would have if finished now. */
+    int estimatedSize() {
+        return buf.size() + 4 * (restartCount + 1);
+    }
+
+    byte[] finish() {
+        for (int i = 0; i < restartCount; i++) writeInt(restarts[i]);
+        writeInt(restartCount);
+        byte[] out = buf.toByteArray();
+        buf.reset();
+        restartCount = 0;
+        sinceRestart = 0;
+        entries = 0;
+        lastKey = new byte[0];
+        return out;
+    }
+
+    private void writeVarint(int v) {
+        while ((v & ~0x7F) != 0) {
+            buf.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf.write(v);
+    }
+
+    private void writeLong(long v) {
+        writeInt((int) (v >>> 32));
+        writeInt((int) v);
+    }
+
+    private void writeInt(int v) {
+        buf.write(v >>> 24);
+        buf.write(v >>> 16);
+        buf.write(v >>> 8);
+        buf.write(v);
+    }
+}
@@ -0,0 +1,56 @@
+// BlockCache.java
+package src.main.java.lsmkv.engine;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU cache of decoded (uncompressed) SSTable blocks, bounded by total bytes and
+ * shared by all tables of an engine. Hot reads therefore never pay for
+ * decompression twice.
+ */
+public class BlockCache {
+    private final long capacityBytes;
+    private final LinkedHashMap<Long, byte[]> blocks = new LinkedHashMap<>(256, 0.75f, true);
+    private long sizeBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public BlockCache(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+    }
+
+    static long key(long tableId, long blockOffset) {
+        return (tableId << 40) | blockOffset;
+    }
+
+    public byte[] get(long key) {
+        byte[] block;
+        synchronized (this) {
+            block = blocks.get(key);
+        }
+        if (block != null) hits.increment(); else misses.increment();
+        return block;
+    }
+
+    public void put(long key, byte[] block) {
+        if (block.length > capacityBytes) return;
+        synchronized (this) {
+            byte[] previous = blocks.put(key, block);
+            if (previous != null) sizeBytes -= previous.length;
+            sizeBytes += block.length;
+            Iterator<Map.Entry<Long, byte[]>> it = blocks.entrySet().iterator();
+            while (sizeBytes > capacityBytes && it.hasNext()) {
+                Map.Entry<Long, byte[]> eldest = it.next();
+                sizeBytes -= eldest.getValue().length;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized long sizeBytes() { return sizeBytes; }
+    public long hits() { return hits.sum(); }
+    public long misses() { return misses.sum(); }
+}
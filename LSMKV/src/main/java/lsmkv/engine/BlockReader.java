@@ -0,0 +1,152 @@
+// BlockReader.java
+package src.main.java.lsmkv.engine;
+
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** Reads a block produced by {@link BlockBuilder}. Cheap to create over a cached byte[]. */
+final class BlockReader {
+    private final byte[] data;
+    private final int restartsOffset;
+    private final int restartCount;
+
+    BlockReader(byte[] data) throws IOException {
+        if (data.length < 4) throw new IOException("Block too small: " + data.length);
+        this.data = data;
+        this.restartCount = readInt(data.length - 4);
+        this.restartsOffset = data.length - 4 - 4 * restartCount;
+        if (restartCount <= 0 || restartsOffset < 0) throw new IOException("Corrupt block restart array");
+    }
+
+    /** Entry with exactly {@code key}, or null. */
+    Entry get(Slice key) {
+        Cursor c = new Cursor(restartPoint(seekRestart(key)));
+        while (c.hasNext()) {
+            c.advance();
+            int cmp = compare(c.key, c.keyLen, key);
+            if (cmp == 0) return c.entry();
+            if (cmp > 0) return null;
+        }
+        return null;
+    }
+
+    Iterator<Entry> iterator() {
+        Cursor c = new Cursor(0);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return c.hasNext();
+            }
+
+            @Override
+            public Entry next() {
+                if (!c.hasNext()) throw new NoSuchElementException();
+                c.advance();
+                return c.entry();
+            }
+        };
+    }
+
+    /** Last restart whose key is <= {@code key} (0 if none). */
+    private int seekRestart(Slice key) {
+        int lo = 0, hi = restartCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            int p = restartPoint(mid);
+            // restart entries have shared = 0, so the full key follows the header
+            int[] pos = {p};
+            readVarint(pos);                   // shared (0)
+            int unshared = readVarint(pos);
+            if ((data[pos[0]++] & BlockBuilder.EXPIRES) != 0) pos[0] += 8; // kind [expiresAt]
+            readVarint(pos);                   // vlen
+            if (compareRaw(pos[0], unshared, key) <= 0) lo = mid; else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    private int restartPoint(int i) {
+        return readInt(restartsOffset + 4 * i);
+    }
+
+    /** Sequential decoder that rebuilds full keys from the shared-prefix deltas. */
+    private final class Cursor {
+        int pos;
+        byte[] key = new byte[32];
+        int keyLen;
+        byte kind;
+        long expiresAt;
+        int valueOffset;
+        int valueLen;
+
+        Cursor(int start) {
+            this.pos = start;
+        }
+
+        boolean hasNext() {
+            return pos < restartsOffset;
+        }
+
+        void advance() {
+            int[] p = {pos};
+            int shared = readVarint(p);
+            int unshared = readVarint(p);
+            kind = data[p[0]++];
+            if ((kind & BlockBuilder.EXPIRES) != 0) {
+                kind &= ~BlockBuilder.EXPIRES;
+                expiresAt = (long) readInt(p[0]) << 32 | (readInt(p[0] + 4) & 0xFFFFFFFFL);
+                p[0] += 8;
+            } else {
+                expiresAt = 0;
+            }
+            valueLen = readVarint(p);
+            if (shared + unshared > key.length) key = Arrays.copyOf(key, Math.max(key.length * 2, shared + unshared));
+            System.arraycopy(data, p[0], key, shared, unshared);
+            keyLen = shared + unshared;
+            valueOffset = p[0] + unshared;
+            pos = valueOffset + valueLen;
+            if (pos > restartsOffset) throw new UncheckedIOException(new IOException("Corrupt block entry"));
+        }
+
+        Entry entry() {
+            Slice k = Slice.wrap(Arrays.copyOf(key, keyLen));
+            if (kind == Entry.DELETE) return Entry.delete(k);
+            return Entry.of(k, kind, Arrays.copyOfRange(data, valueOffset, valueOffset + valueLen), expiresAt);
+        }
+    }
+
+    private int compareRaw(int off, int len, Slice key) {
+        int n = Math.min(len, key.length());
+        for (int i = 0; i < n; i++) {
+            int c = (data[off + i] & 0xFF) - (key.get(i) & 0xFF);
+            if (c != 0) return c;
+        }
+        return len - key.length();
+    }
+
+    private static int compare(byte[] a, int len, Slice key) {
+        int n = Math.min(len, key.length());
+        for (int i = 0; i < n; i++) {
+            int c = (a[i] & 0xFF) - (key.get(i) & 0xFF);
+            if (c != 0) return c;
+        }
+        return len - key.length();
+    }
+
+    private int readVarint(int[] pos) {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data[pos[0]++];
+            v |= (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    private int readInt(int off) {
+        return (data[off] & 0xFF) << 24 | (data[off + 1] & 0xFF) << 16 | (data[off + 2] & 0xFF) << 8 | (data[off + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,230 @@
+// Checkpoint.java
+package src.main.java.lsmkv.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Consistent copy of an engine's state, written by {@link StorageEngine#checkpoint}
+ * into a directory that opens as a data directory. It holds hard links to the live
+ * SSTables and value-log files (copies where the file system cannot link), a
+ * MANIFEST listing exactly those tables, and a copy of the WAL segments with the
+ * records not yet in any table. Writes are held up only while the links are made.
+ *
+ * An incremental checkpoint names an earlier one as its base and links only the
+ * tables created since, plus the value-log files that may have grown since; its
+ * MANIFEST still lists every live table. To restore, copy the SSTable and value-log
+ * files of the base and of each increment, then the last one's MANIFEST and WAL
+ * segments, into one directory and open it: tables compacted away in the meantime
+ * are not in the last MANIFEST and are deleted on open.
+ *
+ * The {@code CHECKPOINT} file holds the marks the next increment starts from.
+ */
+public final class Checkpoint {
+    static final String MARKS_FILE = "CHECKPOINT";
+
+    private final Path dir;
+    private final long seq;
+    private final int tables;
+    private final int reusedTables;
+    private final long linkedBytes;
+    private final long copiedBytes;
+
+    private Checkpoint(Path dir, long seq, int tables, int reusedTables, long linkedBytes, long copiedBytes) {
+        this.dir = dir;
+        this.seq = seq;
+        this.tables = tables;
+        this.reusedTables = reusedTables;
+        this.linkedBytes = linkedBytes;
+        this.copiedBytes = copiedBytes;
+    }
+
+    /** Where each checkpoint in a chain starts: everything at or below these is in the base. */
+    static final class Marks {
+        static final Marks NONE = new Marks(0, 0, -1);
+
+        final long seq;
+        final long tableId;     // highest table id included
+        final long valueLogId;  // value-log file that was active; it may have grown since
+
+        Marks(long seq, long tableId, long valueLogId) {
+            this.seq = seq;
+            this.tableId = tableId;
+            this.valueLogId = valueLogId;
+        }
+
+        static Marks read(Path dir) throws IOException {
+            Path f = dir.resolve(MARKS_FILE);
+            if (!Files.exists(f)) throw new IOException("Not a checkpoint: " + dir);
+            Properties p = new Properties();
+            try (InputStream in = Files.newInputStream(f)) {
+                p.load(in);
+            }
+            return new Marks(Long.parseLong(p.getProperty("seq")), Long.parseLong(p.getProperty("tableId")),
+                             Long.parseLong(p.getProperty("valueLogId")));
+        }
+
+        void write(Path dir, Path base) throws IOException {
+            Properties p = new Properties();
+            p.setProperty("seq", Long.toString(seq));
+            p.setProperty("tableId", Long.toString(tableId));
+            p.setProperty("valueLogId", Long.toString(valueLogId));
+            if (base != null) p.setProperty("base", base.toString());
+            try (OutputStream out = Files.newOutputStream(dir.resolve(MARKS_FILE))) {
+                p.store(out, "lsmkv checkpoint");
+            }
+        }
+    }
+
+    /**
+     * The part of a checkpoint made while the engine is quiesced: the links and the
+     * MANIFEST. The WAL segments are linked too, under a temporary name, and
+     * {@link #finish()} copies them out up to their length at that point.
+     */
+    static final class Pending {
+        private final Path dir;
+        private final Path base;
+        private final Marks marks;
+        private final Map<Path, Long> wal; // temporary link -> bytes to copy
+        private final int tables;
+        private final int reusedTables;
+        private final long linkedBytes;
+
+        private Pending(Path dir, Path base, Marks marks, Map<Path, Long> wal, int tables, int reusedTables,
+                        long linkedBytes) {
+            this.dir = dir;
+            this.base = base;
+            this.marks = marks;
+            this.wal = wal;
+            this.tables = tables;
+            this.reusedTables = reusedTables;
+            this.linkedBytes = linkedBytes;
+        }
+
+        /** Copies the WAL tail and writes the marks; runs without holding up the engine. */
+        Checkpoint finish() throws IOException {
+            long copied = 0;
+            for (Map.Entry<Path, Long> e : wal.entrySet()) {
+                String name = e.getKey().getFileName().toString();
+                Path target = dir.resolve(name.substring(0, name.length() - ".part".length()));
+                try (FileChannel in = FileChannel.open(e.getKey(), StandardOpenOption.READ);
+                     FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                    long pos = 0;
+                    while (pos < e.getValue()) pos += in.transferTo(pos, e.getValue() - pos, out);
+                    out.force(true);
+                }
+                Files.delete(e.getKey());
+                copied += e.getValue();
+            }
+            marks.write(dir, base);
+            return new Checkpoint(dir, marks.seq, tables, reusedTables, linkedBytes, copied);
+        }
+    }
+
+    /**
+     * Links the tables and value-log files not already in {@code since} into
+     * {@code dir} and writes its MANIFEST; runs while the engine is quiesced.
+     * {@code wal} maps the WAL segments holding records above the tables' to their
+     * current length; {@code valueLogGarbage} are the dead-byte counts to carry over.
+     */
+    static Pending link(Path dir, Path base, Marks since, List<SSTable> live, Map<Path, Long> valueLogs,
+                        Map<Long, Long> valueLogGarbage, Map<Path, Long> wal, long seq) throws IOException {
+        int tables = 0;
+        int reused = 0;
+        long linked = 0;
+        long maxTableId = since.tableId;
+        for (SSTable t : live) {
+            maxTableId = Math.max(maxTableId, t.id());
+            if (t.id() <= since.tableId) {
+                reused++;
+                continue;
+            }
+            linkOrCopy(t.path(), dir.resolve(t.path().getFileName()));
+            linked += t.fileBytes();
+            tables++;
+        }
+        try (Manifest m = new Manifest(dir)) {
+            m.record(Collections.emptyList(), live, valueLogGarbage);
+        }
+
+        long maxLogId = since.valueLogId;
+        for (Map.Entry<Path, Long> e : valueLogs.entrySet()) {
+            long id = fileId(e.getKey());
+            maxLogId = Math.max(maxLogId, id);
+            if (id < since.valueLogId) continue;
+            linkOrCopy(e.getKey(), dir.resolve(e.getKey().getFileName()));
+            linked += e.getValue();
+        }
+
+        // the active segment keeps growing, and a link would grow with it: link now, copy a prefix later
+        Map<Path, Long> parts = new LinkedHashMap<>();
+        for (Map.Entry<Path, Long> e : wal.entrySet()) {
+            Path part = dir.resolve(e.getKey().getFileName() + ".part");
+            linkOrCopy(e.getKey(), part);
+            parts.put(part, e.getValue());
+        }
+        return new Pending(dir, base, new Marks(seq, maxTableId, maxLogId), parts, tables, reused, linked);
+    }
+
+    /** Summary of the per-shard checkpoints of a {@link ShardedEngine} under {@code dir}. */
+    static Checkpoint combine(Path dir, List<Checkpoint> shards) {
+        int tables = 0, reused = 0;
+        long linked = 0, copied = 0;
+        for (Checkpoint c : shards) {
+            tables += c.tables;
+            reused += c.reusedTables;
+            linked += c.linkedBytes;
+            copied += c.copiedBytes;
+        }
+        return new Checkpoint(dir, -1, tables, reused, linked, copied);
+    }
+
+    /** Creates {@code dir}, which must not exist yet. */
+    static void createDir(Path dir) throws IOException {
+        if (Files.exists(dir)) throw new IOException("Checkpoint directory already exists: " + dir);
+        Files.createDirectories(dir);
+    }
+
+    private static void linkOrCopy(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | FileSystemException noLinks) {
+            Files.copy(source, target);
+        }
+    }
+
+    /** The number in a {@code <prefix>-<id>.<suffix>} file name. */
+    private static long fileId(Path p) {
+        String name = p.getFileName().toString();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.lastIndexOf('.')));
+    }
+
+    public Path dir() { return dir; }
+    /** Highest WAL sequence number included; -1 for a sharded store, whose shards number their own. */
+    public long seq() { return seq; }
+    /** Tables linked into this checkpoint. */
+    public int tables() { return tables; }
+    /** Live tables left out because the base checkpoint already holds them. */
+    public int reusedTables() { return reusedTables; }
+    /** Bytes of the linked SSTable and value-log files. */
+    public long linkedBytes() { return linkedBytes; }
+    /** Bytes of WAL copied. */
+    public long copiedBytes() { return copiedBytes; }
+
+    @Override
+    public String toString() {
+        return "Checkpoint{dir=" + dir + ", seq=" + seq + ", tables=" + tables + ", reusedTables=" + reusedTables
+                + ", linkedBytes=" + linkedBytes + ", copiedBytes=" + copiedBytes + "}";
+    }
+}
@@ -1,28 +1,544 @@
-// TODO: Implement Compactor.java
+// Compactor.java
 package src.main.java.lsmkv.engine;
 
 import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.metrics.CompactionEvent;
+import src.main.java.lsmkv.metrics.Histogram;
+import src.main.java.lsmkv.metrics.Metrics;
+import src.main.java.lsmkv.util.Slice;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Background merge of SSTables. Once the table count reaches
+ * {@code Config.getCompactionFanIn()}, a run of the newest tables is merged: each
+ * older table joins while it is at most {@code Config.getCompactionSizeRatio()}
+ * times the size of the tables taken so far, so large old tables are rewritten
+ * only once the newer data has caught up with them. Below the fan-in, a table
+ * whose expiry histogram shows at least {@code Config.getTtlCompactionRatio()} of
+ * it expired is rewritten on its own if no newer table overlaps its key range,
+ * and merged with the tables newer than it otherwise. Merge operands are folded into
+ * their values, and tombstones, expired entries and entries under a newer table's
+ * range delete are dropped from the output; where a table older than the merge
+ * spans such a key, a tombstone is kept instead, and the inputs' range tombstones
+ * are carried over. Before merging, tables whose entries have all expired are
+ * deleted outright when no older table overlaps their key range, and so are tables
+ * whose whole key range a newer table has range-deleted.
+ * Value-log pointers dropped by either are reported to the {@link ValueLog},
+ * whose garbage collection then runs on this same thread.
+ *
+ * A large merge is split at block boundaries into disjoint key ranges of about
+ * {@code Config.getSubcompactionBytes()} each, merged in parallel on a fork-join
+ * pool of {@code Config.getCompactionThreads()} threads into one table per range;
+ * the outputs replace the inputs in one step. Flushes split large MemTables the
+ * same way on the same pool.
+ */
 public class Compactor {
-    private final SSTable sst;
+    private final TableSet tables;
+    private final ValueLog valueLog;
+    private final ValueLog.Relocator relocator;
     private final Config cfg;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private ExecutorService executor;
+    private ForkJoinPool pool;
+
+    private final Histogram duration;
+    private final LongAdder bytesRead;
+    private final LongAdder bytesWritten;
+    private final LongAdder expiredTablesDropped;
+    private final LongAdder coveredTablesDropped;
+    private final LongAdder failures;
 
-    public Compactor(SSTable sst, Config cfg) {
-        this.sst = sst;
+    public Compactor(TableSet tables, ValueLog valueLog, ValueLog.Relocator relocator, Config cfg) {
+        this.tables = tables;
+        this.valueLog = valueLog;
+        this.relocator = relocator;
         this.cfg = cfg;
+        Metrics m = cfg.getMetrics();
+        this.duration = m.latency("lsmkv_compaction_seconds", "Duration of each compaction.");
+        this.bytesRead = m.counter("lsmkv_compaction_bytes_read_total", "SSTable bytes read by compaction.");
+        this.bytesWritten = m.counter("lsmkv_compaction_bytes_written_total", "SSTable bytes written by compaction.");
+        this.expiredTablesDropped = m.counter("lsmkv_expired_tables_dropped_total",
+                "SSTables deleted whole because every entry had expired.");
+        this.coveredTablesDropped = m.counter("lsmkv_covered_tables_dropped_total",
+                "SSTables deleted whole because a newer range delete covered them.");
+        this.failures = m.counter("lsmkv_compaction_failures_total",
+                "Compaction rounds that failed and were left for the next flush.");
     }
 
-    public void start() {
-        // TODO: background compaction
+    public synchronized void start() {
+        if (executor != null) return;
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "lsmkv-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        pool = new ForkJoinPool(Math.max(1, cfg.getCompactionThreads()), p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("lsmkv-subcompaction-" + t.getPoolIndex());
+            return t;
+        }, null, false);
     }
 
     public void maybeSchedule() {
-        // TODO: trigger compaction if needed
+        if (!needsCompaction(System.currentTimeMillis())) return;
+        if (!scheduled.compareAndSet(false, true)) return;
+        ExecutorService ex = executor;
+        if (ex == null || ex.isShutdown()) {
+            scheduled.set(false);
+            return;
+        }
+        try {
+            ex.execute(() -> {
+                boolean ok = false;
+                try {
+                    long now = System.currentTimeMillis();
+                    dropCoveredTables();
+                    dropExpiredTables(now);
+                    if (needsCompaction(now)) compact(now);
+                    valueLog.collectGarbage(relocator);
+                    ok = true;
+                } catch (IOException | RuntimeException e) {
+                    failures.increment();
+                    System.err.println("[WARN] Compaction failed: " + e.getMessage());
+                } finally {
+                    scheduled.set(false);
+                }
+                // a flush that called in while this ran was turned away, and a merge may
+                // leave more than fan-in tables; after a failure, wait for the next flush
+                if (ok) maybeSchedule();
+            });
+        } catch (RejectedExecutionException stopping) {
+            scheduled.set(false); // stop() won the race; writes still draining must not fail for it
+        }
     }
 
-    public void stop() {
-        // TODO: stop background compaction
+    /**
+     * Runs {@code task} on the compaction thread, so no compaction or value-log GC
+     * overlaps it (snapshots and snapshot installs).
+     */
+    public <T> T runExclusive(Callable<T> task) throws IOException {
+        ExecutorService ex = executor;
+        try {
+            if (ex == null || ex.isShutdown()) throw new IOException("Compactor is not running");
+            return ex.submit(task).get();
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for the compaction thread", ie);
+        }
     }
-}
 
+    /**
+     * Runs {@code tasks} on the sub-compaction pool and returns their results in
+     * order; the first failure is rethrown once all have finished. Runs them on the
+     * calling thread if there is only one, or the pool is stopped.
+     */
+    <T> List<T> runParallel(List<Callable<T>> tasks) throws IOException {
+        ForkJoinPool p = pool;
+        List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.size() == 1 || p == null || p.isShutdown()) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (IOException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            }
+            return results;
+        }
+        IOException first = null;
+        for (Future<T> f : p.invokeAll(tasks)) {
+            try {
+                results.add(f.get());
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof UncheckedIOException) cause = cause.getCause();
+                IOException ioe = cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+                if (first == null) first = ioe; else first.addSuppressed(ioe);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for sub-compactions", ie);
+            }
+        }
+        if (first != null) throw first;
+        return results;
+    }
+
+    /** How many parts a job over {@code bytes} of input is split into. */
+    int parts(long bytes) {
+        long parts = bytes / Math.max(1, cfg.getSubcompactionBytes());
+        return (int) Math.max(1, Math.min(cfg.getCompactionThreads(), parts));
+    }
+
+    private boolean needsCompaction(long now) {
+        return tables.size() >= cfg.getCompactionFanIn()
+                || tables.maxExpiredFraction(now) >= cfg.getTtlCompactionRatio()
+                || tables.hasCoveredTable();
+    }
+
+    /**
+     * Deletes tables whose entries have all expired, without reading them beyond
+     * their value-log pointers. A table is only dropped if no older table overlaps
+     * its key range, since its expired entries may still shadow older values.
+     */
+    void dropExpiredTables(long now) throws IOException {
+        CompactionEvent event = new CompactionEvent();
+        event.begin();
+        List<SSTable> snapshot = tables.acquire();
+        try {
+            List<SSTable> dead = new ArrayList<>();
+            for (int i = 0; i < snapshot.size(); i++) {
+                SSTable t = snapshot.get(i);
+                if (t.fullyExpired(now) && !overlapsOlder(snapshot, i)) dead.add(t);
+            }
+            dropTables(dead, "expired", event);
+            expiredTablesDropped.add(dead.size());
+        } finally {
+            tables.release(snapshot);
+        }
+    }
+
+    /**
+     * Deletes tables whose key range, range tombstones included, lies inside one
+     * range deleted by a newer table; nothing in them can be read any more.
+     */
+    void dropCoveredTables() throws IOException {
+        CompactionEvent event = new CompactionEvent();
+        event.begin();
+        List<SSTable> snapshot = tables.acquire();
+        try {
+            List<SSTable> dead = new ArrayList<>();
+            for (int i = 0; i < snapshot.size(); i++) {
+                if (TableSet.coveredByNewer(snapshot, i)) dead.add(snapshot.get(i));
+            }
+            dropTables(dead, "covered", event);
+            coveredTablesDropped.add(dead.size());
+        } finally {
+            tables.release(snapshot);
+        }
+    }
+
+    /** Removes {@code dead} from the table set, first releasing the value-log space they reference. */
+    private void dropTables(List<SSTable> dead, String kind, CompactionEvent event) throws IOException {
+        if (dead.isEmpty()) return;
+        Map<Long, Long> garbage = new HashMap<>();
+        try {
+            for (SSTable t : dead) {
+                for (Iterator<Entry> it = t.iterator(); it.hasNext(); ) discard(it.next(), garbage);
+            }
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+        tables.replace(dead, Collections.emptyList(), garbage);
+        valueLog.discard(garbage);
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.inputTables = dead.size();
+            for (SSTable t : dead) event.bytesRead += t.fileBytes();
+            event.commit();
+        }
+    }
+
+    private static boolean overlapsOlder(List<SSTable> newestFirst, int i) {
+        for (int j = i + 1; j < newestFirst.size(); j++) {
+            if (overlaps(newestFirst.get(j), newestFirst.get(i))) return true;
+        }
+        return false;
+    }
+
+    private static boolean overlaps(SSTable a, SSTable b) {
+        return a.firstKey().compareTo(b.lastKey()) <= 0 && a.lastKey().compareTo(b.firstKey()) >= 0;
+    }
+
+    /**
+     * Merges the tables {@link #pickInputs} chooses into one table per key range;
+     * below the fan-in, those {@link #expiredInputs} chooses.
+     */
+    void compact(long now) throws IOException {
+        long start = System.nanoTime();
+        CompactionEvent event = new CompactionEvent();
+        event.begin();
+        // ids order tables by age: reserve them together with pinning the inputs
+        int maxParts = Math.max(1, cfg.getCompactionThreads());
+        long firstId;
+        List<SSTable> all;
+        tables.lockIdOrder();
+        try {
+            firstId = tables.newTableIds(maxParts);
+            all = tables.acquire();
+        } finally {
+            tables.unlockIdOrder();
+        }
+        List<SSTable> written = Collections.synchronizedList(new ArrayList<>());
+        Map<Long, Long> garbage = new ConcurrentHashMap<>(); // filled by every range's merge
+        boolean published = false;
+        try {
+            if (all.isEmpty()) return;
+            List<SSTable> inputs = all.size() >= cfg.getCompactionFanIn() ? pickInputs(all) : expiredInputs(all, now);
+            if (inputs.isEmpty()) return;
+            List<SSTable> older = all.subList(all.indexOf(inputs.get(inputs.size() - 1)) + 1, all.size());
+            long maxSeq = 0;
+            long inputBytes = 0;
+            for (SSTable t : inputs) {
+                maxSeq = Math.max(maxSeq, t.maxSeq());
+                inputBytes += t.fileBytes();
+            }
+            // older tables still need the inputs' range deletes; the first range's table,
+            // with the lowest id, carries them, as in a flush
+            RangeTombstones ranges = new RangeTombstones();
+            if (!older.isEmpty()) {
+                for (SSTable t : inputs) {
+                    for (Map.Entry<Slice, Slice> r : t.rangeTombstones().asMap().entrySet()) ranges.add(r.getKey(), r.getValue());
+                }
+            }
+            // never leave as many tables as the fan-in, or the outputs would be merged again at once
+            int room = cfg.getCompactionFanIn() - 1 - (all.size() - inputs.size());
+            List<Slice> splits = splitPoints(inputs, Math.min(Math.min(maxParts, room), parts(inputBytes)));
+            List<Callable<SSTable>> jobs = new ArrayList<>();
+            for (int i = 0; i <= splits.size(); i++) {
+                Slice from = i == 0 ? null : splits.get(i - 1);
+                Slice to = i == splits.size() ? null : splits.get(i);
+                long id = firstId + i;
+                long seq = maxSeq;
+                RangeTombstones carried = i == 0 ? ranges : new RangeTombstones();
+                jobs.add(() -> {
+                    SSTable out = mergeRange(inputs, older, from, to, id, seq, now, carried, garbage);
+                    if (out != null) written.add(out);
+                    return out;
+                });
+            }
+            List<SSTable> outputs = new ArrayList<>();
+            for (SSTable t : runParallel(jobs)) if (t != null) outputs.add(t);
+            tables.replace(inputs, outputs, garbage);
+            published = true;
+            valueLog.discard(garbage);
+
+            long outputBytes = 0, outputEntries = 0;
+            for (SSTable t : outputs) {
+                outputBytes += t.fileBytes();
+                outputEntries += t.entryCount();
+            }
+            bytesRead.add(inputBytes);
+            bytesWritten.add(outputBytes);
+            duration.recordSince(start);
+            if (event.shouldCommit()) {
+                event.kind = "merge";
+                event.inputTables = inputs.size();
+                event.bytesRead = inputBytes;
+                event.bytesWritten = outputBytes;
+                event.entriesWritten = outputEntries;
+                event.commit();
+            }
+        } finally {
+            tables.release(all);
+            if (!published) {
+                for (SSTable t : written) { // a sibling range failed: nothing of this merge is kept
+                    t.markObsolete();
+                    t.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * The newest tables, as long as each next older one is at most the size ratio
+     * times the bytes taken so far, up to the fan-in; at least enough of them that
+     * the count drops below the fan-in, and never fewer than two.
+     */
+    private List<SSTable> pickInputs(List<SSTable> newestFirst) {
+        int fanIn = Math.max(2, cfg.getCompactionFanIn());
+        int limit = Math.min(fanIn, newestFirst.size());
+        int n = 1;
+        long bytes = newestFirst.get(0).fileBytes();
+        while (n < limit && newestFirst.get(n).fileBytes() <= bytes * cfg.getCompactionSizeRatio()) {
+            bytes += newestFirst.get(n++).fileBytes();
+        }
+        n = Math.max(n, Math.min(limit, newestFirst.size() - fanIn + 2));
+        return newestFirst.subList(0, n);
+    }
+
+    /**
+     * The table with the largest expired share, if that reaches the TTL compaction
+     * ratio: alone if no newer table overlaps it, since then its rewrite may take a
+     * newer id without shadowing anything; otherwise with every table newer than it.
+     */
+    private List<SSTable> expiredInputs(List<SSTable> newestFirst, long now) {
+        int densest = -1;
+        double max = cfg.getTtlCompactionRatio();
+        for (int i = 0; i < newestFirst.size(); i++) {
+            double f = newestFirst.get(i).expiredFraction(now);
+            if (f >= max) {
+                densest = i;
+                max = f;
+            }
+        }
+        if (densest < 0) return Collections.emptyList();
+        for (int j = 0; j < densest; j++) {
+            if (overlaps(newestFirst.get(j), newestFirst.get(densest))) return newestFirst.subList(0, densest + 1);
+        }
+        return Collections.singletonList(newestFirst.get(densest));
+    }
+
+    /**
+     * Merges the inputs' entries in {@code [from, to)} (null = unbounded) into table
+     * {@code id}, which also gets {@code carried}. {@code older} are the tables the
+     * merge leaves out, all older than the inputs: where none of them spans a key,
+     * its tombstone or expired entry is dropped and its merge operands are folded.
+     */
+    private SSTable mergeRange(List<SSTable> inputs, List<SSTable> older, Slice from, Slice to, long id,
+                               long maxSeq, long now, RangeTombstones carried, Map<Long, Long> garbage)
+            throws IOException {
+        List<Iterator<Entry>> sources = new ArrayList<>();
+        List<RangeTombstones> ranges = new ArrayList<>();
+        for (SSTable t : inputs) {
+            sources.add(below(from == null ? t.iterator() : t.iterator(from), to));
+            ranges.add(t.rangeTombstones());
+        }
+        MergingIterator merged = new MergingIterator(sources, ranges, e -> discard(e, garbage),
+                chain -> fold(chain, older));
+        return tables.writeTable(id, dropDead(merged, older, now, garbage), carried, maxSeq);
+    }
+
+    /**
+     * Up to {@code parts - 1} keys that cut the inputs into ranges holding about the
+     * same number of data blocks, taken from the tables' block separators. None if
+     * the inputs have no data blocks, e.g. hold only range tombstones.
+     */
+    private static List<Slice> splitPoints(List<SSTable> inputs, int parts) throws IOException {
+        if (parts <= 1) return Collections.emptyList();
+        List<Slice> separators = new ArrayList<>();
+        for (SSTable t : inputs) separators.addAll(t.blockSeparators());
+        if (separators.isEmpty()) return Collections.emptyList();
+        Collections.sort(separators);
+        List<Slice> splits = new ArrayList<>();
+        for (int i = 1; i < parts; i++) {
+            Slice s = separators.get((int) ((long) separators.size() * i / parts));
+            if (splits.isEmpty() || s.compareTo(splits.get(splits.size() - 1)) > 0) splits.add(s);
+        }
+        return splits;
+    }
+
+    /** The entries of {@code in} with keys below {@code to}; all of them if {@code to} is null. */
+    static Iterator<Entry> below(Iterator<Entry> in, Slice to) {
+        if (to == null) return in;
+        return new Iterator<>() {
+            Entry next = in.hasNext() ? in.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return next != null && next.key().compareTo(to) < 0;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Entry e = next;
+                next = in.hasNext() ? in.next() : null;
+                return e;
+            }
+        };
+    }
+
+    private Entry fold(List<Entry> newestFirst, List<SSTable> older) {
+        Entry last = newestFirst.get(newestFirst.size() - 1);
+        if (last.isMerge() && spans(older, last.key())) return MergeFold.combine(newestFirst, cfg.getMergeOperator());
+        try {
+            Entry folded = MergeFold.fold(newestFirst, cfg.getMergeOperator(), valueLog);
+            // value-log GC runs on this thread, so a base pointer cannot move mid-merge
+            if (folded == null) throw new IOException("Value for key=" + newestFirst.get(0).key() + " is missing from the value log");
+            return folded;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
 
+    /** Counts a dropped entry's value-log record; the value log hears of it once the drop is published. */
+    private static void discard(Entry shadowed, Map<Long, Long> garbage) {
+        if (shadowed.kind() == Entry.VALUE_POINTER) ValueLog.count(garbage, shadowed.value());
+    }
+
+    /** True if one of {@code tables} has {@code key} within its key range. */
+    private static boolean spans(List<SSTable> tables, Slice key) {
+        for (SSTable t : tables) {
+            if (t.firstKey().compareTo(key) <= 0 && t.lastKey().compareTo(key) >= 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drops tombstones and entries expired at {@code now}, the latter possibly holding
+     * value-log pointers; where a table in {@code older} spans the key, a tombstone
+     * stays in their place to shadow it.
+     */
+    private static Iterator<Entry> dropDead(Iterator<Entry> in, List<SSTable> older, long now,
+                                            Map<Long, Long> garbage) {
+        return new Iterator<>() {
+            Entry next = advance();
+
+            private Entry advance() {
+                while (in.hasNext()) {
+                    Entry e = in.next();
+                    if (e.isTombstone()) {
+                        if (spans(older, e.key())) return e;
+                        continue;
+                    }
+                    if (!e.isExpired(now)) return e;
+                    discard(e, garbage);
+                    if (spans(older, e.key())) return Entry.delete(e.key());
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Entry next() {
+                if (next == null) throw new NoSuchElementException();
+                Entry e = next;
+                next = advance();
+                return e;
+            }
+        };
+    }
+
+    public synchronized void stop() {
+        if (executor == null) return;
+        executor.shutdown();
+        pool.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
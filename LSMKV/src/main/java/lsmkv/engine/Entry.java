@@ -0,0 +1,72 @@
+// Entry.java
+package src.main.java.lsmkv.engine;
+
+import src.main.java.lsmkv.util.Slice;
+
+/**
+ * One versioned record as held by a MemTable or read back from disk.
+ * A DELETE entry is a tombstone: it shadows older values for the key.
+ * A VALUE_POINTER entry's value is a {@link ValueLog} pointer, not the value itself.
+ * PUT and VALUE_POINTER entries may carry an expiry time (epoch millis, 0 = never);
+ * once it has passed, reads treat the entry like a tombstone.
+ * A MERGE entry holds a pending merge operand, to be folded into the older
+ * versions of the key; its expiry is that of the value it will fold into.
+ */
+public final class Entry {
+    public static final byte PUT = 0;
+    public static final byte DELETE = 1;
+    public static final byte VALUE_POINTER = 2;
+    public static final byte MERGE = 3;
+
+    private final Slice key;
+    private final byte kind;
+    private final byte[] value;
+    private final long expiresAt;
+
+    private Entry(Slice key, byte kind, byte[] value, long expiresAt) {
+        this.key = key;
+        this.kind = kind;
+        this.value = value;
+        this.expiresAt = expiresAt;
+    }
+
+    public static Entry put(Slice key, byte[] value) {
+        return new Entry(key, PUT, value, 0);
+    }
+
+    public static Entry put(Slice key, byte[] value, long expiresAt) {
+        return new Entry(key, PUT, value, expiresAt);
+    }
+
+    public static Entry delete(Slice key) {
+        return new Entry(key, DELETE, null, 0);
+    }
+
+    public static Entry pointer(Slice key, byte[] pointer) {
+        return new Entry(key, VALUE_POINTER, pointer, 0);
+    }
+
+    public static Entry pointer(Slice key, byte[] pointer, long expiresAt) {
+        return new Entry(key, VALUE_POINTER, pointer, expiresAt);
+    }
+
+    public static Entry merge(Slice key, byte[] operand, long expiresAt) {
+        return new Entry(key, MERGE, operand, expiresAt);
+    }
+
+    static Entry of(Slice key, byte kind, byte[] value, long expiresAt) {
+        return kind == DELETE ? new Entry(key, DELETE, null, 0) : new Entry(key, kind, value, expiresAt);
+    }
+
+    public Slice key() { return key; }
+    public byte kind() { return kind; }
+    public byte[] value() { return value; }
+    public long expiresAt() { return expiresAt; }
+    public boolean isTombstone() { return kind == DELETE; }
+    public boolean isMerge() { return kind == MERGE; }
+
+    /** True once the entry's expiry time is at or before {@code now}. */
+    public boolean isExpired(long now) {
+        return expiresAt != 0 && expiresAt <= now;
+    }
+}
@@ -0,0 +1,78 @@
+// ExpiryHistogram.java
+package src.main.java.lsmkv.engine;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Expiry times of the entries in one SSTable, kept in its index block so the
+ * compactor can tell how much of a table is dead without reading it.
+ *
+ * Bucket {@code i} holds entries that expire at most {@code 2^i} seconds after
+ * the table was written, so resolution is fine for short TTLs and coarse for long
+ * ones. Each bucket keeps its count and its latest expiry time; a bucket counts
+ * as expired once that time has passed, so {@link #expiredBy(long)} never
+ * overstates.
+ * <pre>
+ * [long baseMillis][long expiring] ([long count][long latestExpiresAt])*BUCKETS
+ * </pre>
+ */
+final class ExpiryHistogram {
+    static final int BUCKETS = 32;
+
+    private final long baseMillis;
+    private final long[] counts = new long[BUCKETS];
+    private final long[] latest = new long[BUCKETS];
+    private long expiring;
+
+    ExpiryHistogram(long baseMillis) {
+        this.baseMillis = baseMillis;
+    }
+
+    void add(long expiresAt) {
+        if (expiresAt == 0) return;
+        long seconds = Math.max(1, (expiresAt - baseMillis + 999) / 1000);
+        int b = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(seconds - 1));
+        counts[b]++;
+        latest[b] = Math.max(latest[b], expiresAt);
+        expiring++;
+    }
+
+    /** Entries that carry an expiry time. */
+    long expiring() { return expiring; }
+
+    long maxExpiresAt() {
+        long max = 0;
+        for (long t : latest) max = Math.max(max, t);
+        return max;
+    }
+
+    /** Lower bound on the number of entries already expired at {@code now}. */
+    long expiredBy(long now) {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] > 0 && latest[i] <= now) n += counts[i];
+        }
+        return n;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(baseMillis);
+        out.writeLong(expiring);
+        for (int i = 0; i < BUCKETS; i++) {
+            out.writeLong(counts[i]);
+            out.writeLong(latest[i]);
+        }
+    }
+
+    static ExpiryHistogram readFrom(ByteBuffer buf) {
+        ExpiryHistogram h = new ExpiryHistogram(buf.getLong());
+        h.expiring = buf.getLong();
+        for (int i = 0; i < BUCKETS; i++) {
+            h.counts[i] = buf.getLong();
+            h.latest[i] = buf.getLong();
+        }
+        return h;
+    }
+}
@@ -0,0 +1,90 @@
+package src.main.java.lsmkv.engine;
+
+import src.main.java.lsmkv.util.Slice;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** On-heap MemTable backed by a ConcurrentSkipListMap. Size is estimated per entry. */
+public class HeapMemTable implements MemTable {
+    // Rough per-entry cost of the skip list node, Entry and Slice objects.
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final ConcurrentSkipListMap<Slice, Entry> map = new ConcurrentSkipListMap<>();
+    private final RangeTombstones ranges = new RangeTombstones();
+    private final AtomicLong bytes = new AtomicLong();
+
+    @Override
+    public void put(Slice key, byte[] value, long expiresAt) {
+        account(map.put(key, Entry.put(key, value, expiresAt)), key, value.length);
+    }
+
+    @Override
+    public void delete(Slice key) {
+        account(map.put(key, Entry.delete(key)), key, 0);
+    }
+
+    @Override
+    public void deleteRange(Slice start, Slice end) {
+        ranges.add(start, end);
+        bytes.addAndGet(RangeTombstones.cost(start, end));
+        // readers that miss the removed entries find the range instead
+        for (Iterator<Entry> it = map.subMap(start, true, end, true).values().iterator(); it.hasNext(); ) {
+            Entry e = it.next();
+            it.remove();
+            bytes.addAndGet(-(e.key().length() + ENTRY_OVERHEAD + (e.value() == null ? 0 : e.value().length)));
+        }
+    }
+
+    @Override
+    public RangeTombstones rangeTombstones() {
+        return ranges;
+    }
+
+    @Override
+    public void putOperand(Slice key, byte[] operand, long expiresAt) {
+        account(map.put(key, Entry.merge(key, operand, expiresAt)), key, operand.length);
+    }
+
+    private void account(Entry previous, Slice key, int valueLength) {
+        long delta = valueLength;
+        if (previous == null) {
+            delta += key.length() + ENTRY_OVERHEAD;
+        } else if (previous.value() != null) {
+            delta -= previous.value().length;
+        }
+        bytes.addAndGet(delta);
+    }
+
+    @Override
+    public Entry get(Slice key) {
+        Entry e = map.get(key);
+        return e != null || !ranges.covers(key) ? e : Entry.delete(key);
+    }
+
+    @Override
+    public long sizeBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public Iterator<Entry> iterator() {
+        return map.values().iterator();
+    }
+
+    @Override
+    public Iterator<Entry> iterator(Slice from) {
+        return map.tailMap(from, true).values().iterator();
+    }
+
+    @Override
+    public void close() {
+        // nothing to release; the map goes away with this object
+    }
+}
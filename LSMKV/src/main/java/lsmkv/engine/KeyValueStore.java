@@ -0,0 +1,98 @@
+// KeyValueStore.java
+package src.main.java.lsmkv.engine;
+
+import src.main.java.lsmkv.metrics.Metrics;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Client-facing operations, served either by a single {@link StorageEngine} or by
+ * a {@link ShardedEngine} spreading keys over several of them.
+ *
+ * The {@code *Async} variants return at once. Their futures complete on the
+ * engine's I/O pool, never on the caller's or the writer thread, and fail with
+ * the IOException the blocking call would have thrown. An async write completes
+ * once the WAL fsync that commits its group covers it.
+ */
+public interface KeyValueStore extends Closeable {
+
+    void start() throws IOException;
+
+    default void put(Slice key, byte[] value) throws IOException {
+        put(key, value, 0);
+    }
+
+    /** Puts a value that reads treat as absent from {@code expiresAt} (epoch millis) on; 0 means never. */
+    void put(Slice key, byte[] value, long expiresAt) throws IOException;
+
+    /** Value for {@code key}, or null if absent or deleted. */
+    byte[] get(Slice key) throws IOException;
+
+    void delete(Slice key) throws IOException;
+
+    /** Deletes every key in {@code [startKey, endKey]} with a single range tombstone. */
+    void deleteRange(Slice startKey, Slice endKey) throws IOException;
+
+    /**
+     * Atomically sets {@code key} to {@code newValue} (null deletes it) if its value
+     * equals {@code expected} (null = absent). Returns whether the swap happened.
+     */
+    boolean compareAndSet(Slice key, byte[] expected, byte[] newValue) throws IOException;
+
+    /** Records an operand for the configured merge operator without reading the current value. */
+    void merge(Slice key, byte[] operand) throws IOException;
+
+    /** Adds {@code delta} to a decimal counter, as a merge operand. */
+    void increment(Slice key, long delta) throws IOException;
+
+    default void putBatch(Map<Slice, byte[]> entries) throws IOException {
+        putBatch(entries, 0);
+    }
+
+    /** Puts every entry with the same expiry time; see {@link #put(Slice, byte[], long)}. */
+    void putBatch(Map<Slice, byte[]> entries, long expiresAt) throws IOException;
+
+    /** Values for the keys that exist; absent keys are left out. */
+    Map<Slice, byte[]> getBatch(List<Slice> keys) throws IOException;
+
+    /** Live keys in {@code [startKey, endKey]}, in key order. */
+    SortedMap<Slice, byte[]> getRange(Slice startKey, Slice endKey) throws IOException;
+
+    default CompletableFuture<Void> putAsync(Slice key, byte[] value) {
+        return putAsync(key, value, 0);
+    }
+
+    CompletableFuture<Void> putAsync(Slice key, byte[] value, long expiresAt);
+
+    CompletableFuture<byte[]> getAsync(Slice key);
+
+    CompletableFuture<Void> deleteAsync(Slice key);
+
+    default CompletableFuture<Void> putBatchAsync(Map<Slice, byte[]> entries) {
+        return putBatchAsync(entries, 0);
+    }
+
+    CompletableFuture<Void> putBatchAsync(Map<Slice, byte[]> entries, long expiresAt);
+
+    CompletableFuture<Map<Slice, byte[]>> getBatchAsync(List<Slice> keys);
+
+    CompletableFuture<SortedMap<Slice, byte[]>> getRangeAsync(Slice startKey, Slice endKey);
+
+    List<SSTable.Stats> getTableStats();
+
+    /**
+     * Writes a consistent copy of the store into {@code dir} (which must not exist)
+     * without stopping writes; with a {@code base} checkpoint, an incremental one.
+     */
+    Checkpoint checkpoint(Path dir, Path base) throws IOException;
+
+    /** Registry this store reports into; served at {@code /metrics}. */
+    Metrics metrics();
+}
@@ -0,0 +1,233 @@
+// Manifest.java
+package src.main.java.lsmkv.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the table set, {@code MANIFEST} in the data directory. Every
+ * flush and compaction appends one version edit naming the tables it removed and
+ * the ones it added, with their key bounds, sizes and sequence ranges, before the
+ * new set is published. Startup replays the edits and opens the live tables lazily
+ * from them instead of reading every table's index. An edit also carries the
+ * value-log bytes it left unreferenced, per file, so the GC's dead-byte counts
+ * survive a restart.
+ *
+ * Layout (big-endian): [int magic] then edits, each
+ * [int crc32][int len][int removed]([long id])*[int added]([long id][long minSeq][meta])*
+ * [int files]([long valueLogId][long bytes])*
+ * where the CRC covers the len bytes after it and meta is {@link SSTable.Meta}. A
+ * torn or corrupt tail is dropped on open. The file is rewritten as one edit of the
+ * live tables and dead-byte totals on open and whenever {@link #REWRITE_EDITS} edits
+ * have piled up; totals for value-log files that no longer exist are left out.
+ */
+final class Manifest implements Closeable {
+    static final String NAME = "MANIFEST";
+    private static final int MAGIC = 0x4C4B564D; // "LKVM"
+    private static final int REWRITE_EDITS = 1000;
+
+    /** A live table as the manifest records it. */
+    static final class Table {
+        final long id;
+        final long minSeq;
+        final SSTable.Meta meta;
+
+        Table(long id, long minSeq, SSTable.Meta meta) {
+            this.id = id;
+            this.minSeq = minSeq;
+            this.meta = meta;
+        }
+    }
+
+    private final Path file;
+    private final TreeMap<Long, Table> live = new TreeMap<>();
+    private final TreeMap<Long, Long> garbage = new TreeMap<>();
+    private long maxId;
+    private FileChannel ch;
+    private int edits;
+    private boolean droppedTail;
+
+    /** Replays {@code dir}'s manifest, if any, and compacts it to a single edit. */
+    Manifest(Path dir) throws IOException {
+        this.file = dir.resolve(NAME);
+        if (Files.exists(file)) replay();
+        rewrite();
+    }
+
+    static boolean exists(Path dir) {
+        return Files.exists(dir.resolve(NAME));
+    }
+
+    static boolean isManifestFile(Path p) {
+        String name = p.getFileName().toString();
+        return name.equals(NAME) || name.equals(NAME + ".tmp");
+    }
+
+    /** The live tables by id, as of the last edit. */
+    synchronized Map<Long, Table> live() {
+        return Collections.unmodifiableMap(new TreeMap<>(live));
+    }
+
+    /** Unreferenced bytes per value-log file, as of the last edit. */
+    synchronized Map<Long, Long> valueLogGarbage() {
+        return Collections.unmodifiableMap(new TreeMap<>(garbage));
+    }
+
+    /** Highest table id any edit has named; ids are never reused. */
+    synchronized long maxId() {
+        return maxId;
+    }
+
+    /** Whether replay stopped at a torn or corrupt edit and dropped the rest of the file. */
+    synchronized boolean droppedTail() {
+        return droppedTail;
+    }
+
+    /** Durably records that {@code removed} were replaced by {@code added}. */
+    synchronized void record(Collection<SSTable> removed, Collection<SSTable> added) throws IOException {
+        record(removed, added, Collections.emptyMap());
+    }
+
+    /**
+     * Durably records that {@code removed} were replaced by {@code added}, leaving
+     * {@code garbage} bytes per value-log file unreferenced (negative to forget them).
+     */
+    synchronized void record(Collection<SSTable> removed, Collection<SSTable> added, Map<Long, Long> garbage)
+            throws IOException {
+        if (ch == null) throw new IOException("Manifest closed: " + file);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeInt(removed.size());
+        for (SSTable t : removed) out.writeLong(t.id());
+        out.writeInt(added.size());
+        for (SSTable t : added) writeTable(out, new Table(t.id(), t.minSeq(), t.meta()));
+        writeGarbage(out, garbage);
+        out.flush();
+        long end = ch.size();
+        try {
+            writeFully(ch, frame(payload.toByteArray()));
+            ch.force(false);
+        } catch (IOException ioe) {
+            ch.truncate(end); // keep later edits readable; replay stops at the first bad one
+            throw ioe;
+        }
+
+        for (SSTable t : removed) live.remove(t.id());
+        for (SSTable t : added) {
+            live.put(t.id(), new Table(t.id(), t.minSeq(), t.meta()));
+            maxId = Math.max(maxId, t.id());
+        }
+        for (Map.Entry<Long, Long> g : garbage.entrySet()) addGarbage(g.getKey(), g.getValue());
+        if (++edits >= REWRITE_EDITS) rewrite();
+    }
+
+    private void replay() throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buf.remaining() < 4 || buf.getInt() != MAGIC) throw new IOException("Bad manifest magic: " + file);
+        while (buf.remaining() >= 8) {
+            int crc = buf.getInt();
+            int len = buf.getInt();
+            if (len < 0 || len > buf.remaining()) break;
+            CRC32 c = new CRC32();
+            c.update(buf.array(), buf.position(), len);
+            if ((int) c.getValue() != crc) break;
+            ByteBuffer edit = buf.slice(buf.position(), len);
+            buf.position(buf.position() + len);
+
+            int removed = edit.getInt();
+            for (int i = 0; i < removed; i++) live.remove(edit.getLong());
+            int added = edit.getInt();
+            for (int i = 0; i < added; i++) {
+                Table t = readTable(edit);
+                live.put(t.id, t);
+                maxId = Math.max(maxId, t.id);
+            }
+            int files = edit.getInt();
+            for (int i = 0; i < files; i++) addGarbage(edit.getLong(), edit.getLong());
+        }
+        droppedTail = buf.hasRemaining();
+        if (droppedTail) System.err.println("[WARN] Dropped torn or corrupt tail of " + file);
+    }
+
+    private void addGarbage(long fileId, long bytes) {
+        if (garbage.merge(fileId, bytes, Long::sum) <= 0) garbage.remove(fileId);
+    }
+
+    /** Writes the live tables as one edit to a temp file and moves it over the manifest. */
+    private void rewrite() throws IOException {
+        Path dir = file.getParent();
+        garbage.keySet().removeIf(id -> !Files.exists(dir.resolve(ValueLog.fileName(id)))); // collected
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeInt(0);
+        out.writeInt(live.size());
+        for (Table t : live.values()) writeTable(out, t);
+        writeGarbage(out, garbage);
+        out.flush();
+        ByteBuffer frame = frame(payload.toByteArray());
+
+        Path tmp = file.resolveSibling(NAME + ".tmp");
+        try (FileChannel tc = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(tc, ByteBuffer.allocate(4).putInt(MAGIC).flip());
+            writeFully(tc, frame);
+            tc.force(true);
+        }
+        if (ch != null) ch.close();
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        ch = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        edits = 0;
+    }
+
+    private static ByteBuffer frame(byte[] payload) {
+        CRC32 c = new CRC32();
+        c.update(payload, 0, payload.length);
+        ByteBuffer buf = ByteBuffer.allocate(8 + payload.length);
+        buf.putInt((int) c.getValue()).putInt(payload.length).put(payload);
+        buf.flip();
+        return buf;
+    }
+
+    private static void writeTable(DataOutputStream out, Table t) throws IOException {
+        out.writeLong(t.id);
+        out.writeLong(t.minSeq);
+        t.meta.writeTo(out);
+    }
+
+    private static void writeGarbage(DataOutputStream out, Map<Long, Long> garbage) throws IOException {
+        out.writeInt(garbage.size());
+        for (Map.Entry<Long, Long> g : garbage.entrySet()) {
+            out.writeLong(g.getKey());
+            out.writeLong(g.getValue());
+        }
+    }
+
+    private static Table readTable(ByteBuffer in) {
+        long id = in.getLong();
+        long minSeq = in.getLong();
+        return new Table(id, minSeq, SSTable.Meta.readFrom(in));
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (ch != null) ch.close();
+        ch = null;
+    }
+}
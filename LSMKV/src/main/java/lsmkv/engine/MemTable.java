@@ -1,25 +1,94 @@
 package src.main.java.lsmkv.engine;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Map;
+import src.main.java.lsmkv.merge.MergeOperator;
+import src.main.java.lsmkv.util.Slice;
 
-public class MemTable {
-    private final Map<String, byte[]> map = new ConcurrentHashMap<>();
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
 
-    public void put(String key, byte[] value) {
-        map.put(key, value);
+/**
+ * Mutable, sorted in-memory table that absorbs writes until it is flushed.
+ * Deletes are recorded as tombstones so they shadow older on-disk values; range
+ * deletes as {@link RangeTombstones}, which are flushed along with the entries.
+ */
+public interface MemTable {
+
+    default void put(Slice key, byte[] value) {
+        put(key, value, 0);
     }
 
-    public byte[] get(String key) {
-        return map.get(key);
+    /** Puts a value that reads ignore from {@code expiresAt} (epoch millis) on; 0 means never. */
+    void put(Slice key, byte[] value, long expiresAt);
+
+    void delete(Slice key);
+
+    /**
+     * Deletes every key in {@code [start, end]}: records the range, which shadows
+     * older tables, and drops this table's own entries in it.
+     */
+    void deleteRange(Slice start, Slice end);
+
+    /** Ranges deleted while this table was active. */
+    RangeTombstones rangeTombstones();
+
+    /** Stores a (possibly partially merged) operand as the key's MERGE entry. */
+    void putOperand(Slice key, byte[] operand, long expiresAt);
+
+    /**
+     * Records a merge operand. It is folded straight into a value or operand this
+     * table already holds for the key; otherwise it is kept as a MERGE entry, with
+     * {@code expiresAt} (that of the older value it will fold into), and folded
+     * with the SSTables on reads and compaction.
+     */
+    default void merge(Slice key, byte[] operand, long expiresAt, MergeOperator op) {
+        Entry cur = get(key);
+        if (cur == null) {
+            putOperand(key, operand, expiresAt);
+        } else if (cur.isMerge()) {
+            putOperand(key, op.partialMerge(key, cur.value(), operand), cur.expiresAt());
+        } else if (cur.isTombstone()) {
+            put(key, op.fullMerge(key, null, List.of(operand)));
+        } else {
+            put(key, op.fullMerge(key, cur.value(), List.of(operand)), cur.expiresAt());
+        }
     }
 
-    public void delete(String key) {
-        map.remove(key);
+    /**
+     * Latest entry for {@code key} (possibly a tombstone, also for a key under a
+     * range delete), or null if this table never saw it.
+     */
+    Entry get(Slice key);
+
+    /** Bytes charged against {@code Config.getMemtableFlushBytes()}. */
+    long sizeBytes();
+
+    int size();
+
+    /** Entries in unsigned key order. */
+    Iterator<Entry> iterator();
+
+    /** Entries with keys >= {@code from}, in unsigned key order. */
+    Iterator<Entry> iterator(Slice from);
+
+    /** Releases the table's memory; it must not be written afterwards. */
+    void close();
+
+    /** Applies a logged mutation (WAL replay or replication). */
+    default void apply(WAL.Record r, MergeOperator op) {
+        if (r.type == WAL.TYPE_DEL) delete(r.key);
+        else if (r.type == WAL.TYPE_DEL_RANGE) deleteRange(r.key, Slice.wrap(r.value));
+        else if (r.type == WAL.TYPE_MERGE) merge(r.key, r.value, r.expiresAt, op);
+        else put(r.key, r.value, r.expiresAt);
     }
 
-    // Stub for WAL recovery for now
-    public void recoverFromWAL(WAL wal) {
-        // TODO: implement real recovery
+    /** Replays WAL records newer than {@code flushedSeq} into this table. */
+    default void recoverFromWAL(WAL wal, long flushedSeq, MergeOperator op) {
+        try {
+            wal.replay(flushedSeq, r -> apply(r, op));
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
     }
 }
@@ -0,0 +1,51 @@
+// MergeFold.java
+package src.main.java.lsmkv.engine;
+
+import src.main.java.lsmkv.merge.MergeOperator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Folds a key's MERGE entries into the version beneath them. */
+final class MergeFold {
+    private MergeFold() { }
+
+    /**
+     * {@code newestFirst} starts with a MERGE entry and runs down to the first
+     * version that is not one (or ends without reaching one). Returns the resulting
+     * PUT, which keeps the expiry recorded on the newest operand, or null if the
+     * base is a value-log pointer whose file has just been collected.
+     */
+    static Entry fold(List<Entry> newestFirst, MergeOperator op, ValueLog valueLog) throws IOException {
+        Entry top = newestFirst.get(0);
+        Entry last = newestFirst.get(newestFirst.size() - 1);
+        byte[] base = null;
+        int operands = newestFirst.size();
+        if (!last.isMerge()) {
+            operands--;
+            if (last.kind() == Entry.VALUE_POINTER) {
+                base = valueLog.read(last.value());
+                if (base == null) return null;
+            } else if (!last.isTombstone()) {
+                base = last.value();
+            }
+        }
+        List<byte[]> oldestFirst = new ArrayList<>(operands);
+        for (int i = operands - 1; i >= 0; i--) oldestFirst.add(newestFirst.get(i).value());
+        return Entry.put(top.key(), op.fullMerge(top.key(), base, oldestFirst), top.expiresAt());
+    }
+
+    /**
+     * Combines MERGE entries, newest first and with no base beneath them, into one
+     * MERGE entry with the same effect; for a compaction that stops above the base.
+     */
+    static Entry combine(List<Entry> newestFirst, MergeOperator op) {
+        Entry top = newestFirst.get(0);
+        byte[] operand = newestFirst.get(newestFirst.size() - 1).value();
+        for (int i = newestFirst.size() - 2; i >= 0; i--) {
+            operand = op.partialMerge(top.key(), operand, newestFirst.get(i).value());
+        }
+        return Entry.merge(top.key(), operand, top.expiresAt());
+    }
+}
@@ -0,0 +1,113 @@
+// MergingIterator.java
+package src.main.java.lsmkv.engine;
+
+import src.main.java.lsmkv.util.IterFrame;
+import src.main.java.lsmkv.util.Slice;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Merges sorted entry sources into one sorted stream with one entry per key.
+ * Sources are given newest first; for duplicate keys the newest entry wins
+ * and the older ones are skipped (and reported to the optional {@code onShadowed}
+ * callback, which compaction uses to account for garbage). With a {@link Folder},
+ * a winning MERGE entry is first folded with the older versions beneath it.
+ * Given the sources' {@link RangeTombstones}, an entry under a range deleted by a
+ * newer source is shadowed too, and comes out as a tombstone.
+ */
+public class MergingIterator implements Iterator<Entry> {
+    /** Turns a MERGE entry and the older versions under it (newest first) into one entry. */
+    interface Folder {
+        Entry fold(List<Entry> newestFirst);
+    }
+
+    private final PriorityQueue<IterFrame<Entry>> heap;
+    private final Consumer<Entry> onShadowed;
+    private final Folder folder;
+    private final List<RangeTombstones> ranges; // parallel to the sources; null if there are none
+    private Entry next;
+
+    public MergingIterator(List<Iterator<Entry>> newestFirst) {
+        this(newestFirst, null, null);
+    }
+
+    public MergingIterator(List<Iterator<Entry>> newestFirst, Consumer<Entry> onShadowed) {
+        this(newestFirst, onShadowed, null);
+    }
+
+    MergingIterator(List<Iterator<Entry>> newestFirst, Consumer<Entry> onShadowed, Folder folder) {
+        this(newestFirst, null, onShadowed, folder);
+    }
+
+    MergingIterator(List<Iterator<Entry>> newestFirst, List<RangeTombstones> ranges,
+                    Consumer<Entry> onShadowed, Folder folder) {
+        this.onShadowed = onShadowed;
+        this.folder = folder;
+        this.ranges = ranges == null || ranges.stream().allMatch(RangeTombstones::isEmpty) ? null : ranges;
+        this.heap = new PriorityQueue<>(Math.max(1, newestFirst.size()), (a, b) -> {
+            int c = a.head().key().compareTo(b.head().key());
+            return c != 0 ? c : Integer.compare(a.rank(), b.rank());
+        });
+        for (int i = 0; i < newestFirst.size(); i++) {
+            IterFrame<Entry> frame = new IterFrame<>(newestFirst.get(i), i);
+            if (!frame.exhausted()) heap.add(frame);
+        }
+        next = computeNext();
+    }
+
+    private Entry computeNext() {
+        IterFrame<Entry> top = heap.poll();
+        if (top == null) return null;
+        Entry winner = top.head();
+        Slice key = winner.key();
+        if (deletedAbove(top.rank(), key)) {
+            if (onShadowed != null) onShadowed.accept(winner);
+            winner = Entry.delete(key);
+        }
+        reinsert(top);
+        List<Entry> chain = folder != null && winner.isMerge() ? new ArrayList<>() : null;
+        if (chain != null) chain.add(winner);
+        // drop shadowed versions of the same key from older sources
+        while (!heap.isEmpty() && heap.peek().head().key().equals(key)) {
+            IterFrame<Entry> older = heap.poll();
+            if (chain != null && chain.get(chain.size() - 1).isMerge()) {
+                chain.add(deletedAbove(older.rank(), key) ? Entry.delete(key) : older.head());
+            }
+            if (onShadowed != null) onShadowed.accept(older.head());
+            reinsert(older);
+        }
+        return chain != null ? folder.fold(chain) : winner;
+    }
+
+    /** True if a source newer than {@code rank} deleted a range holding {@code key}. */
+    private boolean deletedAbove(int rank, Slice key) {
+        if (ranges == null) return false;
+        for (int i = 0; i < rank; i++) {
+            if (ranges.get(i).covers(key)) return true;
+        }
+        return false;
+    }
+
+    private void reinsert(IterFrame<Entry> frame) {
+        frame.advance();
+        if (!frame.exhausted()) heap.add(frame);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public Entry next() {
+        if (next == null) throw new NoSuchElementException();
+        Entry e = next;
+        next = computeNext();
+        return e;
+    }
+}
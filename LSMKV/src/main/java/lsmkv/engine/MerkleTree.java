@@ -0,0 +1,143 @@
+// MerkleTree.java
+package src.main.java.lsmkv.engine;
+
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Hash tree over the live key/value pairs of an engine, for anti-entropy between
+ * replicas.
+ *
+ * The key-hash space is split into {@code 2^depth} ranges (leaves). A leaf hash is
+ * the XOR of the hashes of its live entries, so it can be updated in place as keys
+ * change; absent and deleted keys contribute nothing, and neither do entries with
+ * an expiry time, which replicas drop at slightly different moments. The engine
+ * applies the changes of every MemTable flush. Inner nodes are hashed from their children on
+ * demand. Nodes are numbered heap-style: the root is 1, node {@code i} has children
+ * {@code 2i} and {@code 2i + 1}, and leaf {@code j} is node {@code 2^depth + j}.
+ *
+ * Persisted next to the SSTables as [int depth][long seq][long leaf]*[int crc32].
+ */
+public final class MerkleTree {
+    private final int depth;
+    private final long[] leaves;
+    private long seq; // WAL sequence number the tree is up to date with
+
+    public MerkleTree(int depth) {
+        if (depth < 1 || depth > 20) throw new IllegalArgumentException("depth must be in [1, 20]");
+        this.depth = depth;
+        this.leaves = new long[1 << depth];
+    }
+
+    private MerkleTree(int depth, long[] leaves, long seq) {
+        this.depth = depth;
+        this.leaves = leaves;
+        this.seq = seq;
+    }
+
+    public int depth() { return depth; }
+
+    public int leafCount() { return leaves.length; }
+
+    public synchronized long seq() { return seq; }
+
+    synchronized void coveredThrough(long seq) {
+        this.seq = seq;
+    }
+
+    /** Leaf (key-hash range) that {@code key} belongs to. */
+    public int leafOf(Slice key) {
+        return (int) (hash(key, null) >>> (64 - depth));
+    }
+
+    /** Hash of one live entry; equal pairs hash equally on every replica. */
+    public static long entryHash(Slice key, byte[] value) {
+        return hash(key, value);
+    }
+
+    /** Replaces {@code key}'s contribution; null means absent (or deleted). */
+    synchronized void update(Slice key, byte[] oldValue, byte[] newValue) {
+        int leaf = leafOf(key);
+        if (oldValue != null) leaves[leaf] ^= entryHash(key, oldValue);
+        if (newValue != null) leaves[leaf] ^= entryHash(key, newValue);
+    }
+
+    synchronized void clear() {
+        Arrays.fill(leaves, 0L);
+        seq = 0;
+    }
+
+    synchronized void copyFrom(MerkleTree other) {
+        MerkleTree src = other.copy();
+        System.arraycopy(src.leaves, 0, leaves, 0, leaves.length);
+        seq = src.seq;
+    }
+
+    public synchronized MerkleTree copy() {
+        return new MerkleTree(depth, leaves.clone(), seq);
+    }
+
+    /** All node hashes, indexed by node number (index 0 unused). */
+    public synchronized long[] nodes() {
+        int n = leaves.length;
+        long[] nodes = new long[2 * n];
+        System.arraycopy(leaves, 0, nodes, n, n);
+        for (int i = n - 1; i >= 1; i--) nodes[i] = mix(nodes[2 * i] ^ Long.rotateLeft(nodes[2 * i + 1], 17) ^ i);
+        return nodes;
+    }
+
+    // -------------------- persistence --------------------
+
+    synchronized void save(Path file) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4 + 8 + leaves.length * 8 + 4);
+        buf.putInt(depth).putLong(seq);
+        for (long l : leaves) buf.putLong(l);
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, buf.array());
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** The saved tree if it has this depth and covers exactly {@code seq}, else null. */
+    static MerkleTree load(Path file, int depth, long seq) throws IOException {
+        if (!Files.exists(file)) return null;
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length != 4 + 8 + (8 << depth) + 4) return null;
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        if (buf.getInt(bytes.length - 4) != (int) crc.getValue()) return null;
+        if (buf.getInt() != depth || buf.getLong() != seq) return null;
+        long[] leaves = new long[1 << depth];
+        for (int i = 0; i < leaves.length; i++) leaves[i] = buf.getLong();
+        return new MerkleTree(depth, leaves, seq);
+    }
+
+    // -------------------- hashing --------------------
+
+    /** 64-bit FNV-1a over the key (and value, if given), with a final avalanche. */
+    private static long hash(Slice key, byte[] value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) h = (h ^ (key.get(i) & 0xFF)) * 0x100000001b3L;
+        if (value != null) {
+            h = (h ^ 0x1FF) * 0x100000001b3L; // separates key from value
+            for (byte b : value) h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,123 @@
+// RangeTombstones.java
+package src.main.java.lsmkv.engine;
+
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The range deletes of one MemTable or SSTable, kept as disjoint inclusive key
+ * intervals (overlapping ones are coalesced on insert), so a lookup is one floor
+ * search. They cover the versions in older tables only: when a range is deleted
+ * the MemTable drops its own entries in it, so whatever a table holds inside one
+ * of its ranges was written afterwards.
+ *
+ * Only the writer thread adds; readers may look up concurrently, and never see a
+ * key uncovered that a finished {@link #add} covered.
+ *
+ * Serialized in the SSTable index as [int count]([int len][start][int len][end])*.
+ */
+public final class RangeTombstones {
+    private final ConcurrentSkipListMap<Slice, Slice> ranges = new ConcurrentSkipListMap<>();
+
+    /** Deletes {@code [start, end]}; a range with start after end covers nothing. */
+    void add(Slice start, Slice end) {
+        if (start.compareTo(end) > 0) return;
+        Slice from = start, to = end;
+        Map.Entry<Slice, Slice> below = ranges.floorEntry(start);
+        if (below != null && below.getValue().compareTo(start) >= 0) {
+            from = below.getKey();
+            if (below.getValue().compareTo(to) > 0) to = below.getValue();
+        }
+        Map.Entry<Slice, Slice> lastInside = ranges.floorEntry(end);
+        if (lastInside != null && lastInside.getKey().compareTo(from) > 0 && lastInside.getValue().compareTo(to) > 0) {
+            to = lastInside.getValue();
+        }
+        // widen first, then drop the ranges it swallowed, so coverage only ever grows
+        ranges.put(from, to);
+        ranges.subMap(from, false, to, true).clear();
+    }
+
+    /** True if {@code key} lies in one of the ranges. */
+    public boolean covers(Slice key) {
+        if (ranges.isEmpty()) return false;
+        Map.Entry<Slice, Slice> r = ranges.floorEntry(key);
+        return r != null && r.getValue().compareTo(key) >= 0;
+    }
+
+    /** True if every key in {@code [from, to]} lies in one range. */
+    public boolean coversAll(Slice from, Slice to) {
+        if (ranges.isEmpty()) return false;
+        Map.Entry<Slice, Slice> r = ranges.floorEntry(from);
+        return r != null && r.getValue().compareTo(to) >= 0;
+    }
+
+    /** The ranges in key order, as start to end; read-only. */
+    public NavigableMap<Slice, Slice> asMap() {
+        return Collections.unmodifiableNavigableMap(ranges);
+    }
+
+    public boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    public int size() {
+        return ranges.size();
+    }
+
+    /** Start of the lowest range; null if there are none. */
+    public Slice first() {
+        return ranges.isEmpty() ? null : ranges.firstKey();
+    }
+
+    /** End of the highest range; null if there are none. */
+    public Slice last() {
+        Map.Entry<Slice, Slice> r = ranges.lastEntry();
+        return r == null ? null : r.getValue();
+    }
+
+    /** Bytes charged against the MemTable size for one range. */
+    static long cost(Slice start, Slice end) {
+        return start.length() + end.length() + 64;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(ranges.size());
+        for (Map.Entry<Slice, Slice> r : ranges.entrySet()) {
+            writeKey(out, r.getKey());
+            writeKey(out, r.getValue());
+        }
+    }
+
+    static RangeTombstones readFrom(ByteBuffer in) {
+        RangeTombstones t = new RangeTombstones();
+        int n = in.getInt();
+        for (int i = 0; i < n; i++) {
+            Slice start = readKey(in);
+            t.ranges.put(start, readKey(in));
+        }
+        return t;
+    }
+
+    private static void writeKey(DataOutputStream out, Slice key) throws IOException {
+        out.writeInt(key.length());
+        out.write(key.toByteArray(), 0, key.length());
+    }
+
+    private static Slice readKey(ByteBuffer in) {
+        byte[] k = new byte[in.getInt()];
+        in.get(k);
+        return Slice.wrap(k);
+    }
+
+    @Override
+    public String toString() {
+        return ranges.toString();
+    }
+}
@@ -1,41 +1,612 @@
 package src.main.java.lsmkv.engine;
 
+import src.main.java.lsmkv.compression.BlockCodec;
+import src.main.java.lsmkv.compression.NoneCodec;
 import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.util.Slice;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
 
-public class SSTable {
-    private final Path dataDir;
-    private final Path tableFile;
+/**
+ * Immutable sorted table file, written once from a MemTable flush or a compaction.
+ *
+ * File layout:
+ * <pre>
+ * [data block]*  [index block]  [footer]
+ *
+ * data block:   [byte codec][int rawLen][int storedLen][int crc32(stored)][stored bytes]
+ *   raw bytes:  prefix-compressed entries with restart points, see {@link BlockBuilder}
+ * index block:  [int len][firstKey][int len][lastKey][int blocks] ([int len][separator][long offset][int length])*
+ *               [expiry histogram]   (see {@link ExpiryHistogram})
+ *               [range tombstones]   (see {@link RangeTombstones})
+ * footer:       [long indexOffset][int indexLen][long entries][long rawBytes][long storedBytes][long maxSeq][int magic]
+ * </pre>
+ * Each block carries its own codec id, so a block that didn't shrink is stored raw.
+ * Index separators are the shortest keys that are >= a block's last key and < the
+ * next block's first key, which keeps the index small for long shared prefixes.
+ * Decoded blocks go through the shared {@link BlockCache}. The first and last key
+ * span the range tombstones too; a table may hold nothing but range tombstones.
+ */
+public class SSTable implements Closeable {
+    private static final int MAGIC = 0x4C534D35; // "LSM5"
+    private static final int BLOCK_HEADER = 1 + 4 + 4 + 4;
+    private static final int FOOTER = 8 + 4 + 8 + 8 + 8 + 8 + 4;
 
-    public SSTable(Path dataDir, Config cfg) throws IOException {
-        this.dataDir = dataDir;
-        Files.createDirectories(dataDir);
-        this.tableFile = dataDir.resolve("sstable.data");
-        if (!Files.exists(tableFile)) {
-            Files.createFile(tableFile);
+    private final long id;
+    private final Path file;
+    private final BlockCache cache;
+    private final Meta meta;
+    private volatile long minSeq; // lowest WAL sequence number covered; 0 if unknown
+
+    // The open file and its block index. Tables listed in the manifest start without
+    // them and open the file on their first read.
+    private volatile Blocks blocks;
+
+    private final LongAdder decodeNanos = new LongAdder();
+    private final LongAdder blocksDecoded = new LongAdder();
+
+    // One reference is held by the TableSet; readers take more while they use the table.
+    private final AtomicInteger refs = new AtomicInteger(1);
+    private volatile boolean obsolete;
+    private LongAdder releaseFailures = new LongAdder();
+
+    private SSTable(long id, Path file, BlockCache cache, Meta meta, Blocks blocks) {
+        this.id = id;
+        this.file = file;
+        this.cache = cache;
+        this.meta = meta;
+        this.blocks = blocks;
+    }
+
+    /** Opens the table file and reads its index now. */
+    public static SSTable open(long id, Path file, BlockCache cache) throws IOException {
+        Blocks b = Blocks.read(file);
+        return new SSTable(id, file, cache, b.meta, b);
+    }
+
+    /**
+     * A table known from the manifest: bounds, counts, expiry histogram and range
+     * tombstones come from {@code meta}, and the file is not touched until a read.
+     */
+    static SSTable lazy(long id, Path file, BlockCache cache, Meta meta, long minSeq) {
+        SSTable t = new SSTable(id, file, cache, meta, null);
+        t.minSeq = minSeq;
+        return t;
+    }
+
+    private Blocks blocks() throws IOException {
+        Blocks b = blocks;
+        if (b != null) return b;
+        synchronized (this) {
+            if (blocks == null) {
+                b = Blocks.read(file);
+                if (!b.meta.sameFile(meta)) {
+                    b.ch.close();
+                    throw new IOException("SSTable " + file + " does not match the manifest");
+                }
+                blocks = b;
+            }
+            return blocks;
+        }
+    }
+
+    /**
+     * What is known about a table without reading its blocks: what the index block
+     * and footer hold, apart from the block handles. Recorded in the manifest.
+     */
+    static final class Meta {
+        final Slice firstKey;
+        final Slice lastKey;
+        final long entries;
+        final long maxSeq;
+        final long fileBytes;
+        final ExpiryHistogram expiry;
+        final RangeTombstones rangeTombstones;
+
+        Meta(Slice firstKey, Slice lastKey, long entries, long maxSeq, long fileBytes,
+             ExpiryHistogram expiry, RangeTombstones rangeTombstones) {
+            this.firstKey = firstKey;
+            this.lastKey = lastKey;
+            this.entries = entries;
+            this.maxSeq = maxSeq;
+            this.fileBytes = fileBytes;
+            this.expiry = expiry;
+            this.rangeTombstones = rangeTombstones;
+        }
+
+        boolean sameFile(Meta other) {
+            return fileBytes == other.fileBytes && entries == other.entries && maxSeq == other.maxSeq;
+        }
+
+        /** [long fileBytes][long entries][long maxSeq][int len][firstKey][int len][lastKey][expiry][range tombstones] */
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeLong(fileBytes);
+            out.writeLong(entries);
+            out.writeLong(maxSeq);
+            writeKey(out, firstKey);
+            writeKey(out, lastKey);
+            expiry.writeTo(out);
+            rangeTombstones.writeTo(out);
+        }
+
+        static Meta readFrom(ByteBuffer in) {
+            long fileBytes = in.getLong();
+            long entries = in.getLong();
+            long maxSeq = in.getLong();
+            Slice first = readKey(in);
+            Slice last = readKey(in);
+            return new Meta(first, last, entries, maxSeq, fileBytes,
+                            ExpiryHistogram.readFrom(in), RangeTombstones.readFrom(in));
+        }
+    }
+
+    /** The open file with its footer and index block parsed. */
+    private static final class Blocks {
+        final FileChannel ch;
+        final Meta meta;
+        final Slice[] separators;
+        final long[] offsets;
+        final int[] lengths;
+        final long rawBytes;
+        final long storedBytes;
+
+        private Blocks(FileChannel ch, Meta meta, Slice[] separators, long[] offsets, int[] lengths,
+                       long rawBytes, long storedBytes) {
+            this.ch = ch;
+            this.meta = meta;
+            this.separators = separators;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.rawBytes = rawBytes;
+            this.storedBytes = storedBytes;
+        }
+
+        static Blocks read(Path file) throws IOException {
+            FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                long size = ch.size();
+                if (size < FOOTER) throw new IOException("SSTable too small: " + file);
+                ByteBuffer footer = readAt(ch, file, size - FOOTER, FOOTER);
+                long indexOffset = footer.getLong();
+                int indexLen = footer.getInt();
+                long entries = footer.getLong();
+                long rawBytes = footer.getLong();
+                long storedBytes = footer.getLong();
+                long maxSeq = footer.getLong();
+                int magic = footer.getInt();
+                if (magic != MAGIC) throw new IOException("Bad SSTable magic: " + file);
+
+                ByteBuffer index = readAt(ch, file, indexOffset, indexLen);
+                Slice firstKey = readKey(index);
+                Slice lastKey = readKey(index);
+                int blocks = index.getInt();
+                Slice[] separators = new Slice[blocks];
+                long[] offsets = new long[blocks];
+                int[] lengths = new int[blocks];
+                for (int i = 0; i < blocks; i++) {
+                    separators[i] = readKey(index);
+                    offsets[i] = index.getLong();
+                    lengths[i] = index.getInt();
+                }
+                ExpiryHistogram expiry = ExpiryHistogram.readFrom(index);
+                RangeTombstones ranges = RangeTombstones.readFrom(index);
+                Meta meta = new Meta(firstKey, lastKey, entries, maxSeq, size, expiry, ranges);
+                return new Blocks(ch, meta, separators, offsets, lengths, rawBytes, storedBytes);
+            } catch (IOException | RuntimeException e) {
+                ch.close();
+                throw e;
+            }
         }
     }
 
-    public synchronized void write(String key, byte[] value) throws IOException {
-        String line = key + "=" + new String(value, StandardCharsets.UTF_8) + System.lineSeparator();
-        Files.write(tableFile, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    public static SSTable write(long id, Path file, Iterator<Entry> sorted, long maxSeq,
+                                Config cfg, BlockCache cache) throws IOException {
+        return write(id, file, sorted, new RangeTombstones(), maxSeq, cfg, cache);
     }
 
-    public synchronized byte[] get(String key) throws IOException {
-        try (BufferedReader reader = Files.newBufferedReader(tableFile, StandardCharsets.UTF_8)) {
-            String line;
-            String found = null;
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith(key + "=")) {
-                    found = line.substring((key + "=").length());
+    /**
+     * Writes {@code sorted} and {@code ranges} to {@code file} (via a temp file and
+     * atomic rename) and opens it. {@code maxSeq} is the highest WAL sequence number
+     * the entries cover. Returns null and writes nothing if both are empty.
+     */
+    public static SSTable write(long id, Path file, Iterator<Entry> sorted, RangeTombstones ranges, long maxSeq,
+                                Config cfg, BlockCache cache) throws IOException {
+        if (!sorted.hasNext() && ranges.isEmpty()) return null;
+        BlockCodec codec = BlockCodec.forName(cfg.getCompression());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            TableWriter w = new TableWriter(out, codec, cfg.getBlockSizeBytes(), cfg.getBlockRestartInterval());
+            while (sorted.hasNext()) w.add(sorted.next());
+            w.finish(ranges, maxSeq);
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        return open(id, file, cache);
+    }
+
+    // -------------------- reads --------------------
+
+    /**
+     * Entry for {@code key} (possibly a tombstone, also for a key under one of the
+     * table's range deletes), or null if the table has none.
+     */
+    public Entry get(Slice key) throws IOException {
+        Entry e = null;
+        if (meta.entries > 0 && key.compareTo(meta.firstKey) >= 0 && key.compareTo(meta.lastKey) <= 0) {
+            Blocks bl = blocks();
+            int b = findBlock(bl, key);
+            if (b >= 0) e = new BlockReader(loadBlock(bl, b)).get(key);
+        }
+        return e != null || !meta.rangeTombstones.covers(key) ? e : Entry.delete(key);
+    }
+
+    /** Index of the first block whose separator is >= key, or -1. */
+    private int findBlock(Blocks bl, Slice key) {
+        Slice[] separators = bl.separators;
+        if (separators.length == 0 || key.compareTo(meta.firstKey) < 0 || key.compareTo(meta.lastKey) > 0) return -1;
+        int lo = 0, hi = separators.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (separators[mid].compareTo(key) < 0) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private byte[] loadBlock(Blocks bl, int b) throws IOException {
+        long cacheKey = BlockCache.key(id, bl.offsets[b]);
+        byte[] raw = cache.get(cacheKey);
+        if (raw == null) {
+            raw = readBlock(bl, b);
+            cache.put(cacheKey, raw);
+        }
+        return raw;
+    }
+
+    private byte[] readBlock(Blocks bl, int b) throws IOException {
+        ByteBuffer buf = readAt(bl.ch, file, bl.offsets[b], bl.lengths[b]);
+        byte codecId = buf.get();
+        int rawLen = buf.getInt();
+        int storedLen = buf.getInt();
+        int crc = buf.getInt();
+        CRC32 c = new CRC32();
+        c.update(buf.array(), BLOCK_HEADER, storedLen);
+        if ((int) c.getValue() != crc) {
+            throw new IOException("Checksum mismatch in " + file + " block @" + bl.offsets[b]);
+        }
+        BlockCodec codec = BlockCodec.forId(codecId);
+        if (codec == NoneCodec.INSTANCE) {
+            byte[] raw = new byte[rawLen];
+            System.arraycopy(buf.array(), BLOCK_HEADER, raw, 0, rawLen);
+            return raw;
+        }
+        byte[] raw = new byte[rawLen];
+        long start = System.nanoTime();
+        codec.decompress(buf.array(), BLOCK_HEADER, storedLen, raw, rawLen);
+        decodeNanos.add(System.nanoTime() - start);
+        blocksDecoded.increment();
+        return raw;
+    }
+
+    /** Full scan in key order; reads blocks directly so compactions don't churn the cache. */
+    public Iterator<Entry> iterator() {
+        return iterator(meta.firstKey);
+    }
+
+    /** Scan of the entries with keys >= {@code from}, in key order. */
+    public Iterator<Entry> iterator(Slice from) {
+        return new Iterator<>() {
+            Blocks bl;
+            int nextBlock;
+            Iterator<Entry> block;
+            Entry pending;
+
+            @Override
+            public boolean hasNext() {
+                while (pending == null) {
+                    while (block == null || !block.hasNext()) {
+                        try {
+                            if (bl == null) {
+                                if (meta.entries == 0 || from.compareTo(meta.lastKey) > 0) return false;
+                                bl = blocks();
+                                int first = from.compareTo(meta.firstKey) <= 0 ? 0 : findBlock(bl, from);
+                                nextBlock = first < 0 ? bl.offsets.length : first;
+                            }
+                            if (nextBlock >= bl.offsets.length) return false;
+                            block = new BlockReader(readBlock(bl, nextBlock++)).iterator();
+                        } catch (IOException ioe) {
+                            throw new UncheckedIOException(ioe);
+                        }
+                    }
+                    Entry e = block.next();
+                    if (e.key().compareTo(from) >= 0) pending = e;
                 }
+                return true;
             }
-            return found == null ? null : found.getBytes(StandardCharsets.UTF_8);
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Entry e = pending;
+                pending = null;
+                return e;
+            }
+        };
+    }
+
+    private static ByteBuffer readAt(FileChannel ch, Path file, long pos, int len) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos + buf.position());
+            if (n < 0) throw new EOFException("Unexpected end of " + file);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static Slice readKey(ByteBuffer buf) {
+        byte[] k = new byte[buf.getInt()];
+        buf.get(k);
+        return Slice.wrap(k);
+    }
+
+    private static void writeKey(DataOutputStream out, Slice key) throws IOException {
+        out.writeInt(key.length());
+        out.write(key.toByteArray(), 0, key.length());
+    }
+
+    // -------------------- lifecycle --------------------
+
+    /** Takes a reader reference; false if the table has already been released for good. */
+    boolean retain() {
+        while (true) {
+            int r = refs.get();
+            if (r == 0) return false;
+            if (refs.compareAndSet(r, r + 1)) return true;
+        }
+    }
+
+    void release() {
+        if (refs.decrementAndGet() == 0) {
+            try {
+                synchronized (this) {
+                    if (blocks != null) blocks.ch.close();
+                }
+                if (obsolete) Files.deleteIfExists(file);
+            } catch (IOException ioe) {
+                releaseFailures.increment();
+                System.err.println("[WARN] Failed to release SSTable " + file + ": " + ioe.getMessage());
+            }
+        }
+    }
+
+    /** Counts failures to close or delete the file in {@code into}, shared by the tables of an engine. */
+    SSTable countReleaseFailures(LongAdder into) {
+        releaseFailures = into;
+        return this;
+    }
+
+    /** Marks the table replaced by compaction; the file is deleted with the last reference. */
+    void markObsolete() {
+        obsolete = true;
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    // -------------------- metadata --------------------
+
+    public long id() { return id; }
+    public Path path() { return file; }
+    public long entryCount() { return meta.entries; }
+    public Slice firstKey() { return meta.firstKey; }
+    public Slice lastKey() { return meta.lastKey; }
+    public long maxSeq() { return meta.maxSeq; }
+    /** Lowest WAL sequence number the table covers; 0 if unknown (tables from before the manifest, snapshots). */
+    public long minSeq() { return minSeq; }
+    public long fileBytes() { return meta.fileBytes; }
+    ExpiryHistogram expiry() { return meta.expiry; }
+    /** Ranges this table deletes from older tables. */
+    public RangeTombstones rangeTombstones() { return meta.rangeTombstones; }
+    Meta meta() { return meta; }
+    /** True once the file is open; tables loaded from the manifest open on their first read. */
+    public boolean isOpen() { return blocks != null; }
+
+    void minSeq(long minSeq) {
+        this.minSeq = minSeq;
+    }
+
+    /** The index's block separators, in key order; opens the file if needed. */
+    List<Slice> blockSeparators() throws IOException {
+        return Arrays.asList(blocks().separators);
+    }
+
+    /** Number of data blocks; opens the file if needed. */
+    public int blockCount() throws IOException {
+        return blocks().separators.length;
+    }
+
+    /** True if every entry in the table has an expiry time and all of them have passed. */
+    boolean fullyExpired(long now) {
+        return meta.expiry.expiring() == meta.entries && meta.expiry.maxExpiresAt() <= now;
+    }
+
+    /** Share of the entries known to be expired at {@code now}, from the histogram alone. */
+    double expiredFraction(long now) {
+        return meta.entries == 0 ? 0.0 : (double) meta.expiry.expiredBy(now) / meta.entries;
+    }
+
+    /** Compression figures come from the index, so this opens the file if needed. */
+    public Stats stats() throws IOException {
+        Blocks bl = blocks();
+        return new Stats(id, meta.entries, bl.separators.length, bl.rawBytes, bl.storedBytes,
+                         blocksDecoded.sum(), decodeNanos.sum());
+    }
+
+    /** Compression ratio and decode cost of one table. */
+    public static final class Stats {
+        public final long tableId;
+        public final long entries;
+        public final int blocks;
+        public final long rawBytes;
+        public final long storedBytes;
+        public final long blocksDecoded;
+        public final long decodeNanos;
+
+        Stats(long tableId, long entries, int blocks, long rawBytes, long storedBytes,
+              long blocksDecoded, long decodeNanos) {
+            this.tableId = tableId;
+            this.entries = entries;
+            this.blocks = blocks;
+            this.rawBytes = rawBytes;
+            this.storedBytes = storedBytes;
+            this.blocksDecoded = blocksDecoded;
+            this.decodeNanos = decodeNanos;
+        }
+
+        public double compressionRatio() {
+            return storedBytes == 0 ? 1.0 : (double) rawBytes / storedBytes;
+        }
+
+        public double avgDecodeMicros() {
+            return blocksDecoded == 0 ? 0.0 : decodeNanos / 1000.0 / blocksDecoded;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("table=%d entries=%d blocks=%d raw=%d stored=%d ratio=%.2f decoded=%d avgDecodeUs=%.1f",
+                    tableId, entries, blocks, rawBytes, storedBytes, compressionRatio(), blocksDecoded, avgDecodeMicros());
+        }
+    }
+
+    // -------------------- writer --------------------
+
+    private static final class TableWriter {
+        private final FileChannel out;
+        private final BlockCodec codec;
+        private final int blockSize;
+        private final BlockBuilder block;
+        private final List<Slice> separators = new ArrayList<>();
+        private final List<long[]> handles = new ArrayList<>();
+        private final ExpiryHistogram expiry = new ExpiryHistogram(System.currentTimeMillis());
+        private Slice firstKey;
+        private Slice lastKey;
+        private boolean pendingSeparator;
+        private long offset;
+        private long entries;
+        private long rawBytes;
+        private long storedBytes;
+
+        TableWriter(FileChannel out, BlockCodec codec, int blockSize, int restartInterval) {
+            this.out = out;
+            this.codec = codec;
+            this.blockSize = blockSize;
+            this.block = new BlockBuilder(restartInterval);
+        }
+
+        void add(Entry e) throws IOException {
+            Slice key = e.key();
+            if (pendingSeparator) {
+                // now that the next block's first key is known, pick the shortest separator
+                separators.add(shortestSeparator(lastKey, key));
+                pendingSeparator = false;
+            }
+            if (firstKey == null) firstKey = key;
+            block.add(e);
+            expiry.add(e.expiresAt());
+            lastKey = key;
+            entries++;
+            if (block.estimatedSize() >= blockSize) flushBlock();
+        }
+
+        private void flushBlock() throws IOException {
+            if (block.isEmpty()) return;
+            byte[] raw = block.finish();
+
+            byte[] stored = new byte[codec.maxCompressedLength(raw.length)];
+            int storedLen = codec.compress(raw, 0, raw.length, stored);
+            byte codecId = codec.id();
+            if (storedLen >= raw.length) {
+                stored = raw;
+                storedLen = raw.length;
+                codecId = BlockCodec.NONE_ID;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(stored, 0, storedLen);
+
+            ByteBuffer buf = ByteBuffer.allocate(BLOCK_HEADER + storedLen);
+            buf.put(codecId).putInt(raw.length).putInt(storedLen).putInt((int) crc.getValue());
+            buf.put(stored, 0, storedLen);
+            buf.flip();
+            writeFully(buf);
+
+            handles.add(new long[]{offset, buf.capacity()});
+            pendingSeparator = true;
+            offset += buf.capacity();
+            rawBytes += raw.length;
+            storedBytes += storedLen;
+        }
+
+        void finish(RangeTombstones ranges, long maxSeq) throws IOException {
+            flushBlock();
+            if (pendingSeparator) separators.add(lastKey);
+            if (!ranges.isEmpty()) {
+                if (firstKey == null || ranges.first().compareTo(firstKey) < 0) firstKey = ranges.first();
+                if (lastKey == null || ranges.last().compareTo(lastKey) > 0) lastKey = ranges.last();
+            }
+
+            ByteArrayOutputStream idx = new ByteArrayOutputStream();
+            DataOutputStream idxOut = new DataOutputStream(idx);
+            writeKey(idxOut, firstKey);
+            writeKey(idxOut, lastKey);
+            idxOut.writeInt(separators.size());
+            for (int i = 0; i < separators.size(); i++) {
+                writeKey(idxOut, separators.get(i));
+                idxOut.writeLong(handles.get(i)[0]);
+                idxOut.writeInt((int) handles.get(i)[1]);
+            }
+            expiry.writeTo(idxOut);
+            ranges.writeTo(idxOut);
+            byte[] index = idx.toByteArray();
+            writeFully(ByteBuffer.wrap(index));
+
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER);
+            footer.putLong(offset).putInt(index.length).putLong(entries)
+                  .putLong(rawBytes).putLong(storedBytes).putLong(maxSeq).putInt(MAGIC);
+            footer.flip();
+            writeFully(footer);
+        }
+
+        /** Shortest key k with a <= k < b: a's common prefix with b plus one distinguishing byte. */
+        private static Slice shortestSeparator(Slice a, Slice b) {
+            int n = Math.min(a.length(), b.length());
+            int i = 0;
+            while (i < n && a.get(i) == b.get(i)) i++;
+            if (i >= n) return a; // a is a prefix of b
+            int diff = a.get(i) & 0xFF;
+            if (diff < 0xFF && diff + 1 < (b.get(i) & 0xFF)) {
+                byte[] sep = a.slice(0, i + 1).toByteArray().clone();
+                sep[i]++;
+                return Slice.wrap(sep);
+            }
+            return a;
+        }
+
+        private void writeFully(ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) out.write(buf);
         }
     }
 }
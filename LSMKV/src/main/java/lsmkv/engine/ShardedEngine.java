@@ -0,0 +1,343 @@
+// ShardedEngine.java
+package src.main.java.lsmkv.engine;
+
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.metrics.Metrics;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hash-partitioned store: N independent {@link StorageEngine}s in one process,
+ * each with its own writer thread, WAL, MemTable, SSTables and compactor, under
+ * {@code <dataDir>/shard-NN}. Every key lives in exactly one shard, so writes to
+ * different shards proceed in parallel.
+ *
+ * Batches and multi-gets are split by shard and run concurrently; a batch is
+ * atomic per shard only. Range scans query every shard and merge the results.
+ * The shard count is recorded in the data directory and cannot change afterwards,
+ * since it decides where each key lives.
+ */
+public class ShardedEngine implements KeyValueStore {
+    private static final String SHARDS_FILE = "SHARDS";
+
+    private final Path dataDir;
+    private final StorageEngine[] shards;
+    private final ExecutorService fanOut;
+
+    public ShardedEngine(Path dataDir, Config cfg, int shardCount) throws IOException {
+        Objects.requireNonNull(dataDir, "dataDir must not be null");
+        if (shardCount < 1) throw new IllegalArgumentException("shardCount must be >= 1");
+        checkShardCount(dataDir, shardCount);
+        this.dataDir = dataDir;
+
+        this.shards = new StorageEngine[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new StorageEngine(dataDir.resolve(shardDirName(i)), cfg, null);
+        }
+        AtomicInteger n = new AtomicInteger();
+        this.fanOut = Executors.newFixedThreadPool(shardCount, r -> {
+            Thread t = new Thread(r, "lsmkv-shard-" + n.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static String shardDirName(int shard) {
+        return String.format("shard-%02d", shard);
+    }
+
+    private static void checkShardCount(Path dataDir, int shardCount) throws IOException {
+        Files.createDirectories(dataDir);
+        Path f = dataDir.resolve(SHARDS_FILE);
+        if (!Files.exists(f)) {
+            Files.write(f, Integer.toString(shardCount).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        int existing = Integer.parseInt(new String(Files.readAllBytes(f), StandardCharsets.US_ASCII).trim());
+        if (existing != shardCount) {
+            throw new IOException("Data dir " + dataDir + " was created with " + existing
+                    + " shards; cannot open with " + shardCount);
+        }
+    }
+
+    @Override
+    public void start() throws IOException {
+        for (StorageEngine s : shards) s.start();
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Shard index for {@code key}. It hashes the key as the engines store it (see
+     * {@link StorageEngine#trimKey}), so keys the engines treat as equal always meet
+     * in one shard. {@link Slice#hashCode()} depends only on the bytes, so placement
+     * is stable across restarts; the mix spreads its low bits. A null key goes to
+     * shard 0, whose engine rejects it.
+     */
+    int shardFor(Slice key) {
+        if (key == null) return 0;
+        int h = StorageEngine.trimKey(key).hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return Math.floorMod(h, shards.length);
+    }
+
+    private StorageEngine shard(Slice key) {
+        return shards[shardFor(key)];
+    }
+
+    @Override
+    public void put(Slice key, byte[] value, long expiresAt) throws IOException {
+        shard(key).put(key, value, expiresAt);
+    }
+
+    @Override
+    public byte[] get(Slice key) throws IOException {
+        return shard(key).get(key);
+    }
+
+    @Override
+    public void delete(Slice key) throws IOException {
+        shard(key).delete(key);
+    }
+
+    /** Keys are hashed over the shards, so every shard records the range. */
+    @Override
+    public void deleteRange(Slice startKey, Slice endKey) throws IOException {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (StorageEngine s : shards) {
+            tasks.add(() -> {
+                s.deleteRange(startKey, endKey);
+                return null;
+            });
+        }
+        runAll(tasks, "DELETE_RANGE");
+    }
+
+    @Override
+    public boolean compareAndSet(Slice key, byte[] expected, byte[] newValue) throws IOException {
+        return shard(key).compareAndSet(key, expected, newValue);
+    }
+
+    @Override
+    public void merge(Slice key, byte[] operand) throws IOException {
+        shard(key).merge(key, operand);
+    }
+
+    @Override
+    public void increment(Slice key, long delta) throws IOException {
+        shard(key).increment(key, delta);
+    }
+
+    @Override
+    public void putBatch(Map<Slice, byte[]> entries, long expiresAt) throws IOException {
+        List<Map<Slice, byte[]>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) parts.add(new HashMap<>());
+        for (Map.Entry<Slice, byte[]> e : entries.entrySet()) {
+            parts.get(shardFor(e.getKey())).put(e.getKey(), e.getValue());
+        }
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (parts.get(i).isEmpty()) continue;
+            StorageEngine s = shards[i];
+            Map<Slice, byte[]> part = parts.get(i);
+            tasks.add(() -> {
+                s.putBatch(part, expiresAt);
+                return null;
+            });
+        }
+        runAll(tasks, "PUT_BATCH");
+    }
+
+    @Override
+    public Map<Slice, byte[]> getBatch(List<Slice> keys) throws IOException {
+        List<List<Slice>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) parts.add(new ArrayList<>());
+        for (Slice k : keys) parts.get(shardFor(k)).add(k);
+        List<Callable<Map<Slice, byte[]>>> tasks = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (parts.get(i).isEmpty()) continue;
+            StorageEngine s = shards[i];
+            List<Slice> part = parts.get(i);
+            tasks.add(() -> s.getBatch(part));
+        }
+        Map<Slice, byte[]> results = new HashMap<>();
+        for (Map<Slice, byte[]> r : runAll(tasks, "GET_BATCH")) results.putAll(r);
+        return results;
+    }
+
+    /** Scans every shard concurrently; their key sets are disjoint, so merging is a union. */
+    @Override
+    public SortedMap<Slice, byte[]> getRange(Slice startKey, Slice endKey) throws IOException {
+        List<Callable<SortedMap<Slice, byte[]>>> tasks = new ArrayList<>();
+        for (StorageEngine s : shards) tasks.add(() -> s.getRange(startKey, endKey));
+        SortedMap<Slice, byte[]> results = new TreeMap<>();
+        for (SortedMap<Slice, byte[]> r : runAll(tasks, "GET_RANGE")) results.putAll(r);
+        return results;
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(Slice key, byte[] value, long expiresAt) {
+        return shard(key).putAsync(key, value, expiresAt);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getAsync(Slice key) {
+        return shard(key).getAsync(key);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(Slice key) {
+        return shard(key).deleteAsync(key);
+    }
+
+    @Override
+    public CompletableFuture<Void> putBatchAsync(Map<Slice, byte[]> entries, long expiresAt) {
+        List<Map<Slice, byte[]>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) parts.add(new HashMap<>());
+        for (Map.Entry<Slice, byte[]> e : entries.entrySet()) {
+            parts.get(shardFor(e.getKey())).put(e.getKey(), e.getValue());
+        }
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (!parts.get(i).isEmpty()) pending.add(shards[i].putBatchAsync(parts.get(i), expiresAt));
+        }
+        return allOf(pending).thenApply(done -> null);
+    }
+
+    @Override
+    public CompletableFuture<Map<Slice, byte[]>> getBatchAsync(List<Slice> keys) {
+        List<List<Slice>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) parts.add(new ArrayList<>());
+        for (Slice k : keys) parts.get(shardFor(k)).add(k);
+        List<CompletableFuture<Map<Slice, byte[]>>> pending = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (!parts.get(i).isEmpty()) pending.add(shards[i].getBatchAsync(parts.get(i)));
+        }
+        return allOf(pending).thenApply(found -> {
+            Map<Slice, byte[]> results = new HashMap<>();
+            for (Map<Slice, byte[]> r : found) results.putAll(r);
+            return results;
+        });
+    }
+
+    @Override
+    public CompletableFuture<SortedMap<Slice, byte[]>> getRangeAsync(Slice startKey, Slice endKey) {
+        List<CompletableFuture<SortedMap<Slice, byte[]>>> pending = new ArrayList<>();
+        for (StorageEngine s : shards) pending.add(s.getRangeAsync(startKey, endKey));
+        return allOf(pending).thenApply(found -> {
+            SortedMap<Slice, byte[]> results = new TreeMap<>();
+            for (SortedMap<Slice, byte[]> r : found) results.putAll(r);
+            return results;
+        });
+    }
+
+    /** Completes with every shard's result once all have; fails if any shard's part did. */
+    private static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> pending) {
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<T> results = new ArrayList<>(pending.size());
+            for (CompletableFuture<T> f : pending) results.add(f.join());
+            return results;
+        });
+    }
+
+    @Override
+    public List<SSTable.Stats> getTableStats() {
+        List<SSTable.Stats> out = new ArrayList<>();
+        for (StorageEngine s : shards) out.addAll(s.getTableStats());
+        return out;
+    }
+
+    /** One checkpoint per shard, in parallel, under {@code dir/shard-NN}; each is consistent on its own. */
+    @Override
+    public Checkpoint checkpoint(Path dir, Path base) throws IOException {
+        Checkpoint.createDir(dir);
+        Files.copy(dataDir.resolve(SHARDS_FILE), dir.resolve(SHARDS_FILE));
+        List<Callable<Checkpoint>> tasks = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            String name = shardDirName(i);
+            StorageEngine s = shards[i];
+            tasks.add(() -> s.checkpoint(dir.resolve(name), base == null ? null : base.resolve(name)));
+        }
+        try {
+            return Checkpoint.combine(dir, runAll(tasks, "CHECKPOINT"));
+        } catch (IOException | RuntimeException e) {
+            for (int i = 0; i < shards.length; i++) Snapshot.deleteDir(dir.resolve(shardDirName(i)));
+            Snapshot.deleteDir(dir);
+            throw e;
+        }
+    }
+
+    /** All shards share the registry of the Config they were built from. */
+    @Override
+    public Metrics metrics() {
+        return shards[0].metrics();
+    }
+
+    /** Runs the per-shard tasks in parallel; the first failure is rethrown once all have finished. */
+    private <T> List<T> runAll(List<Callable<T>> tasks, String op) throws IOException {
+        if (tasks.size() == 1) {
+            try {
+                return List.of(tasks.get(0).call());
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(op + " failed: " + e.getMessage(), e);
+            }
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        IOException first = null;
+        try {
+            for (Future<T> f : fanOut.invokeAll(tasks)) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException ee) {
+                    Throwable cause = ee.getCause();
+                    IOException ioe = cause instanceof IOException ? (IOException) cause
+                            : new IOException(op + " failed: " + cause.getMessage(), cause);
+                    if (first == null) first = ioe; else first.addSuppressed(ioe);
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException(op + " interrupted", ie);
+        }
+        if (first != null) throw first;
+        return results;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fanOut.shutdown();
+        IOException first = null;
+        for (StorageEngine s : shards) {
+            try {
+                s.close();
+            } catch (IOException ioe) {
+                if (first == null) first = ioe; else first.addSuppressed(ioe);
+            }
+        }
+        if (first != null) throw first;
+    }
+}
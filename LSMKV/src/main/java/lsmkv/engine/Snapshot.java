@@ -0,0 +1,72 @@
+// Snapshot.java
+package src.main.java.lsmkv.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of an engine's SSTables and value-log files, taken with
+ * {@link StorageEngine#createSnapshot()}. Files are hard links (copies where the
+ * file system cannot link), so compaction and GC on the live engine do not affect
+ * them. Together with {@link #seq()} this is everything a replica needs before
+ * tailing the WAL from {@code seq + 1}. {@link #close()} deletes the links.
+ */
+public final class Snapshot implements Closeable {
+    private final long seq;
+    private final Path dir;
+    // link -> bytes to ship; value-log files may have grown past this since
+    private final Map<Path, Long> files;
+
+    private Snapshot(long seq, Path dir, Map<Path, Long> files) {
+        this.seq = seq;
+        this.dir = dir;
+        this.files = Collections.unmodifiableMap(files);
+    }
+
+    /** Links {@code sources} (path -> length) into {@code dir}; runs while the engine is quiesced. */
+    static Snapshot link(Path dir, long seq, Map<Path, Long> sources) throws IOException {
+        Files.createDirectories(dir);
+        Map<Path, Long> linked = new LinkedHashMap<>();
+        for (Map.Entry<Path, Long> e : sources.entrySet()) {
+            Path target = dir.resolve(e.getKey().getFileName());
+            try {
+                Files.createLink(target, e.getKey());
+            } catch (UnsupportedOperationException | FileSystemException noLinks) {
+                Files.copy(e.getKey(), target);
+            }
+            linked.put(target, e.getValue());
+        }
+        return new Snapshot(seq, dir, linked);
+    }
+
+    /** Highest WAL sequence number contained in the snapshot. */
+    public long seq() { return seq; }
+
+    public Map<Path, Long> files() { return files; }
+
+    public long totalBytes() {
+        long total = 0;
+        for (long len : files.values()) total += len;
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        deleteDir(dir);
+    }
+
+    static void deleteDir(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) Files.deleteIfExists(p);
+        }
+        Files.deleteIfExists(dir);
+    }
+}
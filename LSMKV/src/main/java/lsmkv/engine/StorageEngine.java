@@ -4,64 +4,218 @@ package src.main.java.lsmkv.engine;
 
 import src.main.java.lsmkv.backpressure.WriteQueue;
 import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.merge.CounterMergeOperator;
+import src.main.java.lsmkv.merge.MergeOperator;
+import src.main.java.lsmkv.metrics.FlushEvent;
+import src.main.java.lsmkv.metrics.Histogram;
+import src.main.java.lsmkv.metrics.Metrics;
+import src.main.java.lsmkv.metrics.SlowRequestEvent;
 import src.main.java.lsmkv.replication.Replicator;
+import src.main.java.lsmkv.util.Slice;
 
-import java.io.Closeable;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.List;
 import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class StorageEngine implements KeyValueStore, AutoCloseable {
+    // Present while a snapshot is being swapped in; a crash mid-swap leaves mixed state.
+    private static final String INSTALL_MARKER = "SNAPSHOT-INSTALL";
+    private static final String SNAPSHOT_DIR_PREFIX = "snapshot-";
+    private static final String MERKLE_FILE = "merkle.bin";
+    // Async writes waiting for one fsync; more than this are committed even while writes keep arriving.
+    private static final int MAX_COMMIT_GROUP = 1024;
 
-public class StorageEngine implements AutoCloseable, Closeable {
     private final Config cfg;
     private final Path dataDir;
 
     // Core components
-    private final MemTable mem;
+    // Swapped for a fresh table by the writer thread after each flush.
+    private volatile MemTable mem;
+    // Odd while a flush publishes its table and swaps the MemTable; see openView().
+    private volatile int flushEpoch;
     private final WAL wal;
-    private final SSTable sst;
+    private final TableSet tables;
+    private final ValueLog valueLog;
     private final Compactor compactor;
+    // Decoded values of hot keys; the writer thread invalidates a key after each write to it.
+    private final ValueCache valueCache;
+    // Only kept for replicated engines (anti-entropy); updated by each flush.
+    private final MerkleTree merkle;
 
     // Optional / pluggable modules
     private final WriteQueue writeQueue;
     private final Replicator replicator;
+    // Serves the async reads and completes async writes, so callers' stages never run on the writer thread.
+    private final ExecutorService ioPool;
+    // Writer thread only: async writes logged since the last group commit, oldest first.
+    private final List<PendingWrite> pendingWrites = new ArrayList<>();
 
     private final AtomicBoolean started = new AtomicBoolean(false);
     private final AtomicBoolean closed  = new AtomicBoolean(false);
 
+    // Metrics (shared by every engine on the same Config); gauges are dropped on close
+    private final Metrics metrics;
+    private final Histogram getLatency, putLatency, deleteLatency, deleteRangeLatency, casLatency, mergeLatency;
+    private final Histogram putBatchLatency, getBatchLatency, rangeLatency;
+    private final Histogram flushLatency;
+    private final LongAdder flushBytes;
+    private final LongAdder slowRequests;
+    private final long slowRequestNanos;
+    private final List<Runnable> gauges = new ArrayList<>();
+
     public StorageEngine(Path dataDir, Config cfg, Replicator replicator) throws IOException {
         this.cfg = Objects.requireNonNull(cfg, "Config must not be null");
         this.dataDir = Objects.requireNonNull(dataDir, "dataDir must not be null");
 
+        if (clearSnapshotLeftovers(dataDir)) {
+            cfg.getMetrics().counter("lsmkv_snapshot_installs_interrupted_total",
+                    "Snapshot installs found interrupted on startup; the replica started empty.").increment();
+        }
         try {
-            this.mem = new MemTable();
-            this.wal = new WAL(dataDir.resolve("wal.log"), cfg);
-            this.sst = new SSTable(dataDir, cfg);
-            this.compactor = new Compactor(sst, cfg);
-            this.writeQueue = new WriteQueue(cfg.getWriteQueueCapacity());
-            this.replicator = replicator; // use the injected one
+            this.mem = newMemTable();
+            this.wal = new WAL(dataDir, cfg);
+            this.tables = new TableSet(dataDir, cfg);
+            this.valueLog = new ValueLog(dataDir, cfg);
+            valueLog.discard(tables.valueLogGarbage()); // dead bytes counted before the last shutdown
+            this.compactor = new Compactor(tables, valueLog, new ValueLog.Relocator() {
+                @Override
+                public boolean relocate(Slice key, byte[] pointer, byte[] value) {
+                    return StorageEngine.this.relocate(key, pointer, value);
+                }
+
+                @Override
+                public void syncRelocated() throws IOException {
+                    StorageEngine.this.syncRelocated();
+                }
+            }, cfg);
+            this.valueCache = new ValueCache(cfg.getValueCacheBytes());
+            this.writeQueue = new WriteQueue(cfg.getWriteQueueCapacity(), this::commitPendingWrites,
+                    cfg.getMetrics().counter("lsmkv_write_task_failures_total",
+                            "Tasks or group commits that threw on the writer thread."));
+            AtomicInteger n = new AtomicInteger();
+            this.ioPool = Executors.newFixedThreadPool(cfg.getIoThreads(), r -> {
+                Thread t = new Thread(r, "lsmkv-io-" + n.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            });
+            this.replicator = replicator; // optional; null runs standalone
+            this.merkle = replicator != null ? new MerkleTree(cfg.getMerkleDepth()) : null;
         } catch (RuntimeException re) {
             throw new IOException("Failed to initialize StorageEngine components", re);
         }
+
+        this.metrics = cfg.getMetrics();
+        String op = "lsmkv_op_latency_seconds", opHelp = "Latency of completed client operations.";
+        this.getLatency = metrics.latency(op, opHelp, "op", "get");
+        this.putLatency = metrics.latency(op, opHelp, "op", "put");
+        this.deleteLatency = metrics.latency(op, opHelp, "op", "delete");
+        this.deleteRangeLatency = metrics.latency(op, opHelp, "op", "delete_range");
+        this.casLatency = metrics.latency(op, opHelp, "op", "cas");
+        this.mergeLatency = metrics.latency(op, opHelp, "op", "merge");
+        this.putBatchLatency = metrics.latency(op, opHelp, "op", "put_batch");
+        this.getBatchLatency = metrics.latency(op, opHelp, "op", "get_batch");
+        this.rangeLatency = metrics.latency(op, opHelp, "op", "range");
+        this.flushLatency = metrics.latency("lsmkv_flush_seconds", "Duration of each MemTable flush.");
+        this.flushBytes = metrics.counter("lsmkv_flush_bytes_written_total", "SSTable bytes written by MemTable flushes.");
+        this.slowRequests = metrics.counter("lsmkv_slow_requests_total",
+                "Client operations slower than the slow-request threshold (each also a lsmkv.SlowRequest JFR event).");
+        this.slowRequestNanos = cfg.getSlowRequestThreshold().toNanos();
+        LongAdder user = metrics.counter("lsmkv_user_bytes_written_total", "Key and value bytes of logged writes.");
+        LongAdder[] written = {
+                metrics.counter("lsmkv_wal_bytes_written_total", "Bytes appended to the WAL."),
+                flushBytes,
+                metrics.counter("lsmkv_compaction_bytes_written_total", "SSTable bytes written by compaction."),
+                metrics.counter("lsmkv_vlog_bytes_written_total", "Bytes appended to value-log files, by flushes and GC.")};
+        metrics.gaugeIfAbsent("lsmkv_write_amplification",
+                "Bytes written to WAL, SSTables and value logs per byte of client key and value.", () -> {
+                    long in = user.sum();
+                    if (in == 0) return 0;
+                    long out = 0;
+                    for (LongAdder w : written) out += w.sum();
+                    return (double) out / in;
+                });
+    }
+
+    /** Per-engine gauges, summed over the engines sharing the registry. */
+    private void registerGauges() {
+        BlockCache cache = tables.cache();
+        gauges.add(metrics.gauge("lsmkv_memtable_bytes", "Size of the active MemTables.", () -> mem.sizeBytes()));
+        gauges.add(metrics.gauge("lsmkv_memtable_entries", "Entries in the active MemTables.", () -> mem.size()));
+        gauges.add(metrics.gauge("lsmkv_sstables", "Live SSTables.", tables::size));
+        gauges.add(metrics.gauge("lsmkv_sstable_bytes", "Bytes on disk of the live SSTables.", tables::totalBytes));
+        gauges.add(metrics.gauge("lsmkv_vlog_files", "Value-log files.", valueLog::fileCount));
+        gauges.add(metrics.gauge("lsmkv_block_cache_bytes", "Decoded blocks held by the block cache.", cache::sizeBytes));
+        gauges.add(metrics.counter("lsmkv_block_cache_hits_total", "Block reads served by the block cache.", cache::hits));
+        gauges.add(metrics.counter("lsmkv_block_cache_misses_total", "Block reads that had to read and decode the block.", cache::misses));
+        gauges.add(metrics.gauge("lsmkv_value_cache_bytes", "Values held by the value cache.", valueCache::sizeBytes));
+        gauges.add(metrics.counter("lsmkv_value_cache_hits_total", "Point reads served by the value cache.", valueCache::hits));
+        gauges.add(metrics.counter("lsmkv_value_cache_misses_total", "Point reads that looked the key up.", valueCache::misses));
+        gauges.add(metrics.counter("lsmkv_value_cache_coalesced_total",
+                "Point reads that waited for a concurrent lookup of the same key.", valueCache::coalesced));
+        gauges.add(metrics.gauge("lsmkv_write_queue_depth", "Writes waiting for the writer thread.", writeQueue::size));
     }
 
+    @Override
+    public Metrics metrics() {
+        return metrics;
+    }
 
+    /** Records a completed operation's latency; slow ones are also counted and sent to JFR. */
+    private void finished(Histogram latency, String op, Object key, int keys, long start) {
+        long elapsed = System.nanoTime() - start;
+        latency.record(elapsed);
+        if (elapsed >= slowRequestNanos) {
+            slowRequests.increment();
+            SlowRequestEvent.emit(op, key, keys, elapsed);
+        }
+    }
+
+    private static Object firstKey(Iterable<Slice> keys) {
+        Iterator<Slice> it = keys.iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+
+    @Override
     public void start() throws IOException {
         ensureNotClosed();
         if (!started.compareAndSet(false, true)) return;
 
+        // Everything up to the newest table's sequence number is already on disk.
+        final long flushedSeq = tables.maxSeq();
+        if (merkle != null) loadMerkle(flushedSeq);
         try {
-            wal.open();
+            wal.open(flushedSeq);
         } catch (IOException ioe) {
             throw new IOException("Failed to open WAL: " + wal, ioe);
         }
 
         try {
-            mem.recoverFromWAL(wal);
+            mem.recoverFromWAL(wal, flushedSeq, cfg.getMergeOperator());
         } catch (RuntimeException re) {
             // If recovery fails, the engine is in an unknown state—close WAL and rethrow
             safeCloseWal();
@@ -74,22 +228,27 @@ public class StorageEngine implements AutoCloseable, Closeable {
             // Non-fatal for basic operations, but report clearly
             throw new IOException("Failed to start compactor", re);
         }
+
+        if (replicator != null) replicator.start(this);
+        registerGauges();
     }
 
-    public void put(String key, byte[] value) throws IOException {
-        ensureReady();
-        final String k = validateKey(key);
+    @Override
+    public void put(Slice key, byte[] value, long expiresAt) throws IOException {
+        ensureWritable();
+        final Slice k = validateKey(key);
         final byte[] v = value == null ? new byte[0] : value;
+        validateExpiry(expiresAt);
+        final long[] seq = new long[1];
+        final long start = System.nanoTime();
 
         try {
-            // Enqueue write; the queue implementation may execute synchronously or via a worker.
-
-
             writeQueue.enqueue(() -> {
                 try {
-                    wal.appendPut(k, v);
-                    mem.put(k, v);
-                    sst.write(k, v);
+                    seq[0] = wal.appendPut(k, v, expiresAt);
+                    mem.put(k, v, expiresAt);
+                    valueCache.invalidate(k);
+                    maybeFlush();
                     compactor.maybeSchedule();
                 } catch (IOException ioe) {
                     throw new UncheckedIOException(ioe);
@@ -106,40 +265,39 @@ public class StorageEngine implements AutoCloseable, Closeable {
             throw new IOException("PUT failed for key=" + k + ": " + re.getMessage(), re);
         }
 
-        // Replication should not fail the primary write; log if present.
-        if (replicator != null) {
-            try {
-                replicator.put(k, v);
-            } catch (RuntimeException re) {
-                // In a real system, route to a DLQ/repair log; here we log to stderr.
-                System.err.println("[WARN] Replication PUT failed for key=" + k + ": " + re.getMessage());
-            }
-        }
+        awaitReplication(seq[0], "PUT key=" + k);
+        finished(putLatency, "put", k, 1, start);
     }
 
-    public byte[] get(String key) throws IOException {
+    @Override
+    public byte[] get(Slice key) throws IOException {
         ensureReady();
-        final String k = validateKey(key);
+        final Slice k = validateKey(key);
+        final long start = System.nanoTime();
 
         try {
-            byte[] val = mem.get(k);
-            if (val != null) return val;
-            //return sst.get(k);
-            return replicator.get(k);
+            byte[] v = valueCache.get(k, () -> find(k));
+            finished(getLatency, "get", k, 1, start);
+            return v;
         } catch (RuntimeException re) {
             throw new IOException("GET failed for key=" + k + ": " + re.getMessage(), re);
         }
     }
 
-    public void delete(String key) throws IOException {
-        ensureReady();
-        final String k = validateKey(key);
+    @Override
+    public void delete(Slice key) throws IOException {
+        ensureWritable();
+        final Slice k = validateKey(key);
+        final long[] seq = new long[1];
+        final long start = System.nanoTime();
 
         try {
             writeQueue.enqueue(() -> {
                 try {
-                    wal.appendDel(k);
+                    seq[0] = wal.appendDel(k);
                     mem.delete(k);
+                    valueCache.invalidate(k);
+                    maybeFlush();
                     compactor.maybeSchedule();
                 } catch (IOException ioe) {
                     throw new UncheckedIOException(ioe);
@@ -155,13 +313,591 @@ public class StorageEngine implements AutoCloseable, Closeable {
             throw new IOException("DELETE failed for key=" + k + ": " + re.getMessage(), re);
         }
 
-        if (replicator != null) {
+        awaitReplication(seq[0], "DELETE key=" + k);
+        finished(deleteLatency, "delete", k, 1, start);
+    }
+
+    /**
+     * Deletes every key in {@code [startKey, endKey]} (inclusive, as in
+     * {@link #getRange}) with one range tombstone: a single WAL record, however
+     * many keys it covers. Nothing is deleted if the start is after the end.
+     */
+    @Override
+    public void deleteRange(Slice startKey, Slice endKey) throws IOException {
+        ensureWritable();
+        final Slice from = validateKey(startKey);
+        final Slice to = validateKey(endKey);
+        if (from.compareTo(to) > 0) return;
+        final long[] seq = new long[1];
+        final long start = System.nanoTime();
+
+        try {
+            writeQueue.enqueue(() -> {
+                try {
+                    seq[0] = wal.appendDelRange(from, to);
+                    mem.deleteRange(from, to);
+                    valueCache.invalidateRange(from, to);
+                    maybeFlush();
+                    compactor.maybeSchedule();
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        } catch (UncheckedIOException uioe) {
+            throw new IOException("DELETE_RANGE failed for " + from + ".." + to + ": WAL/memtable error", uioe.getCause());
+        } catch (IllegalStateException ise) {
+            throw new IOException("DELETE_RANGE rejected for " + from + ".." + to + ": " + ise.getMessage(), ise);
+        } catch (RuntimeException re) {
+            throw new IOException("DELETE_RANGE failed for " + from + ".." + to + ": " + re.getMessage(), re);
+        }
+
+        awaitReplication(seq[0], "DELETE_RANGE " + from + ".." + to);
+        finished(deleteRangeLatency, "delete_range", from + ".." + to, 1, start);
+    }
+
+    /**
+     * Atomically replaces the value of {@code key} if it currently equals
+     * {@code expected} (null = absent or deleted). A null {@code newValue} deletes
+     * the key. Returns false, writing nothing, if the value differed.
+     */
+    @Override
+    public boolean compareAndSet(Slice key, byte[] expected, byte[] newValue) throws IOException {
+        ensureWritable();
+        final Slice k = validateKey(key);
+        final long[] seq = new long[1];
+        final boolean[] swapped = new boolean[1];
+        final long start = System.nanoTime();
+
+        try {
+            writeQueue.enqueue(() -> {
+                try {
+                    // the writer thread orders this read with every other write
+                    Entry current = find(k);
+                    byte[] v = current == null || current.isTombstone() ? null : current.value();
+                    if (!Arrays.equals(v, expected)) return;
+                    if (newValue == null) {
+                        seq[0] = wal.appendDel(k);
+                        mem.delete(k);
+                    } else {
+                        seq[0] = wal.appendPut(k, newValue);
+                        mem.put(k, newValue);
+                    }
+                    swapped[0] = true;
+                    valueCache.invalidate(k);
+                    maybeFlush();
+                    compactor.maybeSchedule();
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        } catch (UncheckedIOException uioe) {
+            throw new IOException("CAS failed for key=" + k + ": WAL/memtable error", uioe.getCause());
+        } catch (IllegalStateException ise) {
+            throw new IOException("CAS rejected for key=" + k + ": " + ise.getMessage(), ise);
+        } catch (RuntimeException re) {
+            throw new IOException("CAS failed for key=" + k + ": " + re.getMessage(), re);
+        }
+
+        awaitReplication(seq[0], "CAS key=" + k);
+        finished(casLatency, "cas", k, 1, start);
+        return swapped[0];
+    }
+
+    /**
+     * Records {@code operand} for the configured {@link MergeOperator} without
+     * reading the current value; it is folded in on reads and compaction.
+     */
+    @Override
+    public void merge(Slice key, byte[] operand) throws IOException {
+        ensureWritable();
+        final Slice k = validateKey(key);
+        final byte[] op = operand == null ? new byte[0] : operand;
+        final long[] seq = new long[1];
+        final long start = System.nanoTime();
+
+        try {
+            writeQueue.enqueue(() -> {
+                try {
+                    seq[0] = logMerge(k, op);
+                    valueCache.invalidate(k);
+                    maybeFlush();
+                    compactor.maybeSchedule();
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        } catch (UncheckedIOException uioe) {
+            throw new IOException("MERGE failed for key=" + k + ": WAL/memtable error", uioe.getCause());
+        } catch (IllegalStateException ise) {
+            throw new IOException("MERGE rejected for key=" + k + ": " + ise.getMessage(), ise);
+        } catch (RuntimeException re) {
+            throw new IOException("MERGE failed for key=" + k + ": " + re.getMessage(), re);
+        }
+
+        awaitReplication(seq[0], "MERGE key=" + k);
+        finished(mergeLatency, "merge", k, 1, start);
+    }
+
+    /** Adds {@code delta} to a decimal counter; needs the (default) counter merge operator. */
+    @Override
+    public void increment(Slice key, long delta) throws IOException {
+        if (!(cfg.getMergeOperator() instanceof CounterMergeOperator)) {
+            throw new IOException("INCREMENT needs the counter merge operator, not " + cfg.getMergeOperator().name());
+        }
+        merge(key, CounterMergeOperator.operand(delta));
+    }
+
+    /**
+     * Writer thread: logs and applies one merge operand. The operand inherits the
+     * expiry of the value it will fold into. If that value has already expired the
+     * operand starts from scratch instead, and the result is logged as a plain PUT
+     * so replay does not depend on the clock.
+     */
+    private long logMerge(Slice k, byte[] operand) throws IOException {
+        MergeOperator op = cfg.getMergeOperator();
+        Entry below = mem.get(k);
+        // only the first merge of a key per MemTable looks at the SSTables (index and cached blocks)
+        if (below == null) below = tables.get(k);
+        if (below != null && below.isExpired(System.currentTimeMillis())) {
+            byte[] v = op.fullMerge(k, null, List.of(operand));
+            long seq = wal.appendPut(k, v);
+            mem.put(k, v);
+            return seq;
+        }
+        long expiresAt = below == null || below.isTombstone() ? 0 : below.expiresAt();
+        long seq = wal.appendMerge(k, operand, expiresAt);
+        mem.merge(k, operand, expiresAt, op);
+        return seq;
+    }
+
+    // -------------------- Replication hooks --------------------
+
+    /** Sequence number of the newest record in the WAL. */
+    public long lastSequence() {
+        return wal.lastSeq();
+    }
+
+    /** Sequence number of the newest record forced to disk; WAL readers stop there. */
+    public long syncedSequence() {
+        return wal.syncedSeq();
+    }
+
+    /** Oldest sequence number a follower can still resume from. */
+    public long firstRetainedSequence() {
+        return wal.firstRetainedSeq();
+    }
+
+    /** Tails the WAL from {@code fromSeq}; used by the leader to ship records. */
+    public WAL.Reader openWalReader(long fromSeq) throws IOException {
+        ensureReady();
+        return wal.newReader(fromSeq);
+    }
+
+    /** Forces records still waiting for the WAL's fsync to disk, so WAL readers can ship them. */
+    public void syncWal() throws IOException {
+        ensureReady();
+        if (wal.syncedSeq() < wal.lastSeq()) wal.sync();
+    }
+
+    /**
+     * Applies records shipped by the leader, keeping their sequence numbers. Records
+     * already applied (after a reconnect) are skipped; a gap is an error. The batch
+     * is synced before returning so it can be acknowledged.
+     */
+    public void applyReplicated(List<WAL.Record> batch) throws IOException {
+        ensureReady();
+        try {
+            writeQueue.enqueue(() -> {
+                try {
+                    for (WAL.Record r : batch) {
+                        if (r.seq <= wal.lastSeq()) continue;
+                        if (r.seq != wal.lastSeq() + 1) {
+                            throw new IOException("Replication gap: expected seq " + (wal.lastSeq() + 1) + ", got " + r.seq);
+                        }
+                        wal.append(r);
+                        mem.apply(r, cfg.getMergeOperator());
+                        if (r.type == WAL.TYPE_DEL_RANGE) valueCache.invalidateRange(r.key, Slice.wrap(r.value));
+                        else valueCache.invalidate(r.key);
+                    }
+                    wal.sync();
+                    maybeFlush();
+                    compactor.maybeSchedule();
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        } catch (UncheckedIOException uioe) {
+            throw new IOException("Applying replicated batch failed: " + uioe.getCause().getMessage(), uioe.getCause());
+        } catch (RuntimeException re) {
+            throw new IOException("Applying replicated batch failed: " + re.getMessage(), re);
+        }
+    }
+
+    /**
+     * Flushes the MemTable and hard-links every SSTable and value-log file into a
+     * new snapshot directory. Writes are only held up for the flush and the links;
+     * compaction and value-log GC are held off for the same span, so no file is
+     * deleted while it is being linked. The caller ships and then closes it.
+     */
+    public Snapshot createSnapshot() throws IOException {
+        ensureReady();
+        final Path dir = dataDir.resolve(SNAPSHOT_DIR_PREFIX + System.nanoTime());
+        return compactor.runExclusive(() -> callOnWriter(() -> {
+            flush();
+            Map<Path, Long> sources = valueLog.fileLengths();
+            List<SSTable> snapshot = tables.acquire();
             try {
-               // replicator.replicateDel(k);
-            } catch (RuntimeException re) {
-                System.err.println("[WARN] Replication DELETE failed for key=" + k + ": " + re.getMessage());
+                for (int i = snapshot.size() - 1; i >= 0; i--) { // oldest first
+                    sources.put(snapshot.get(i).path(), Files.size(snapshot.get(i).path()));
+                }
+                return Snapshot.link(dir, wal.lastSeq(), sources);
+            } finally {
+                tables.release(snapshot);
+            }
+        }));
+    }
+
+    /**
+     * Writes a {@link Checkpoint} of the current state into {@code dir}, which must not
+     * exist. Nothing is flushed: the SSTables and value-log files are hard-linked and
+     * the WAL records not yet in a table are copied, so writes are held up only for
+     * the links. With a {@code base} checkpoint, only what was created since is linked.
+     */
+    public Checkpoint checkpoint(Path dir, Path base) throws IOException {
+        ensureReady();
+        Checkpoint.Marks since = base == null ? Checkpoint.Marks.NONE : Checkpoint.Marks.read(base);
+        Checkpoint.createDir(dir);
+        try {
+            Checkpoint.Pending pending = compactor.runExclusive(() -> callOnWriter(() -> {
+                List<SSTable> live = tables.acquire();
+                try {
+                    return Checkpoint.link(dir, base, since, live, valueLog.fileLengths(), tables.valueLogGarbage(),
+                                           wal.tail(tables.maxSeq()), wal.lastSeq());
+                } finally {
+                    tables.release(live);
+                }
+            }));
+            return pending.finish();
+        } catch (IOException | RuntimeException e) {
+            Snapshot.deleteDir(dir);
+            throw e;
+        }
+    }
+
+    /** Empty directory to receive a leader's snapshot files into before {@link #installSnapshot}. */
+    public Path prepareSnapshotDir() throws IOException {
+        Path dir = dataDir.resolve(SNAPSHOT_DIR_PREFIX + "incoming");
+        Snapshot.deleteDir(dir);
+        Files.createDirectories(dir);
+        return dir;
+    }
+
+    /**
+     * Replaces this replica's entire state with the snapshot files in {@code dir}
+     * (SSTables and value-log files, named as on the leader) covering WAL records
+     * up to {@code seq}. The local WAL restarts at {@code seq + 1}.
+     */
+    public void installSnapshot(Path dir, long seq) throws IOException {
+        ensureReady();
+        List<Path> tableFiles = new ArrayList<>();
+        List<Path> logFiles = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                if (TableSet.isTableFile(p)) tableFiles.add(p);
+                else if (ValueLog.isLogFile(p)) logFiles.add(p);
+            }
+        }
+        tableFiles.sort(null); // zero-padded ids: name order is age order
+        compactor.runExclusive(() -> callOnWriter(() -> {
+            Path marker = dataDir.resolve(INSTALL_MARKER);
+            Files.write(marker, new byte[0]);
+            valueLog.adopt(logFiles);
+            MemTable old = mem;
+            flushEpoch++;
+            tables.adopt(tableFiles);
+            mem = newMemTable();
+            flushEpoch++;
+            old.close();
+            valueCache.clear();
+            if (merkle != null) rebuildMerkle(seq);
+            // last: a reader that sees the new sequence number sees the new data
+            wal.reset(seq);
+            Files.delete(marker);
+            return null;
+        }));
+        Snapshot.deleteDir(dir);
+    }
+
+    // -------------------- Anti-entropy --------------------
+
+    /**
+     * Returns a copy of the Merkle tree with the MemTable's changes applied to it, so
+     * it covers every write up to its {@link MerkleTree#seq()}; nothing is flushed.
+     * Only replicated engines keep a tree.
+     */
+    public MerkleTree merkleSnapshot() throws IOException {
+        ensureReady();
+        if (merkle == null) throw new IOException("No Merkle tree: engine is not replicated");
+        return callOnWriter(() -> {
+            MerkleTree copy = merkle.copy();
+            applyToMerkle(mem, copy);
+            copy.coveredThrough(wal.lastSeq());
+            return copy;
+        });
+    }
+
+    /**
+     * Visits live entries with keys in {@code [from, to]} in key order, as PUTs with
+     * their values resolved; {@code to == null} means unbounded. Expired entries are
+     * skipped.
+     */
+    public void scan(Slice from, Slice to, Consumer<Entry> visitor) throws IOException {
+        scan(from, to, k -> true, visitor);
+    }
+
+    /** As {@link #scan(Slice, Slice, Consumer)}, skipping keys {@code keys} rejects before their values are read. */
+    public void scan(Slice from, Slice to, Predicate<Slice> keys, Consumer<Entry> visitor) throws IOException {
+        ensureReady();
+        final long now = System.currentTimeMillis();
+        View view = openView();
+        try {
+            List<Iterator<Entry>> sources = new ArrayList<>();
+            List<RangeTombstones> ranges = new ArrayList<>();
+            sources.add(view.mem.iterator(from));
+            ranges.add(view.mem.rangeTombstones());
+            for (SSTable t : view.tables) {
+                sources.add(t.iterator(from));
+                ranges.add(t.rangeTombstones());
+            }
+            MergingIterator it = new MergingIterator(sources, ranges, null, chain -> {
+                if (!keys.test(chain.get(0).key())) return Entry.delete(chain.get(0).key()); // skipped below
+                try {
+                    Entry folded = MergeFold.fold(chain, cfg.getMergeOperator(), valueLog);
+                    if (folded != null) return folded;
+                    Entry moved = find(chain.get(0).key()); // base collected during the scan
+                    return moved != null ? moved : Entry.delete(chain.get(0).key());
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+            while (it.hasNext()) {
+                Entry e = it.next();
+                if (to != null && e.key().compareTo(to) > 0) break;
+                if (e.isTombstone() || e.isExpired(now) || !keys.test(e.key())) continue;
+                if (e.kind() == Entry.VALUE_POINTER) {
+                    byte[] v = valueLog.read(e.value());
+                    if (v == null) {
+                        Entry moved = find(e.key()); // collected during the scan
+                        if (moved == null || moved.isTombstone()) continue;
+                        v = moved.value();
+                    }
+                    visitor.accept(Entry.put(e.key(), v, e.expiresAt()));
+                } else {
+                    visitor.accept(e);
+                }
+            }
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        } finally {
+            tables.release(view.tables);
+        }
+    }
+
+    /**
+     * Anti-entropy repair on the leader: writes each key's current state again so
+     * it is re-shipped to every follower. {@code expected} maps keys to the value
+     * the repair was computed from (null = absent); keys changed since are skipped,
+     * as their newer write is already on its way. Returns the number re-written.
+     */
+    public int rewriteForRepair(Map<Slice, byte[]> expected) throws IOException {
+        ensureWritable();
+        final long[] seq = new long[1];
+        int rewritten = callOnWriter(() -> {
+            int n = 0;
+            for (Map.Entry<Slice, byte[]> x : expected.entrySet()) {
+                Slice k = x.getKey();
+                Entry current = find(k);
+                byte[] v = current == null || current.isTombstone() ? null : current.value();
+                if (!Arrays.equals(v, x.getValue())) continue;
+                if (v == null) {
+                    seq[0] = wal.appendDel(k);
+                    mem.delete(k);
+                } else {
+                    seq[0] = wal.appendPut(k, v, current.expiresAt());
+                    mem.put(k, v, current.expiresAt());
+                }
+                valueCache.invalidate(k);
+                n++;
+                maybeFlush();
+            }
+            compactor.maybeSchedule();
+            return n;
+        });
+        awaitReplication(seq[0], "REPAIR");
+        return rewritten;
+    }
+
+    /**
+     * Newest version of {@code k} in the SSTables with {@code above} (a MemTable
+     * MERGE entry, or null) folded on top and pointers resolved; null if absent.
+     * Writer thread.
+     */
+    private Entry tableEntry(Slice k, Entry above) throws IOException {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            List<Entry> chain = new ArrayList<>();
+            if (above != null) chain.add(above);
+            tables.collectVersions(k, chain);
+            if (chain.isEmpty()) return null;
+            Entry e = chain.get(0);
+            if (e.isMerge()) {
+                e = MergeFold.fold(chain, cfg.getMergeOperator(), valueLog);
+            } else if (e.kind() == Entry.VALUE_POINTER) {
+                byte[] v = valueLog.read(e.value());
+                e = v == null ? null : Entry.put(k, v, e.expiresAt());
+            }
+            if (e != null) return e;
+        }
+        throw new IOException("Value for key=" + k + " kept moving during lookup");
+    }
+
+    /**
+     * Applies what {@code m} changes over the SSTables to {@code tree}: the pairs its
+     * range deletes take out, then each of its keys' old and new contribution.
+     * Writer thread.
+     */
+    private void applyToMerkle(MemTable m, MerkleTree tree) throws IOException {
+        RangeTombstones ranges = m.rangeTombstones();
+        // keys rewritten after a range delete are handled below
+        for (Map.Entry<Slice, Slice> r : ranges.asMap().entrySet()) {
+            visitTableValues(r.getKey(), r.getValue(), (k, v) -> tree.update(k, v, null));
+        }
+        for (Iterator<Entry> it = m.iterator(); it.hasNext(); ) {
+            Entry e = it.next();
+            Entry latest = e.isMerge() ? tableEntry(e.key(), e) : e;
+            Entry below = ranges.covers(e.key()) ? null : tableEntry(e.key(), null);
+            tree.update(e.key(), merkleValue(below), merkleValue(latest));
+        }
+    }
+
+    /** What an entry contributes to the Merkle tree; entries with an expiry are left out. */
+    private static byte[] merkleValue(Entry e) {
+        return e == null || e.isTombstone() || e.expiresAt() != 0 ? null : e.value();
+    }
+
+    private void loadMerkle(long flushedSeq) throws IOException {
+        MerkleTree saved = MerkleTree.load(dataDir.resolve(MERKLE_FILE), merkle.depth(), flushedSeq);
+        if (saved == null) {
+            rebuildMerkle(flushedSeq);
+            return;
+        }
+        merkle.copyFrom(saved);
+    }
+
+    /** Recomputes the tree from every live pair; the MemTable must be empty. */
+    private void rebuildMerkle(long seq) throws IOException {
+        merkle.clear();
+        visitTableValues(null, null, (k, v) -> merkle.update(k, null, v));
+        merkle.coveredThrough(seq);
+        merkle.save(dataDir.resolve(MERKLE_FILE));
+    }
+
+    /**
+     * Visits the pairs the SSTables alone hold live in {@code [from, to]} (null =
+     * unbounded), leaving out those with an expiry, as the Merkle tree does.
+     * Writer thread.
+     */
+    private void visitTableValues(Slice from, Slice to, BiConsumer<Slice, byte[]> visitor) throws IOException {
+        List<SSTable> snapshot = tables.acquire();
+        try {
+            List<Iterator<Entry>> sources = new ArrayList<>();
+            List<RangeTombstones> ranges = new ArrayList<>();
+            for (SSTable t : snapshot) {
+                sources.add(from == null ? t.iterator() : t.iterator(from));
+                ranges.add(t.rangeTombstones());
+            }
+            MergingIterator it = new MergingIterator(sources, ranges, null, chain -> {
+                try {
+                    Entry folded = MergeFold.fold(chain, cfg.getMergeOperator(), valueLog);
+                    return folded != null ? folded : Entry.delete(chain.get(0).key());
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+            while (it.hasNext()) {
+                Entry e = it.next();
+                if (to != null && e.key().compareTo(to) > 0) break;
+                if (e.isTombstone() || e.expiresAt() != 0) continue;
+                byte[] v = e.kind() == Entry.VALUE_POINTER ? valueLog.read(e.value()) : e.value();
+                if (v != null) visitor.accept(e.key(), v);
+            }
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        } finally {
+            tables.release(snapshot);
+        }
+    }
+
+    /**
+     * Removes snapshot directories left by a crash, and if a snapshot install was
+     * interrupted, wipes the data files so the replica starts empty and asks for a
+     * fresh snapshot. Returns whether it did.
+     */
+    private static boolean clearSnapshotLeftovers(Path dataDir) throws IOException {
+        if (!Files.isDirectory(dataDir)) return false;
+        boolean interrupted = Files.deleteIfExists(dataDir.resolve(INSTALL_MARKER));
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dataDir)) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                if (name.startsWith(SNAPSHOT_DIR_PREFIX) && Files.isDirectory(p)) {
+                    Snapshot.deleteDir(p);
+                } else if (interrupted && (TableSet.isTableFile(p) || Manifest.isManifestFile(p)
+                                        || ValueLog.isLogFile(p) || WAL.isSegmentFile(p))) {
+                    Files.delete(p);
+                }
             }
         }
+        if (interrupted) System.err.println("[WARN] Interrupted snapshot install in " + dataDir + "; starting empty");
+        return interrupted;
+    }
+
+    /** Runs {@code task} on the writer thread and returns its result. */
+    private <T> T callOnWriter(Callable<T> task) throws IOException {
+        List<T> result = new ArrayList<>(1);
+        try {
+            writeQueue.enqueue(() -> {
+                try {
+                    result.add(task.call());
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                } catch (RuntimeException re) {
+                    throw re;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        } catch (IllegalStateException ise) {
+            throw new IOException(ise.getMessage(), ise);
+        }
+        return result.get(0);
+    }
+
+    private void ensureWritable() throws IOException {
+        ensureReady();
+        if (replicator != null && !replicator.acceptsWrites()) {
+            throw new IOException("Read-only replica: send writes to the leader");
+        }
+    }
+
+    /** Blocks per the configured ack mode; runs after the writer thread has released the write. */
+    private void awaitReplication(long seq, String what) throws IOException {
+        if (replicator == null || seq == 0) return;
+        try {
+            replicator.awaitReplication(seq);
+        } catch (IOException ioe) {
+            throw new IOException(what + " is durable locally but was not acknowledged by replicas: " + ioe.getMessage(), ioe);
+        }
     }
 
     @Override
@@ -169,6 +905,7 @@ public class StorageEngine implements AutoCloseable, Closeable {
         if (closed.compareAndSet(false, true)) {
             // Best-effort shutdown; collect first failure to report
             IOException first = null;
+            for (Runnable unregister : gauges) unregister.run();
 
             try {
                 compactor.stop();
@@ -176,11 +913,29 @@ public class StorageEngine implements AutoCloseable, Closeable {
                 first = wrap(first, new IOException("Failed to stop compactor", re));
             }
 
+            if (replicator != null) {
+                try {
+                    replicator.close();
+                } catch (IOException ioe) {
+                    first = wrap(first, new IOException("Failed to stop replicator", ioe));
+                }
+            }
+
+            // Runs every accepted write, then the group commit of the async ones still pending.
             try {
                 writeQueue.shutdown();
             } catch (RuntimeException re) {
                 first = wrap(first, new IOException("Failed to shutdown write queue", re));
             }
+            // Lets queued reads and write completions finish before the files they use are closed.
+            ioPool.shutdown();
+            try {
+                if (!ioPool.awaitTermination(30, TimeUnit.SECONDS)) {
+                    first = wrap(first, new IOException("Async operations still running after 30s"));
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
 
             try {
                 wal.close();
@@ -188,12 +943,136 @@ public class StorageEngine implements AutoCloseable, Closeable {
                 first = wrap(first, new IOException("Failed to close WAL", ioe));
             }
 
+            tables.close();
+
+            try {
+                valueLog.close();
+            } catch (IOException ioe) {
+                first = wrap(first, new IOException("Failed to close value log", ioe));
+            }
+
             if (first != null) throw first;
         }
     }
 
     // -------------------- Helpers --------------------
 
+    private MemTable newMemTable() {
+        return cfg.isOffHeapMemtable() ? new ArenaMemTable(cfg.getArenaChunkBytes()) : new HeapMemTable();
+    }
+
+    /** Runs on the writer thread; flushes once the MemTable reaches the configured size. */
+    private void maybeFlush() throws IOException {
+        if (mem.sizeBytes() >= cfg.getMemtableFlushBytes()) flush();
+    }
+
+    /**
+     * Writes the MemTable out as a new SSTable tagged with the WAL's last sequence
+     * number, starts a new WAL segment, and replaces the table; the old table (and
+     * its arena, if off-heap) is dropped as a whole. Segments the flush covered are
+     * deleted once they fall outside the replication retention budget.
+     */
+    private void flush() throws IOException {
+        MemTable full = mem;
+        RangeTombstones ranges = full.rangeTombstones();
+        if (full.size() == 0 && ranges.isEmpty()) return;
+        long start = System.nanoTime();
+        FlushEvent event = new FlushEvent();
+        event.begin();
+        int entries = full.size();
+        long seq = wal.lastSeq();
+        if (merkle != null) applyToMerkle(full, merkle);
+        List<SSTable> written;
+        tables.lockIdOrder();
+        try {
+            written = writeFlushTables(full, ranges, seq);
+            flushEpoch++;
+            try {
+                if (!written.isEmpty()) tables.replace(Collections.emptyList(), written);
+                mem = newMemTable();
+            } catch (IOException | RuntimeException e) {
+                for (SSTable t : written) { // not published; the MemTable stays as it is
+                    t.markObsolete();
+                    t.release();
+                }
+                throw e;
+            } finally {
+                flushEpoch++;
+            }
+        } finally {
+            tables.unlockIdOrder();
+        }
+        if (merkle != null) {
+            merkle.coveredThrough(seq);
+            merkle.save(dataDir.resolve(MERKLE_FILE));
+        }
+        wal.rotate();
+        wal.deleteObsolete(seq);
+        full.close();
+        long bytes = 0;
+        for (SSTable t : written) bytes += t.fileBytes();
+        flushBytes.add(bytes);
+        flushLatency.recordSince(start);
+        if (event.shouldCommit()) {
+            event.dataDir = dataDir.toString();
+            event.entries = entries;
+            event.bytes = bytes;
+            event.tableId = written.isEmpty() ? -1 : written.get(0).id();
+            event.maxSeq = seq;
+            event.commit();
+        }
+    }
+
+    /**
+     * Writes the MemTable out; a large one is split into key ranges written to
+     * separate tables in parallel on the compactor's pool. The first range's table
+     * gets the lowest id and carries the range tombstones, so they shadow only
+     * older tables and not the rest of this flush.
+     */
+    private List<SSTable> writeFlushTables(MemTable full, RangeTombstones ranges, long seq) throws IOException {
+        int parts = Math.min(full.size(), compactor.parts(full.sizeBytes()));
+        if (parts <= 1) {
+            SSTable table = tables.writeTable(tables.newTableId(), separate(full.iterator()), ranges, seq);
+            return table == null ? Collections.emptyList() : Collections.singletonList(table);
+        }
+        List<Slice> splits = new ArrayList<>(parts - 1);
+        int n = full.size(), i = 0;
+        for (Iterator<Entry> it = full.iterator(); it.hasNext() && splits.size() < parts - 1; i++) {
+            Entry e = it.next();
+            if (i == (int) ((long) n * (splits.size() + 1) / parts)) splits.add(e.key());
+        }
+        long firstId = tables.newTableIds(splits.size() + 1);
+        List<SSTable> written = Collections.synchronizedList(new ArrayList<>());
+        List<Callable<SSTable>> jobs = new ArrayList<>();
+        for (int p = 0; p <= splits.size(); p++) {
+            Slice from = p == 0 ? null : splits.get(p - 1);
+            Slice to = p == splits.size() ? null : splits.get(p);
+            long id = firstId + p;
+            RangeTombstones carried = p == 0 ? ranges : new RangeTombstones();
+            jobs.add(() -> {
+                Iterator<Entry> part = Compactor.below(from == null ? full.iterator() : full.iterator(from), to);
+                SSTable t = tables.writeTable(id, separate(part), carried, seq);
+                if (t != null) written.add(t);
+                return t;
+            });
+        }
+        try {
+            List<SSTable> out = new ArrayList<>();
+            for (SSTable t : compactor.runParallel(jobs)) if (t != null) out.add(t);
+            return out;
+        } catch (IOException | RuntimeException e) {
+            for (SSTable t : written) {
+                t.markObsolete();
+                t.release();
+            }
+            throw e;
+        }
+    }
+
+    private Iterator<Entry> separate(Iterator<Entry> sorted) {
+        return cfg.getValueLogThreshold() > 0 ? valueLog.separate(sorted) : sorted;
+    }
+
     private void ensureReady() throws IOException {
         ensureNotClosed();
         if (!started.get()) {
@@ -207,15 +1086,159 @@ public class StorageEngine implements AutoCloseable, Closeable {
         }
     }
 
-    private static String validateKey(String key) throws IOException {
+    private static void validateExpiry(long expiresAt) throws IOException {
+        if (expiresAt < 0) throw new IOException("expiresAt must be epoch millis, or 0 for no expiry");
+    }
+
+    private static Slice validateKey(Slice key) throws IOException {
         if (key == null) throw new IOException("Key must not be null");
-        String k = key.trim();
-        if (k.isEmpty()) throw new IOException("Key must not be empty");
+        Slice k = trimKey(key);
+        if (k.length() == 0) throw new IOException("Key must not be empty");
         // Optional: enforce a max key size to avoid pathological inputs
-        if (k.length() > 1024) throw new IOException("Key too large (max 1024 chars)");
+        if (k.length() > 1024) throw new IOException("Key too large (max 1024 bytes)");
         return k;
     }
 
+    /**
+     * The key as the engine stores it: ASCII whitespace/control bytes trimmed at
+     * both ends. Narrows the view, never copies.
+     */
+    static Slice trimKey(Slice key) {
+        int from = 0, to = key.length();
+        while (from < to && (key.get(from) & 0xFF) <= ' ') from++;
+        while (to > from && (key.get(to - 1) & 0xFF) <= ' ') to--;
+        return from == 0 && to == key.length() ? key : key.slice(from, to);
+    }
+
+    /**
+     * Newest entry for {@code k} from the MemTable, then the SSTables, with value-log
+     * pointers resolved. Returns null if no entry exists; an expired entry comes
+     * back as a tombstone.
+     */
+    private Entry find(Slice k) throws IOException {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            Entry e = mem.get(k);
+            if (e == null) e = tables.get(k);
+            if (e != null && e.isExpired(System.currentTimeMillis())) return Entry.delete(k);
+            if (e != null && e.isMerge()) {
+                Entry folded = foldVersions(k);
+                if (folded != null) return folded;
+                continue;
+            }
+            if (e == null || e.kind() != Entry.VALUE_POINTER) return e;
+            byte[] v = valueLog.read(e.value());
+            if (v != null) return Entry.put(k, v, e.expiresAt());
+            // the value-log file was collected under us; the relocated copy is newer, look again
+        }
+        throw new IOException("Value for key=" + k + " kept moving during lookup");
+    }
+
+    /**
+     * Folds the merge operands on top of {@code k} into the version beneath them.
+     * Null if that changed meanwhile (a flush, or the base value moved).
+     */
+    private Entry foldVersions(Slice k) throws IOException {
+        View view = openView();
+        try {
+            List<Entry> chain = new ArrayList<>();
+            Entry top = view.mem.get(k);
+            if (top != null) chain.add(top);
+            if (top == null || top.isMerge()) {
+                for (SSTable t : view.tables) {
+                    Entry e = t.get(k);
+                    if (e == null) continue;
+                    chain.add(e);
+                    if (!e.isMerge()) break;
+                }
+            }
+            if (chain.isEmpty() || !chain.get(0).isMerge()) return null;
+            return MergeFold.fold(chain, cfg.getMergeOperator(), valueLog);
+        } finally {
+            tables.release(view.tables);
+        }
+    }
+
+    /** A MemTable and a pinned SSTable snapshot that no flush was published between. */
+    private static final class View {
+        final MemTable mem;
+        final List<SSTable> tables;
+
+        View(MemTable mem, List<SSTable> tables) {
+            this.mem = mem;
+            this.tables = tables;
+        }
+    }
+
+    /**
+     * Pairs the MemTable with the SSTables it sits on top of. Without this, a flush
+     * landing between the two reads would show the flushed entries twice, which
+     * would apply a merge operand twice. Release {@code tables} when done.
+     */
+    private View openView() {
+        while (true) {
+            int epoch = flushEpoch;
+            if ((epoch & 1) == 0) {
+                MemTable m = mem;
+                List<SSTable> snapshot = tables.acquire();
+                if (flushEpoch == epoch) return new View(m, snapshot);
+                tables.release(snapshot);
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Value-log GC callback: copies a live value into the MemTable, unless the key
+     * has been overwritten or deleted since {@code pointer} was written. The copy is
+     * not logged, so the WAL only ever carries client writes (and followers keep the
+     * leader's sequence numbers); {@link #syncRelocated()} flushes it instead.
+     */
+    private boolean relocate(Slice key, byte[] pointer, byte[] value) {
+        try {
+            writeQueue.enqueue(() -> {
+                try {
+                    List<Entry> chain = new ArrayList<>();
+                    Entry top = mem.get(key);
+                    if (top != null) chain.add(top);
+                    if (top == null || top.isMerge()) tables.collectVersions(key, chain);
+                    Entry base = chain.isEmpty() ? null : chain.get(chain.size() - 1);
+                    if (base == null || base.kind() != Entry.VALUE_POINTER
+                            || !Arrays.equals(base.value(), pointer)
+                            || chain.get(0).isExpired(System.currentTimeMillis())) {
+                        return; // stale: nothing references this copy any more
+                    }
+                    // pending merge operands above the value are folded into the copy
+                    chain.set(chain.size() - 1, Entry.put(key, value, base.expiresAt()));
+                    Entry copy = chain.size() == 1 ? chain.get(0) : MergeFold.fold(chain, cfg.getMergeOperator(), valueLog);
+                    mem.put(key, copy.value(), copy.expiresAt());
+                    maybeFlush();
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+            return true;
+        } catch (IllegalStateException rejected) {
+            return false; // queue full or shutting down; keep the file for a later pass
+        }
+    }
+
+    /** Makes relocated values durable before the value-log GC deletes their old file. */
+    private void syncRelocated() throws IOException {
+        try {
+            writeQueue.enqueue(() -> {
+                try {
+                    flush();
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        } catch (IllegalStateException ise) {
+            throw new IOException("Cannot flush relocated values: " + ise.getMessage(), ise);
+        }
+    }
+
     private void safeCloseWal() {
         try { wal.close(); } catch (IOException ignore) { /* best effort */ }
     }
@@ -226,20 +1249,25 @@ public class StorageEngine implements AutoCloseable, Closeable {
         return existing;
     }
 
-    public void putBatch(Map<String, byte[]> entries) throws IOException {
-        ensureReady();
+    @Override
+    public void putBatch(Map<Slice, byte[]> entries, long expiresAt) throws IOException {
+        ensureWritable();
+        validateExpiry(expiresAt);
+        final long[] seq = new long[1];
+        final long start = System.nanoTime();
 
         try {
             writeQueue.enqueue(() -> {
                 try {
-                    for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
-                        final String k = validateKey(entry.getKey());
+                    for (Map.Entry<Slice, byte[]> entry : entries.entrySet()) {
+                        final Slice k = validateKey(entry.getKey());
                         final byte[] v = entry.getValue() == null ? new byte[0] : entry.getValue();
 
-                        wal.appendPut(k, v);
-                        mem.put(k, v);
-                        sst.write(k, v);
+                        seq[0] = wal.appendPut(k, v, expiresAt);
+                        mem.put(k, v, expiresAt);
+                        valueCache.invalidate(k);
                     }
+                    maybeFlush();
                     compactor.maybeSchedule();
                 } catch (IOException ioe) {
                     throw new UncheckedIOException(ioe);
@@ -255,57 +1283,256 @@ public class StorageEngine implements AutoCloseable, Closeable {
             throw new IOException("PUT_BATCH failed: " + re.getMessage(), re);
         }
 
-        // Replication should not fail the primary write
-        if (replicator != null) {
-            try {
-                replicator.putBatch(entries);
-            } catch (RuntimeException re) {
-                System.err.println("[WARN] Replication PUT_BATCH failed: " + re.getMessage());
-            }
-        }
+        awaitReplication(seq[0], "PUT_BATCH");
+        finished(putBatchLatency, "put_batch", firstKey(entries.keySet()), entries.size(), start);
     }
 
-    public Map<String, byte[]> getBatch(List<String> keys) throws IOException {
+    @Override
+    public Map<Slice, byte[]> getBatch(List<Slice> keys) throws IOException {
         ensureReady();
-        Map<String, byte[]> results = new HashMap<>();
+        Map<Slice, byte[]> results = new HashMap<>();
+        final long start = System.nanoTime();
 
         try {
-            for (String key : keys) {
-                final String k = validateKey(key);
-                byte[] val = mem.get(k);
+            for (Slice key : keys) {
+                final Slice k = validateKey(key);
+                byte[] v = valueCache.get(k, () -> find(k));
 
-                if (val != null) {
-                    results.put(k, val);
-                } else {
-                    // try replicator first
-                    byte[] replVal = replicator != null ? replicator.get(k) : null;
-                    if (replVal != null) {
-                        results.put(k, replVal);
-                    } else {
-                        // fallback SSTable (if implemented)
-                        // byte[] sstVal = sst.get(k);
-                        // if (sstVal != null) results.put(k, sstVal);
-                    }
-                }
+                if (v != null) results.put(k, v);
             }
         } catch (RuntimeException re) {
             throw new IOException("GET_BATCH failed: " + re.getMessage(), re);
         }
 
+        finished(getBatchLatency, "get_batch", firstKey(keys), keys.size(), start);
         return results;
     }
 
-    public Map<String, byte[]> getRange(String startKey, String endKey) throws IOException {
+    /** Live keys in {@code [startKey, endKey]}, merged from the MemTable and every SSTable. */
+    @Override
+    public SortedMap<Slice, byte[]> getRange(Slice startKey, Slice endKey) throws IOException {
         ensureReady();
+        final Slice from = validateKey(startKey);
+        final Slice to = validateKey(endKey);
+        SortedMap<Slice, byte[]> results = new TreeMap<>();
+        if (from.compareTo(to) > 0) return results;
+        final long start = System.nanoTime();
         try {
-            if (replicator != null) {
-                return replicator.getRange(startKey, endKey);
-            } else {
-                return new HashMap<>(); // no replicator configured
-            }
+            scan(from, to, e -> results.put(e.key(), e.value()));
         } catch (RuntimeException re) {
             throw new IOException("GET_RANGE failed: " + re.getMessage(), re);
         }
+        finished(rangeLatency, "range", from + ".." + to, results.size(), start);
+        return results;
+    }
+
+    // -------------------- Async API --------------------
+
+    /** One logged write of an async caller, waiting for the fsync that commits its group. */
+    private static final class PendingWrite {
+        final long seq;
+        final CompletableFuture<Void> done;
+        final String what;
+        final Histogram latency;
+        final String op;
+        final Object key;
+        final int keys;
+        final long start;
+
+        PendingWrite(long seq, CompletableFuture<Void> done, String what, Histogram latency, String op, Object key,
+                     int keys, long start) {
+            this.seq = seq;
+            this.done = done;
+            this.what = what;
+            this.latency = latency;
+            this.op = op;
+            this.key = key;
+            this.keys = keys;
+            this.start = start;
+        }
+    }
+
+    /** A mutation of the WAL and MemTable, run on the writer thread; returns its last sequence number. */
+    @FunctionalInterface
+    private interface LoggedWrite {
+        long apply() throws IOException;
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(Slice key, byte[] value, long expiresAt) {
+        final Slice k;
+        try {
+            ensureWritable();
+            k = validateKey(key);
+            validateExpiry(expiresAt);
+        } catch (IOException ioe) {
+            return CompletableFuture.failedFuture(ioe);
+        }
+        final byte[] v = value == null ? new byte[0] : value;
+        return submitWrite("PUT key=" + k, putLatency, "put", k, 1, () -> {
+            long seq = wal.appendPut(k, v, expiresAt);
+            mem.put(k, v, expiresAt);
+            valueCache.invalidate(k);
+            return seq;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(Slice key) {
+        final Slice k;
+        try {
+            ensureWritable();
+            k = validateKey(key);
+        } catch (IOException ioe) {
+            return CompletableFuture.failedFuture(ioe);
+        }
+        return submitWrite("DELETE key=" + k, deleteLatency, "delete", k, 1, () -> {
+            long seq = wal.appendDel(k);
+            mem.delete(k);
+            valueCache.invalidate(k);
+            return seq;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> putBatchAsync(Map<Slice, byte[]> entries, long expiresAt) {
+        try {
+            ensureWritable();
+            validateExpiry(expiresAt);
+        } catch (IOException ioe) {
+            return CompletableFuture.failedFuture(ioe);
+        }
+        return submitWrite("PUT_BATCH", putBatchLatency, "put_batch", firstKey(entries.keySet()), entries.size(), () -> {
+            long seq = 0;
+            for (Map.Entry<Slice, byte[]> entry : entries.entrySet()) {
+                final Slice k = validateKey(entry.getKey());
+                final byte[] v = entry.getValue() == null ? new byte[0] : entry.getValue();
+
+                seq = wal.appendPut(k, v, expiresAt);
+                mem.put(k, v, expiresAt);
+                valueCache.invalidate(k);
+            }
+            return seq;
+        });
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getAsync(Slice key) {
+        return onIoPool(() -> get(key));
+    }
+
+    @Override
+    public CompletableFuture<Map<Slice, byte[]>> getBatchAsync(List<Slice> keys) {
+        return onIoPool(() -> getBatch(keys));
+    }
+
+    @Override
+    public CompletableFuture<SortedMap<Slice, byte[]>> getRangeAsync(Slice startKey, Slice endKey) {
+        return onIoPool(() -> getRange(startKey, endKey));
+    }
+
+    /**
+     * Hands {@code write} to the writer thread without waiting. The returned future
+     * completes on the I/O pool once the WAL fsync of its group has covered it and
+     * replicas have acknowledged it per the ack mode, or fails with an IOException.
+     */
+    private CompletableFuture<Void> submitWrite(String what, Histogram latency, String op, Object key, int keys,
+                                                LoggedWrite write) {
+        final long start = System.nanoTime();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        try {
+            writeQueue.submit(() -> {
+                long seq;
+                try {
+                    seq = write.apply();
+                    maybeFlush();
+                    compactor.maybeSchedule();
+                } catch (IOException | RuntimeException e) {
+                    IOException failure = new IOException(what + " failed: " + e.getMessage(), e);
+                    completeOffWriter(() -> done.completeExceptionally(failure));
+                    return;
+                }
+                pendingWrites.add(new PendingWrite(seq, done, what, latency, op, key, keys, start));
+            }, abandoned -> done.completeExceptionally(new IOException(what + " rejected: " + abandoned.getMessage(), abandoned)));
+        } catch (IllegalStateException ise) {
+            done.completeExceptionally(new IOException(what + " rejected: " + ise.getMessage(), ise));
+        }
+        return done;
+    }
+
+    /**
+     * Group commit, run by the writer thread after each task: once no more writes
+     * are queued (or the group is large, or an interval fsync already covered it),
+     * one WAL fsync commits every pending async write and the I/O pool completes them.
+     */
+    private void commitPendingWrites() {
+        if (pendingWrites.isEmpty()) return;
+        long last = pendingWrites.get(pendingWrites.size() - 1).seq;
+        boolean synced = wal.syncedSeq() >= last;
+        if (!synced && writeQueue.size() > 0 && pendingWrites.size() < MAX_COMMIT_GROUP) return;
+
+        List<PendingWrite> group = new ArrayList<>(pendingWrites);
+        pendingWrites.clear();
+        IOException failure = null;
+        if (!synced) {
+            try {
+                wal.sync();
+            } catch (IOException ioe) {
+                failure = new IOException("WAL fsync failed: " + ioe.getMessage(), ioe);
+            }
+        }
+        final IOException syncFailure = failure;
+        completeOffWriter(() -> completeGroup(group, last, syncFailure));
+    }
+
+    /** Waits for replicas once for the whole group (acks cover every lower seq), then completes it. */
+    private void completeGroup(List<PendingWrite> group, long last, IOException failure) {
+        if (failure == null) {
+            try {
+                awaitReplication(last, "WAL group up to seq=" + last);
+            } catch (IOException ioe) {
+                failure = ioe;
+            }
+        }
+        for (PendingWrite w : group) {
+            if (failure == null) {
+                finished(w.latency, w.op, w.key, w.keys, w.start);
+                w.done.complete(null);
+            } else {
+                w.done.completeExceptionally(new IOException(w.what + " failed: " + failure.getMessage(), failure));
+            }
+        }
+    }
+
+    /** Runs {@code completion} on the I/O pool, or inline once the pool has shut down. */
+    private void completeOffWriter(Runnable completion) {
+        try {
+            ioPool.execute(completion);
+        } catch (RejectedExecutionException closing) {
+            completion.run();
+        }
+    }
+
+    private <T> CompletableFuture<T> onIoPool(Callable<T> read) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            ioPool.execute(() -> {
+                try {
+                    result.complete(read.call());
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException closing) {
+            result.completeExceptionally(new IOException("StorageEngine is closed", closing));
+        }
+        return result;
+    }
+
+    /** Per-table compression ratio and block decode time, newest table first. */
+    @Override
+    public List<SSTable.Stats> getTableStats() {
+        return tables.stats();
     }
 
 }
@@ -0,0 +1,310 @@
+// TableSet.java
+package src.main.java.lsmkv.engine;
+
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The live SSTables of one engine, newest first. The list is replaced
+ * copy-on-write by flushes and compactions; readers pin a snapshot with
+ * {@link #acquire()} so a table is only closed and deleted after its last reader.
+ * Each replacement is recorded in the {@link Manifest} before it is published, and
+ * startup takes the table list from there, opening each file on its first read.
+ */
+public class TableSet implements Closeable {
+    private static final String PREFIX = "sstable-";
+    private static final String SUFFIX = ".sst";
+
+    private final Path dir;
+    private final Config cfg;
+    private final BlockCache cache;
+    private final LongAdder releaseFailures;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private volatile List<SSTable> tables = Collections.emptyList();
+    private Manifest manifest;
+    // Held by a flush from reserving its ids until it publishes, and by a compaction
+    // while it reserves ids and pins its inputs, so a table published outside a
+    // compaction's inputs always has a higher id than the compaction's outputs.
+    private final ReentrantLock idOrder = new ReentrantLock();
+
+    public TableSet(Path dir, Config cfg) throws IOException {
+        this.dir = dir;
+        this.cfg = cfg;
+        this.cache = new BlockCache(cfg.getBlockCacheBytes());
+        this.releaseFailures = cfg.getMetrics().counter("lsmkv_sstable_release_failures_total",
+                "SSTable files that failed to close or, once replaced, to delete.");
+        Files.createDirectories(dir);
+        load();
+    }
+
+    private void load() throws IOException {
+        Map<Long, Path> files = new HashMap<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, PREFIX + "*")) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                if (name.endsWith(SUFFIX + ".tmp")) {
+                    Files.deleteIfExists(p); // interrupted flush or compaction
+                    continue;
+                }
+                if (!name.endsWith(SUFFIX)) continue;
+                long id = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                files.put(id, p);
+            }
+        }
+
+        boolean legacy = !Manifest.exists(dir);
+        manifest = new Manifest(dir);
+        if (manifest.droppedTail()) {
+            cfg.getMetrics().counter("lsmkv_manifest_tails_dropped_total",
+                    "Torn or corrupt manifest tails dropped on startup.").increment();
+        }
+        nextId.accumulateAndGet(manifest.maxId() + 1, Math::max);
+        List<SSTable> found = new ArrayList<>();
+        if (legacy) { // a directory from before the manifest: read every table once and record them
+            for (Map.Entry<Long, Path> f : files.entrySet()) found.add(track(SSTable.open(f.getKey(), f.getValue(), cache)));
+            if (!found.isEmpty()) manifest.record(Collections.emptyList(), found);
+        } else {
+            for (Manifest.Table t : manifest.live().values()) {
+                Path p = files.remove(t.id);
+                if (p == null) throw new IOException("SSTable " + pathFor(t.id) + " is in the manifest but missing");
+                found.add(track(SSTable.lazy(t.id, p, cache, t.meta, t.minSeq)));
+            }
+            // written but never recorded, or replaced but not yet deleted when the process stopped
+            for (Path orphan : files.values()) Files.deleteIfExists(orphan);
+        }
+        for (SSTable t : found) nextId.accumulateAndGet(t.id() + 1, Math::max);
+        found.sort(Comparator.comparingLong(SSTable::id).reversed());
+        tables = Collections.unmodifiableList(found);
+    }
+
+    static boolean isTableFile(Path p) {
+        String name = p.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    /** Reserves a table id. Ids order tables by age, so reserve before reading inputs. */
+    public long newTableId() {
+        return nextId.getAndIncrement();
+    }
+
+    /** See {@link #idOrder}; pair with {@link #unlockIdOrder()}. */
+    public void lockIdOrder() {
+        idOrder.lock();
+    }
+
+    public void unlockIdOrder() {
+        idOrder.unlock();
+    }
+
+    /** Reserves {@code n} consecutive table ids and returns the first. */
+    public long newTableIds(int n) {
+        return nextId.getAndAdd(n);
+    }
+
+    public Path pathFor(long id) {
+        return dir.resolve(String.format("%s%08d%s", PREFIX, id, SUFFIX));
+    }
+
+    public SSTable writeTable(long id, Iterator<Entry> sorted, long maxSeq) throws IOException {
+        return writeTable(id, sorted, new RangeTombstones(), maxSeq);
+    }
+
+    public SSTable writeTable(long id, Iterator<Entry> sorted, RangeTombstones ranges, long maxSeq) throws IOException {
+        SSTable t = SSTable.write(id, pathFor(id), sorted, ranges, maxSeq, cfg, cache);
+        return t == null ? null : track(t);
+    }
+
+    private SSTable track(SSTable t) {
+        return t.countReleaseFailures(releaseFailures);
+    }
+
+    /**
+     * Atomically swaps {@code inputs} for {@code outputs}, recording the edit in the
+     * manifest first; inputs are deleted once unused. Outputs cover the sequence
+     * numbers from the oldest input's on, or for a flush, from just past the tables'.
+     */
+    public synchronized void replace(List<SSTable> inputs, List<SSTable> outputs) throws IOException {
+        replace(inputs, outputs, Collections.emptyMap());
+    }
+
+    /**
+     * As {@link #replace(List, List)}, also recording the value-log bytes per file
+     * that the outputs no longer reference.
+     */
+    public synchronized void replace(List<SSTable> inputs, List<SSTable> outputs, Map<Long, Long> garbage)
+            throws IOException {
+        long minSeq = inputs.isEmpty() ? maxSeq() + 1 : Long.MAX_VALUE;
+        for (SSTable t : inputs) minSeq = Math.min(minSeq, t.minSeq());
+        for (SSTable t : outputs) t.minSeq(minSeq);
+        manifest.record(inputs, outputs, garbage);
+
+        List<SSTable> next = new ArrayList<>(tables);
+        next.removeAll(inputs);
+        next.addAll(outputs);
+        next.sort(Comparator.comparingLong(SSTable::id).reversed());
+        tables = Collections.unmodifiableList(next);
+        for (SSTable t : inputs) {
+            t.markObsolete();
+            t.release();
+        }
+    }
+
+    /**
+     * Replaces every table with the table files {@code oldestFirst} (snapshot
+     * install). They are moved in under fresh ids, keeping their relative order.
+     */
+    public synchronized void adopt(List<Path> oldestFirst) throws IOException {
+        List<SSTable> adopted = new ArrayList<>();
+        for (Path p : oldestFirst) {
+            long id = newTableId();
+            Path dest = pathFor(id);
+            Files.move(p, dest, StandardCopyOption.ATOMIC_MOVE);
+            adopted.add(track(SSTable.open(id, dest, cache)));
+        }
+        // the value-log files were replaced too; their dead-byte counts start over
+        Map<Long, Long> forget = new HashMap<>();
+        for (Map.Entry<Long, Long> g : manifest.valueLogGarbage().entrySet()) forget.put(g.getKey(), -g.getValue());
+        replace(tables, adopted, forget);
+    }
+
+    /** Value-log bytes per file that no table references any more, as recorded in the manifest. */
+    Map<Long, Long> valueLogGarbage() {
+        return manifest.valueLogGarbage();
+    }
+
+    /** Pins and returns the current tables, newest first. Pair with {@link #release(List)}. */
+    public List<SSTable> acquire() {
+        while (true) {
+            List<SSTable> snapshot = tables;
+            int pinned = 0;
+            for (SSTable t : snapshot) {
+                if (!t.retain()) break;
+                pinned++;
+            }
+            if (pinned == snapshot.size()) return snapshot;
+            for (int i = 0; i < pinned; i++) snapshot.get(i).release();
+        }
+    }
+
+    public void release(List<SSTable> snapshot) {
+        for (SSTable t : snapshot) t.release();
+    }
+
+    /** Newest entry for {@code key} across all tables, or null. */
+    public Entry get(Slice key) throws IOException {
+        List<SSTable> snapshot = acquire();
+        try {
+            for (SSTable t : snapshot) {
+                Entry e = t.get(key);
+                if (e != null) return e;
+            }
+            return null;
+        } finally {
+            release(snapshot);
+        }
+    }
+
+    /**
+     * Appends the versions of {@code key}, newest first, down to the first one that
+     * is not a merge operand; used to fold operands on reads.
+     */
+    public void collectVersions(Slice key, List<Entry> out) throws IOException {
+        List<SSTable> snapshot = acquire();
+        try {
+            for (SSTable t : snapshot) {
+                Entry e = t.get(key);
+                if (e == null) continue;
+                out.add(e);
+                if (!e.isMerge()) return;
+            }
+        } finally {
+            release(snapshot);
+        }
+    }
+
+    /** Highest WAL sequence number persisted in any table. */
+    public long maxSeq() {
+        long max = 0;
+        for (SSTable t : tables) max = Math.max(max, t.maxSeq());
+        return max;
+    }
+
+    public int size() {
+        return tables.size();
+    }
+
+    /** Largest share of expired entries in any one table, from the tables' expiry histograms. */
+    public double maxExpiredFraction(long now) {
+        double max = 0;
+        for (SSTable t : tables) max = Math.max(max, t.expiredFraction(now));
+        return max;
+    }
+
+    /** True if some table lies wholly inside a range a newer table deleted; see {@link #coveredByNewer}. */
+    public boolean hasCoveredTable() {
+        List<SSTable> current = tables;
+        for (int i = 1; i < current.size(); i++) {
+            if (coveredByNewer(current, i)) return true;
+        }
+        return false;
+    }
+
+    /** True if one of the tables newer than {@code newestFirst.get(i)} range-deleted its whole key span. */
+    static boolean coveredByNewer(List<SSTable> newestFirst, int i) {
+        SSTable t = newestFirst.get(i);
+        for (int j = 0; j < i; j++) {
+            if (newestFirst.get(j).rangeTombstones().coversAll(t.firstKey(), t.lastKey())) return true;
+        }
+        return false;
+    }
+
+    /** Bytes on disk of every current table. */
+    public long totalBytes() {
+        long bytes = 0;
+        for (SSTable t : tables) bytes += t.fileBytes();
+        return bytes;
+    }
+
+    /** Opens any table not yet read, since the compression figures live in its index. */
+    public List<SSTable.Stats> stats() {
+        List<SSTable.Stats> out = new ArrayList<>();
+        List<SSTable> snapshot = acquire();
+        try {
+            for (SSTable t : snapshot) out.add(t.stats());
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        } finally {
+            release(snapshot);
+        }
+        return out;
+    }
+
+    public BlockCache cache() {
+        return cache;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (SSTable t : tables) t.release();
+        tables = Collections.emptyList();
+        manifest.close();
+    }
+}
@@ -0,0 +1,314 @@
+// ValueCache.java
+package src.main.java.lsmkv.engine;
+
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-through cache of decoded values in front of point lookups, bounded by
+ * bytes and striped over shards. Admission follows W-TinyLFU: a new key enters a
+ * small LRU window, and a key leaving the window only displaces the main region's
+ * LRU victim if a frequency sketch has seen it more often, so a burst of one-off
+ * keys cannot flush the hot set. The main region is a segmented LRU (probation,
+ * then protected once hit again).
+ *
+ * Concurrent misses on one key share a single lookup. The writer calls
+ * {@link #invalidate} after applying a write to the MemTable; that also cancels
+ * any load in flight for the key, so a value read before the write is never
+ * cached after it.
+ */
+public class ValueCache {
+    private static final int SHARDS = 16;
+    private static final int ENTRY_OVERHEAD = 64; // node, map entry and array headers, roughly
+
+    /** The lookup behind the cache; null or a tombstone means absent. */
+    public interface Loader {
+        Entry load() throws IOException;
+    }
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public ValueCache(long capacityBytes) {
+        for (int i = 0; i < SHARDS; i++) shards[i] = new Shard(capacityBytes / SHARDS);
+    }
+
+    /** Value of {@code key}, from the cache or from {@code loader}; null if absent. */
+    public byte[] get(Slice key, Loader loader) throws IOException {
+        Shard s = shardFor(key);
+        CompletableFuture<byte[]> load;
+        boolean owner = false;
+        synchronized (s) {
+            Node n = s.hit(key, System.currentTimeMillis());
+            if (n != null) {
+                hits.increment();
+                return n.value;
+            }
+            load = s.loading.get(key);
+            if (load == null) {
+                s.loading.put(key, load = new CompletableFuture<>());
+                owner = true;
+            }
+        }
+        if (!owner) {
+            coalesced.increment();
+            return await(load);
+        }
+
+        misses.increment();
+        Entry e;
+        try {
+            e = loader.load();
+        } catch (IOException | RuntimeException ex) {
+            synchronized (s) {
+                s.loading.remove(key, load);
+            }
+            load.completeExceptionally(ex);
+            throw ex;
+        }
+        byte[] v = e == null || e.isTombstone() ? null : e.value();
+        synchronized (s) {
+            // gone if a write invalidated the key meanwhile: hand the value out, but do not keep it
+            if (s.loading.remove(key, load) && v != null) s.admit(Slice.wrap(key.toByteArray()), v, e.expiresAt());
+        }
+        load.complete(v);
+        return v;
+    }
+
+    /** Drops {@code key} and any load in flight for it; called after each write to the key. */
+    public void invalidate(Slice key) {
+        Shard s = shardFor(key);
+        synchronized (s) {
+            s.loading.remove(key);
+            s.remove(key);
+        }
+    }
+
+    /** Drops every key in {@code [start, end]}, and the loads in flight for them; called after a range delete. */
+    public void invalidateRange(Slice start, Slice end) {
+        for (Shard s : shards) {
+            synchronized (s) {
+                s.loading.keySet().removeIf(k -> inRange(k, start, end));
+                List<Slice> doomed = new ArrayList<>();
+                for (Map<Slice, Node> region : List.of(s.window, s.probation, s.protectedRegion)) {
+                    for (Slice k : region.keySet()) {
+                        if (inRange(k, start, end)) doomed.add(k);
+                    }
+                }
+                for (Slice k : doomed) s.remove(k);
+            }
+        }
+    }
+
+    private static boolean inRange(Slice k, Slice start, Slice end) {
+        return k.compareTo(start) >= 0 && k.compareTo(end) <= 0;
+    }
+
+    /** Drops everything, e.g. after the engine's contents were replaced wholesale. */
+    public void clear() {
+        for (Shard s : shards) {
+            synchronized (s) {
+                s.loading.clear();
+                s.window.clear();
+                s.probation.clear();
+                s.protectedRegion.clear();
+                s.windowBytes = s.probationBytes = s.protectedBytes = 0;
+            }
+        }
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> load) throws IOException {
+        try {
+            return load.join();
+        } catch (CompletionException ce) {
+            Throwable cause = ce.getCause();
+            if (cause instanceof IOException) throw new IOException(cause.getMessage(), cause);
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw ce;
+        }
+    }
+
+    private Shard shardFor(Slice key) {
+        int h = key.hashCode();
+        return shards[(h ^ (h >>> 16)) & (SHARDS - 1)];
+    }
+
+    public long sizeBytes() {
+        long bytes = 0;
+        for (Shard s : shards) {
+            synchronized (s) {
+                bytes += s.windowBytes + s.probationBytes + s.protectedBytes;
+            }
+        }
+        return bytes;
+    }
+
+    public long hits() { return hits.sum(); }
+    public long misses() { return misses.sum(); }
+    /** Misses that waited for another caller's lookup of the same key instead of their own. */
+    public long coalesced() { return coalesced.sum(); }
+
+    private static final class Node {
+        final Slice key;
+        final byte[] value;
+        final long expiresAt;
+        final int cost;
+
+        Node(Slice key, byte[] value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.cost = key.length() + value.length + ENTRY_OVERHEAD;
+        }
+    }
+
+    /** One stripe; every field is guarded by the shard's monitor. */
+    private static final class Shard {
+        final LinkedHashMap<Slice, Node> window = new LinkedHashMap<>(16, 0.75f, true);
+        final LinkedHashMap<Slice, Node> probation = new LinkedHashMap<>(16, 0.75f, true);
+        final LinkedHashMap<Slice, Node> protectedRegion = new LinkedHashMap<>(16, 0.75f, true);
+        final Map<Slice, CompletableFuture<byte[]>> loading = new HashMap<>();
+        final FrequencySketch sketch;
+        final long windowCap, mainCap, protectedCap;
+        long windowBytes, probationBytes, protectedBytes;
+
+        Shard(long capacityBytes) {
+            windowCap = capacityBytes / 100;
+            mainCap = capacityBytes - windowCap;
+            protectedCap = mainCap * 8 / 10;
+            sketch = new FrequencySketch((int) Math.min(1 << 20, capacityBytes / 128));
+        }
+
+        /** Counts the access and returns the live node, promoting it; null on a miss. */
+        Node hit(Slice key, long now) {
+            sketch.increment(key.hashCode());
+            Node n = window.get(key);
+            if (n == null) {
+                n = probation.remove(key);
+                if (n != null) {
+                    probationBytes -= n.cost;
+                    protect(n);
+                } else {
+                    n = protectedRegion.get(key);
+                }
+            }
+            if (n != null && n.expiresAt != 0 && n.expiresAt <= now) {
+                remove(key);
+                return null;
+            }
+            return n;
+        }
+
+        void admit(Slice key, byte[] value, long expiresAt) {
+            remove(key);
+            Node n = new Node(key, value, expiresAt);
+            if (n.cost > windowCap + mainCap) return;
+            window.put(key, n);
+            windowBytes += n.cost;
+            while (windowBytes > windowCap) {
+                Node candidate = eldest(window);
+                window.remove(candidate.key);
+                windowBytes -= candidate.cost;
+                admitToMain(candidate);
+            }
+        }
+
+        /** A key leaving the window gets into the main region only if it is used more than what it evicts. */
+        private void admitToMain(Node candidate) {
+            while (probationBytes + protectedBytes + candidate.cost > mainCap) {
+                Node victim = eldest(probation);
+                if (victim == null) victim = eldest(protectedRegion);
+                if (victim == null) return;
+                if (sketch.frequency(candidate.key.hashCode()) <= sketch.frequency(victim.key.hashCode())) return;
+                remove(victim.key);
+            }
+            probation.put(candidate.key, candidate);
+            probationBytes += candidate.cost;
+        }
+
+        private void protect(Node n) {
+            protectedRegion.put(n.key, n);
+            protectedBytes += n.cost;
+            while (protectedBytes > protectedCap) {
+                Node demoted = eldest(protectedRegion);
+                protectedRegion.remove(demoted.key);
+                protectedBytes -= demoted.cost;
+                probation.put(demoted.key, demoted);
+                probationBytes += demoted.cost;
+            }
+        }
+
+        void remove(Slice key) {
+            Node n;
+            if ((n = window.remove(key)) != null) windowBytes -= n.cost;
+            else if ((n = probation.remove(key)) != null) probationBytes -= n.cost;
+            else if ((n = protectedRegion.remove(key)) != null) protectedBytes -= n.cost;
+        }
+
+        private static Node eldest(LinkedHashMap<Slice, Node> region) {
+            Iterator<Node> it = region.values().iterator();
+            return it.hasNext() ? it.next() : null;
+        }
+    }
+
+    /**
+     * Count-min sketch of recent access frequency: four rows of 4-bit counters
+     * (kept in bytes), all halved every {@code 10 * width} increments so that old
+     * popularity fades.
+     */
+    static final class FrequencySketch {
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+        private final byte[] table;
+        private final int width;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int w = Integer.highestOneBit(Math.max(16, expectedEntries) - 1) << 1;
+            this.width = w;
+            this.table = new byte[4 * w];
+            this.sampleSize = 10 * w;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int row = 0; row < 4; row++) {
+                int i = index(hash, row);
+                if (table[i] < 15) {
+                    table[i]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) reset();
+        }
+
+        int frequency(int hash) {
+            int min = 15;
+            for (int row = 0; row < 4; row++) min = Math.min(min, table[index(hash, row)]);
+            return min;
+        }
+
+        private int index(int hash, int row) {
+            int h = (hash ^ (hash >>> 16)) * SEEDS[row];
+            h ^= h >>> 15;
+            return row * width + (h & (width - 1));
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) table[i] >>= 1;
+            additions /= 2;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+// ValueLog.java
+package src.main.java.lsmkv.engine;
+
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log for large values (key-value separation, as in WiscKey).
+ *
+ * When a MemTable is flushed, values of at least {@code Config.getValueLogThreshold()}
+ * bytes are appended here and the SSTable stores only a pointer, so compaction
+ * moves 20-byte pointers instead of the values themselves. The WAL still holds
+ * full values, which keeps recovery and WAL shipping independent of this log.
+ *
+ * Record layout: [int crc32][int klen][int vlen][key][value], CRC over everything after itself.
+ * Pointer layout (the SSTable "value"): [long fileId][long offset][int recordLength].
+ *
+ * Compaction counts the pointers it drops with {@link #count(Map, byte[])}, records
+ * the totals in the manifest with its table edit and then hands them to
+ * {@link #discard(Map)}; files whose discarded fraction reaches
+ * {@code Config.getValueLogGcRatio()} are collected by relocating their still-live
+ * values through the normal write path and deleting the file.
+ */
+public class ValueLog implements Closeable {
+    static final int POINTER_SIZE = 8 + 8 + 4;
+    private static final int HEADER = 4 + 4 + 4;
+    private static final String PREFIX = "vlog-";
+    private static final String SUFFIX = ".log";
+
+    /** Re-writes a live value found in a file being collected. Implemented by the engine. */
+    public interface Relocator {
+        /**
+         * Writes {@code value} for {@code key} again, but only if the key's newest
+         * entry is still {@code pointer}. Returns false if the write was refused
+         * and the file must be kept.
+         */
+        boolean relocate(Slice key, byte[] pointer, byte[] value) throws IOException;
+
+        /** Makes every relocated write durable; called before a collected file is deleted. */
+        void syncRelocated() throws IOException;
+    }
+
+    private final Path dir;
+    private final Config cfg;
+    private final Map<Long, FileChannel> files = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicLong> discarded = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private long activeId;
+    private FileChannel active;
+    private final LongAdder bytesWritten;
+
+    public ValueLog(Path dir, Config cfg) throws IOException {
+        this.dir = dir;
+        this.cfg = cfg;
+        this.bytesWritten = cfg.getMetrics().counter("lsmkv_vlog_bytes_written_total",
+                "Bytes appended to value-log files, by flushes and GC.");
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                long id = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                files.put(id, FileChannel.open(p, StandardOpenOption.READ));
+                nextId.accumulateAndGet(id + 1, Math::max);
+            }
+        }
+    }
+
+    private Path pathFor(long id) {
+        return dir.resolve(fileName(id));
+    }
+
+    static String fileName(long id) {
+        return String.format("%s%08d%s", PREFIX, id, SUFFIX);
+    }
+
+    // -------------------- writes (writer thread) --------------------
+
+    /** Appends a value and returns its pointer. Durable only after {@link #sync()}. */
+    public synchronized byte[] append(Slice key, byte[] value) throws IOException {
+        if (active == null || active.size() >= cfg.getValueLogFileBytes()) roll();
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + key.length() + value.length);
+        buf.position(4);
+        buf.putInt(key.length()).putInt(value.length);
+        key.writeTo(buf);
+        buf.put(value);
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 4, buf.capacity() - 4);
+        buf.putInt(0, (int) crc.getValue());
+        buf.flip();
+        long offset = active.size();
+        while (buf.hasRemaining()) active.write(buf, offset + buf.position());
+        bytesWritten.add(buf.capacity());
+
+        ByteBuffer ptr = ByteBuffer.allocate(POINTER_SIZE);
+        ptr.putLong(activeId).putLong(offset).putInt(buf.capacity());
+        return ptr.array();
+    }
+
+    private void roll() throws IOException {
+        if (active != null) active.force(false);
+        activeId = nextId.getAndIncrement();
+        active = FileChannel.open(pathFor(activeId), StandardOpenOption.CREATE_NEW,
+                                  StandardOpenOption.READ, StandardOpenOption.WRITE);
+        files.put(activeId, active);
+    }
+
+    public synchronized void sync() throws IOException {
+        if (active != null) active.force(false);
+    }
+
+    /** Every file with its current length, oldest first (for snapshots). */
+    synchronized Map<Path, Long> fileLengths() throws IOException {
+        Map<Path, Long> out = new LinkedHashMap<>();
+        for (Map.Entry<Long, FileChannel> e : new TreeMap<>(files).entrySet()) {
+            out.put(pathFor(e.getKey()), e.getValue().size());
+        }
+        return out;
+    }
+
+    /**
+     * Replaces every file with {@code logFiles} from a snapshot. They keep their
+     * names, since the adopted tables' pointers refer to them by id.
+     */
+    synchronized void adopt(List<Path> logFiles) throws IOException {
+        for (Map.Entry<Long, FileChannel> e : files.entrySet()) {
+            e.getValue().close();
+            Files.deleteIfExists(pathFor(e.getKey()));
+        }
+        files.clear();
+        discarded.clear();
+        active = null;
+        for (Path p : logFiles) {
+            String name = p.getFileName().toString();
+            long id = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+            Path dest = pathFor(id);
+            Files.move(p, dest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            files.put(id, FileChannel.open(dest, StandardOpenOption.READ));
+            nextId.accumulateAndGet(id + 1, Math::max);
+        }
+    }
+
+    static boolean isLogFile(Path p) {
+        String name = p.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    /**
+     * Wraps a flush iterator so large values are moved here and replaced by pointers.
+     * The log is synced once the input is drained, i.e. before the table writer
+     * renames the table that points at these appends into place.
+     */
+    Iterator<Entry> separate(Iterator<Entry> in) {
+        int threshold = cfg.getValueLogThreshold();
+        return new Iterator<>() {
+            boolean synced;
+
+            @Override
+            public boolean hasNext() {
+                if (in.hasNext()) return true;
+                if (!synced) {
+                    try {
+                        sync();
+                    } catch (IOException ioe) {
+                        throw new UncheckedIOException(ioe);
+                    }
+                    synced = true;
+                }
+                return false;
+            }
+
+            @Override
+            public Entry next() {
+                Entry e = in.next();
+                if (e.kind() != Entry.PUT || e.value().length < threshold) return e;
+                try {
+                    return Entry.pointer(e.key(), append(e.key(), e.value()), e.expiresAt());
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            }
+        };
+    }
+
+    // -------------------- reads --------------------
+
+    /**
+     * Reads the value behind {@code pointer}, or returns null if its file has been
+     * garbage collected meanwhile (the caller should look the key up again).
+     */
+    public byte[] read(byte[] pointer) throws IOException {
+        ByteBuffer ptr = ByteBuffer.wrap(pointer);
+        long fileId = ptr.getLong();
+        long offset = ptr.getLong();
+        int length = ptr.getInt();
+        FileChannel ch = files.get(fileId);
+        if (ch == null) return null;
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        try {
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, offset + buf.position()) < 0) throw new EOFException("Truncated value log " + fileId);
+            }
+        } catch (ClosedChannelException closed) {
+            return null;
+        }
+        return decode(buf.array(), fileId, offset).value;
+    }
+
+    private static Record decode(byte[] rec, long fileId, long offset) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(rec);
+        int crc = buf.getInt();
+        int klen = buf.getInt();
+        int vlen = buf.getInt();
+        if (klen < 0 || vlen < 0 || HEADER + klen + vlen != rec.length) {
+            throw new IOException("Corrupt value log record " + fileId + "@" + offset);
+        }
+        CRC32 c = new CRC32();
+        c.update(rec, 4, rec.length - 4);
+        if ((int) c.getValue() != crc) throw new IOException("Checksum mismatch in value log " + fileId + "@" + offset);
+        byte[] key = new byte[klen];
+        byte[] value = new byte[vlen];
+        buf.get(key).get(value);
+        return new Record(Slice.wrap(key), value);
+    }
+
+    private static final class Record {
+        final Slice key;
+        final byte[] value;
+
+        Record(Slice key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    // -------------------- garbage collection --------------------
+
+    /** Adds the record behind {@code pointer} to {@code garbage}, bytes per file id. */
+    static void count(Map<Long, Long> garbage, byte[] pointer) {
+        ByteBuffer ptr = ByteBuffer.wrap(pointer);
+        long fileId = ptr.getLong();
+        ptr.getLong();
+        long length = ptr.getInt();
+        garbage.merge(fileId, length, Long::sum);
+    }
+
+    /**
+     * Records {@code garbage} (bytes per file id) as no longer referenced by any
+     * table: what a published compaction dropped, or on open what the manifest kept.
+     */
+    void discard(Map<Long, Long> garbage) {
+        for (Map.Entry<Long, Long> g : garbage.entrySet()) {
+            if (!files.containsKey(g.getKey())) continue; // already collected
+            discarded.computeIfAbsent(g.getKey(), id -> new AtomicLong()).addAndGet(g.getValue());
+        }
+    }
+
+    /**
+     * Collects every sealed file whose discarded fraction reached the GC ratio.
+     * Returns the number of files deleted.
+     */
+    public int collectGarbage(Relocator relocator) throws IOException {
+        int deleted = 0;
+        for (long fileId : candidates()) {
+            if (collect(fileId, relocator)) {
+                relocator.syncRelocated();
+                FileChannel ch = files.remove(fileId);
+                if (ch != null) ch.close();
+                Files.deleteIfExists(pathFor(fileId));
+                discarded.remove(fileId);
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private synchronized List<Long> candidates() throws IOException {
+        List<Long> out = new ArrayList<>();
+        for (Map.Entry<Long, AtomicLong> e : new TreeMap<>(discarded).entrySet()) {
+            long id = e.getKey();
+            FileChannel ch = files.get(id);
+            if (ch == null || (active != null && id == activeId)) continue;
+            long size = ch.size();
+            if (size > 0 && (double) e.getValue().get() / size >= cfg.getValueLogGcRatio()) out.add(id);
+        }
+        return out;
+    }
+
+    private boolean collect(long fileId, Relocator relocator) throws IOException {
+        FileChannel ch = files.get(fileId);
+        if (ch == null) return false;
+        long size = ch.size();
+        long pos = 0;
+        ByteBuffer hdr = ByteBuffer.allocate(HEADER);
+        while (pos + HEADER <= size) {
+            hdr.clear();
+            ch.read(hdr, pos);
+            hdr.flip();
+            hdr.getInt();
+            int len = HEADER + hdr.getInt() + hdr.getInt();
+            ByteBuffer rec = ByteBuffer.allocate(len);
+            while (rec.hasRemaining()) {
+                if (ch.read(rec, pos + rec.position()) < 0) return true; // torn tail, never referenced
+            }
+            Record r = decode(rec.array(), fileId, pos);
+            ByteBuffer ptr = ByteBuffer.allocate(POINTER_SIZE);
+            ptr.putLong(fileId).putLong(pos).putInt(len);
+            if (!relocator.relocate(r.key, ptr.array(), r.value)) return false;
+            pos += len;
+        }
+        return true;
+    }
+
+    public long fileCount() {
+        return files.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (active != null) active.force(false);
+        for (FileChannel ch : files.values()) ch.close();
+        files.clear();
+        active = null;
+    }
+}
@@ -1,33 +1,459 @@
-// TODO: Implement WAL.java
+// WAL.java
 package src.main.java.lsmkv.engine;
 
 import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.metrics.Histogram;
+import src.main.java.lsmkv.metrics.WalSyncEvent;
+import src.main.java.lsmkv.util.Slice;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
 
+/**
+ * Segmented binary write-ahead log with sequence numbers.
+ *
+ * Every record gets the next sequence number. A new segment
+ * ({@code wal-<firstSeq>.log}) is started at each MemTable flush; sealed segments
+ * are kept until they are both flushed and older than the retention budget, so
+ * followers can tail the log from a recent sequence number.
+ *
+ * Record layout (big-endian):
+ * [int crc32][long seq][byte type][int klen][int vlen][key bytes][value bytes]
+ * where the CRC covers everything after itself. The value bytes of TYPE_PUT_TTL
+ * and TYPE_MERGE records start with their [long expiresAt]. A TYPE_DEL_RANGE
+ * record's key and value are the first and last key of the deleted range. A torn
+ * or corrupt tail is truncated on replay.
+ */
 public class WAL {
-    private final Path path;
+    public static final byte TYPE_PUT = 0;
+    public static final byte TYPE_DEL = 1;
+    public static final byte TYPE_PUT_TTL = 2;
+    public static final byte TYPE_MERGE = 3;
+    public static final byte TYPE_DEL_RANGE = 4;
+    static final int HEADER = 4 + 8 + 1 + 4 + 4;
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path dir;
     private final Config cfg;
+    // firstSeq -> segment file, oldest first
+    private final ConcurrentSkipListMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    private FileChannel ch;
+    private long activeFirstSeq;
+    private volatile long lastSeq;
+    private long lastSyncNanos;
+    private long unsynced; // records appended since the last fsync
+    private volatile long syncedSeq;
+
+    private final Histogram fsyncLatency;
+    private final Histogram syncGroup;
+    private final LongAdder bytesWritten;
+    private final LongAdder userBytes;
+
+    /** One logged mutation. */
+    public static final class Record {
+        public final long seq;
+        public final byte type;
+        public final Slice key;
+        public final byte[] value;
+        public final long expiresAt; // epoch millis, 0 = never; TYPE_PUT_TTL and TYPE_MERGE only
+
+        public Record(long seq, byte type, Slice key, byte[] value) {
+            this(seq, type, key, value, 0);
+        }
+
+        public Record(long seq, byte type, Slice key, byte[] value, long expiresAt) {
+            this.seq = seq;
+            this.type = type;
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        public int encodedSize() {
+            return HEADER + key.length() + (value == null ? 0 : value.length) + (hasExpiry(type) ? 8 : 0);
+        }
+    }
+
+    /** Whether records of this type carry an expiry time. */
+    public static boolean hasExpiry(byte type) {
+        return type == TYPE_PUT_TTL || type == TYPE_MERGE;
+    }
+
+    public interface Visitor {
+        void apply(Record record);
+    }
 
-    public WAL(Path path, Config cfg) {
-        this.path = path;
+    public WAL(Path dir, Config cfg) {
+        this.dir = dir;
         this.cfg = cfg;
+        this.fsyncLatency = cfg.getMetrics().latency("lsmkv_wal_fsync_seconds", "WAL fsync latency.");
+        this.syncGroup = cfg.getMetrics().histogram("lsmkv_wal_sync_group_records", "Records made durable by one WAL fsync.");
+        this.bytesWritten = cfg.getMetrics().counter("lsmkv_wal_bytes_written_total", "Bytes appended to the WAL.");
+        this.userBytes = cfg.getMetrics().counter("lsmkv_user_bytes_written_total", "Key and value bytes of logged writes.");
+    }
+
+    /**
+     * Opens the log. {@code flushedSeq} is the highest sequence number already
+     * persisted in SSTables; numbering continues after it even if the log is empty.
+     */
+    public synchronized void open(long flushedSeq) throws IOException {
+        if (ch != null) return;
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                segments.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), p);
+            }
+        }
+        lastSeq = flushedSeq;
+        if (segments.isEmpty()) {
+            startSegment(flushedSeq + 1);
+        } else {
+            Map.Entry<Long, Path> last = segments.lastEntry();
+            activeFirstSeq = last.getKey();
+            ch = FileChannel.open(last.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ch.position(ch.size());
+            lastSeq = Math.max(lastSeq, activeFirstSeq - 1);
+        }
+        lastSyncNanos = System.nanoTime();
+    }
+
+    static boolean isSegmentFile(Path p) {
+        String name = p.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    private void startSegment(long firstSeq) throws IOException {
+        Path p = dir.resolve(String.format("%s%020d%s", PREFIX, firstSeq, SUFFIX));
+        ch = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                              StandardOpenOption.TRUNCATE_EXISTING);
+        activeFirstSeq = firstSeq;
+        segments.put(firstSeq, p);
+    }
+
+    public synchronized long appendPut(Slice key, byte[] value) throws IOException {
+        return append(new Record(lastSeq + 1, TYPE_PUT, key, value));
+    }
+
+    /** Logs a put that expires at {@code expiresAt} (epoch millis); 0 means never. */
+    public synchronized long appendPut(Slice key, byte[] value, long expiresAt) throws IOException {
+        if (expiresAt == 0) return appendPut(key, value);
+        return append(new Record(lastSeq + 1, TYPE_PUT_TTL, key, value, expiresAt));
+    }
+
+    /** Logs a merge operand; {@code expiresAt} is that of the value it folds into. */
+    public synchronized long appendMerge(Slice key, byte[] operand, long expiresAt) throws IOException {
+        return append(new Record(lastSeq + 1, TYPE_MERGE, key, operand, expiresAt));
+    }
+
+    public synchronized long appendDel(Slice key) throws IOException {
+        return append(new Record(lastSeq + 1, TYPE_DEL, key, null));
+    }
+
+    /** Logs the deletion of every key in {@code [start, end]}. */
+    public synchronized long appendDelRange(Slice start, Slice end) throws IOException {
+        return append(new Record(lastSeq + 1, TYPE_DEL_RANGE, start, end.toByteArray()));
+    }
+
+    /**
+     * Appends a record carrying its own sequence number (replication). The
+     * number must be higher than every record already logged.
+     */
+    public synchronized long append(Record r) throws IOException {
+        if (ch == null) throw new IOException("WAL not open: " + dir);
+        if (r.seq <= lastSeq) throw new IOException("WAL sequence went backwards: " + r.seq + " <= " + lastSeq);
+        ByteBuffer buf = encode(r);
+        while (buf.hasRemaining()) ch.write(buf);
+        lastSeq = r.seq;
+        unsynced++;
+        bytesWritten.add(buf.capacity());
+        userBytes.add(r.key.length() + (r.value == null ? 0 : r.value.length));
+        maybeSync();
+        return r.seq;
+    }
+
+    static ByteBuffer encode(Record r) {
+        int ttl = hasExpiry(r.type) ? 8 : 0;
+        int vlen = (r.value == null ? 0 : r.value.length) + ttl;
+        ByteBuffer buf = ByteBuffer.allocate(r.encodedSize());
+        buf.position(4);
+        buf.putLong(r.seq).put(r.type).putInt(r.key.length()).putInt(vlen);
+        r.key.writeTo(buf);
+        if (ttl > 0) buf.putLong(r.expiresAt);
+        if (r.value != null) buf.put(r.value);
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 4, buf.capacity() - 4);
+        buf.putInt(0, (int) crc.getValue());
+        buf.flip();
+        return buf;
     }
 
-    public void open() throws IOException {
-        // TODO: open WAL file
+    private void maybeSync() throws IOException {
+        long now = System.nanoTime();
+        if (now - lastSyncNanos >= cfg.getFsyncInterval().toNanos()) {
+            force();
+            lastSyncNanos = now;
+        }
     }
 
-    public void appendPut(String key, byte[] value) throws IOException {
-        // TODO: write put to WAL
+    private void force() throws IOException {
+        WalSyncEvent event = new WalSyncEvent();
+        event.begin();
+        long start = System.nanoTime();
+        ch.force(false);
+        fsyncLatency.recordSince(start);
+        syncGroup.record(unsynced);
+        if (event.shouldCommit()) {
+            event.segment = activeFirstSeq;
+            event.records = unsynced;
+            event.lastSeq = lastSeq;
+            event.commit();
+        }
+        unsynced = 0;
+        syncedSeq = lastSeq;
+    }
+
+    /** Forces everything appended so far to disk, regardless of the fsync interval. */
+    public synchronized void sync() throws IOException {
+        if (ch == null) throw new IOException("WAL not open: " + dir);
+        force();
+        lastSyncNanos = System.nanoTime();
+    }
+
+    public long lastSeq() {
+        return lastSeq;
+    }
+
+    /** Highest sequence number known to be on disk. */
+    public long syncedSeq() {
+        return syncedSeq;
+    }
+
+    /** Lowest sequence number still available to {@link #newReader(long)}. */
+    public long firstRetainedSeq() {
+        return segments.firstKey();
+    }
+
+    /**
+     * Replays, in order, every intact record with a sequence number above
+     * {@code afterSeq}, then truncates anything after the last good record and
+     * syncs what is left.
+     */
+    public synchronized void replay(long afterSeq, Visitor visitor) throws IOException {
+        if (ch == null) throw new IOException("WAL not open: " + dir);
+        boolean activeHasData = false;
+        List<Long> firstSeqs = new ArrayList<>(segments.keySet());
+        for (int i = 0; i < firstSeqs.size(); i++) {
+            // skip segments that are entirely covered by flushed tables
+            if (i + 1 < firstSeqs.size() && firstSeqs.get(i + 1) <= afterSeq + 1) continue;
+            boolean active = firstSeqs.get(i) == activeFirstSeq;
+            try (FileChannel seg = active ? null : FileChannel.open(segments.get(firstSeqs.get(i)), StandardOpenOption.READ)) {
+                FileChannel in = active ? ch : seg;
+                long pos = 0;
+                long size = in.size();
+                while (true) {
+                    Record r = read(in, pos, size);
+                    if (r == null) break;
+                    if (r.seq > afterSeq) visitor.apply(r);
+                    lastSeq = Math.max(lastSeq, r.seq);
+                    pos += r.encodedSize();
+                }
+                if (active && pos < size) {
+                    ch.truncate(pos);
+                }
+                if (active) {
+                    ch.position(pos);
+                    activeHasData = size > 0;
+                }
+            }
+        }
+        // what survived may still be only in the page cache; make it durable before readers ship it
+        if (activeHasData) ch.force(false);
+        syncedSeq = lastSeq;
+    }
+
+    /** Reads the record at {@code pos}, or null at end of data or on a torn/corrupt record. */
+    static Record read(FileChannel in, long pos, long size) throws IOException {
+        if (pos + HEADER > size) return null;
+        ByteBuffer hdr = ByteBuffer.allocate(HEADER);
+        if (!readFully(in, hdr, pos)) return null;
+        hdr.flip();
+        int storedCrc = hdr.getInt();
+        long seq = hdr.getLong();
+        byte type = hdr.get();
+        int klen = hdr.getInt();
+        int vlen = hdr.getInt();
+        if (klen < 0 || vlen < 0 || pos + HEADER + klen + vlen > size) return null;
+
+        ByteBuffer body = ByteBuffer.allocate(klen + vlen);
+        if (!readFully(in, body, pos + HEADER)) return null;
+        CRC32 crc = new CRC32();
+        crc.update(hdr.array(), 4, HEADER - 4);
+        crc.update(body.array(), 0, body.capacity());
+        if ((int) crc.getValue() != storedCrc) return null;
+        if (type < TYPE_PUT || type > TYPE_DEL_RANGE) return null;
+        if (hasExpiry(type) && vlen < 8) return null;
+
+        Slice key = Slice.wrap(Arrays.copyOfRange(body.array(), 0, klen));
+        if (type == TYPE_DEL) return new Record(seq, type, key, null);
+        if (type == TYPE_PUT || type == TYPE_DEL_RANGE) return new Record(seq, type, key, Arrays.copyOfRange(body.array(), klen, klen + vlen));
+        long expiresAt = ByteBuffer.wrap(body.array(), klen, 8).getLong();
+        return new Record(seq, type, key, Arrays.copyOfRange(body.array(), klen + 8, klen + vlen), expiresAt);
+    }
+
+    private static boolean readFully(FileChannel in, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            if (in.read(buf, pos + buf.position()) < 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Drops every segment and continues numbering after {@code seq}; used when a
+     * replica installs a snapshot that already contains everything up to it.
+     */
+    public synchronized void reset(long seq) throws IOException {
+        if (ch != null) ch.close();
+        for (Path p : segments.values()) Files.deleteIfExists(p);
+        segments.clear();
+        lastSeq = seq;
+        unsynced = 0;
+        startSegment(seq + 1);
+        ch.force(true);
+        syncedSeq = seq;
+        lastSyncNanos = System.nanoTime();
+    }
+
+    /** Starts a new segment; called after the MemTable holding the current one was flushed. */
+    public synchronized void rotate() throws IOException {
+        if (ch == null) throw new IOException("WAL not open: " + dir);
+        force();
+        ch.close();
+        startSegment(lastSeq + 1);
+        ch.force(true);
+    }
+
+    /**
+     * Deletes sealed segments whose records are all at or below {@code flushedSeq},
+     * keeping the newest ones up to {@code Config.getWalRetentionBytes()} so
+     * followers can still catch up from them.
+     */
+    public synchronized void deleteObsolete(long flushedSeq) throws IOException {
+        List<Long> firstSeqs = new ArrayList<>(segments.keySet());
+        long retained = 0;
+        boolean dropping = false; // once one segment goes, every older one goes too
+        for (int i = firstSeqs.size() - 2; i >= 0; i--) {
+            Path p = segments.get(firstSeqs.get(i));
+            boolean covered = firstSeqs.get(i + 1) - 1 <= flushedSeq;
+            long size = Files.size(p);
+            if (covered && (dropping || retained + size > cfg.getWalRetentionBytes())) {
+                dropping = true;
+                segments.remove(firstSeqs.get(i));
+                Files.deleteIfExists(p);
+            } else {
+                retained += size;
+            }
+        }
+    }
+
+    /**
+     * The segments holding records above {@code afterSeq}, oldest first, each with
+     * its current length; the last one is the active segment (for checkpoints).
+     */
+    synchronized Map<Path, Long> tail(long afterSeq) throws IOException {
+        Map<Path, Long> out = new LinkedHashMap<>();
+        List<Long> firstSeqs = new ArrayList<>(segments.keySet());
+        for (int i = 0; i < firstSeqs.size(); i++) {
+            if (i + 1 < firstSeqs.size() && firstSeqs.get(i + 1) <= afterSeq + 1) continue;
+            Path p = segments.get(firstSeqs.get(i));
+            out.put(p, firstSeqs.get(i) == activeFirstSeq ? ch.size() : Files.size(p));
+        }
+        return out;
+    }
+
+    /** Opens a tailing reader positioned at {@code fromSeq}, which must be >= {@link #firstRetainedSeq()}. */
+    public Reader newReader(long fromSeq) throws IOException {
+        Map.Entry<Long, Path> seg = segments.floorEntry(fromSeq);
+        if (seg == null) throw new IOException("WAL no longer holds seq " + fromSeq + " (first retained " + firstRetainedSeq() + ")");
+        return new Reader(seg.getKey(), fromSeq);
+    }
+
+    /**
+     * Follows the log as it grows, across segment rotations. Only records already
+     * forced to disk are returned, since a restart may lose the rest: {@link #next()}
+     * returns null when no complete, synced record is available yet.
+     */
+    public final class Reader implements Closeable {
+        private long segmentFirstSeq;
+        private FileChannel in;
+        private long pos;
+        private final long fromSeq;
+
+        private Reader(long segmentFirstSeq, long fromSeq) throws IOException {
+            this.fromSeq = fromSeq;
+            openSegment(segmentFirstSeq);
+        }
+
+        private void openSegment(long firstSeq) throws IOException {
+            if (in != null) in.close();
+            segmentFirstSeq = firstSeq;
+            Path p = segments.get(firstSeq);
+            if (p == null) throw new IOException("WAL segment " + firstSeq + " was deleted while being read");
+            in = FileChannel.open(p, StandardOpenOption.READ);
+            pos = 0;
+        }
+
+        public Record next() throws IOException {
+            while (true) {
+                Record r = read(in, pos, in.size());
+                if (r != null) {
+                    if (r.seq > syncedSeq) return null;
+                    pos += r.encodedSize();
+                    if (r.seq < fromSeq) continue;
+                    return r;
+                }
+                // Nothing complete here. A newer segment means this one is sealed: move on.
+                Long nextSeg = segments.higherKey(segmentFirstSeq);
+                if (nextSeg == null) return null;
+                Record tail = read(in, pos, in.size());
+                if (tail != null) continue;
+                openSegment(nextSeg);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) in.close();
+        }
     }
 
-    public void appendDel(String key) throws IOException {
-        // TODO: write delete to WAL
+    public synchronized void close() throws IOException {
+        if (ch == null) return;
+        try {
+            ch.force(false);
+        } finally {
+            ch.close();
+            ch = null;
+        }
     }
 
-    public void close() throws IOException {
-        // TODO: close WAL file
+    @Override
+    public String toString() {
+        return dir.toString();
     }
 }
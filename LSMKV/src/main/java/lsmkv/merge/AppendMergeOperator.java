@@ -0,0 +1,37 @@
+// AppendMergeOperator.java
+package src.main.java.lsmkv.merge;
+
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+/** Appends each operand to the value, e.g. for logs or comma-separated lists built up over time. */
+public final class AppendMergeOperator implements MergeOperator {
+    private final byte[] separator;
+
+    public AppendMergeOperator(byte[] separator) {
+        this.separator = separator.clone();
+    }
+
+    @Override
+    public String name() { return "append"; }
+
+    @Override
+    public byte[] fullMerge(Slice key, byte[] base, List<byte[]> operands) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean first = base == null;
+        if (base != null) out.write(base, 0, base.length);
+        for (byte[] op : operands) {
+            if (!first) out.write(separator, 0, separator.length);
+            out.write(op, 0, op.length);
+            first = false;
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public byte[] partialMerge(Slice key, byte[] older, byte[] newer) {
+        return fullMerge(key, older, List.of(newer));
+    }
+}
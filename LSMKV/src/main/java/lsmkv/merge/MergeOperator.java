@@ -0,0 +1,33 @@
+// MergeOperator.java
+package src.main.java.lsmkv.merge;
+
+import src.main.java.lsmkv.util.Slice;
+
+import java.util.List;
+
+/**
+ * Read-free update of a key: {@code merge(key, operand)} only records the
+ * operand, and the engine folds operands into the value beneath them when the
+ * key is read or compacted. One operator is configured per engine
+ * ({@code Config.setMergeOperator}) and must be the same every time a data
+ * directory is opened, since stored operands are only meaningful to it.
+ *
+ * Implementations must be deterministic and stateless, as replicas fold
+ * independently and must agree.
+ */
+public interface MergeOperator {
+
+    String name();
+
+    /**
+     * Applies {@code operands} (oldest first) to {@code base}, which is null if
+     * the key is absent or deleted. Returns the new value.
+     */
+    byte[] fullMerge(Slice key, byte[] base, List<byte[]> operands);
+
+    /**
+     * Combines two consecutive operands into one with the same effect, so a hot
+     * key keeps a single pending operand instead of a growing list.
+     */
+    byte[] partialMerge(Slice key, byte[] older, byte[] newer);
+}
@@ -0,0 +1,35 @@
+// CompactionEvent.java
+package src.main.java.lsmkv.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JFR event spanning one compaction, or one drop of fully expired tables. */
+@Name("lsmkv.Compaction")
+@Label("Compaction")
+@Category({"LSMKV", "Storage"})
+@Description("SSTables merged into one (kind=merge) or deleted whole because every entry expired (kind=expired).")
+@StackTrace(false)
+public class CompactionEvent extends Event {
+    @Label("Kind")
+    public String kind;
+
+    @Label("Input Tables")
+    public int inputTables;
+
+    @Label("Bytes Read")
+    @DataAmount
+    public long bytesRead;
+
+    @Label("Bytes Written")
+    @DataAmount
+    public long bytesWritten;
+
+    @Label("Entries Written")
+    public long entriesWritten;
+}
@@ -0,0 +1,34 @@
+// FlushEvent.java
+package src.main.java.lsmkv.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JFR event spanning one MemTable flush, from writing the SSTable to rotating the WAL. */
+@Name("lsmkv.Flush")
+@Label("MemTable Flush")
+@Category({"LSMKV", "Storage"})
+@Description("A MemTable written out as an SSTable. Runs on the writer thread, so writes queue behind it.")
+@StackTrace(false)
+public class FlushEvent extends Event {
+    @Label("Data Directory")
+    public String dataDir;
+
+    @Label("Entries")
+    public long entries;
+
+    @Label("Table Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Table Id")
+    public long tableId;
+
+    @Label("Last Sequence")
+    public long maxSeq;
+}
@@ -0,0 +1,96 @@
+// Histogram.java
+package src.main.java.lsmkv.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of non-negative longs, in the style of
+ * HdrHistogram with 3 sub-bucket bits: values below 16 are exact, larger values
+ * land in one of 8 buckets per power of two, so any recorded value is known to
+ * within 12.5%. Every bucket is a {@link LongAdder}, so concurrent recorders
+ * never contend on one cache line. Exported with one bucket per power of two
+ * from {@code 2^minOctave} to {@code 2^maxOctave} recorded units.
+ */
+public final class Histogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+    // multiplier from recorded units to exported units (1e-9 for nanos exported as seconds)
+    private final double scale;
+    private final int minOctave;
+    private final int maxOctave;
+
+    Histogram(double scale, int minOctave, int maxOctave) {
+        this.scale = scale;
+        this.minOctave = minOctave;
+        this.maxOctave = maxOctave;
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+    }
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets[index(v)].increment();
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    /** Records the time since {@code startNanos} (from {@link System#nanoTime()}). */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long count() { return count.sum(); }
+    public long sum() { return sum.sum(); }
+    public long max() { return max.get(); }
+    double scale() { return scale; }
+    int minOctave() { return minOctave; }
+    int maxOctave() { return maxOctave; }
+
+    /** Upper bound of the bucket holding the {@code percentile}th value (0-100), in recorded units. */
+    public long percentile(double percentile) {
+        long[] counts = snapshot();
+        long total = 0;
+        for (long c : counts) total += c;
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(upperBound(i) - 1, max());
+        }
+        return max();
+    }
+
+    /** Bucket counts; not an atomic snapshot while recording continues. */
+    long[] snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) counts[i] = buckets[i].sum();
+        return counts;
+    }
+
+    static int index(long v) {
+        if (v < SUB) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        return (exp - SUB_BITS + 1) * SUB + (int) ((v >>> (exp - SUB_BITS)) & (SUB - 1));
+    }
+
+    /** Smallest value past bucket {@code i}. */
+    static long upperBound(int i) {
+        int group = i / SUB;
+        if (group == 0) return i + 1;
+        int shift = group - 1;
+        long lower = (long) (SUB + i % SUB) << shift;
+        return lower + (1L << shift);
+    }
+
+    static int bucketCount() {
+        return BUCKETS;
+    }
+}
@@ -0,0 +1,36 @@
+// HttpRequestEvent.java
+package src.main.java.lsmkv.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JFR event spanning an HTTP request that took at least the slow-request threshold. */
+@Name("lsmkv.HttpRequest")
+@Label("Slow HTTP Request")
+@Category({"LSMKV", "Requests"})
+@Description("HTTP request slower than the configured slow-request threshold, from routing to the last response byte.")
+@StackTrace(false)
+public class HttpRequestEvent extends Event {
+    @Label("Method")
+    public String method;
+
+    @Label("Path")
+    @Description("Request path and query, including the key")
+    public String uri;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Request Bytes")
+    @DataAmount
+    public long requestBytes;
+
+    @Label("Response Bytes")
+    @DataAmount
+    public long responseBytes;
+}
@@ -0,0 +1,180 @@
+// Metrics.java
+package src.main.java.lsmkv.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of counters, gauges and histograms, rendered in the Prometheus text
+ * format by {@link #writePrometheus(StringBuilder)}. One registry is kept per
+ * {@code Config}, so the shards of a {@code ShardedEngine} report into the same
+ * series.
+ *
+ * Registration looks the series up by name and labels (given as alternating
+ * name, value pairs) and returns the same object every time, so hot paths hold
+ * on to what they record into and never touch the registry. Gauges are
+ * suppliers read at scrape time; several registered for one series are summed.
+ */
+public final class Metrics {
+    private enum Type { COUNTER, GAUGE, HISTOGRAM }
+
+    private static final class Family {
+        final Type type;
+        final String help;
+        // label text ("" or {a="b"}) -> LongAdder, Histogram or List<DoubleSupplier>
+        final Map<String, Object> series = new ConcurrentSkipListMap<>();
+
+        Family(Type type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    /** Monotonic counter. */
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) family(name, help, Type.COUNTER).series
+                .computeIfAbsent(labelText(labels), k -> new LongAdder());
+    }
+
+    /**
+     * Latency histogram recorded in nanoseconds and exported in seconds, with
+     * buckets from about a microsecond (2^10 ns) to about a minute (2^36 ns).
+     */
+    public Histogram latency(String name, String help, String... labels) {
+        return histogram(name, help, 1e-9, 10, 36, labels);
+    }
+
+    /** Histogram of plain values (sizes, counts), exported as recorded, with buckets from 1 to 2^20. */
+    public Histogram histogram(String name, String help, String... labels) {
+        return histogram(name, help, 1.0, 0, 20, labels);
+    }
+
+    private Histogram histogram(String name, String help, double scale, int minOctave, int maxOctave,
+                                String... labels) {
+        return (Histogram) family(name, help, Type.HISTOGRAM).series
+                .computeIfAbsent(labelText(labels), k -> new Histogram(scale, minOctave, maxOctave));
+    }
+
+    /** Gauge read at scrape time. Returns a handle that unregisters this supplier. */
+    public Runnable gauge(String name, String help, DoubleSupplier value, String... labels) {
+        return supplier(name, help, Type.GAUGE, value, labels);
+    }
+
+    /** Counter kept elsewhere (e.g. by a cache), read at scrape time. Returns an unregister handle. */
+    public Runnable counter(String name, String help, DoubleSupplier value, String... labels) {
+        return supplier(name, help, Type.COUNTER, value, labels);
+    }
+
+    /** Registers {@code value} unless the series already has a supplier; for values derived from shared counters. */
+    public void gaugeIfAbsent(String name, String help, DoubleSupplier value, String... labels) {
+        List<DoubleSupplier> list = suppliers(name, help, Type.GAUGE, labels);
+        synchronized (list) {
+            if (list.isEmpty()) list.add(value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private CopyOnWriteArrayList<DoubleSupplier> suppliers(String name, String help, Type type, String... labels) {
+        return (CopyOnWriteArrayList<DoubleSupplier>) family(name, help, type).series
+                .computeIfAbsent(labelText(labels), k -> new CopyOnWriteArrayList<DoubleSupplier>());
+    }
+
+    private Runnable supplier(String name, String help, Type type, DoubleSupplier value, String... labels) {
+        List<DoubleSupplier> list = suppliers(name, help, type, labels);
+        list.add(value);
+        return () -> list.remove(value);
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family f = families.computeIfAbsent(name, n -> new Family(type, help));
+        if (f.type != type) throw new IllegalArgumentException(name + " is already registered as a " + f.type);
+        return f;
+    }
+
+    private static String labelText(String... labels) {
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("labels must be name/value pairs");
+        if (labels.length == 0) return "";
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) sb.append(',');
+            sb.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String escape(String v) {
+        return v.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    // -------------------- exposition --------------------
+
+    /** Appends every metric in the Prometheus text exposition format (version 0.0.4). */
+    public void writePrometheus(StringBuilder out) {
+        List<String> names = new ArrayList<>(families.keySet());
+        names.sort(null);
+        for (String name : names) {
+            Family f = families.get(name);
+            out.append("# HELP ").append(name).append(' ').append(f.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(f.type.name().toLowerCase(Locale.ROOT)).append('\n');
+            for (Map.Entry<String, Object> s : f.series.entrySet()) {
+                Object m = s.getValue();
+                if (m instanceof LongAdder) {
+                    sample(out, name, s.getKey(), ((LongAdder) m).sum());
+                } else if (m instanceof Histogram) {
+                    writeHistogram(out, name, s.getKey(), (Histogram) m);
+                } else {
+                    double total = 0;
+                    for (Object g : (List<?>) m) total += ((DoubleSupplier) g).getAsDouble();
+                    sample(out, name, s.getKey(), total);
+                }
+            }
+        }
+    }
+
+    /**
+     * One cumulative bucket per power of two over the histogram's fixed range,
+     * empty or not, so every scrape of a series carries the same {@code le} labels;
+     * the lowest bucket also counts everything below it, and values past the
+     * highest count only towards {@code +Inf}.
+     */
+    private static void writeHistogram(StringBuilder out, String name, String labels, Histogram h) {
+        long[] counts = h.snapshot();
+        long[] perOctave = new long[65];
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) continue;
+            long upper = Histogram.upperBound(i);
+            perOctave[64 - Long.numberOfLeadingZeros(upper - 1)] += counts[i];
+        }
+        long cumulative = 0;
+        for (int i = 0; i < h.minOctave(); i++) cumulative += perOctave[i];
+        String inner = labels.isEmpty() ? "" : labels.substring(1, labels.length() - 1) + ",";
+        for (int i = h.minOctave(); i <= h.maxOctave(); i++) {
+            cumulative += perOctave[i];
+            String le = format((1L << i) * h.scale());
+            sample(out, name + "_bucket", "{" + inner + "le=\"" + le + "\"}", cumulative);
+        }
+        long total = 0;
+        for (long c : counts) total += c;
+        sample(out, name + "_bucket", "{" + inner + "le=\"+Inf\"}", total);
+        sample(out, name + "_sum", labels, h.sum() * h.scale());
+        sample(out, name + "_count", labels, total);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append(labels).append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double v) {
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) return Long.toString((long) v);
+        return Double.toString(v);
+    }
+}
@@ -0,0 +1,52 @@
+// SlowRequestEvent.java
+package src.main.java.lsmkv.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for an engine operation that took at least
+ * {@code Config.getSlowRequestThreshold()}. Only allocated for slow requests, so
+ * fast ones pay a clock read and a comparison.
+ */
+@Name("lsmkv.SlowRequest")
+@Label("Slow Request")
+@Category({"LSMKV", "Requests"})
+@Description("Engine operation slower than the configured slow-request threshold.")
+@StackTrace(false)
+public class SlowRequestEvent extends Event {
+    private static final int MAX_KEY_CHARS = 256;
+    private static final EventType TYPE = EventType.getEventType(SlowRequestEvent.class);
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Key")
+    @Description("Key, or first key of a batch or range")
+    public String key;
+
+    @Label("Keys")
+    public int keys;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    public long elapsed;
+
+    /** Commits an event for {@code operation} if JFR is recording it. */
+    public static void emit(String operation, Object key, int keys, long elapsedNanos) {
+        if (!TYPE.isEnabled()) return;
+        SlowRequestEvent e = new SlowRequestEvent();
+        e.operation = operation;
+        String k = key == null ? null : key.toString();
+        e.key = k != null && k.length() > MAX_KEY_CHARS ? k.substring(0, MAX_KEY_CHARS) : k;
+        e.keys = keys;
+        e.elapsed = elapsedNanos;
+        e.commit();
+    }
+}
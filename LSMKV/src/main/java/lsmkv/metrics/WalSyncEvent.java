@@ -0,0 +1,27 @@
+// WalSyncEvent.java
+package src.main.java.lsmkv.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JFR event spanning one fsync of the active WAL segment. */
+@Name("lsmkv.WalSync")
+@Label("WAL Sync")
+@Category({"LSMKV", "Storage"})
+@Description("fsync of the write-ahead log; the writer thread holds the WAL lock meanwhile.")
+@StackTrace(false)
+public class WalSyncEvent extends Event {
+    @Label("Segment First Sequence")
+    public long segment;
+
+    @Label("Records")
+    @Description("Records appended since the previous sync")
+    public long records;
+
+    @Label("Last Sequence")
+    public long lastSeq;
+}
@@ -2,22 +2,48 @@
 package src.main.java.lsmkv.network;
 
 import com.sun.net.httpserver.HttpServer;
-import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.engine.KeyValueStore;
+import src.main.java.lsmkv.network.handlers.AdminHandler;
 import src.main.java.lsmkv.network.handlers.BatchHandler;
 import src.main.java.lsmkv.network.handlers.KvHandler;
+import src.main.java.lsmkv.network.handlers.MetricsHandler;
 import src.main.java.lsmkv.network.handlers.RangeHandler;
 
 import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.concurrent.Executor;
 
 public class HttpServerWrapper {
     private final HttpServer server;
 
-    public HttpServerWrapper(StorageEngine engine, int port, Executor executor) throws Exception {
+    public HttpServerWrapper(KeyValueStore engine, int port, Executor executor) throws Exception {
+        this(engine, port, executor, Duration.ofMillis(100));
+    }
+
+    /** Requests taking at least {@code slowRequestThreshold} are counted and recorded as JFR events. */
+    public HttpServerWrapper(KeyValueStore engine, int port, Executor executor,
+                             Duration slowRequestThreshold) throws Exception {
+        this(engine, port, executor, slowRequestThreshold, null);
+    }
+
+    /** With a {@code backupDir}, also serves {@code POST /admin/checkpoint} into it. */
+    public HttpServerWrapper(KeyValueStore engine, int port, Executor executor,
+                             Duration slowRequestThreshold, Path backupDir) throws Exception {
+        // Read once, when the first server is created. Without TCP_NODELAY every response on a
+        // keep-alive connection waits ~40 ms for the client's delayed ACK (Nagle).
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
         server = HttpServer.create(new InetSocketAddress(port), 0);
-        server.createContext("/kv", new KvHandler(engine));
-        server.createContext("/batch", new BatchHandler(engine));
-        server.createContext("/range", new RangeHandler(engine));
+        SlowRequestFilter slow = new SlowRequestFilter(slowRequestThreshold.toNanos(),
+                engine.metrics().counter("lsmkv_http_slow_requests_total",
+                        "HTTP requests slower than the slow-request threshold (each also a lsmkv.HttpRequest JFR event)."));
+        server.createContext("/kv", new KvHandler(engine)).getFilters().add(slow);
+        server.createContext("/batch", new BatchHandler(engine)).getFilters().add(slow);
+        server.createContext("/range", new RangeHandler(engine)).getFilters().add(slow);
+        server.createContext("/metrics", new MetricsHandler(engine.metrics()));
+        if (backupDir != null) server.createContext("/admin", new AdminHandler(engine, backupDir));
         server.setExecutor(executor);
     }
 
@@ -0,0 +1,65 @@
+package src.main.java.lsmkv.network;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import jdk.jfr.EventType;
+import src.main.java.lsmkv.metrics.HttpRequestEvent;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times every request through its handler; those taking at least the threshold
+ * are counted and committed as {@code lsmkv.HttpRequest} JFR events. The event is
+ * only allocated while a recording has it enabled.
+ */
+class SlowRequestFilter extends Filter {
+    private static final EventType HTTP_REQUEST = EventType.getEventType(HttpRequestEvent.class);
+
+    private final long thresholdNanos;
+    private final LongAdder slow;
+
+    SlowRequestFilter(long thresholdNanos, LongAdder slow) {
+        this.thresholdNanos = thresholdNanos;
+        this.slow = slow;
+    }
+
+    @Override
+    public void doFilter(HttpExchange ex, Chain chain) throws IOException {
+        HttpRequestEvent event = null;
+        if (HTTP_REQUEST.isEnabled()) {
+            event = new HttpRequestEvent();
+            event.begin();
+        }
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(ex);
+        } finally {
+            if (System.nanoTime() - start >= thresholdNanos) {
+                slow.increment();
+                if (event != null && event.shouldCommit()) {
+                    event.method = ex.getRequestMethod();
+                    event.uri = ex.getRequestURI().toString();
+                    event.status = ex.getResponseCode();
+                    event.requestBytes = length(ex.getRequestHeaders().getFirst("Content-Length"));
+                    event.responseBytes = length(ex.getResponseHeaders().getFirst("Content-Length"));
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    private static long length(String header) {
+        if (header == null) return 0;
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public String description() {
+        return "slow request tracing";
+    }
+}
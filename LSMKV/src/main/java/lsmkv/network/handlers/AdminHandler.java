@@ -0,0 +1,76 @@
+package src.main.java.lsmkv.network.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import src.main.java.lsmkv.engine.Checkpoint;
+import src.main.java.lsmkv.engine.KeyValueStore;
+import src.main.java.lsmkv.util.Utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+/**
+ * {@code POST /admin/checkpoint?name=<name>[&since=<base name>]}: writes a checkpoint
+ * of the store into {@code <backupDir>/<name>}, incremental on top of the checkpoint
+ * {@code since} if given. Names are single path segments, so requests cannot write
+ * outside the backup directory.
+ */
+public class AdminHandler implements HttpHandler {
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_][A-Za-z0-9._-]*");
+
+    private final KeyValueStore engine;
+    private final Path backupDir;
+
+    public AdminHandler(KeyValueStore engine, Path backupDir) {
+        this.engine = engine;
+        this.backupDir = backupDir;
+    }
+
+    @Override
+    public void handle(HttpExchange ex) throws IOException {
+        String response;
+        int status;
+
+        try {
+            String query = ex.getRequestURI().getQuery();
+            String name = Utils.queryParam(query, "name");
+            String since = Utils.queryParam(query, "since");
+            if (!ex.getRequestURI().getPath().equals("/admin/checkpoint")) {
+                status = 404;
+                response = "Not Found";
+            } else if (!ex.getRequestMethod().equals("POST")) {
+                status = 405;
+                response = "Method Not Allowed";
+            } else if (name == null || !NAME.matcher(name).matches() || (since != null && !NAME.matcher(since).matches())) {
+                status = 400;
+                response = "Missing or invalid name (expected ?name=<name>[&since=<base name>])";
+            } else if (Files.exists(backupDir.resolve(name))) {
+                status = 409;
+                response = "Checkpoint " + name + " already exists";
+            } else {
+                Checkpoint c = engine.checkpoint(backupDir.resolve(name), since == null ? null : backupDir.resolve(since));
+                status = 200;
+                response = "{\"dir\":\"" + c.dir() + "\",\"seq\":" + c.seq() + ",\"tables\":" + c.tables()
+                        + ",\"reusedTables\":" + c.reusedTables() + ",\"linkedBytes\":" + c.linkedBytes()
+                        + ",\"copiedBytes\":" + c.copiedBytes() + "}";
+            }
+        } catch (Exception e) {
+            status = 500;
+            response = "Checkpoint failed: " + e.getMessage();
+            engine.metrics().counter("lsmkv_http_errors_total", "HTTP requests answered with a 5xx status.",
+                    "handler", "admin").increment();
+            System.err.println("[WARN] POST /admin/checkpoint failed: " + e);
+        }
+
+        ex.getResponseHeaders().set("Content-Type", status == 200 ? "application/json" : "text/plain");
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
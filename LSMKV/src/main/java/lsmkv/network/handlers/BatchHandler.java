@@ -2,19 +2,23 @@ package src.main.java.lsmkv.network.handlers;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
-import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.engine.KeyValueStore;
+import src.main.java.lsmkv.util.Slice;
+import src.main.java.lsmkv.util.Utils;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class BatchHandler implements HttpHandler {
-    private final StorageEngine engine;
+    private final KeyValueStore engine;
 
-    public BatchHandler(StorageEngine engine) {
+    public BatchHandler(KeyValueStore engine) {
         this.engine = engine;
     }
 
@@ -36,9 +40,9 @@ public class BatchHandler implements HttpHandler {
                         String body = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
 
                         // parse JSON-like simple object manually (since no ObjectMapper)
-                        Map<String, byte[]> kvPairs = parseJsonToMap(body);
+                        Map<Slice, byte[]> kvPairs = parseJsonToMap(body);
 
-                        engine.putBatch(kvPairs);
+                        engine.putBatch(kvPairs, Utils.expiresAt(uri.getQuery()));
                         status = 200;
                         response = "Batch insert successful";
                     } catch (IOException e) {
@@ -70,19 +74,20 @@ public class BatchHandler implements HttpHandler {
                         }
 
                         String[] keys = keysParam.split(",");
+                        List<Slice> lookups = new ArrayList<>(keys.length);
+                        for (String k : keys) lookups.add(Slice.utf8(k));
+                        // one multi-get, so a sharded store can split it across partitions
+                        Map<Slice, byte[]> found = engine.getBatch(lookups);
+
                         StringBuilder jsonBuilder = new StringBuilder();
                         jsonBuilder.append("{");
 
                         for (int i = 0; i < keys.length; i++) {
                             String k = keys[i];
                             String value = null;
-                            try {
-                                byte[] stored = engine.get(k);
-                                if (stored != null) {
-                                    value = new String(stored, StandardCharsets.UTF_8);
-                                }
-                            } catch (Exception e) {
-                                value = "ERROR: " + e.getMessage();
+                            byte[] stored = found.get(Slice.utf8(k.trim()));
+                            if (stored != null) {
+                                value = new String(stored, StandardCharsets.UTF_8);
                             }
 
                             jsonBuilder.append("\"").append(k).append("\":");
@@ -107,17 +112,33 @@ public class BatchHandler implements HttpHandler {
                     } catch (Exception e) {
                         status = 500;
                         response = "Server error while processing GET batch: " + e.getMessage();
-                        e.printStackTrace();
+                        engine.metrics().counter("lsmkv_http_errors_total", "HTTP requests answered with a 5xx status.",
+                                "handler", "batch").increment();
+                        System.err.println("[WARN] GET /batch failed: " + e);
                     }
                     break;
                 }
                 case "DELETE": {
+                    String query = uri.getQuery();
+                    String start = Utils.queryParam(query, "start");
+                    String end = Utils.queryParam(query, "end");
+                    if (start != null || end != null) { // range delete: one tombstone for [start, end]
+                        if (start == null || end == null || start.isEmpty() || end.isEmpty()) {
+                            status = 400;
+                            response = "Range delete needs both start and end";
+                            break;
+                        }
+                        engine.deleteRange(Slice.utf8(start), Slice.utf8(end));
+                        status = 200;
+                        response = "Deleted range";
+                        break;
+                    }
                     if (key == null || key.isEmpty()) {
                         status = 400;
                         response = "Missing key";
                         break;
                     }
-                    engine.delete(key);
+                    engine.delete(Slice.utf8(key));
                     status = 200;
                     response = "Deleted";
                     break;
@@ -161,8 +182,9 @@ public class BatchHandler implements HttpHandler {
         }
         return map;
     }
-    private Map<String, byte[]> parseJsonToMap(String json) {
-        Map<String, byte[]> map = new HashMap<>();
+    /** Parses a {@code POST /batch} body, {"k1":"v1","k2":"v2"}, into the map handed to putBatch. */
+    public static Map<Slice, byte[]> parseJsonToMap(String json) {
+        Map<Slice, byte[]> map = new HashMap<>();
 
         // Strip { } and split
         json = json.trim();
@@ -175,7 +197,7 @@ public class BatchHandler implements HttpHandler {
             if (kv.length == 2) {
                 String key = kv[0].trim().replaceAll("^\"|\"$", "");
                 String value = kv[1].trim().replaceAll("^\"|\"$", "");
-                map.put(key, value.getBytes(StandardCharsets.UTF_8));
+                map.put(Slice.utf8(key), value.getBytes(StandardCharsets.UTF_8));
             }
         }
 
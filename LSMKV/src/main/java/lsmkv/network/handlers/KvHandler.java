@@ -2,17 +2,20 @@ package src.main.java.lsmkv.network.handlers;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
-import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.engine.KeyValueStore;
+import src.main.java.lsmkv.util.Slice;
+import src.main.java.lsmkv.util.Utils;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 
 public class KvHandler implements HttpHandler {
-    private final StorageEngine engine;
+    private final KeyValueStore engine;
 
-    public KvHandler(StorageEngine engine) {
+    public KvHandler(KeyValueStore engine) {
         this.engine = engine;
     }
 
@@ -35,8 +38,67 @@ public class KvHandler implements HttpHandler {
                         response = "Missing key";
                         break;
                     }
+                    long expiresAt;
+                    try {
+                        expiresAt = Utils.expiresAt(uri.getQuery());
+                    } catch (IllegalArgumentException e) {
+                        status = 400;
+                        response = "Invalid expiry: " + e.getMessage();
+                        break;
+                    }
                     byte[] value = ex.getRequestBody().readAllBytes();
-                    engine.put(key, value);
+                    String ifValue = Utils.queryParam(uri.getRawQuery(), "ifValue");
+                    boolean ifAbsent = "true".equals(Utils.queryParam(uri.getQuery(), "ifAbsent"));
+                    if (ifValue == null && !ifAbsent) {
+                        engine.put(Slice.utf8(key), value, expiresAt);
+                        status = 200;
+                        response = "OK";
+                        break;
+                    }
+                    // conditional put: ?ifValue=<current value> or ?ifAbsent=true
+                    if (expiresAt != 0 || (ifValue != null && ifAbsent)) {
+                        status = 400;
+                        response = "Conditional put takes one of ifValue or ifAbsent, without an expiry";
+                        break;
+                    }
+                    byte[] expected = ifAbsent ? null : URLDecoder.decode(ifValue, StandardCharsets.UTF_8)
+                            .getBytes(StandardCharsets.UTF_8);
+                    if (engine.compareAndSet(Slice.utf8(key), expected, value)) {
+                        status = 200;
+                        response = "OK";
+                    } else {
+                        status = 412;
+                        response = "Precondition Failed";
+                    }
+                    break;
+                }
+
+                case "POST": {
+                    // read-modify-write without a read: ?op=incr[&by=N] or ?op=merge (body = operand)
+                    if (key == null || key.isEmpty()) {
+                        status = 400;
+                        response = "Missing key";
+                        break;
+                    }
+                    String op = Utils.queryParam(uri.getQuery(), "op");
+                    if ("incr".equals(op)) {
+                        String by = Utils.queryParam(uri.getQuery(), "by");
+                        long delta;
+                        try {
+                            delta = by == null ? 1 : Long.parseLong(by);
+                        } catch (NumberFormatException e) {
+                            status = 400;
+                            response = "Invalid by: " + by;
+                            break;
+                        }
+                        engine.increment(Slice.utf8(key), delta);
+                    } else if ("merge".equals(op)) {
+                        engine.merge(Slice.utf8(key), ex.getRequestBody().readAllBytes());
+                    } else {
+                        status = 400;
+                        response = "Expected op=incr or op=merge";
+                        break;
+                    }
                     status = 200;
                     response = "OK";
                     break;
@@ -48,7 +110,7 @@ public class KvHandler implements HttpHandler {
                         response = "Missing key";
                         break;
                     }
-                    byte[] stored = engine.get(key);
+                    byte[] stored = engine.get(Slice.utf8(key));
                     if (stored != null) {
                         status = 200;
                         response = new String(stored, StandardCharsets.UTF_8);
@@ -65,7 +127,7 @@ public class KvHandler implements HttpHandler {
                         response = "Missing key";
                         break;
                     }
-                    engine.delete(key);
+                    engine.delete(Slice.utf8(key));
                     status = 200;
                     response = "Deleted";
                     break;
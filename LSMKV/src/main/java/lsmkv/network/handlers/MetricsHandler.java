@@ -0,0 +1,41 @@
+package src.main.java.lsmkv.network.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import src.main.java.lsmkv.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/** {@code GET /metrics}: the engine's metrics in the Prometheus text format. */
+public class MetricsHandler implements HttpHandler {
+    private final Metrics metrics;
+
+    public MetricsHandler(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void handle(HttpExchange ex) throws IOException {
+        int status;
+        String response;
+        if (ex.getRequestMethod().equals("GET")) {
+            StringBuilder sb = new StringBuilder(16 * 1024);
+            metrics.writePrometheus(sb);
+            status = 200;
+            response = sb.toString();
+            ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        } else {
+            status = 405;
+            response = "Method Not Allowed";
+            ex.getResponseHeaders().set("Content-Type", "text/plain");
+        }
+
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
@@ -2,7 +2,8 @@ package src.main.java.lsmkv.network.handlers;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
-import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.engine.KeyValueStore;
+import src.main.java.lsmkv.util.Slice;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -10,9 +11,9 @@ import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 public class RangeHandler implements HttpHandler {
-    private final StorageEngine engine;
+    private final KeyValueStore engine;
 
-    public RangeHandler(StorageEngine engine) {
+    public RangeHandler(KeyValueStore engine) {
         this.engine = engine;
     }
 
@@ -30,14 +31,14 @@ public class RangeHandler implements HttpHandler {
                 String start = getParam(query, "start");
                 String end = getParam(query, "end");
 
-                Map<String, byte[]> rangeResult;
+                Map<Slice, byte[]> rangeResult;
                 try {
-                    rangeResult = engine.getRange(start, end);
+                    rangeResult = engine.getRange(Slice.utf8(start), Slice.utf8(end));
                     StringBuilder sb = new StringBuilder();
                     sb.append("{");
                     int i = 0;
-                    for (Map.Entry<String, byte[]> entry : rangeResult.entrySet()) {
-                        sb.append("\"").append(entry.getKey()).append("\":");
+                    for (Map.Entry<Slice, byte[]> entry : rangeResult.entrySet()) {
+                        sb.append("\"").append(entry.getKey().toStringUtf8()).append("\":");
                         if (entry.getValue() != null) {
                             sb.append("\"").append(new String(entry.getValue(), StandardCharsets.UTF_8)).append("\"");
                         } else {
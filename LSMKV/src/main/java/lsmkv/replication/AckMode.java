@@ -0,0 +1,12 @@
+// AckMode.java
+package src.main.java.lsmkv.replication;
+
+/** How many followers must confirm a write before the leader acknowledges it. */
+public enum AckMode {
+    /** Return as soon as the write is in the leader's WAL. */
+    ASYNC,
+    /** Wait for at least one follower. */
+    ONE,
+    /** Wait for a majority of {@code Config.getReplicationFactor()} replicas, the leader included. */
+    QUORUM
+}
@@ -0,0 +1,170 @@
+// AntiEntropy.java
+package src.main.java.lsmkv.replication;
+
+import src.main.java.lsmkv.engine.MerkleTree;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merkle-tree comparison between a follower and its leader, run periodically by
+ * the follower over its own connection.
+ * <pre>
+ * follower -> leader   [int REPAIR_MAGIC]
+ * leader -> follower   [long treeSeq][int depth]
+ * follower -> leader   [int n][int node]*      (n = 0 ends the descent)
+ * leader -> follower   [long hash]*            (one per requested node)
+ * follower -> leader   [int nLeaves][int leaf]* [int nKeys]([int klen][key][long entryHash])*
+ * leader -> follower   [int keysRewritten]
+ * </pre>
+ * The follower walks down from the root, only asking for the children of nodes
+ * that differ, so the exchange is proportional to the number of divergent
+ * key-hash ranges. For those ranges it sends one hash per live key (keys with an
+ * expiry time are left out, as they are from the tree); both sides walk their keys
+ * once but read values only for keys in those ranges. The leader compares them
+ * with its own data and re-writes every key that differs (deleting keys the
+ * follower has but it does not). The re-writes go through the leader's
+ * WAL, so they reach followers in order with live writes and can never overwrite
+ * a newer value.
+ */
+final class AntiEntropy {
+    static final int REPAIR_MAGIC = 0x4C4B5652; // "LKVR"
+    private static final long CATCH_UP_MILLIS = 30_000;
+
+    /** Outcome of one comparison round. */
+    static final class Result {
+        final int divergentRanges;
+        final int keysRewritten;
+
+        Result(int divergentRanges, int keysRewritten) {
+            this.divergentRanges = divergentRanges;
+            this.keysRewritten = keysRewritten;
+        }
+
+        @Override
+        public String toString() {
+            return divergentRanges + " divergent ranges, " + keysRewritten + " keys re-sent";
+        }
+    }
+
+    private AntiEntropy() { }
+
+    // -------------------- follower side --------------------
+
+    static Result compareWithLeader(StorageEngine engine, DataInputStream in, DataOutputStream out) throws IOException {
+        out.writeInt(REPAIR_MAGIC);
+        out.flush();
+        long leaderSeq = in.readLong();
+        int depth = in.readInt();
+
+        // Compare at (roughly) the same point in the log: wait until we have applied leaderSeq.
+        long deadline = System.currentTimeMillis() + CATCH_UP_MILLIS;
+        while (engine.lastSequence() < leaderSeq && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting to catch up to seq " + leaderSeq, ie);
+            }
+        }
+        MerkleTree mine = engine.merkleSnapshot();
+        if (mine.depth() != depth) {
+            throw new IOException("Merkle depth differs from leader: " + mine.depth() + " vs " + depth);
+        }
+        long[] nodes = mine.nodes();
+        int leafCount = mine.leafCount();
+
+        BitSet divergent = new BitSet(leafCount);
+        List<Integer> frontier = new ArrayList<>();
+        frontier.add(1);
+        while (!frontier.isEmpty()) {
+            out.writeInt(frontier.size());
+            for (int node : frontier) out.writeInt(node);
+            out.flush();
+            List<Integer> next = new ArrayList<>();
+            for (int node : frontier) {
+                if (in.readLong() == nodes[node]) continue;
+                if (node >= leafCount) {
+                    divergent.set(node - leafCount);
+                } else {
+                    next.add(2 * node);
+                    next.add(2 * node + 1);
+                }
+            }
+            frontier = next;
+        }
+        out.writeInt(0);
+
+        out.writeInt(divergent.cardinality());
+        for (int leaf = divergent.nextSetBit(0); leaf >= 0; leaf = divergent.nextSetBit(leaf + 1)) out.writeInt(leaf);
+        List<Slice> keys = new ArrayList<>();
+        List<Long> hashes = new ArrayList<>();
+        if (!divergent.isEmpty()) {
+            engine.scan(Slice.EMPTY, null, k -> divergent.get(mine.leafOf(k)), e -> {
+                if (e.expiresAt() != 0) return;
+                keys.add(e.key());
+                hashes.add(MerkleTree.entryHash(e.key(), e.value()));
+            });
+        }
+        out.writeInt(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            out.writeInt(keys.get(i).length());
+            out.write(keys.get(i).toByteArray(), 0, keys.get(i).length());
+            out.writeLong(hashes.get(i));
+        }
+        out.flush();
+        return new Result(divergent.cardinality(), in.readInt());
+    }
+
+    // -------------------- leader side --------------------
+
+    /** Serves one comparison after the follower's REPAIR_MAGIC has been read. */
+    static void serve(StorageEngine engine, DataInputStream in, DataOutputStream out) throws IOException {
+        MerkleTree tree = engine.merkleSnapshot();
+        long[] nodes = tree.nodes();
+        out.writeLong(tree.seq());
+        out.writeInt(tree.depth());
+        out.flush();
+
+        int n;
+        while ((n = in.readInt()) > 0) {
+            for (int i = 0; i < n; i++) {
+                int node = in.readInt();
+                if (node < 1 || node >= nodes.length) throw new IOException("bad Merkle node " + node);
+                out.writeLong(nodes[node]);
+            }
+            out.flush();
+        }
+
+        BitSet ranges = new BitSet(tree.leafCount());
+        int nLeaves = in.readInt();
+        for (int i = 0; i < nLeaves; i++) ranges.set(in.readInt());
+        Map<Slice, Long> theirs = new HashMap<>();
+        int nKeys = in.readInt();
+        for (int i = 0; i < nKeys; i++) {
+            byte[] key = new byte[in.readInt()];
+            in.readFully(key);
+            theirs.put(Slice.wrap(key), in.readLong());
+        }
+
+        Map<Slice, byte[]> rewrite = new HashMap<>();
+        if (!ranges.isEmpty()) {
+            engine.scan(Slice.EMPTY, null, k -> ranges.get(tree.leafOf(k)), e -> {
+                if (e.expiresAt() != 0) return;
+                Long h = theirs.remove(e.key());
+                if (h == null || h != MerkleTree.entryHash(e.key(), e.value())) rewrite.put(e.key(), e.value());
+            });
+        }
+        for (Slice extra : theirs.keySet()) rewrite.put(extra, null); // follower has it, leader does not
+        out.writeInt(rewrite.isEmpty() ? 0 : engine.rewriteForRepair(rewrite));
+        out.flush();
+    }
+}
@@ -1,15 +1,501 @@
-// TODO: Implement LeaderFollowerReplicator.java
+// LeaderFollowerReplicator.java
 package src.main.java.lsmkv.replication;
 
-public class LeaderFollowerReplicator //implements ReplicatorInt
-{
-    //@Override
-    public void replicatePut(String key, byte[] value) {
-        // TODO: implement replication
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.Snapshot;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.engine.WAL;
+import src.main.java.lsmkv.metrics.Metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replicates by shipping WAL records over TCP (see {@link ReplicationProtocol}).
+ *
+ * The leader accepts follower connections and runs one sender per follower that
+ * tails its WAL from the sequence number the follower asked for, sending batches
+ * of up to {@code Config.getReplicationBatchBytes()} without waiting for acks.
+ * Only records already synced to the leader's disk are sent (a sender with nothing
+ * else to send forces the sync), so no follower can hold a record that a leader
+ * restart loses.
+ * Followers apply each batch through {@link StorageEngine#applyReplicated},
+ * keeping the leader's sequence numbers, and ack the last one; acks are
+ * cumulative. Followers reconnect on their own and resume from their last
+ * applied record, and serve reads from their own copy of the data.
+ *
+ * A follower that is empty, too far behind for the leader's retained WAL, or ahead
+ * of the leader (it followed a different leader, or one whose WAL was lost) is
+ * bootstrapped from a {@link Snapshot} instead: the leader streams its SSTable and
+ * value-log files with {@code FileChannel.transferTo} and then continues with WAL
+ * records after the snapshot's sequence number. The leader keeps taking writes
+ * while the files are in flight.
+ *
+ * Followers also run {@link AntiEntropy} every {@code Config.getAntiEntropyInterval()}
+ * to find and repair drift the stream itself would never notice.
+ */
+public class LeaderFollowerReplicator implements Replicator {
+    private static final long IDLE_WAIT_MILLIS = 50;
+    private static final long RECONNECT_MIN_MILLIS = 100;
+    private static final long RECONNECT_MAX_MILLIS = 5_000;
+
+    private final Config cfg;
+    private final boolean leader;
+    private final String host;
+    private final int port;
+
+    private final List<Session> sessions = new CopyOnWriteArrayList<>();
+    private final Object newData = new Object();
+    private final Object acks = new Object();
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+    private volatile ServerSocketChannel server;
+    private volatile Socket followerSocket;
+    private volatile StorageEngine engine;
+
+    private final LongAdder acceptErrors;
+    private final LongAdder followersAhead;
+    private final LongAdder sendErrors;
+    private final LongAdder streamsLost;
+    private final LongAdder receiveErrors;
+    private final LongAdder antiEntropyFailures;
+    private final LongAdder repairedRanges;
+
+    private LeaderFollowerReplicator(boolean leader, String host, int port, Config cfg) {
+        this.leader = leader;
+        this.host = host;
+        this.port = port;
+        this.cfg = cfg;
+        Metrics m = cfg.getMetrics();
+        String errors = "lsmkv_replication_errors_total";
+        String errorsHelp = "Replication connections that failed or were cut short, by kind.";
+        this.acceptErrors = m.counter(errors, errorsHelp, "kind", "accept");
+        this.followersAhead = m.counter(errors, errorsHelp, "kind", "follower_ahead");
+        this.sendErrors = m.counter(errors, errorsHelp, "kind", "send");
+        this.streamsLost = m.counter(errors, errorsHelp, "kind", "stream_lost");
+        this.receiveErrors = m.counter(errors, errorsHelp, "kind", "receive");
+        this.antiEntropyFailures = m.counter("lsmkv_anti_entropy_failures_total",
+                "Anti-entropy rounds that failed before comparing with the leader.");
+        this.repairedRanges = m.counter("lsmkv_anti_entropy_repaired_ranges_total",
+                "Key ranges anti-entropy found diverged from the leader and repaired.");
+    }
+
+    /** Accepts followers on {@code port}; use port 0 for an ephemeral port (see {@link #port()}). */
+    public static LeaderFollowerReplicator leader(int port, Config cfg) {
+        return new LeaderFollowerReplicator(true, null, port, cfg);
+    }
+
+    /** Follows the leader listening at {@code host:port}; the engine becomes read-only. */
+    public static LeaderFollowerReplicator follower(String host, int port, Config cfg) {
+        return new LeaderFollowerReplicator(false, host, port, cfg);
+    }
+
+    @Override
+    public synchronized void start(StorageEngine engine) throws IOException {
+        if (running) return;
+        this.engine = engine;
+        running = true;
+        if (leader) {
+            server = ServerSocketChannel.open();
+            server.socket().setReuseAddress(true);
+            server.bind(new InetSocketAddress(port));
+            spawn("lsmkv-repl-accept", this::acceptLoop);
+        } else {
+            spawn("lsmkv-repl-follower", this::followLoop);
+            if (!cfg.getAntiEntropyInterval().isZero()) spawn("lsmkv-anti-entropy", this::antiEntropyLoop);
+        }
+    }
+
+    /** Port the leader is listening on, or the leader's port for a follower. */
+    public int port() {
+        ServerSocketChannel s = server;
+        return s != null ? s.socket().getLocalPort() : port;
+    }
+
+    @Override
+    public boolean acceptsWrites() {
+        return leader;
+    }
+
+    @Override
+    public void awaitReplication(long seq) throws IOException {
+        if (!leader) return;
+        synchronized (newData) {
+            newData.notifyAll();
+        }
+        int needed = requiredAcks();
+        if (needed == 0) return;
+
+        long deadline = System.nanoTime() + cfg.getReplicationAckTimeout().toNanos();
+        synchronized (acks) {
+            int acked;
+            while ((acked = countAcked(seq)) < needed) {
+                long remainingMillis = (deadline - System.nanoTime()) / 1_000_000;
+                if (remainingMillis <= 0 || !running) {
+                    throw new IOException("Replication of seq=" + seq + " acknowledged by " + acked
+                            + "/" + needed + " followers within " + cfg.getReplicationAckTimeout());
+                }
+                try {
+                    acks.wait(remainingMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for replication of seq=" + seq, ie);
+                }
+            }
+        }
+    }
+
+    /** Follower acks needed per write: majority of the replication factor, minus the leader itself. */
+    private int requiredAcks() {
+        switch (cfg.getReplicationAckMode()) {
+            case ONE:    return 1;
+            case QUORUM: return cfg.getReplicationFactor() / 2;
+            default:     return 0;
+        }
+    }
+
+    private int countAcked(long seq) {
+        int n = 0;
+        for (Session s : sessions) {
+            if (s.ackedSeq >= seq) n++;
+        }
+        return n;
+    }
+
+    // -------------------- Leader --------------------
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                // channel-backed sockets, so snapshot files can be sent with transferTo
+                Socket socket = server.accept().socket();
+                socket.setTcpNoDelay(true);
+                Session session = new Session(socket);
+                spawn("lsmkv-repl-send-" + socket.getRemoteSocketAddress(), session::sendLoop);
+            } catch (IOException ioe) {
+                if (!running) return;
+                acceptErrors.increment();
+                System.err.println("[WARN] Replication accept failed: " + ioe.getMessage());
+            }
+        }
+    }
+
+    /** One connected follower: a sender thread plus an ack reader. */
+    private final class Session {
+        private final Socket socket;
+        private volatile long ackedSeq;
+
+        Session(Socket socket) {
+            this.socket = socket;
+        }
+
+        void sendLoop() {
+            try (Socket s = socket) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                int magic = in.readInt();
+                if (magic == AntiEntropy.REPAIR_MAGIC) {
+                    AntiEntropy.serve(engine, in, out);
+                    return;
+                }
+                if (magic != ReplicationProtocol.MAGIC) {
+                    sendError(out, ReplicationProtocol.ERROR, "bad handshake");
+                    return;
+                }
+                long nextSeq = in.readLong();
+                if (nextSeq > engine.lastSequence() + 1) {
+                    followersAhead.increment();
+                    System.err.println("[WARN] Follower " + s.getRemoteSocketAddress() + " is ahead of the leader (next="
+                            + nextSeq + ", leader last=" + engine.lastSequence() + "); replacing its data with a snapshot");
+                }
+                WAL.Reader tail;
+                if (needsSnapshot(nextSeq)) {
+                    try (Snapshot snapshot = engine.createSnapshot()) {
+                        // open the tail first: it pins the WAL segment while the files are in flight
+                        tail = engine.openWalReader(snapshot.seq() + 1);
+                        try {
+                            sendSnapshot(snapshot, out);
+                        } catch (IOException ioe) {
+                            tail.close();
+                            throw ioe;
+                        }
+                        nextSeq = snapshot.seq() + 1;
+                    }
+                } else {
+                    tail = engine.openWalReader(nextSeq);
+                }
+                ackedSeq = nextSeq - 1;
+                sessions.add(this);
+                spawn("lsmkv-repl-ack-" + s.getRemoteSocketAddress(), () -> ackLoop(in));
+                try (WAL.Reader reader = tail) {
+                    stream(reader, out);
+                }
+            } catch (IOException ioe) {
+                if (running) {
+                    sendErrors.increment();
+                    System.err.println("[WARN] Replication to " + socket.getRemoteSocketAddress()
+                            + " stopped: " + ioe.getMessage());
+                }
+            } finally {
+                sessions.remove(this);
+            }
+        }
+
+        /** Snapshot header, then each file sent zero-copy from the page cache to the socket. */
+        private void sendSnapshot(Snapshot snapshot, DataOutputStream out) throws IOException {
+            out.writeByte(ReplicationProtocol.SNAPSHOT);
+            out.writeLong(snapshot.seq());
+            out.writeInt(snapshot.files().size());
+            SocketChannel channel = socket.getChannel();
+            for (Map.Entry<Path, Long> f : snapshot.files().entrySet()) {
+                long len = f.getValue();
+                out.writeUTF(f.getKey().getFileName().toString());
+                out.writeLong(len);
+                out.flush();
+                try (FileChannel file = FileChannel.open(f.getKey(), StandardOpenOption.READ)) {
+                    long pos = 0;
+                    while (pos < len) pos += file.transferTo(pos, len - pos, channel);
+                }
+            }
+            out.flush();
+        }
+
+        private void stream(WAL.Reader reader, DataOutputStream out) throws IOException {
+            List<WAL.Record> batch = new ArrayList<>();
+            while (running && !socket.isClosed()) {
+                batch.clear();
+                int bytes = 0;
+                WAL.Record r;
+                while (bytes < cfg.getReplicationBatchBytes() && (r = reader.next()) != null) {
+                    batch.add(r);
+                    bytes += r.encodedSize();
+                }
+                if (batch.isEmpty()) {
+                    if (engine.lastSequence() > engine.syncedSequence()) {
+                        engine.syncWal(); // the reader stops at the synced prefix
+                        continue;
+                    }
+                    synchronized (newData) {
+                        try {
+                            newData.wait(IDLE_WAIT_MILLIS);
+                        } catch (InterruptedException ie) {
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                out.writeByte(ReplicationProtocol.BATCH);
+                out.writeInt(batch.size());
+                for (WAL.Record rec : batch) ReplicationProtocol.writeRecord(out, rec);
+                out.flush();
+            }
+        }
+
+        private void ackLoop(DataInputStream in) {
+            try {
+                while (running) {
+                    long seq = in.readLong();
+                    ackedSeq = seq;
+                    synchronized (acks) {
+                        acks.notifyAll();
+                    }
+                }
+            } catch (IOException closed) {
+                // follower went away; the sender notices on its next write
+                closeQuietly(socket);
+            } finally {
+                sessions.remove(this);
+            }
+        }
+    }
+
+    /** Empty followers, followers behind the retained WAL and followers ahead of it start from a snapshot. */
+    private boolean needsSnapshot(long nextSeq) {
+        if (nextSeq < engine.firstRetainedSequence() || nextSeq > engine.lastSequence() + 1) return true;
+        return nextSeq == 1 && !engine.getTableStats().isEmpty();
+    }
+
+    private static void sendError(DataOutputStream out, byte frame, String reason) throws IOException {
+        out.writeByte(frame);
+        out.writeUTF(reason);
+        out.flush();
+    }
+
+    // -------------------- Follower --------------------
+
+    private void followLoop() {
+        long backoff = RECONNECT_MIN_MILLIS;
+        while (running) {
+            try (Socket s = new Socket()) {
+                followerSocket = s;
+                s.connect(new InetSocketAddress(host, port), 5_000);
+                s.setTcpNoDelay(true);
+                backoff = RECONNECT_MIN_MILLIS;
+                follow(s);
+            } catch (EOFException | SocketException closed) {
+                if (running) {
+                    streamsLost.increment();
+                    System.err.println("[WARN] Lost replication stream from " + host + ":" + port);
+                }
+            } catch (IOException ioe) {
+                if (running) {
+                    receiveErrors.increment();
+                    System.err.println("[WARN] Replication from " + host + ":" + port + " failed: " + ioe.getMessage());
+                }
+            }
+            if (!running) return;
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ie) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, RECONNECT_MAX_MILLIS);
+        }
+    }
+
+    private void follow(Socket s) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+        out.writeInt(ReplicationProtocol.MAGIC);
+        out.writeLong(engine.lastSequence() + 1);
+        out.flush();
+
+        List<WAL.Record> batch = new ArrayList<>();
+        while (running) {
+            byte frame = in.readByte();
+            if (frame == ReplicationProtocol.ERROR) {
+                throw new IOException("leader refused stream: " + in.readUTF());
+            }
+            if (frame == ReplicationProtocol.SNAPSHOT) {
+                long seq = receiveSnapshot(in);
+                out.writeLong(seq);
+                out.flush();
+                continue;
+            }
+            if (frame != ReplicationProtocol.BATCH) throw new IOException("unexpected frame " + frame);
+            int n = in.readInt();
+            batch.clear();
+            for (int i = 0; i < n; i++) batch.add(ReplicationProtocol.readRecord(in));
+            engine.applyReplicated(batch);
+            out.writeLong(batch.get(n - 1).seq);
+            out.flush();
+        }
+    }
+
+    private void antiEntropyLoop() {
+        while (running) {
+            try {
+                Thread.sleep(cfg.getAntiEntropyInterval().toMillis());
+            } catch (InterruptedException ie) {
+                return;
+            }
+            try {
+                runAntiEntropy();
+            } catch (IOException ioe) {
+                if (!running) return;
+                antiEntropyFailures.increment();
+                System.err.println("[WARN] Anti-entropy with " + host + ":" + port + " failed: " + ioe.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Compares this follower's Merkle tree with the leader's and has the leader
+     * re-send every key that differs. Returns a summary such as
+     * "3 divergent ranges, 5 keys re-sent".
+     */
+    public String runAntiEntropy() throws IOException {
+        if (leader) throw new IllegalStateException("anti-entropy is started by followers");
+        try (Socket s = new Socket()) {
+            s.connect(new InetSocketAddress(host, port), 5_000);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            AntiEntropy.Result r = AntiEntropy.compareWithLeader(engine, in, out);
+            if (r.divergentRanges > 0) {
+                repairedRanges.add(r.divergentRanges);
+                System.err.println("[WARN] Anti-entropy repaired drift: " + r);
+            }
+            return r.toString();
+        }
+    }
+
+    /** Downloads the snapshot files and swaps them in; returns the snapshot's sequence number. */
+    private long receiveSnapshot(DataInputStream in) throws IOException {
+        long seq = in.readLong();
+        int n = in.readInt();
+        Path dir = engine.prepareSnapshotDir();
+        byte[] buf = new byte[64 * 1024];
+        for (int i = 0; i < n; i++) {
+            String name = in.readUTF();
+            long remaining = in.readLong();
+            Path target = dir.resolve(name).normalize();
+            if (!dir.equals(target.getParent())) throw new IOException("bad snapshot file name: " + name);
+            try (OutputStream file = Files.newOutputStream(target)) {
+                while (remaining > 0) {
+                    int r = in.read(buf, 0, (int) Math.min(buf.length, remaining));
+                    if (r < 0) throw new EOFException("snapshot truncated in " + name);
+                    file.write(buf, 0, r);
+                    remaining -= r;
+                }
+            }
+        }
+        engine.installSnapshot(dir, seq);
+        return seq;
+    }
+
+    // -------------------- Lifecycle --------------------
+
+    private void spawn(String name, Runnable body) {
+        Thread t = new Thread(body, name);
+        t.setDaemon(true);
+        threads.add(t);
+        t.start();
+    }
+
+    private static void closeQuietly(java.io.Closeable c) {
+        if (c == null) return;
+        try { c.close(); } catch (IOException ignore) { /* best effort */ }
     }
 
-    //@Override
-    public void replicateDel(String key) {
-        // TODO: implement replication
+    @Override
+    public void close() throws IOException {
+        running = false;
+        closeQuietly(server);
+        closeQuietly(followerSocket);
+        for (Session s : sessions) closeQuietly(s.socket);
+        synchronized (newData) {
+            newData.notifyAll();
+        }
+        synchronized (acks) {
+            acks.notifyAll();
+        }
+        for (Thread t : threads) {
+            t.interrupt();
+            try {
+                t.join(1_000);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
     }
 }
@@ -0,0 +1,51 @@
+// ReplicationProtocol.java
+package src.main.java.lsmkv.replication;
+
+import src.main.java.lsmkv.engine.WAL;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Wire format between leader and follower (big-endian, over one TCP connection).
+ * <pre>
+ * follower -> leader   HELLO  [int MAGIC][long nextSeq]
+ *                      ACK    [long seq]                      (cumulative, pipelined)
+ * leader -> follower   BATCH  ['B'][int n] ([long seq][byte type][long expiresAt]?[int klen][int vlen][key][value])*
+ *                      SNAPSHOT ['P'][long seq][int n] ([utf name][long len][len bytes])*
+ *                                                             (then BATCHes from seq + 1)
+ *                      ERROR  ['E'][utf reason]
+ * </pre>
+ * The expiry is only sent for record types that carry one, see {@link WAL#hasExpiry}.
+ */
+final class ReplicationProtocol {
+    static final int MAGIC = 0x4C4B5631; // "LKV1"
+    static final byte BATCH = 'B';
+    static final byte SNAPSHOT = 'P';
+    static final byte ERROR = 'E';
+
+    private ReplicationProtocol() { }
+
+    static void writeRecord(DataOutputStream out, WAL.Record r) throws IOException {
+        out.writeLong(r.seq);
+        out.writeByte(r.type);
+        if (WAL.hasExpiry(r.type)) out.writeLong(r.expiresAt);
+        out.writeInt(r.key.length());
+        out.writeInt(r.value == null ? 0 : r.value.length);
+        out.write(r.key.toByteArray(), 0, r.key.length());
+        if (r.value != null) out.write(r.value);
+    }
+
+    static WAL.Record readRecord(DataInputStream in) throws IOException {
+        long seq = in.readLong();
+        byte type = in.readByte();
+        long expiresAt = WAL.hasExpiry(type) ? in.readLong() : 0;
+        byte[] key = new byte[in.readInt()];
+        byte[] value = new byte[in.readInt()];
+        in.readFully(key);
+        in.readFully(value);
+        return new WAL.Record(seq, type, Slice.wrap(key), type == WAL.TYPE_DEL ? null : value, expiresAt);
+    }
+}
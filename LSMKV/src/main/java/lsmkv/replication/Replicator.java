@@ -1,62 +1,32 @@
 // Replicator.java
 package src.main.java.lsmkv.replication;
 
-import java.nio.file.Path;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.HashMap;
-
-public class Replicator {
-    private final Path dataDir;
-    private final ConcurrentHashMap<String, byte[]> memtable = new ConcurrentHashMap<>();
-
-    // ✅ Take dataDir as a parameter
-    public Replicator(Path dataDir) {
-        this.dataDir = dataDir;
-    }
-
-    // Single put
-    public void put(String key, byte[] value) {
-        memtable.put(key, value);
-        // TODO: flush to SSTable when full
-    }
-
-    // Single get
-    public byte[] get(String key) {
-        return memtable.getOrDefault(key, null);
-    }
-
-    //  Batch put
-    public void putBatch(Map<String, byte[]> entries) {
-        memtable.putAll(entries);
-        // TODO: batching flush strategy can be applied here
-    }
-
-    // Batch get
-    public Map<String, byte[]> getBatch(List<String> keys) {
-        Map<String, byte[]> result = new HashMap<>();
-        for (String key : keys) {
-            if (memtable.containsKey(key)) {
-                result.put(key, memtable.get(key));
-            }
-        }
-        return result;
-    }
-
-    public Path getDataDir() {
-        return dataDir;
-    }
-
-    public Map<String, byte[]> getRange(String startKey, String endKey) {
-        Map<String, byte[]> result = new HashMap<>();
-        for (Map.Entry<String, byte[]> entry : memtable.entrySet()) {
-            String k = entry.getKey();
-            if (k.compareTo(startKey) >= 0 && k.compareTo(endKey) <= 0) {
-                result.put(k, entry.getValue());
-            }
-        }
-        return result;
-    }
-
+import src.main.java.lsmkv.engine.StorageEngine;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Pluggable replication for a {@link StorageEngine}. The engine calls
+ * {@link #start} once it has recovered, and {@link #awaitReplication} after each
+ * write is in its WAL.
+ */
+public interface Replicator extends Closeable {
+
+    void start(StorageEngine engine) throws IOException;
+
+    /** False on read-only replicas, which only apply what their leader ships. */
+    boolean acceptsWrites();
+
+    /**
+     * Signals that WAL records up to {@code seq} exist and blocks until enough
+     * replicas have acknowledged them, as configured by {@link AckMode}.
+     *
+     * @throws IOException if the acknowledgements do not arrive in time; the write
+     *                     is then durable locally but not confirmed on replicas
+     */
+    void awaitReplication(long seq) throws IOException;
+
+    @Override
+    void close() throws IOException;
 }
@@ -1,5 +1,28 @@
 package src.main.java.lsmkv.util;
 
-public class IterFrame {
-    // TODO: iterator abstraction
+import java.util.Iterator;
+
+/**
+ * One source in a k-way merge: an iterator plus its current head element.
+ * {@code rank} breaks ties between sources holding equal keys (lower = newer).
+ */
+public class IterFrame<T> {
+    private final Iterator<T> it;
+    private final int rank;
+    private T head;
+
+    public IterFrame(Iterator<T> it, int rank) {
+        this.it = it;
+        this.rank = rank;
+        advance();
+    }
+
+    public T head() { return head; }
+    public int rank() { return rank; }
+    public boolean exhausted() { return head == null; }
+
+    /** Moves to the next element; {@link #head()} becomes null at the end. */
+    public void advance() {
+        head = it.hasNext() ? it.next() : null;
+    }
 }
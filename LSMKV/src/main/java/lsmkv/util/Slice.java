@@ -0,0 +1,126 @@
+// Slice.java
+package src.main.java.lsmkv.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Immutable view over a byte range, used as the key type throughout the engine.
+ *
+ * Ordering is unsigned lexicographic (the same order the on-disk format uses),
+ * and the hash is computed once and cached. Sub-slices share the backing array,
+ * so trimming or splitting a key never copies.
+ */
+public final class Slice implements Comparable<Slice> {
+    public static final Slice EMPTY = new Slice(new byte[0], 0, 0);
+    public static final Comparator<Slice> COMPARATOR = Slice::compareTo;
+
+    private final byte[] data;
+    private final int offset;
+    private final int length;
+    private int hash; // 0 = not computed yet
+
+    private Slice(byte[] data, int offset, int length) {
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /** Wraps {@code bytes} without copying; the caller must not mutate it afterwards. */
+    public static Slice wrap(byte[] bytes) {
+        return new Slice(bytes, 0, bytes.length);
+    }
+
+    public static Slice wrap(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("offset=" + offset + " length=" + length + " size=" + bytes.length);
+        }
+        return new Slice(bytes, offset, length);
+    }
+
+    /** Copies {@code bytes}, for callers that keep ownership of the array. */
+    public static Slice copyOf(byte[] bytes) {
+        return new Slice(bytes.clone(), 0, bytes.length);
+    }
+
+    public static Slice utf8(String s) {
+        return wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public int length() { return length; }
+
+    public boolean isEmpty() { return length == 0; }
+
+    public byte get(int i) {
+        if (i < 0 || i >= length) throw new IndexOutOfBoundsException(i);
+        return data[offset + i];
+    }
+
+    public Slice slice(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException("from=" + from + " to=" + to + " length=" + length);
+        }
+        if (from == 0 && to == length) return this;
+        return new Slice(data, offset + from, to - from);
+    }
+
+    /** Returns the backing bytes, copying only if this is a partial view. */
+    public byte[] toByteArray() {
+        if (offset == 0 && length == data.length) return data;
+        return Arrays.copyOfRange(data, offset, offset + length);
+    }
+
+    public void writeTo(ByteBuffer buf) {
+        buf.put(data, offset, length);
+    }
+
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(data, offset, length).slice();
+    }
+
+    public String toStringUtf8() {
+        return new String(data, offset, length, StandardCharsets.UTF_8);
+    }
+
+    public boolean startsWith(Slice prefix) {
+        return prefix.length <= length
+                && Arrays.equals(data, offset, offset + prefix.length,
+                                 prefix.data, prefix.offset, prefix.offset + prefix.length);
+    }
+
+    @Override
+    public int compareTo(Slice o) {
+        return Arrays.compareUnsigned(data, offset, offset + length,
+                                      o.data, o.offset, o.offset + o.length);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof Slice)) return false;
+        Slice o = (Slice) obj;
+        if (length != o.length) return false;
+        if (hash != 0 && o.hash != 0 && hash != o.hash) return false;
+        return Arrays.equals(data, offset, offset + length, o.data, o.offset, o.offset + o.length);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0 && length > 0) {
+            h = 1;
+            for (int i = offset, end = offset + length; i < end; i++) {
+                h = 31 * h + data[i];
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return toStringUtf8();
+    }
+}
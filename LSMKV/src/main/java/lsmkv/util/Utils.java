@@ -15,4 +15,34 @@ public class Utils {
     public static String parseQuery(HttpExchange ex) {
         return ex.getRequestURI().getQuery();
     }
+
+    /** Value of {@code name} in a raw query string, or null. */
+    public static String queryParam(String query, String name) {
+        if (query == null) return null;
+        for (String param : query.split("&")) {
+            if (param.startsWith(name + "=")) return param.substring(name.length() + 1);
+        }
+        return null;
+    }
+
+    /**
+     * Expiry time for a write from {@code ?ttl=<seconds>} or {@code ?expiresAt=<epoch millis>};
+     * 0 (never) if neither is given. Throws IllegalArgumentException on bad values.
+     */
+    public static long expiresAt(String query) {
+        String ttl = queryParam(query, "ttl");
+        String at = queryParam(query, "expiresAt");
+        if (ttl != null && at != null) throw new IllegalArgumentException("give either ttl or expiresAt, not both");
+        if (ttl != null) {
+            long seconds = Long.parseLong(ttl);
+            if (seconds <= 0) throw new IllegalArgumentException("ttl must be > 0 seconds");
+            return System.currentTimeMillis() + seconds * 1000;
+        }
+        if (at != null) {
+            long millis = Long.parseLong(at);
+            if (millis <= 0) throw new IllegalArgumentException("expiresAt must be epoch millis > 0");
+            return millis;
+        }
+        return 0;
+    }
 }
@@ -0,0 +1,104 @@
+package src.test.java.lsmkv;
+
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.SSTable;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Fixtures shared by the test classes: engine configs, keys and values, waiting. */
+public final class TestSupport {
+    private TestSupport() { }
+
+    /**
+     * An engine config with a MemTable of {@code memtableBytes}, small enough in
+     * tests that puts flush on their own, and the WAL forced every ten seconds.
+     */
+    public static Config config(long memtableBytes, int fanIn) {
+        return new Config(memtableBytes, Duration.ofSeconds(10), 16, fanIn, 10_000);
+    }
+
+    public static Slice key(String prefix, int i) {
+        return Slice.utf8(String.format("%s%06d", prefix, i));
+    }
+
+    public static Slice key(int i) {
+        return key("k", i);
+    }
+
+    /** {@code size} bytes that differ per key and per version. */
+    public static byte[] value(int i, int version, int size) {
+        byte[] v = new byte[size];
+        Arrays.fill(v, (byte) (i * 31 + version));
+        return v;
+    }
+
+    public static byte[] value(int i, int version) {
+        return value(i, version, 100);
+    }
+
+    /** Polls {@code condition} until it holds, failing after 20 seconds. */
+    public static void await(String what, Callable<Boolean> condition) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (!condition.call()) {
+            assertTrue(System.nanoTime() < deadline, "timed out waiting until " + what);
+            Thread.sleep(20);
+        }
+    }
+
+    /** Waits for {@code latch} inside a task that cannot throw; an interrupt just ends the wait. */
+    public static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Sleeps until the clock has passed {@code millis}, so entries expiring then read as expired. */
+    public static void sleepUntil(long millis) throws InterruptedException {
+        long left;
+        while ((left = millis - System.currentTimeMillis()) >= 0) Thread.sleep(left + 1);
+    }
+
+    public static long tableEntries(StorageEngine engine) {
+        long n = 0;
+        for (SSTable.Stats s : engine.getTableStats()) n += s.entries;
+        return n;
+    }
+
+    public static Set<Long> tableIds(StorageEngine engine) {
+        Set<Long> ids = new HashSet<>();
+        for (SSTable.Stats s : engine.getTableStats()) ids.add(s.tableId);
+        return ids;
+    }
+
+    /** The files in {@code dir} matching {@code glob}, sorted. */
+    public static List<Path> list(Path dir, String glob) throws IOException {
+        List<Path> out = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, glob)) {
+            for (Path p : ds) out.add(p);
+        }
+        out.sort(null);
+        return out;
+    }
+
+    public static int count(Path dir, String glob) throws IOException {
+        return list(dir, glob).size();
+    }
+}
@@ -0,0 +1,114 @@
+package src.test.java.lsmkv.backpressure;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.main.java.lsmkv.backpressure.WriteQueue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static src.test.java.lsmkv.TestSupport.await;
+
+class WriteQueueTest {
+
+    @Test
+    void shutdownRunsEveryAcceptedTaskThenTheHook() {
+        AtomicInteger ran = new AtomicInteger();
+        AtomicInteger hookSawAll = new AtomicInteger();
+        WriteQueue q = new WriteQueue(1000, () -> {
+            if (ran.get() == 500) hookSawAll.incrementAndGet();
+        });
+        for (int i = 0; i < 500; i++) q.submit(ran::incrementAndGet, e -> { });
+        q.shutdown();
+        assertEquals(500, ran.get());
+        assertTrue(hookSawAll.get() >= 1, "hook runs after the last task");
+        assertThrows(IllegalStateException.class, () -> q.submit(() -> { }, e -> { }));
+        assertThrows(IllegalStateException.class, () -> q.enqueue(() -> { }));
+    }
+
+    @Test
+    void fullQueueRejectsAtCapacity() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        WriteQueue q = new WriteQueue(2);
+        q.submit(() -> await(release), e -> { }); // occupies the writer thread
+        while (q.size() > 0) Thread.sleep(1);
+        q.submit(() -> { }, e -> { });
+        q.submit(() -> { }, e -> { });
+        assertThrows(IllegalStateException.class, () -> q.submit(() -> { }, e -> { }));
+        release.countDown();
+        q.shutdown();
+    }
+
+    /** File I/O running while shutdown() is called must not see an interrupt (which closes the channel). */
+    @Test
+    void shutdownDoesNotInterruptTasksDoingIo(@TempDir Path dir) throws Exception {
+        FileChannel ch = FileChannel.open(dir.resolve("f"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        AtomicInteger failures = new AtomicInteger();
+        WriteQueue q = new WriteQueue(10_000);
+        for (int i = 0; i < 5_000; i++) {
+            q.submit(() -> {
+                try {
+                    ch.write(ByteBuffer.wrap(new byte[64]));
+                    ch.force(false);
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                }
+            }, e -> failures.incrementAndGet());
+        }
+        q.shutdown();
+        assertEquals(0, failures.get());
+        assertTrue(ch.isOpen());
+        assertEquals(5_000L * 64, ch.size());
+        ch.close();
+    }
+
+    /** Callers racing shutdown() either run or are rejected; none is left waiting forever. */
+    @Test
+    void enqueueRacingShutdownNeverHangs() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            WriteQueue q = new WriteQueue(64);
+            AtomicInteger outcomes = new AtomicInteger();
+            List<Thread> callers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread c = new Thread(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        try {
+                            q.enqueue(() -> { });
+                        } catch (IllegalStateException rejected) {
+                            // full or shut down
+                        }
+                        outcomes.incrementAndGet();
+                    }
+                });
+                c.start();
+                callers.add(c);
+            }
+            q.shutdown();
+            for (Thread c : callers) {
+                c.join(TimeUnit.SECONDS.toMillis(10));
+                assertTrue(!c.isAlive(), "caller stuck in enqueue after shutdown");
+            }
+            assertEquals(800, outcomes.get());
+        }
+    }
+
+    @Test
+    void taskFailureIsRethrownToTheCaller() {
+        WriteQueue q = new WriteQueue(10);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> q.enqueue(() -> { throw new IllegalArgumentException("boom"); }));
+        assertEquals("boom", e.getMessage());
+        q.enqueue(() -> { }); // the writer thread survives
+        q.shutdown();
+    }
+}
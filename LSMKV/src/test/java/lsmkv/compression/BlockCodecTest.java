@@ -0,0 +1,81 @@
+package src.test.java.lsmkv.compression;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import src.main.java.lsmkv.compression.BlockCodec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockCodecTest {
+
+    private static byte[] roundTrip(BlockCodec codec, byte[] raw) throws IOException {
+        byte[] stored = new byte[codec.maxCompressedLength(raw.length)];
+        int n = codec.compress(raw, 0, raw.length, stored);
+        assertTrue(n <= stored.length, "compressed past maxCompressedLength");
+        byte[] out = new byte[raw.length];
+        codec.decompress(stored, 0, n, out, raw.length);
+        return out;
+    }
+
+    private static byte[] repetitive(int len) {
+        byte[] b = new byte[len];
+        byte[] pattern = "user:000123/session=abcdef;".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < len; i++) b[i] = pattern[i % pattern.length];
+        return b;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"none", "lz", "deflate"})
+    void roundTripsAnyInput(String name) throws IOException {
+        BlockCodec codec = BlockCodec.forName(name);
+        Random rnd = new Random(42);
+        byte[] random = new byte[70_000]; // longer than the LZ window
+        rnd.nextBytes(random);
+        byte[] runs = new byte[5_000];
+        Arrays.fill(runs, (byte) 7); // overlapping matches
+        for (byte[] raw : new byte[][] {new byte[0], {1}, {1, 2, 3}, random, runs, repetitive(100_000)}) {
+            assertArrayEquals(raw, roundTrip(codec, raw), name + " on " + raw.length + " bytes");
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"lz", "deflate"})
+    void shrinksRepetitiveData(String name) {
+        BlockCodec codec = BlockCodec.forName(name);
+        byte[] raw = repetitive(4096);
+        byte[] stored = new byte[codec.maxCompressedLength(raw.length)];
+        assertTrue(codec.compress(raw, 0, raw.length, stored) < raw.length / 4);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"none", "lz", "deflate"})
+    void idRoundTripsThroughTheBlockHeader(String name) throws IOException {
+        BlockCodec codec = BlockCodec.forName(name);
+        assertEquals(name, BlockCodec.forId(codec.id()).name());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"lz", "deflate"})
+    void truncatedInputIsAnIoException(String name) {
+        BlockCodec codec = BlockCodec.forName(name);
+        byte[] raw = repetitive(4096);
+        byte[] stored = new byte[codec.maxCompressedLength(raw.length)];
+        int n = codec.compress(raw, 0, raw.length, stored);
+        assertThrows(IOException.class, () -> codec.decompress(stored, 0, n / 2, new byte[raw.length], raw.length));
+    }
+
+    @Test
+    void unknownCodecsAreRejected() {
+        assertThrows(IOException.class, () -> BlockCodec.forId((byte) 99));
+        assertThrows(IllegalArgumentException.class, () -> BlockCodec.forName("zstd"));
+    }
+}
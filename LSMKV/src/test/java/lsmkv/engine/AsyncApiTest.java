@@ -0,0 +1,159 @@
+package src.test.java.lsmkv.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.replication.Replicator;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class AsyncApiTest {
+
+    private static Config config() {
+        return new Config(256 * 1024, Duration.ofSeconds(10), 16, 4, 100_000).setIoThreads(2);
+    }
+
+    private static Slice key(int i) {
+        return Slice.utf8(String.format("k%06d", i));
+    }
+
+    private static byte[] value(int i) {
+        return ("v" + i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void closeCompletesEveryWriteInFlight(@TempDir Path dir) throws Exception {
+        int n = 50_000;
+        StorageEngine engine = new StorageEngine(dir, config(), null);
+        engine.start();
+        List<CompletableFuture<Void>> writes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) writes.add(engine.putAsync(key(i), value(i)));
+        engine.close();
+
+        int failed = 0;
+        for (CompletableFuture<Void> w : writes) {
+            // close() returns only after every accepted write has completed
+            assertTrue(w.isDone());
+            if (w.isCompletedExceptionally()) failed++;
+        }
+        assertEquals(0, failed, "writes accepted before close() must commit");
+
+        try (StorageEngine reopened = new StorageEngine(dir, config(), null)) {
+            reopened.start();
+            for (int i = 0; i < n; i++) assertArrayEquals(value(i), reopened.get(key(i)), "key " + i);
+        }
+    }
+
+    @Test
+    void readsSeeCompletedWrites(@TempDir Path dir) throws Exception {
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            for (int i = 0; i < 1_000; i++) {
+                int v = i;
+                byte[] read = engine.putAsync(key(1), value(v)).thenCompose(done -> engine.getAsync(key(1)))
+                        .get(10, TimeUnit.SECONDS);
+                assertArrayEquals(value(v), read);
+            }
+            engine.deleteAsync(key(1)).get(10, TimeUnit.SECONDS);
+            assertNull(engine.getAsync(key(1)).get(10, TimeUnit.SECONDS));
+
+            Map<Slice, byte[]> batch = new HashMap<>();
+            for (int i = 10; i < 20; i++) batch.put(key(i), value(i));
+            engine.putBatchAsync(batch).get(10, TimeUnit.SECONDS);
+            assertEquals(10, engine.getRangeAsync(key(10), key(19)).get(10, TimeUnit.SECONDS).size());
+            assertEquals(10, engine.getBatchAsync(new ArrayList<>(batch.keySet())).get(10, TimeUnit.SECONDS).size());
+        }
+    }
+
+    @Test
+    void callbacksNeverRunOnTheWriterThread(@TempDir Path dir) throws Exception {
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            AtomicInteger onWriter = new AtomicInteger();
+            List<CompletableFuture<Void>> writes = new ArrayList<>();
+            for (int i = 0; i < 5_000; i++) {
+                writes.add(engine.putAsync(key(i), value(i)).thenRun(() -> {
+                    if (Thread.currentThread().getName().equals("lsmkv-writer")) onWriter.incrementAndGet();
+                }));
+            }
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+            assertEquals(0, onWriter.get());
+        }
+    }
+
+    /** The active WAL segment is /dev/full, so every append fails with ENOSPC. */
+    @Test
+    void walWriteFailureFailsTheFuture(@TempDir Path dir) throws Exception {
+        Path full = Path.of("/dev/full");
+        assumeTrue(Files.exists(full), "needs /dev/full");
+        Files.createSymbolicLink(dir.resolve(String.format("wal-%020d.log", 1)), full);
+        StorageEngine engine = new StorageEngine(dir, config(), null);
+        engine.start();
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> engine.putAsync(key(1), value(1)).get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+        assertNull(engine.get(key(1)), "a write the WAL refused must not be applied");
+        assertThrows(IOException.class, engine::close); // the final WAL sync fails the same way
+    }
+
+    @Test
+    void replicationFailureFailsTheFuture(@TempDir Path dir) throws Exception {
+        Replicator noAcks = new Replicator() {
+            @Override public void start(StorageEngine engine) { }
+            @Override public boolean acceptsWrites() { return true; }
+            @Override public void awaitReplication(long seq) throws IOException {
+                throw new IOException("no follower acknowledged seq=" + seq);
+            }
+            @Override public void close() { }
+        };
+        try (StorageEngine engine = new StorageEngine(dir, config(), noAcks)) {
+            engine.start();
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> engine.putAsync(key(1), value(1)).get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, e.getCause());
+            // durable locally, only unconfirmed on replicas
+            assertArrayEquals(value(1), engine.get(key(1)));
+        }
+    }
+
+    @Test
+    void invalidInputFailsTheFutureInsteadOfThrowing(@TempDir Path dir) throws Exception {
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> engine.putAsync(Slice.utf8("  "), value(1)).get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, e.getCause());
+        }
+    }
+
+    @Test
+    void operationsAfterCloseFail(@TempDir Path dir) throws Exception {
+        StorageEngine engine = new StorageEngine(dir, config(), null);
+        engine.start();
+        engine.close();
+        assertThrows(ExecutionException.class, () -> engine.putAsync(key(1), value(1)).get(10, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> engine.getAsync(key(1)).get(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,127 @@
+package src.test.java.lsmkv.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.Checkpoint;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.test.java.lsmkv.TestSupport;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static src.test.java.lsmkv.TestSupport.count;
+import static src.test.java.lsmkv.TestSupport.key;
+
+class CheckpointTest {
+    private static final int N = 600;
+
+    /** Small MemTable so puts flush on their own; values of 300 bytes and up go to the value log. */
+    private static Config config(int fanIn) {
+        return TestSupport.config(32 * 1024, fanIn).setValueLogThreshold(256)
+                .setValueLogFileBytes(64 * 1024);
+    }
+
+    /** Every third value is large enough to be separated into the value log. */
+    private static byte[] value(int i, int version) {
+        return TestSupport.value(i, version, i % 3 == 0 ? 300 : 40);
+    }
+
+    private static void copyAll(Path from, Path to, String glob) throws IOException {
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(from, glob)) {
+            for (Path p : ds) Files.copy(p, to.resolve(p.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** Keys below {@code n} hold {@code version}, except that every tenth key is deleted. */
+    private static void assertState(StorageEngine engine, int n, int version) throws IOException {
+        for (int i = 0; i < N; i++) {
+            byte[] v = engine.get(key(i));
+            if (i >= n || i % 10 == 0) assertNull(v, "key " + i);
+            else assertArrayEquals(value(i, version), v, "key " + i);
+        }
+    }
+
+    private static void writeState(StorageEngine engine, int n, int version) throws IOException {
+        for (int i = 0; i < n; i++) engine.put(key(i), value(i, version));
+        for (int i = 0; i < n; i += 10) engine.delete(key(i));
+    }
+
+    @Test
+    void checkpointOpensWithTheStateAtCheckpointTime(@TempDir Path dir) throws Exception {
+        Path data = dir.resolve("data");
+        Path cp = dir.resolve("cp");
+        try (StorageEngine engine = new StorageEngine(data, config(4), null)) {
+            engine.start();
+            writeState(engine, N / 2, 0);
+            engine.put(key(N / 2 - 1), value(N / 2 - 1, 0)); // still only in the WAL
+            Checkpoint c = engine.checkpoint(cp, null);
+            assertEquals(engine.lastSequence(), c.seq());
+            assertTrue(c.tables() > 0 && c.copiedBytes() > 0, c.toString());
+            assertTrue(count(cp, "vlog-*.log") > 0, "value-log files belong in the checkpoint");
+            assertThrows(IOException.class, () -> engine.checkpoint(cp, null));
+
+            writeState(engine, N, 1); // overwrites, compacts and appends to the linked value-log file
+            assertState(engine, N, 1);
+        }
+        try (StorageEngine restored = new StorageEngine(cp, config(4), null)) {
+            restored.start();
+            assertState(restored, N / 2, 0);
+        }
+        try (StorageEngine reopened = new StorageEngine(data, config(4), null)) {
+            reopened.start();
+            assertState(reopened, N, 1);
+        }
+    }
+
+    /**
+     * An increment links only what is new, and the base plus the increment restore
+     * the state at the increment's time.
+     */
+    @Test
+    void incrementalCheckpointRestoresOnTopOfItsBase(@TempDir Path dir) throws Exception {
+        Path data = dir.resolve("data");
+        Path base = dir.resolve("base");
+        Path increment = dir.resolve("increment");
+        try (StorageEngine engine = new StorageEngine(data, config(100), null)) {
+            engine.start();
+            writeState(engine, N, 0);
+            Checkpoint full = engine.checkpoint(base, null);
+            assertEquals(0, full.reusedTables());
+
+            for (int i = 0; i < N; i += 2) engine.put(key(i + 1), value(i + 1, 1)); // odd keys in new tables
+            Checkpoint inc = engine.checkpoint(increment, base);
+            assertEquals(full.tables(), inc.reusedTables(), "the base's tables are not linked again");
+            assertTrue(inc.tables() > 0, inc.toString());
+            assertEquals(inc.tables(), count(increment, "sstable-*.sst"));
+
+            engine.put(key(1), value(1, 2)); // after the increment
+        }
+
+        Path restore = dir.resolve("restore");
+        Files.createDirectories(restore);
+        for (Path c : new Path[] {base, increment}) {
+            copyAll(c, restore, "sstable-*.sst");
+            copyAll(c, restore, "vlog-*.log");
+        }
+        copyAll(increment, restore, "MANIFEST");
+        copyAll(increment, restore, "wal-*.log");
+        try (StorageEngine restored = new StorageEngine(restore, config(100), null)) {
+            restored.start();
+            for (int i = 0; i < N; i++) {
+                byte[] v = restored.get(key(i));
+                if (i % 2 == 1) assertArrayEquals(value(i, 1), v, "key " + i);
+                else if (i % 10 == 0) assertNull(v, "key " + i);
+                else assertArrayEquals(value(i, 0), v, "key " + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package src.test.java.lsmkv.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.util.Slice;
+import src.test.java.lsmkv.TestSupport;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static src.test.java.lsmkv.TestSupport.await;
+import static src.test.java.lsmkv.TestSupport.key;
+import static src.test.java.lsmkv.TestSupport.tableIds;
+import static src.test.java.lsmkv.TestSupport.value;
+
+class CompactionTest {
+    private static final int FAN_IN = 4;
+
+    /** Small MemTable so puts flush on their own. */
+    private static Config config() {
+        return TestSupport.config(16 * 1024, FAN_IN);
+    }
+
+    private static void assertContents(StorageEngine engine, int big, int small, long counter) throws Exception {
+        for (int i = 0; i < big; i++) {
+            int j = i / 4;
+            if (i % 4 == 0 && j < small) assertArrayEquals(value(j, 1), engine.get(key("a", i)), "rewritten key " + i);
+            else if (i % 4 == 1 && j < small && j % 3 == 0) assertNull(engine.get(key("a", i)), "deleted key " + i);
+            else assertArrayEquals(value(i, 0), engine.get(key("a", i)), "key " + i);
+        }
+        assertEquals(counter, Long.parseLong(new String(engine.get(Slice.utf8("c")), StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * Once the fan-in is reached only the small, new tables are merged; the large old
+     * one keeps its id, and the tombstones and counter operands merged above it keep
+     * shadowing and adding to what it holds.
+     */
+    @Test
+    void mergesLeaveTheLargeOldTableAlone(@TempDir Path dir) throws Exception {
+        int big = 6_000;
+        int small = 1_500;
+        long bigId;
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            Map<Slice, byte[]> batch = new TreeMap<>();
+            for (int i = 0; i < big; i++) batch.put(key("a", i), value(i, 0));
+            batch.put(Slice.utf8("c"), "5".getBytes(StandardCharsets.US_ASCII));
+            engine.putBatch(batch, 0); // flushed as one table
+            Set<Long> ids = tableIds(engine);
+            assertEquals(1, ids.size());
+            bigId = ids.iterator().next();
+
+            for (int j = 0; j < small; j++) {
+                engine.put(key("a", j * 4), value(j, 1), 0);
+                if (j % 3 == 0) engine.delete(key("a", j * 4 + 1));
+                if (j % 10 == 0) engine.increment(Slice.utf8("c"), 1);
+            }
+            await("merges bring the table count under the fan-in", () -> engine.getTableStats().size() < FAN_IN);
+            assertTrue(tableIds(engine).contains(bigId), "the large table was rewritten: " + tableIds(engine));
+            assertContents(engine, big, small, 5 + small / 10);
+        }
+        try (StorageEngine reopened = new StorageEngine(dir, config(), null)) {
+            reopened.start();
+            assertTrue(tableIds(reopened).contains(bigId));
+            assertContents(reopened, big, small, 5 + small / 10);
+        }
+    }
+}
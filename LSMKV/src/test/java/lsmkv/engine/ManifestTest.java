@@ -0,0 +1,129 @@
+package src.test.java.lsmkv.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.test.java.lsmkv.TestSupport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static src.test.java.lsmkv.TestSupport.key;
+import static src.test.java.lsmkv.TestSupport.list;
+import static src.test.java.lsmkv.TestSupport.value;
+
+class ManifestTest {
+    private static final int N = 1_000;
+
+    /**
+     * Small MemTable so puts flush on their own; fan-in high enough that nothing
+     * compacts, and the default WAL retention keeps every record.
+     */
+    private static Config config() {
+        return TestSupport.config(16 * 1024, 100);
+    }
+
+    private static List<Path> tables(Path dir) throws IOException {
+        return list(dir, "sstable-*.sst");
+    }
+
+    private static void write(Path dir, int from, int to, int version) throws IOException {
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            for (int i = from; i < to; i++) engine.put(key(i), value(i, version));
+        }
+    }
+
+    private static void assertContents(Path dir, int n, int version) throws IOException {
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            for (int i = 0; i < n; i++) assertArrayEquals(value(i, version), engine.get(key(i)), "key " + i);
+            assertEquals(n, engine.getRange(key(0), key(n)).size());
+        }
+    }
+
+    /**
+     * A crash while a flush appends its edit leaves the table file and a partial
+     * edit; the edit is dropped, the table deleted, and the WAL still has its records.
+     */
+    @Test
+    void tornEditIsDroppedAndItsTableDeleted(@TempDir Path dir) throws Exception {
+        write(dir, 0, N, 0);
+        List<Path> before = tables(dir);
+        assertTrue(before.size() > 1, "puts should have flushed");
+
+        Path orphan = dir.resolve("sstable-00009999.sst");
+        Files.copy(before.get(0), orphan);
+        try (FileChannel ch = FileChannel.open(dir.resolve("MANIFEST"), StandardOpenOption.WRITE,
+                                               StandardOpenOption.APPEND)) {
+            // the header of an edit whose payload never made it to disk
+            ch.write(ByteBuffer.allocate(12).putInt(0x12345678).putInt(4_096).putInt(0).flip());
+        }
+
+        Config cfg = config();
+        new StorageEngine(dir, cfg, null).close();
+        assertEquals(1, cfg.getMetrics().counter("lsmkv_manifest_tails_dropped_total", "").sum());
+        assertContents(dir, N, 0);
+        assertFalse(Files.exists(orphan), "a table no edit recorded must be deleted");
+        // edits appended after the dropped tail must be readable on the next open
+        write(dir, 0, N, 1);
+        assertContents(dir, N, 1);
+    }
+
+    @Test
+    void truncatedLastEditFallsBackToTheWal(@TempDir Path dir) throws Exception {
+        write(dir, 0, N, 0);
+        List<Path> before = tables(dir);
+        Path manifest = dir.resolve("MANIFEST");
+        try (FileChannel ch = FileChannel.open(manifest, StandardOpenOption.WRITE)) {
+            ch.truncate(ch.size() - 3);
+        }
+
+        assertContents(dir, N, 0);
+        List<Path> after = tables(dir);
+        assertFalse(after.contains(before.get(before.size() - 1)), "the newest flush was never recorded");
+        write(dir, N, 2 * N, 0);
+        assertContents(dir, 2 * N, 0);
+    }
+
+    @Test
+    void directoryWithoutAManifestIsMigrated(@TempDir Path dir) throws Exception {
+        write(dir, 0, N, 0);
+        List<Path> before = tables(dir);
+        Files.delete(dir.resolve("MANIFEST"));
+
+        assertContents(dir, N, 0);
+        assertTrue(Files.exists(dir.resolve("MANIFEST")));
+        assertEquals(before, tables(dir), "every table is adopted as it is");
+        write(dir, N, 2 * N, 0);
+        assertContents(dir, 2 * N, 0);
+    }
+
+    /** Data the manifest promises but the directory lacks is an error, not a silent loss. */
+    @Test
+    void missingTableOrBadMagicFailsTheOpen(@TempDir Path dir) throws Exception {
+        write(dir, 0, N, 0);
+        Path table = tables(dir).get(0);
+        Path saved = dir.resolveSibling(dir.getFileName() + ".saved");
+        Files.move(table, saved);
+        assertThrows(IOException.class, () -> write(dir, 0, 0, 0));
+        Files.move(saved, table);
+        assertContents(dir, N, 0);
+
+        try (FileChannel ch = FileChannel.open(dir.resolve("MANIFEST"), StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.allocate(4).putInt(0).flip(), 0);
+        }
+        assertThrows(IOException.class, () -> write(dir, 0, 0, 0));
+    }
+}
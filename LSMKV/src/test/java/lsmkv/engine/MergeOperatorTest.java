@@ -0,0 +1,161 @@
+package src.test.java.lsmkv.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.merge.AppendMergeOperator;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MergeOperatorTest {
+
+    /** Small MemTable so operands end up spread over flushed and compacted tables. */
+    private static Config config() {
+        return new Config(16 * 1024, Duration.ofSeconds(10), 16, 4, 10_000);
+    }
+
+    private static Config appendConfig() {
+        return config().setMergeOperator(new AppendMergeOperator(bytes(",")));
+    }
+
+    private static Slice key(String prefix, int i) {
+        return Slice.utf8(String.format("%s%06d", prefix, i));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** The directory as a crash would leave it: whatever the running engine has written so far. */
+    private static void crashImage(Path from, Path to) throws IOException {
+        Files.createDirectories(to);
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(from)) {
+            for (Path p : ds) {
+                if (Files.isRegularFile(p)) Files.copy(p, to.resolve(p.getFileName()));
+            }
+        }
+    }
+
+    /** Counter i gained i + 1 per round; counter 0 was deleted halfway and counted up again. */
+    private static void assertCounters(StorageEngine engine, int counters, int rounds) throws IOException {
+        for (int i = 0; i < counters; i++) {
+            long expected = i == 0 ? (long) (rounds - rounds / 2) * (i + 1) : (long) rounds * (i + 1);
+            assertArrayEquals(bytes(Long.toString(expected)), engine.get(key("c", i)), "counter " + i);
+        }
+    }
+
+    @Test
+    void countersFoldAcrossFlushesCompactionsAndACrash(@TempDir Path dir) throws Exception {
+        Path live = dir.resolve("live");
+        Path crashed = dir.resolve("crashed");
+        int counters = 20;
+        int rounds = 300;
+        StorageEngine engine = new StorageEngine(live, config(), null);
+        engine.start();
+        for (int r = 0; r < rounds; r++) {
+            if (r == rounds / 2) engine.delete(key("c", 0));
+            for (int i = 0; i < counters; i++) engine.increment(key("c", i), i + 1);
+            for (int i = 0; i < 5; i++) engine.put(key("f", r * 5 + i), new byte[100]); // forces flushes
+        }
+        assertTrue(engine.getTableStats().size() > 0, "operands should have been flushed");
+        assertCounters(engine, counters, rounds);
+        crashImage(live, crashed); // the last operands are only in the WAL
+        engine.close();
+
+        try (StorageEngine reopened = new StorageEngine(crashed, config(), null)) {
+            reopened.start();
+            assertCounters(reopened, counters, rounds);
+            reopened.increment(key("c", 1), -2 * rounds);
+            assertArrayEquals(bytes("0"), reopened.get(key("c", 1)));
+        }
+    }
+
+    /** Concurrent increments of one key are never lost, since no writer reads before writing. */
+    @Test
+    void concurrentIncrementsAreNotLost(@TempDir Path dir) throws Exception {
+        int threads = 8;
+        int each = 500;
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> done = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    done.add(pool.submit(() -> {
+                        for (int i = 0; i < each; i++) engine.increment(key("hot", 0), 1);
+                        return null;
+                    }));
+                }
+                for (Future<?> f : done) f.get(60, TimeUnit.SECONDS);
+            } finally {
+                pool.shutdownNow();
+            }
+            assertArrayEquals(bytes(Long.toString((long) threads * each)), engine.get(key("hot", 0)));
+        }
+    }
+
+    @Test
+    void compareAndSetSwapsOnlyOnAMatch(@TempDir Path dir) throws Exception {
+        Slice k = key("cas", 0);
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            assertFalse(engine.compareAndSet(k, bytes("x"), bytes("a")), "absent is not x");
+            assertTrue(engine.compareAndSet(k, null, bytes("a")));
+            assertFalse(engine.compareAndSet(k, null, bytes("b")), "no longer absent");
+            assertArrayEquals(bytes("a"), engine.get(k));
+
+            for (int i = 0; i < 500; i++) engine.put(key("f", i), new byte[100]); // k is now in a table
+            assertTrue(engine.compareAndSet(k, bytes("a"), bytes("b")));
+            engine.increment(key("n", 0), 41);
+            assertTrue(engine.compareAndSet(key("n", 0), bytes("41"), bytes("42")), "operands are folded first");
+            assertTrue(engine.compareAndSet(key("gone", 0), null, null), "deleting an absent key");
+        }
+        try (StorageEngine reopened = new StorageEngine(dir, config(), null)) {
+            reopened.start();
+            assertArrayEquals(bytes("b"), reopened.get(k));
+            assertArrayEquals(bytes("42"), reopened.get(key("n", 0)));
+            assertTrue(reopened.compareAndSet(k, bytes("b"), null));
+            assertNull(reopened.get(k));
+        }
+    }
+
+    @Test
+    void appendOperandsFoldInWriteOrder(@TempDir Path dir) throws Exception {
+        Slice k = key("list", 0);
+        try (StorageEngine engine = new StorageEngine(dir, appendConfig(), null)) {
+            engine.start();
+            engine.put(k, bytes("a"));
+            engine.merge(k, bytes("b"));
+            for (int i = 0; i < 500; i++) engine.put(key("f", i), new byte[100]);
+            engine.merge(k, bytes("c"));
+            engine.merge(key("list", 1), bytes("x")); // no base
+            assertArrayEquals(bytes("a,b,c"), engine.get(k));
+            assertThrows(IOException.class, () -> engine.increment(k, 1), "increment needs the counter operator");
+        }
+        try (StorageEngine reopened = new StorageEngine(dir, appendConfig(), null)) {
+            reopened.start();
+            assertArrayEquals(bytes("a,b,c"), reopened.get(k));
+            assertArrayEquals(bytes("x"), reopened.get(key("list", 1)));
+            assertArrayEquals(bytes("a,b,c"), reopened.getRange(k, k).get(k));
+        }
+    }
+}
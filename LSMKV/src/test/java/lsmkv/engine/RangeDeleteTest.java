@@ -0,0 +1,141 @@
+package src.test.java.lsmkv.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.metrics.Metrics;
+import src.main.java.lsmkv.util.Slice;
+import src.test.java.lsmkv.TestSupport;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static src.test.java.lsmkv.TestSupport.await;
+import static src.test.java.lsmkv.TestSupport.key;
+import static src.test.java.lsmkv.TestSupport.tableEntries;
+import static src.test.java.lsmkv.TestSupport.value;
+
+class RangeDeleteTest {
+    private static final int N = 1_000;
+    private static final int DELETED_FROM = 100, DELETED_TO = 899;
+
+    /** Small MemTable so puts flush on their own. */
+    private static Config config(int fanIn) {
+        return TestSupport.config(16 * 1024, fanIn);
+    }
+
+    /** Keys {@code DELETED_FROM..DELETED_TO} deleted, then 300..309 written again. */
+    private static void assertRangeDeleted(StorageEngine engine, int version) throws Exception {
+        for (int i = 0; i < N; i++) {
+            byte[] v = engine.get(key("k", i));
+            if (i >= 300 && i < 310) assertArrayEquals(value(i, version + 1), v, "rewritten key " + i);
+            else if (i >= DELETED_FROM && i <= DELETED_TO) assertNull(v, "deleted key " + i);
+            else assertArrayEquals(value(i, version), v, "key " + i);
+        }
+        SortedMap<Slice, byte[]> range = engine.getRange(key("k", DELETED_FROM - 50), key("k", DELETED_TO + 50));
+        assertEquals(50 + 10 + 50, range.size());
+        assertFalse(range.containsKey(key("k", DELETED_FROM)));
+        assertFalse(range.containsKey(key("k", DELETED_TO)));
+        assertTrue(range.containsKey(key("k", DELETED_FROM - 1)));
+        assertTrue(range.containsKey(key("k", DELETED_TO + 1)));
+
+        List<Slice> keys = new ArrayList<>();
+        for (int i = DELETED_FROM - 5; i <= DELETED_TO + 5; i++) keys.add(key("k", i));
+        Map<Slice, byte[]> batch = engine.getBatch(keys);
+        assertEquals(5 + 10 + 5, batch.size());
+    }
+
+    @Test
+    void rangeDeleteHidesKeysInTheMemTableInTablesAndAfterRestart(@TempDir Path dir) throws Exception {
+        try (StorageEngine engine = new StorageEngine(dir, config(100), null)) {
+            engine.start();
+            for (int i = 0; i < N; i++) engine.put(key("k", i), value(i, 0));
+            assertFalse(engine.getTableStats().isEmpty(), "puts should have flushed");
+            engine.deleteRange(key("k", DELETED_FROM), key("k", DELETED_TO));
+            for (int i = 300; i < 310; i++) engine.put(key("k", i), value(i, 1)); // newer than the delete
+            assertRangeDeleted(engine, 0); // the tombstone is in the MemTable
+
+            int before = engine.getTableStats().size();
+            for (int i = 0; i < N; i++) engine.put(key("z", i), value(i, 0));
+            assertTrue(engine.getTableStats().size() > before, "the range delete should have been flushed");
+            assertRangeDeleted(engine, 0); // now in a table
+        }
+        try (StorageEngine reopened = new StorageEngine(dir, config(100), null)) {
+            reopened.start();
+            assertRangeDeleted(reopened, 0);
+        }
+    }
+
+    /** A range delete still in the WAL when the engine stops comes back on replay. */
+    @Test
+    void rangeDeleteIsReplayedFromTheWal(@TempDir Path dir) throws Exception {
+        try (StorageEngine engine = new StorageEngine(dir, config(100), null)) {
+            engine.start();
+            for (int i = 0; i < N; i++) engine.put(key("k", i), value(i, 0));
+            engine.deleteRange(key("k", DELETED_FROM), key("k", DELETED_TO));
+            for (int i = 300; i < 310; i++) engine.put(key("k", i), value(i, 1));
+        }
+        try (StorageEngine reopened = new StorageEngine(dir, config(100), null)) {
+            reopened.start();
+            assertRangeDeleted(reopened, 0);
+        }
+    }
+
+    /** A full compaction drops the deleted entries and the tombstone, and the survivors stay readable. */
+    @Test
+    void compactionDropsEverythingUnderARangeDelete(@TempDir Path dir) throws Exception {
+        // no size tiers: every merge takes all four tables, down to the oldest
+        try (StorageEngine engine = new StorageEngine(dir, config(4).setCompactionSizeRatio(1_000), null)) {
+            engine.start();
+            for (int i = 0; i < N; i++) engine.put(key("k", i), value(i, 0));
+            engine.deleteRange(key("k", DELETED_FROM), key("k", DELETED_TO));
+            for (int i = 300; i < 310; i++) engine.put(key("k", i), value(i, 1));
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < N; i++) engine.put(key("z", i), value(i, round)); // forces flushes and compactions
+            }
+            // kept, every k key would be in a table: 2N entries. Dropped: one merged table of the
+            // survivors, plus at most fan-in - 1 tables of about 140 entries flushed since
+            int live = N - (DELETED_TO - DELETED_FROM + 1) + 10 + N;
+            await("the deleted keys are compacted away", () -> tableEntries(engine) <= live + 3 * 150);
+            assertRangeDeleted(engine, 0);
+        }
+        try (StorageEngine reopened = new StorageEngine(dir, config(4), null)) {
+            reopened.start();
+            assertRangeDeleted(reopened, 0);
+            for (int i = 0; i < N; i++) assertArrayEquals(value(i, 2), reopened.get(key("z", i)), "key " + i);
+        }
+    }
+
+    @Test
+    void tablesWhollyUnderANewerRangeDeleteAreDroppedWhole(@TempDir Path dir) throws Exception {
+        Metrics metrics = new Metrics();
+        LongAdder dropped = metrics.counter("lsmkv_covered_tables_dropped_total", "");
+        try (StorageEngine engine = new StorageEngine(dir, config(100).setMetrics(metrics), null)) {
+            engine.start();
+            for (int i = 0; i < N; i++) engine.put(key("a", i), value(i, 0));
+            int covered = engine.getTableStats().size();
+            assertTrue(covered > 1, "puts should have flushed");
+            engine.deleteRange(key("a", 0), key("a", N));
+            for (int i = 0; i < N; i++) engine.put(key("z", i), value(i, 0)); // flushes the delete, schedules the compactor
+            await("the covered tables are dropped", () -> dropped.sum() >= covered);
+            assertTrue(engine.getRange(key("a", 0), key("a", N)).isEmpty());
+            for (int i = 0; i < N; i++) assertArrayEquals(value(i, 0), engine.get(key("z", i)), "key " + i);
+        }
+        try (StorageEngine reopened = new StorageEngine(dir, config(100), null)) {
+            reopened.start();
+            assertTrue(reopened.getRange(key("a", 0), key("a", N)).isEmpty());
+            for (int i = 0; i < N; i += 7) assertNull(reopened.get(key("a", i)), "deleted key " + i);
+            for (int i = 0; i < N; i++) assertArrayEquals(value(i, 0), reopened.get(key("z", i)), "key " + i);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package src.test.java.lsmkv.engine;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.BlockCache;
+import src.main.java.lsmkv.engine.Entry;
+import src.main.java.lsmkv.engine.SSTable;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SSTableTest {
+    private static final int N = 5_000;
+
+    private static Config config(String codec) {
+        return new Config(1 << 20, Duration.ofSeconds(1), 16, 4, 1_000).setCompression(codec);
+    }
+
+    private static Slice key(int i) {
+        return Slice.utf8(String.format("user/%08d/profile", i));
+    }
+
+    /** Every kind of entry the format stores, in key order. */
+    private static List<Entry> entries() {
+        List<Entry> out = new ArrayList<>();
+        for (int i = 0; i < N; i++) {
+            byte[] v = ("value-" + i + "-" + "x".repeat(i % 40)).getBytes(StandardCharsets.UTF_8);
+            switch (i % 5) {
+                case 0: out.add(Entry.delete(key(i))); break;
+                case 1: out.add(Entry.put(key(i), v, 4_000_000_000_000L + i)); break;
+                case 2: out.add(Entry.merge(key(i), v, 0)); break;
+                case 3: out.add(Entry.pointer(key(i), ByteBuffer.allocate(20).putLong(i).putLong(i * 7L).putInt(64).array())); break;
+                default: out.add(Entry.put(key(i), i % 50 == 4 ? new byte[0] : v));
+            }
+        }
+        return out;
+    }
+
+    private static void assertSame(Entry expected, Entry actual) {
+        assertNotNull(actual, "missing " + expected.key());
+        assertEquals(expected.key(), actual.key());
+        assertEquals(expected.kind(), actual.kind(), "kind of " + expected.key());
+        assertArrayEquals(expected.value(), actual.value(), "value of " + expected.key());
+        assertEquals(expected.expiresAt(), actual.expiresAt(), "expiry of " + expected.key());
+    }
+
+    private static SSTable write(Path dir, String codec) throws IOException {
+        return SSTable.write(1, dir.resolve("sstable-00000001.sst"), entries().iterator(), 77,
+                             config(codec).setBlockSizeBytes(1024), new BlockCache(1 << 20));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"none", "lz", "deflate"})
+    void reopenedTableReadsBackEveryEntry(String codec, @TempDir Path dir) throws IOException {
+        write(dir, codec).close();
+        List<Entry> expected = entries();
+        // a fresh cache: every block is read and decoded from the file
+        try (SSTable t = SSTable.open(1, dir.resolve("sstable-00000001.sst"), new BlockCache(1 << 20))) {
+            assertEquals(N, t.entryCount());
+            assertEquals(77, t.maxSeq());
+            assertEquals(key(0), t.firstKey());
+            assertEquals(key(N - 1), t.lastKey());
+            assertTrue(t.blockCount() > 10, "small blocks should give many of them");
+
+            for (Entry e : expected) assertSame(e, t.get(e.key()));
+            assertNull(t.get(Slice.utf8("user/")));
+            assertNull(t.get(Slice.utf8("user/00000010/profilf")));
+            assertNull(t.get(Slice.utf8("zzz")));
+
+            Iterator<Entry> it = t.iterator();
+            for (Entry e : expected) assertSame(e, it.next());
+            assertFalse(it.hasNext());
+
+            Iterator<Entry> from = t.iterator(Slice.utf8("user/00001234/a"));
+            for (int i = 1234; i < N; i++) assertSame(expected.get(i), from.next());
+            assertFalse(from.hasNext());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"lz", "deflate"})
+    void compressingCodecsStoreLessThanTheyRead(String codec, @TempDir Path dir) throws IOException {
+        try (SSTable t = write(dir, codec)) {
+            SSTable.Stats stats = t.stats();
+            assertTrue(stats.storedBytes < stats.rawBytes, codec + ": " + stats);
+        }
+    }
+
+    /** A flipped byte in a block fails its checksum instead of decoding into garbage. */
+    @ParameterizedTest
+    @ValueSource(strings = {"none", "lz", "deflate"})
+    void blockChecksumCatchesCorruption(String codec, @TempDir Path dir) throws IOException {
+        write(dir, codec).close();
+        Path file = dir.resolve("sstable-00000001.sst");
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            ch.read(b, 20);
+            b.put(0, (byte) ~b.get(0));
+            b.rewind();
+            ch.write(b, 20); // inside the first block's stored bytes
+        }
+        try (SSTable t = SSTable.open(1, file, new BlockCache(1 << 20))) {
+            IOException e = assertThrows(IOException.class, () -> t.get(key(0)));
+            assertTrue(e.getMessage().contains("Checksum"), e.getMessage());
+            UncheckedIOException scan = assertThrows(UncheckedIOException.class, () -> t.iterator().next());
+            assertNotNull(scan.getCause());
+        }
+    }
+
+    /** A table cut short (e.g. copied during a crash) is refused at open instead of misread. */
+    @ParameterizedTest
+    @ValueSource(strings = {"none", "lz", "deflate"})
+    void truncatedTableIsRefused(String codec, @TempDir Path dir) throws IOException {
+        write(dir, codec).close();
+        Path file = dir.resolve("sstable-00000001.sst");
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(Files.size(file) - 3);
+        }
+        assertThrows(IOException.class, () -> SSTable.open(1, file, new BlockCache(1 << 20)));
+    }
+
+    /**
+     * Keys that share long prefixes, are prefixes of one another, or hold bytes
+     * above 0x7F, in tables with restart points from every entry to once per block.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 16, 1_000})
+    void prefixCompressedKeysSeekAcrossRestartIntervals(int restartInterval, @TempDir Path dir) throws IOException {
+        List<Slice> keys = new ArrayList<>();
+        String shared = "tenant/0000000042/" + "deep/".repeat(40);
+        for (int i = 0; i < 2_000; i++) {
+            String k = shared + Integer.toString(i, 36);
+            keys.add(Slice.utf8(k));
+            if (i % 7 == 0) keys.add(Slice.utf8(k + "/child"));
+        }
+        for (int i = 0; i < 300; i++) keys.add(Slice.wrap(new byte[] {(byte) 0xFF, (byte) (i >> 8), (byte) i}));
+        keys.sort(null);
+
+        List<Entry> sorted = new ArrayList<>();
+        for (Slice k : keys) sorted.add(Entry.put(k, k.toByteArray()));
+        Config cfg = config("lz").setBlockSizeBytes(2048).setBlockRestartInterval(restartInterval);
+        SSTable.write(1, dir.resolve("sstable-00000001.sst"), sorted.iterator(), 1, cfg, new BlockCache(1 << 20)).close();
+
+        try (SSTable t = SSTable.open(1, dir.resolve("sstable-00000001.sst"), new BlockCache(1 << 20))) {
+            for (Entry e : sorted) assertSame(e, t.get(e.key()));
+            for (int i = 0; i < sorted.size(); i += 97) {
+                Slice k = sorted.get(i).key();
+                // just after k: the next key, wherever it falls relative to a restart point
+                Slice after = Slice.wrap(Arrays.copyOf(k.toByteArray(), k.length() + 1));
+                Iterator<Entry> it = t.iterator(after);
+                if (i + 1 < sorted.size()) assertSame(sorted.get(i + 1), it.next());
+                else assertFalse(it.hasNext());
+                assertNull(t.get(after));
+            }
+            Iterator<Entry> all = t.iterator();
+            for (Entry e : sorted) assertSame(e, all.next());
+            assertFalse(all.hasNext());
+        }
+    }
+}
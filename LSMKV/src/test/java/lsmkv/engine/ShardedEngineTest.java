@@ -0,0 +1,82 @@
+package src.test.java.lsmkv.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.ShardedEngine;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ShardedEngineTest {
+
+    private static Config config() {
+        return new Config(256 * 1024, Duration.ofMillis(5), 16, 4, 10_000).setIoThreads(1);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** The engines trim keys, so padded and bare spellings must route to the same shard. */
+    @Test
+    void paddedKeysRouteLikeTheKeyTheEngineStores(@TempDir Path dir) throws Exception {
+        try (ShardedEngine store = new ShardedEngine(dir, config(), 8)) {
+            store.start();
+            for (int i = 0; i < 100; i++) store.put(Slice.utf8("key" + i + " "), bytes("v" + i));
+            for (int i = 0; i < 100; i++) {
+                assertArrayEquals(bytes("v" + i), store.get(Slice.utf8("key" + i)), "key" + i);
+                assertArrayEquals(bytes("v" + i), store.getAsync(Slice.utf8("\tkey" + i)).get(10, TimeUnit.SECONDS));
+            }
+
+            Map<Slice, byte[]> batch = new HashMap<>();
+            for (int i = 0; i < 100; i++) batch.put(Slice.utf8(" b" + i), bytes("w" + i));
+            store.putBatch(batch);
+            List<Slice> bare = new ArrayList<>();
+            for (int i = 0; i < 100; i++) bare.add(Slice.utf8("b" + i));
+            assertEquals(100, store.getBatch(bare).size());
+
+            for (int i = 0; i < 50; i++) store.delete(Slice.utf8("key" + i + "\n"));
+            for (int i = 0; i < 50; i++) assertNull(store.get(Slice.utf8("key" + i)));
+
+            SortedMap<Slice, byte[]> range = store.getRange(Slice.utf8("key"), Slice.utf8("key~"));
+            assertEquals(50, range.size());
+        }
+    }
+
+    @Test
+    void valuesSurviveReopen(@TempDir Path dir) throws Exception {
+        try (ShardedEngine store = new ShardedEngine(dir, config(), 4)) {
+            store.start();
+            for (int i = 0; i < 2_000; i++) store.put(Slice.utf8("k" + i), bytes("v" + i));
+        }
+        try (ShardedEngine store = new ShardedEngine(dir, config(), 4)) {
+            store.start();
+            for (int i = 0; i < 2_000; i++) assertArrayEquals(bytes("v" + i), store.get(Slice.utf8("k" + i)));
+        }
+        assertThrows(IOException.class, () -> new ShardedEngine(dir, config(), 2));
+    }
+
+    @Test
+    void invalidKeysAreRejected(@TempDir Path dir) throws Exception {
+        try (ShardedEngine store = new ShardedEngine(dir, config(), 4)) {
+            store.start();
+            assertThrows(IOException.class, () -> store.put(null, bytes("x")));
+            assertThrows(IOException.class, () -> store.put(Slice.utf8("   "), bytes("x")));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package src.test.java.lsmkv.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.util.Slice;
+import src.test.java.lsmkv.TestSupport;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static src.test.java.lsmkv.TestSupport.await;
+import static src.test.java.lsmkv.TestSupport.key;
+import static src.test.java.lsmkv.TestSupport.tableEntries;
+import static src.test.java.lsmkv.TestSupport.tableIds;
+import static src.test.java.lsmkv.TestSupport.value;
+
+class SubcompactionTest {
+    private static final int FAN_IN = 4;
+    private static final int BATCH = 600;
+
+    /**
+     * Each batch of {@link #BATCH} entries flushes as one table, under the
+     * sub-compaction size; a merge of {@link #FAN_IN} of them is split in two.
+     */
+    private static Config config() {
+        return TestSupport.config(16 * 1024, FAN_IN)
+                .setCompactionThreads(4)
+                .setSubcompactionBytes(100 * 1024)
+                .setCompactionSizeRatio(1_000);
+    }
+
+    /** Batch {@code b}: every other key of its own stretch, so later batches interleave. */
+    private static void putBatch(StorageEngine engine, int b, int version) throws Exception {
+        Map<Slice, byte[]> batch = new TreeMap<>();
+        for (int i = 0; i < BATCH; i++) batch.put(key(i * FAN_IN + b % FAN_IN), value(i, version));
+        engine.putBatch(batch, 0);
+    }
+
+    private static long failures(Config cfg) {
+        return cfg.getMetrics().counter("lsmkv_compaction_failures_total", "").sum();
+    }
+
+    @Test
+    void largeMergeIsWrittenAsDisjointRanges(@TempDir Path dir) throws Exception {
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            for (int b = 0; b < FAN_IN; b++) putBatch(engine, b, 0);
+            await("the merge publishes", () -> tableEntries(engine) == (long) FAN_IN * BATCH
+                    && !tableIds(engine).contains(1L));
+            Set<Long> ids = tableIds(engine);
+            assertEquals(2, ids.size(), "one table per key range: " + ids);
+            for (int k = 0; k < FAN_IN * BATCH; k++) {
+                assertArrayEquals(value(k / FAN_IN, 0), engine.get(key(k)), "key " + k);
+            }
+            assertEquals(FAN_IN * BATCH, engine.getRange(key(0), key(FAN_IN * BATCH)).size());
+        }
+    }
+
+    /**
+     * When one range fails to write, the ranges that did finish are deleted, the
+     * inputs stay live, and the next flush merges them.
+     */
+    @Test
+    void failedRangeDeletesItsFinishedSiblings(@TempDir Path dir) throws Exception {
+        Config cfg = config();
+        try (StorageEngine engine = new StorageEngine(dir, cfg, null)) {
+            engine.start();
+            // flushes take ids 1..4; the merge reserves 5.. and writes ranges 5 and 6
+            Path blocked = dir.resolve("sstable-00000006.sst.tmp");
+            Files.createDirectory(blocked);
+            for (int b = 0; b < FAN_IN; b++) putBatch(engine, b, 0);
+            await("the merge fails", () -> failures(cfg) == 1);
+
+            assertEquals(new TreeSet<>(Set.of(1L, 2L, 3L, 4L)), new TreeSet<>(tableIds(engine)));
+            assertFalse(Files.exists(dir.resolve("sstable-00000005.sst")), "the finished range was kept");
+            for (int k = 0; k < FAN_IN * BATCH; k += 7) assertArrayEquals(value(k / FAN_IN, 0), engine.get(key(k)));
+
+            Files.delete(blocked);
+            putBatch(engine, 0, 1);
+            await("the next flush merges", () -> tableIds(engine).size() < FAN_IN);
+            assertEquals(1, failures(cfg));
+            for (int k = 0; k < FAN_IN * BATCH; k++) {
+                assertArrayEquals(value(k / FAN_IN, k % FAN_IN == 0 ? 1 : 0), engine.get(key(k)), "key " + k);
+            }
+        }
+    }
+
+    /**
+     * Inputs with no data blocks have no split points; the merge runs as one range.
+     * The older table they delete from keeps them from being dropped as empty.
+     */
+    @Test
+    void tablesOfOnlyRangeDeletesMergeUnsplit(@TempDir Path dir) throws Exception {
+        int n = 40;
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            for (int i = 0; i < n; i++) engine.put(key(i), value(i, 0), 0);
+            engine.createSnapshot().close(); // flushes the MemTable as one table
+        }
+        Config cfg = config().setSubcompactionBytes(1).setCompactionSizeRatio(2);
+        try (StorageEngine engine = new StorageEngine(dir, cfg, null)) {
+            engine.start();
+            for (int b = 0; b < FAN_IN - 1; b++) {
+                engine.deleteRange(key(b * 10), key(b * 10 + 4));
+                engine.createSnapshot().close(); // flushes the range delete alone
+            }
+            assertEquals(FAN_IN, tableIds(engine).size());
+            engine.put(key(n), value(n, 0), 0); // schedules the merge of the three newest
+            await("the merge publishes", () -> tableIds(engine).size() == 2);
+            assertEquals(0, failures(cfg));
+            for (int i = 0; i <= n; i++) {
+                if (i % 10 < 5 && i < 30) assertNull(engine.get(key(i)), "deleted key " + i);
+                else assertArrayEquals(value(i, 0), engine.get(key(i)), "key " + i);
+            }
+        }
+    }
+
+    /**
+     * A flush split into ranges writes the range deletes only into the first, the
+     * oldest of them: they hide older tables' keys but not the flush's own newer puts.
+     */
+    @Test
+    void partitionedFlushCarriesRangeDeletesInItsFirstTable(@TempDir Path dir) throws Exception {
+        Config cfg = TestSupport.config(16 * 1024, 100).setCompactionThreads(4).setSubcompactionBytes(16 * 1024);
+        int n = 2_000;
+        try (StorageEngine engine = new StorageEngine(dir, cfg, null)) {
+            engine.start();
+            Map<Slice, byte[]> old = new TreeMap<>();
+            for (int i = 0; i < n; i++) old.put(key(i), value(i, 0));
+            engine.putBatch(old, 0);
+            Set<Long> before = tableIds(engine);
+
+            Map<Slice, byte[]> fresh = new TreeMap<>();
+            for (int i = n / 2; i < n; i++) fresh.put(key(i), value(i, 1));
+            engine.deleteRange(key(0), key(n));
+            engine.putBatch(fresh, 0); // flushed together with the range delete
+            Set<Long> flushed = new TreeSet<>(tableIds(engine));
+            flushed.removeAll(before);
+            assertTrue(flushed.size() > 1, "the flush should be split: " + flushed);
+        }
+        try (StorageEngine engine = new StorageEngine(dir, cfg, null)) {
+            engine.start();
+            for (int i = 0; i < n; i++) {
+                if (i < n / 2) assertNull(engine.get(key(i)), "deleted key " + i);
+                else assertArrayEquals(value(i, 1), engine.get(key(i)), "rewritten key " + i);
+            }
+            assertEquals(n / 2, engine.getRange(key(0), key(n)).size());
+        }
+    }
+}
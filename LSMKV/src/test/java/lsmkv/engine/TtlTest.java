@@ -0,0 +1,170 @@
+package src.test.java.lsmkv.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.util.Slice;
+import src.test.java.lsmkv.TestSupport;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static src.test.java.lsmkv.TestSupport.await;
+import static src.test.java.lsmkv.TestSupport.key;
+import static src.test.java.lsmkv.TestSupport.sleepUntil;
+import static src.test.java.lsmkv.TestSupport.tableEntries;
+import static src.test.java.lsmkv.TestSupport.tableIds;
+import static src.test.java.lsmkv.TestSupport.value;
+
+class TtlTest {
+
+    /** Small MemTable so puts flush on their own; fan-in high enough that only expiry triggers compaction. */
+    private static Config config() {
+        return TestSupport.config(16 * 1024, 100);
+    }
+
+    /**
+     * An expired version reads as absent, from the MemTable and from tables alike,
+     * without uncovering the older version under it, before and after a restart.
+     */
+    @Test
+    void expiredValuesReadAsAbsentAndKeepShadowingOlderOnes(@TempDir Path dir) throws Exception {
+        int n = 400;
+        long expiresAt = System.currentTimeMillis() + 2_000;
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            for (int i = 0; i < n; i++) engine.put(key("k", i), value(i, 0));
+            for (int i = 0; i < n; i += 2) engine.put(key("k", i), value(i, 1), expiresAt);
+            assertFalse(engine.getTableStats().isEmpty(), "puts should have flushed");
+            assertArrayEquals(value(0, 1), engine.get(key("k", 0)));
+
+            sleepUntil(expiresAt);
+            for (int i = 0; i < n; i++) {
+                if (i % 2 == 0) assertNull(engine.get(key("k", i)), "expired key " + i);
+                else assertArrayEquals(value(i, 0), engine.get(key("k", i)), "key " + i);
+            }
+            assertEquals(n / 2, engine.getRange(key("k", 0), key("k", n)).size());
+        }
+        // the last versions come back from the WAL, the rest from tables
+        try (StorageEngine reopened = new StorageEngine(dir, config(), null)) {
+            reopened.start();
+            SortedMap<Slice, byte[]> range = reopened.getRange(key("k", 0), key("k", n));
+            assertEquals(n / 2, range.size());
+            for (int i = 1; i < n; i += 2) assertArrayEquals(value(i, 0), range.get(key("k", i)), "key " + i);
+            for (int i = 0; i < n; i += 2) assertNull(reopened.get(key("k", i)), "expired key " + i);
+        }
+    }
+
+    @Test
+    void fullyExpiredTablesAreDroppedWhole(@TempDir Path dir) throws Exception {
+        int n = 1_000;
+        long expiresAt = System.currentTimeMillis() + 2_000;
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            for (int i = 0; i < n; i++) engine.put(key("a", i), value(i, 0), expiresAt);
+            Set<Long> expiring = tableIds(engine);
+            assertTrue(expiring.size() > 1, "puts should have flushed");
+
+            sleepUntil(expiresAt);
+            for (int i = 0; i < n; i++) engine.put(key("z", i), value(i, 0)); // flushes schedule the compactor
+            await("the expired tables are dropped", () -> {
+                Set<Long> live = tableIds(engine);
+                live.retainAll(expiring);
+                return live.isEmpty();
+            });
+            for (int i = 0; i < n; i += 7) assertNull(engine.get(key("a", i)), "expired key " + i);
+            for (int i = 0; i < n; i++) assertArrayEquals(value(i, 0), engine.get(key("z", i)), "key " + i);
+        }
+        try (StorageEngine reopened = new StorageEngine(dir, config(), null)) {
+            reopened.start();
+            assertTrue(reopened.getRange(key("a", 0), key("a", n)).isEmpty());
+            for (int i = 0; i < n; i++) assertArrayEquals(value(i, 0), reopened.get(key("z", i)), "key " + i);
+        }
+    }
+
+    /** Tables mostly, but not wholly, expired are rewritten without their expired entries. */
+    @Test
+    void mostlyExpiredTablesAreCompactedAway(@TempDir Path dir) throws Exception {
+        int n = 1_000;
+        int filler = 200;
+        long expiresAt = System.currentTimeMillis() + 2_000;
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            for (int i = 0; i < n; i++) {
+                if (i % 4 == 0) engine.put(key("k", i), value(i, 0));
+                else engine.put(key("k", i), value(i, 0), expiresAt);
+            }
+            assertTrue(tableEntries(engine) > n / 2, "puts should have flushed");
+
+            sleepUntil(expiresAt);
+            for (int i = 0; i < filler; i++) engine.put(key("z", i), value(i, 0)); // a flush schedules the compactor
+            await("the expired entries are compacted away", () -> tableEntries(engine) <= n / 4 + filler);
+            for (int i = 0; i < n; i++) {
+                if (i % 4 == 0) assertArrayEquals(value(i, 0), engine.get(key("k", i)), "key " + i);
+                else assertNull(engine.get(key("k", i)), "expired key " + i);
+            }
+        }
+        try (StorageEngine reopened = new StorageEngine(dir, config(), null)) {
+            reopened.start();
+            assertEquals(n / 4, reopened.getRange(key("k", 0), key("k", n)).size());
+            for (int i = 0; i < n; i += 4) assertArrayEquals(value(i, 0), reopened.get(key("k", i)), "key " + i);
+        }
+    }
+
+    private static Map<Slice, byte[]> batch(String prefix, int n, int version, int every, int offset) {
+        Map<Slice, byte[]> batch = new TreeMap<>();
+        for (int i = offset; i < n; i += every) batch.put(key(prefix, i), value(i, version));
+        return batch;
+    }
+
+    /**
+     * A mostly expired table that no newer table overlaps is rewritten on its own;
+     * its expired entries turn into tombstones, since an older table holds the keys.
+     */
+    @Test
+    void denseTableIsRewrittenAloneAndKeepsShadowingOlderVersions(@TempDir Path dir) throws Exception {
+        int n = 300;
+        long expiresAt = System.currentTimeMillis() + 2_000;
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            engine.putBatch(batch("k", n, 0, 1, 0), 0); // each batch fills the MemTable: one table apiece
+            Set<Long> older = tableIds(engine);
+            engine.putBatch(batch("k", n, 1, 4, 0), 0);
+            Map<Slice, byte[]> expiring = batch("k", n, 1, 1, 0);
+            for (int i = 0; i < n; i += 4) expiring.remove(key("k", i));
+            engine.putBatch(expiring, expiresAt);
+            Set<Long> dense = tableIds(engine);
+            dense.removeAll(older);
+            assertEquals(1, older.size());
+            assertEquals(1, dense.size());
+
+            sleepUntil(expiresAt);
+            engine.putBatch(batch("z", n, 0, 1, 0), 0); // a newer table, schedules the compactor
+            Set<Long> newer = tableIds(engine);
+            newer.removeAll(older);
+            newer.removeAll(dense);
+            await("the dense table is rewritten", () -> !tableIds(engine).containsAll(dense));
+            Set<Long> ids = tableIds(engine);
+            assertEquals(3, ids.size(), "only the dense table should be replaced: " + ids);
+            assertTrue(ids.containsAll(older) && ids.containsAll(newer), "untouched tables were rewritten: " + ids);
+            for (int i = 0; i < n; i++) {
+                if (i % 4 == 0) assertArrayEquals(value(i, 1), engine.get(key("k", i)), "key " + i);
+                else assertNull(engine.get(key("k", i)), "expired key " + i);
+            }
+        }
+        try (StorageEngine reopened = new StorageEngine(dir, config(), null)) {
+            reopened.start();
+            assertEquals(n / 4, reopened.getRange(key("k", 0), key("k", n)).size());
+            assertEquals(n, reopened.getRange(key("z", 0), key("z", n)).size());
+        }
+    }
+}
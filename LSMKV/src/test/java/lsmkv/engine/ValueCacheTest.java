@@ -0,0 +1,197 @@
+package src.test.java.lsmkv.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.Entry;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.engine.ValueCache;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValueCacheTest {
+
+    private static Config config() {
+        return new Config(16 * 1024, Duration.ofSeconds(10), 16, 4, 10_000).setIoThreads(2);
+    }
+
+    private static Slice key(int i) {
+        return Slice.utf8(String.format("k%06d", i));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Reads {@code key} twice, so the second read is served by the cache, and checks both. */
+    private static void assertCached(StorageEngine engine, Slice key, byte[] expected) throws Exception {
+        assertArrayEquals(expected, engine.get(key), "first read of " + key);
+        assertArrayEquals(expected, engine.get(key), "cached read of " + key);
+    }
+
+    @Test
+    void everyKindOfWriteInvalidatesTheCachedValue(@TempDir Path dir) throws Exception {
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            Slice k = key(1);
+            engine.put(k, bytes("a"));
+            assertCached(engine, k, bytes("a"));
+
+            engine.put(k, bytes("b"));
+            assertCached(engine, k, bytes("b"));
+            engine.delete(k);
+            assertNull(engine.get(k));
+            engine.put(k, bytes("c"));
+            assertCached(engine, k, bytes("c"));
+
+            assertTrue(engine.compareAndSet(k, bytes("c"), bytes("d")));
+            assertCached(engine, k, bytes("d"));
+            engine.putAsync(k, bytes("e")).get(10, TimeUnit.SECONDS);
+            assertCached(engine, k, bytes("e"));
+            engine.putBatch(Map.of(k, bytes("f"), key(2), bytes("x")));
+            assertCached(engine, k, bytes("f"));
+            engine.deleteAsync(k).get(10, TimeUnit.SECONDS);
+            assertNull(engine.get(k));
+
+            engine.increment(k, 5);
+            assertCached(engine, k, bytes("5"));
+            engine.merge(k, bytes("-2"));
+            assertCached(engine, k, bytes("3"));
+
+            for (int i = 0; i < 10; i++) engine.put(key(i), bytes("r" + i));
+            for (int i = 0; i < 10; i++) assertCached(engine, key(i), bytes("r" + i));
+            engine.deleteRange(key(2), key(6));
+            for (int i = 0; i < 10; i++) {
+                if (i >= 2 && i <= 6) assertNull(engine.get(key(i)), "range-deleted key " + i);
+                else assertArrayEquals(bytes("r" + i), engine.get(key(i)), "key " + i);
+            }
+        }
+    }
+
+    /** Cached values outlive flushes and compactions of the key they hold, but never a newer write. */
+    @Test
+    void cachedValuesStayCurrentAcrossFlushes(@TempDir Path dir) throws Exception {
+        int n = 2_000;
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            for (int version = 0; version < 4; version++) {
+                for (int i = 0; i < n; i++) {
+                    engine.put(key(i), bytes("v" + version + "-" + i));
+                    if (i % 13 == 0) assertCached(engine, key(i), bytes("v" + version + "-" + i));
+                }
+            }
+            assertTrue(engine.getTableStats().size() > 0, "puts should have flushed");
+            for (int i = 0; i < n; i++) assertArrayEquals(bytes("v3-" + i), engine.get(key(i)), "key " + i);
+        }
+    }
+
+    @Test
+    void hitsSkipTheLoaderUntilInvalidated() throws Exception {
+        ValueCache cache = new ValueCache(1 << 20);
+        AtomicInteger loads = new AtomicInteger();
+        ValueCache.Loader loader = () -> {
+            loads.incrementAndGet();
+            return Entry.put(key(1), bytes("v"));
+        };
+        for (int i = 0; i < 5; i++) assertArrayEquals(bytes("v"), cache.get(key(1), loader));
+        assertEquals(1, loads.get());
+        assertEquals(4, cache.hits());
+
+        cache.invalidate(key(1));
+        cache.get(key(1), loader);
+        assertEquals(2, loads.get());
+        cache.invalidateRange(key(0), key(5));
+        cache.get(key(1), loader);
+        assertEquals(3, loads.get());
+        cache.clear();
+        cache.get(key(1), loader);
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void absentAndExpiredValuesAreNotServedFromTheCache() throws Exception {
+        ValueCache cache = new ValueCache(1 << 20);
+        AtomicInteger loads = new AtomicInteger();
+        assertNull(cache.get(key(1), () -> {
+            loads.incrementAndGet();
+            return Entry.delete(key(1));
+        }));
+        assertNull(cache.get(key(1), () -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertEquals(2, loads.get());
+
+        long expiresAt = System.currentTimeMillis() + 200;
+        assertArrayEquals(bytes("v"), cache.get(key(2), () -> Entry.put(key(2), bytes("v"), expiresAt)));
+        while (System.currentTimeMillis() <= expiresAt) Thread.sleep(10);
+        assertNull(cache.get(key(2), () -> null), "an expired value must go back to the loader");
+    }
+
+    /** A value read before a write to its key may be returned, but must not be cached after it. */
+    @Test
+    void writeDuringALoadKeepsTheLoadedValueOutOfTheCache() throws Exception {
+        ValueCache cache = new ValueCache(1 << 20);
+        byte[] stale = cache.get(key(1), () -> {
+            cache.invalidate(key(1)); // the writer applies a new value while this lookup runs
+            return Entry.put(key(1), bytes("old"));
+        });
+        assertArrayEquals(bytes("old"), stale);
+        assertArrayEquals(bytes("new"), cache.get(key(1), () -> Entry.put(key(1), bytes("new"))));
+
+        cache.get(key(2), () -> {
+            cache.invalidateRange(key(0), key(9));
+            return Entry.put(key(2), bytes("old"));
+        });
+        assertArrayEquals(bytes("new"), cache.get(key(2), () -> Entry.put(key(2), bytes("new"))));
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        ValueCache cache = new ValueCache(1 << 20);
+        int readers = 8;
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(readers);
+        try {
+            List<Future<byte[]>> reads = new ArrayList<>();
+            for (int i = 0; i < readers; i++) {
+                reads.add(pool.submit(() -> cache.get(key(1), () -> {
+                    loads.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                    return Entry.put(key(1), bytes("v"));
+                })));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+            while (cache.coalesced() < readers - 1 && System.nanoTime() < deadline) Thread.sleep(10);
+            release.countDown();
+            for (Future<byte[]> r : reads) assertArrayEquals(bytes("v"), r.get(20, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+            assertEquals(readers - 1, cache.coalesced());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
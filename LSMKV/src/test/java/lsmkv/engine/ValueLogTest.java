@@ -0,0 +1,127 @@
+package src.test.java.lsmkv.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.test.java.lsmkv.TestSupport;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static src.test.java.lsmkv.TestSupport.count;
+import static src.test.java.lsmkv.TestSupport.key;
+import static src.test.java.lsmkv.TestSupport.list;
+
+class ValueLogTest {
+
+    /** Small MemTable so puts flush on their own; fan-in high enough that nothing compacts. */
+    private static Config config() {
+        return TestSupport.config(32 * 1024, 100).setValueLogThreshold(256);
+    }
+
+    /**
+     * Merges every table every few flushes and rolls value-log files often, so
+     * overwrites leave whole files dead.
+     */
+    private static Config gcConfig(double gcRatio) {
+        return TestSupport.config(32 * 1024, 4).setValueLogThreshold(256)
+                .setValueLogFileBytes(16 * 1024).setValueLogGcRatio(gcRatio).setCompactionSizeRatio(1_000);
+    }
+
+    private static byte[] value(int i, int version) {
+        return TestSupport.value(i, version, 1024);
+    }
+
+    /** The directory as a crash would leave it: whatever the running engine has written so far. */
+    private static void crashImage(Path from, Path to) throws IOException {
+        Files.createDirectories(to);
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(from)) {
+            for (Path p : ds) {
+                if (Files.isRegularFile(p)) Files.copy(p, to.resolve(p.getFileName()));
+            }
+        }
+    }
+
+    @Test
+    void flushedPointersResolveAfterACrash(@TempDir Path dir) throws Exception {
+        Path live = dir.resolve("live");
+        Path crashed = dir.resolve("crashed");
+        int n = 500;
+        StorageEngine engine = new StorageEngine(live, config(), null);
+        engine.start();
+        for (int i = 0; i < n; i++) engine.put(key(i), value(i, 0));
+        assertTrue(count(live, "*.sst") > 0, "puts should have flushed");
+        assertTrue(count(live, "vlog-*.log") > 0, "large values should be separated");
+        crashImage(live, crashed);
+        engine.close();
+
+        try (StorageEngine reopened = new StorageEngine(crashed, config(), null)) {
+            reopened.start();
+            for (int i = 0; i < n; i++) assertArrayEquals(value(i, 0), reopened.get(key(i)), "key " + i);
+        }
+    }
+
+    /** Polls until the directory holds fewer than {@code limit} value-log files; returns the final count. */
+    private static int awaitLogFilesBelow(Path dir, int limit) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        int n;
+        while ((n = count(dir, "vlog-*.log")) >= limit && System.nanoTime() < deadline) Thread.sleep(20);
+        return n;
+    }
+
+    @Test
+    void gcRelocatesLiveValuesAndDeletesDeadFiles(@TempDir Path dir) throws Exception {
+        int n = 300;
+        try (StorageEngine engine = new StorageEngine(dir, gcConfig(0.5), null)) {
+            engine.start();
+            for (int version = 0; version < 3; version++) {
+                for (int i = 0; i < n; i++) engine.put(key(i), value(i, version));
+            }
+            // three versions of ~300 KB each in 16 KB files: at most one version's worth stays live
+            int left = awaitLogFilesBelow(dir, 40);
+            assertTrue(left < 40, "value-log GC left " + left + " files");
+            for (int i = 0; i < n; i++) assertArrayEquals(value(i, 2), engine.get(key(i)), "key " + i);
+        }
+        try (StorageEngine reopened = new StorageEngine(dir, gcConfig(0.5), null)) {
+            reopened.start();
+            for (int i = 0; i < n; i++) assertArrayEquals(value(i, 2), reopened.get(key(i)), "key " + i);
+        }
+    }
+
+    /** Dead bytes counted by compactions before a restart still make their files collectable after it. */
+    @Test
+    void discardCountsSurviveReopen(@TempDir Path dir) throws Exception {
+        int n = 300;
+        try (StorageEngine engine = new StorageEngine(dir, gcConfig(2.0), null)) { // counts, never collects
+            engine.start();
+            for (int version = 0; version < 3; version++) {
+                for (int i = 0; i < n; i++) engine.put(key(i), value(i, version));
+            }
+        }
+        // the first file holds only first versions, all dropped by compactions before the restart
+        Path oldest = Collections.min(list(dir, "vlog-*.log"));
+
+        try (StorageEngine reopened = new StorageEngine(dir, gcConfig(0.5), null)) {
+            reopened.start();
+            // new keys only: whatever gets collected was counted dead before the restart
+            for (int i = n; i < 2 * n; i++) reopened.put(key(i), value(i, 0)); // enough flushes to compact, then GC
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+            while (Files.exists(oldest) && System.nanoTime() < deadline) Thread.sleep(20);
+            assertFalse(Files.exists(oldest), oldest.getFileName() + " was not collected after the restart");
+            for (int i = 0; i < n; i++) assertArrayEquals(value(i, 2), reopened.get(key(i)), "key " + i);
+        }
+        try (StorageEngine again = new StorageEngine(dir, gcConfig(0.5), null)) {
+            again.start();
+            for (int i = 0; i < n; i++) assertArrayEquals(value(i, 2), again.get(key(i)), "key " + i);
+            for (int i = n; i < 2 * n; i++) assertArrayEquals(value(i, 0), again.get(key(i)), "key " + i);
+        }
+    }
+}
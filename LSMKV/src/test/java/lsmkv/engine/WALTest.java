@@ -0,0 +1,168 @@
+package src.test.java.lsmkv.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.WAL;
+import src.main.java.lsmkv.util.Slice;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WALTest {
+
+    private static Config config() {
+        return new Config(1 << 20, Duration.ofHours(1), 16, 4, 1_000);
+    }
+
+    private static Slice key(int i) {
+        return Slice.utf8("k" + i);
+    }
+
+    private static byte[] value(int i) {
+        return ("v" + i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private interface WalTest {
+        void run(WAL wal) throws IOException;
+    }
+
+    /** Opens the WAL in {@code dir} as a restarted engine would, runs {@code test} and closes it. */
+    private static void withWal(Path dir, long flushedSeq, WalTest test) throws IOException {
+        WAL wal = new WAL(dir, config());
+        wal.open(flushedSeq);
+        try {
+            test.run(wal);
+        } finally {
+            wal.close();
+        }
+    }
+
+    private static List<WAL.Record> replay(WAL wal, long afterSeq) throws IOException {
+        List<WAL.Record> out = new ArrayList<>();
+        wal.replay(afterSeq, out::add);
+        return out;
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        List<Path> out = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "wal-*.log")) {
+            for (Path p : ds) out.add(p);
+        }
+        out.sort(null);
+        return out;
+    }
+
+    @Test
+    void replayCrossesSegmentsAndSkipsFlushedRecords(@TempDir Path dir) throws IOException {
+        withWal(dir, 0, wal -> {
+            for (int i = 1; i <= 30; i++) {
+                assertEquals(i, wal.appendPut(key(i), value(i)));
+                if (i % 10 == 0) wal.rotate();
+            }
+            wal.appendDel(key(3));
+            wal.appendPut(key(32), value(32), 4_000_000_000_000L);
+            wal.appendDelRange(key(5), key(9));
+        });
+        assertEquals(4, segments(dir).size());
+
+        withWal(dir, 0, wal -> {
+            List<WAL.Record> all = replay(wal, 0);
+            assertEquals(33, all.size());
+            for (int i = 0; i < all.size(); i++) assertEquals(i + 1, all.get(i).seq);
+            assertArrayEquals(value(7), all.get(6).value);
+            assertEquals(WAL.TYPE_DEL, all.get(30).type);
+            assertEquals(4_000_000_000_000L, all.get(31).expiresAt);
+            assertEquals(key(9), Slice.wrap(all.get(32).value));
+            assertEquals(33, wal.lastSeq());
+            assertEquals(33, wal.syncedSeq(), "replayed records are on disk");
+        });
+        withWal(dir, 25, wal -> {
+            List<WAL.Record> tail = replay(wal, 25);
+            assertEquals(26, tail.get(0).seq);
+            assertEquals(8, tail.size());
+        });
+    }
+
+    /** A record cut short by a crash is dropped, and the writes after it survive the next restart. */
+    @Test
+    void tornTailIsTruncatedBeforeNewAppends(@TempDir Path dir) throws IOException {
+        withWal(dir, 0, wal -> {
+            for (int i = 1; i <= 100; i++) wal.appendPut(key(i), value(i));
+        });
+        Path active = segments(dir).get(0);
+        try (FileChannel ch = FileChannel.open(active, StandardOpenOption.WRITE)) {
+            ch.truncate(ch.size() - 3);
+        }
+
+        withWal(dir, 0, wal -> {
+            assertEquals(99, replay(wal, 0).size());
+            assertEquals(100, wal.appendPut(key(1000), value(1000)));
+            assertEquals(101, wal.appendPut(key(1001), value(1001)));
+        });
+        withWal(dir, 0, wal -> {
+            List<WAL.Record> all = replay(wal, 0);
+            assertEquals(101, all.size());
+            assertEquals(key(1000), all.get(99).key);
+            assertEquals(key(1001), all.get(100).key);
+        });
+    }
+
+    @Test
+    void corruptTailIsDropped(@TempDir Path dir) throws IOException {
+        withWal(dir, 0, wal -> {
+            for (int i = 1; i <= 10; i++) wal.appendPut(key(i), value(i));
+        });
+        Path active = segments(dir).get(0);
+        long size = Files.size(active);
+        try (FileChannel ch = FileChannel.open(active, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer junk = ByteBuffer.allocate(64);
+            for (int i = 0; i < 64; i++) junk.put((byte) (i * 37));
+            ch.write(junk.flip());
+        }
+        withWal(dir, 0, wal -> {
+            assertEquals(10, replay(wal, 0).size());
+            assertEquals(size, Files.size(active));
+            assertEquals(11, wal.appendPut(key(11), value(11)));
+        });
+        withWal(dir, 0, wal -> {
+            assertEquals(11, replay(wal, 0).size());
+        });
+    }
+
+    @Test
+    void readerFollowsRotationsAndRetentionLimitsHowFarBack(@TempDir Path dir) throws IOException {
+        Config cfg = config().setWalRetentionBytes(0);
+        WAL wal = new WAL(dir, cfg);
+        try {
+            wal.open(0);
+            try (WAL.Reader reader = wal.newReader(1)) {
+                for (int round = 0; round < 3; round++) {
+                    for (int i = 0; i < 5; i++) wal.appendPut(key(i), value(i));
+                    wal.rotate(); // forces the segment, so the reader may ship it
+                }
+                for (long seq = 1; seq <= 15; seq++) assertEquals(seq, reader.next().seq);
+                assertNull(reader.next());
+            }
+            wal.deleteObsolete(15);
+            assertEquals(16, wal.firstRetainedSeq());
+            assertThrows(IOException.class, () -> wal.newReader(3));
+        } finally {
+            wal.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package src.test.java.lsmkv.metrics;
+
+import org.junit.jupiter.api.Test;
+import src.main.java.lsmkv.metrics.Histogram;
+import src.main.java.lsmkv.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsTest {
+
+    private static List<String> lines(Metrics m, String prefix) {
+        StringBuilder sb = new StringBuilder();
+        m.writePrometheus(sb);
+        List<String> out = new ArrayList<>();
+        for (String line : sb.toString().split("\n")) if (line.startsWith(prefix)) out.add(line);
+        return out;
+    }
+
+    private static List<String> labels(List<String> samples) {
+        List<String> out = new ArrayList<>();
+        for (String s : samples) out.add(s.substring(0, s.lastIndexOf(' ')));
+        return out;
+    }
+
+    /** The bucket set does not depend on what was recorded, so scrapes line up. */
+    @Test
+    void histogramBucketsStayFixedAsValuesArrive() {
+        Metrics m = new Metrics();
+        Histogram h = m.histogram("records", "Records per group.");
+        List<String> empty = lines(m, "records_bucket");
+        assertEquals(21 + 1, empty.size(), "2^0..2^20 and +Inf: " + empty);
+        for (String s : empty) assertTrue(s.endsWith(" 0"), s);
+
+        h.record(3);
+        h.record(1_000);
+        h.record(1L << 40); // past the last bucket: only +Inf
+        List<String> after = lines(m, "records_bucket");
+        assertEquals(labels(empty), labels(after));
+        assertTrue(after.contains("records_bucket{le=\"2\"} 0"), after.toString());
+        assertTrue(after.contains("records_bucket{le=\"4\"} 1"), after.toString());
+        assertTrue(after.contains("records_bucket{le=\"1024\"} 2"), after.toString());
+        assertTrue(after.contains("records_bucket{le=\"1048576\"} 2"), after.toString());
+        assertTrue(after.contains("records_bucket{le=\"+Inf\"} 3"), after.toString());
+    }
+
+    @Test
+    void latencyBucketsStartNearAMicrosecond() {
+        Metrics m = new Metrics();
+        m.latency("op_seconds", "Op latency.", "op", "get").record(5); // below the first bucket
+        List<String> buckets = lines(m, "op_seconds_bucket");
+        assertEquals(27 + 1, buckets.size());
+        assertEquals("op_seconds_bucket{op=\"get\",le=\"1.024E-6\"} 1", buckets.get(0));
+    }
+}
@@ -0,0 +1,157 @@
+package src.test.java.lsmkv.replication;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.MerkleTree;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.replication.LeaderFollowerReplicator;
+import src.main.java.lsmkv.util.Slice;
+import src.test.java.lsmkv.TestSupport;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static src.test.java.lsmkv.TestSupport.await;
+import static src.test.java.lsmkv.TestSupport.key;
+import static src.test.java.lsmkv.TestSupport.tableIds;
+import static src.test.java.lsmkv.TestSupport.value;
+
+class AntiEntropyTest {
+    private static final int N = 2_000;
+
+    /** Small MemTable so puts flush on their own; anti-entropy only runs when asked. */
+    private static Config config() {
+        return TestSupport.config(16 * 1024, 4).setAntiEntropyInterval(Duration.ofHours(1));
+    }
+
+    /** The leaf hashes a tree over exactly the engine's live pairs has. */
+    private static long[] expectedLeaves(StorageEngine engine, MerkleTree tree) throws Exception {
+        long[] leaves = new long[tree.leafCount()];
+        for (Map.Entry<Slice, byte[]> e : engine.getRange(key(0), key(N)).entrySet()) {
+            leaves[tree.leafOf(e.getKey())] ^= MerkleTree.entryHash(e.getKey(), e.getValue());
+        }
+        return leaves;
+    }
+
+    private static void assertTreeMatches(StorageEngine engine) throws Exception {
+        MerkleTree tree = engine.merkleSnapshot();
+        assertEquals(engine.lastSequence(), tree.seq());
+        long[] nodes = tree.nodes();
+        long[] expected = expectedLeaves(engine, tree);
+        for (int leaf = 0; leaf < expected.length; leaf++) {
+            assertEquals(expected[leaf], nodes[tree.leafCount() + leaf], "leaf " + leaf);
+        }
+    }
+
+    /** Puts, deletes, a range delete with keys rewritten after it, and a counter. */
+    private static void write(StorageEngine engine, int version) throws Exception {
+        for (int i = 0; i < N; i++) engine.put(key(i), value(i, version), 0);
+        for (int i = 0; i < N; i += 7) engine.delete(key(i));
+        engine.deleteRange(key(500), key(599));
+        for (int i = 550; i < 560; i++) engine.put(key(i), value(i, version + 1), 0);
+        engine.increment(key(N), 3);
+    }
+
+    /**
+     * Flushes keep the tree in step with the tables, and a snapshot adds what the
+     * MemTable changes on top without flushing it.
+     */
+    @Test
+    void snapshotCoversTablesAndMemTableWithoutFlushing(@TempDir Path dir) throws Exception {
+        Config cfg = config();
+        try (StorageEngine engine = new StorageEngine(dir, cfg, LeaderFollowerReplicator.leader(0, cfg))) {
+            engine.start();
+            write(engine, 0);
+            Set<Long> ids = tableIds(engine);
+            assertTrue(ids.size() > 1, "puts should have flushed");
+            assertTreeMatches(engine);
+            assertEquals(ids, tableIds(engine), "a snapshot must not flush");
+
+            write(engine, 2); // overwrites, flushing the MemTable the last snapshot folded in
+            engine.deleteRange(key(0), key(99)); // left in the MemTable, over flushed keys
+            assertTreeMatches(engine);
+        }
+    }
+
+    /** The tree saved at each flush is loaded on restart, or rebuilt if it does not load. */
+    @Test
+    void treeSurvivesRestartAndIsRebuiltWhenUnreadable(@TempDir Path dir) throws Exception {
+        long[] before;
+        Config cfg = config();
+        try (StorageEngine engine = new StorageEngine(dir, cfg, LeaderFollowerReplicator.leader(0, cfg))) {
+            engine.start();
+            write(engine, 0);
+            before = engine.merkleSnapshot().nodes();
+        }
+        cfg = config();
+        try (StorageEngine engine = new StorageEngine(dir, cfg, LeaderFollowerReplicator.leader(0, cfg))) {
+            engine.start();
+            assertArrayEquals(before, engine.merkleSnapshot().nodes());
+            assertTreeMatches(engine);
+        }
+        try (FileChannel ch = FileChannel.open(dir.resolve("merkle.bin"), StandardOpenOption.WRITE)) {
+            ch.truncate(ch.size() - 1);
+        }
+        cfg = config();
+        try (StorageEngine engine = new StorageEngine(dir, cfg, LeaderFollowerReplicator.leader(0, cfg))) {
+            engine.start();
+            assertArrayEquals(before, engine.merkleSnapshot().nodes());
+        }
+    }
+
+    /**
+     * A follower that took writes of its own while detached holds the same sequence
+     * numbers as the leader's writes it missed, so the stream never notices; a round
+     * of anti-entropy has the leader re-send its keys and delete the follower's.
+     */
+    @Test
+    void driftIsFoundAndRepaired(@TempDir Path dir) throws Exception {
+        Config cfg = config();
+        LeaderFollowerReplicator repl = LeaderFollowerReplicator.leader(0, cfg);
+        try (StorageEngine leader = new StorageEngine(dir.resolve("leader"), cfg, repl)) {
+            leader.start();
+            for (int i = 0; i < N; i++) leader.put(key(i), value(i, 0), 0);
+            Config fcfg = config();
+            try (StorageEngine follower = new StorageEngine(dir.resolve("follower"), fcfg,
+                    LeaderFollowerReplicator.follower("localhost", repl.port(), fcfg))) {
+                follower.start();
+                await("the follower has every record", () -> follower.lastSequence() == leader.lastSequence());
+            }
+
+            try (StorageEngine detached = new StorageEngine(dir.resolve("follower"), config(), null)) {
+                detached.start();
+                for (int i = 0; i < 5; i++) detached.put(key("drift", i), value(i, 1), 0);
+            }
+            for (int i = 0; i < 5; i++) leader.put(key(i), value(i, 1), 0);
+
+            Config rcfg = config();
+            LeaderFollowerReplicator frepl = LeaderFollowerReplicator.follower("localhost", repl.port(), rcfg);
+            try (StorageEngine follower = new StorageEngine(dir.resolve("follower"), rcfg, frepl)) {
+                follower.start();
+                await("the follower reconnected", () -> follower.lastSequence() == leader.lastSequence());
+                assertArrayEquals(value(0, 0), follower.get(key(0)), "the drift should go unnoticed");
+
+                String result = frepl.runAntiEntropy();
+                assertTrue(result.endsWith("10 keys re-sent"), result);
+                await("the repairs arrive", () -> follower.lastSequence() == leader.lastSequence());
+                for (int i = 0; i < 5; i++) {
+                    assertArrayEquals(value(i, 1), follower.get(key(i)), "key " + i);
+                    assertNull(follower.get(key("drift", i)), "drift key " + i);
+                }
+                long ranges = Long.parseLong(result.substring(0, result.indexOf(' ')));
+                assertTrue(ranges > 0 && ranges <= 10, result);
+                assertEquals(ranges, rcfg.getMetrics().counter("lsmkv_anti_entropy_repaired_ranges_total", "").sum());
+                assertTrue(frepl.runAntiEntropy().startsWith("0 divergent ranges"));
+            }
+        }
+    }
+}
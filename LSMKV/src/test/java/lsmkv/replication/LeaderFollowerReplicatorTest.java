@@ -0,0 +1,169 @@
+package src.test.java.lsmkv.replication;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.main.java.lsmkv.config.Config;
+import src.main.java.lsmkv.engine.StorageEngine;
+import src.main.java.lsmkv.engine.WAL;
+import src.main.java.lsmkv.replication.AckMode;
+import src.main.java.lsmkv.replication.LeaderFollowerReplicator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static src.test.java.lsmkv.TestSupport.await;
+import static src.test.java.lsmkv.TestSupport.key;
+
+class LeaderFollowerReplicatorTest {
+
+    /** The WAL is only forced on demand, so anything shipped had to be synced for it. */
+    private static Config config() {
+        return new Config(64 * 1024, Duration.ofHours(1), 16, 4, 10_000)
+                .setAntiEntropyInterval(Duration.ofHours(1));
+    }
+
+    private static byte[] value(int i) {
+        return ("v" + i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static StorageEngine follower(Path dir, LeaderFollowerReplicator leader) throws Exception {
+        Config cfg = config();
+        StorageEngine engine = new StorageEngine(dir, cfg, LeaderFollowerReplicator.follower("localhost", leader.port(), cfg));
+        engine.start();
+        return engine;
+    }
+
+    @Test
+    void walReaderStopsAtTheSyncedPrefix(@TempDir Path dir) throws Exception {
+        try (StorageEngine engine = new StorageEngine(dir, config(), null)) {
+            engine.start();
+            engine.put(key("k", 1), value(1));
+            engine.put(key("k", 2), value(2));
+            try (WAL.Reader reader = engine.openWalReader(1)) {
+                assertNull(reader.next(), "records not yet forced to disk must not be shipped");
+                engine.syncWal();
+                assertEquals(1, reader.next().seq);
+                assertEquals(2, reader.next().seq);
+                assertNull(reader.next());
+            }
+        }
+    }
+
+    @Test
+    void followerCatchesUpAfterRestart(@TempDir Path dir) throws Exception {
+        Config cfg = config();
+        LeaderFollowerReplicator repl = LeaderFollowerReplicator.leader(0, cfg);
+        try (StorageEngine leader = new StorageEngine(dir.resolve("leader"), cfg, repl)) {
+            leader.start();
+            for (int i = 0; i < 200; i++) leader.put(key("k", i), value(i));
+            try (StorageEngine follower = follower(dir.resolve("follower"), repl)) {
+                await("the follower has every record", () -> follower.lastSequence() == leader.lastSequence());
+            }
+            for (int i = 200; i < 400; i++) leader.put(key("k", i), value(i));
+            try (StorageEngine follower = follower(dir.resolve("follower"), repl)) {
+                await("the restarted follower caught up", () -> follower.lastSequence() == leader.lastSequence());
+                for (int i = 0; i < 400; i++) assertArrayEquals(value(i), follower.get(key("k", i)), "key " + i);
+            }
+        }
+    }
+
+    /** With acks required, a write must not wait for the fsync interval before it is shipped. */
+    @Test
+    void acknowledgedWritesShipWithoutWaitingForTheFsyncInterval(@TempDir Path dir) throws Exception {
+        Config cfg = config().setReplicationAckMode(AckMode.ONE).setReplicationAckTimeout(Duration.ofSeconds(10));
+        LeaderFollowerReplicator repl = LeaderFollowerReplicator.leader(0, cfg);
+        try (StorageEngine leader = new StorageEngine(dir.resolve("leader"), cfg, repl)) {
+            leader.start();
+            try (StorageEngine follower = follower(dir.resolve("follower"), repl)) {
+                await("the follower connected", () -> {
+                    try {
+                        leader.put(key("probe", 0), value(0));
+                        return true;
+                    } catch (IOException notYetConnected) {
+                        return false;
+                    }
+                });
+                for (int i = 0; i < 50; i++) leader.put(key("k", i), value(i)); // each waits for the follower's ack
+                for (int i = 0; i < 50; i++) assertArrayEquals(value(i), follower.get(key("k", i)), "key " + i);
+            }
+        }
+    }
+
+    @Test
+    void emptyFollowerIsBootstrappedFromASnapshot(@TempDir Path dir) throws Exception {
+        Config cfg = config();
+        LeaderFollowerReplicator repl = LeaderFollowerReplicator.leader(0, cfg);
+        try (StorageEngine leader = new StorageEngine(dir.resolve("leader"), cfg, repl)) {
+            leader.start();
+            for (int i = 0; i < 5_000; i++) leader.put(key("k", i), value(i)); // several flushed tables
+            assertFalse(leader.getTableStats().isEmpty());
+            try (StorageEngine follower = follower(dir.resolve("follower"), repl)) {
+                await("the follower installed the snapshot", () -> follower.lastSequence() == leader.lastSequence());
+                assertFalse(follower.getTableStats().isEmpty(), "the follower should hold the leader's tables");
+                for (int i = 0; i < 5_000; i++) assertArrayEquals(value(i), follower.get(key("k", i)), "key " + i);
+            }
+        }
+    }
+
+    /** A follower holding records its leader never had is reset rather than refused forever. */
+    @Test
+    void followerAheadOfTheLeaderIsResetFromASnapshot(@TempDir Path dir) throws Exception {
+        try (StorageEngine stray = new StorageEngine(dir.resolve("follower"), config(), null)) {
+            stray.start();
+            for (int i = 0; i < 50; i++) stray.put(key("stray", i), value(i));
+        }
+        Config cfg = config();
+        LeaderFollowerReplicator repl = LeaderFollowerReplicator.leader(0, cfg);
+        try (StorageEngine leader = new StorageEngine(dir.resolve("leader"), cfg, repl)) {
+            leader.start();
+            for (int i = 0; i < 10; i++) leader.put(key("k", i), value(i));
+            try (StorageEngine follower = follower(dir.resolve("follower"), repl)) {
+                await("the follower was reset to the leader", () -> follower.lastSequence() == leader.lastSequence()
+                        && follower.get(key("k", 9)) != null);
+                for (int i = 0; i < 10; i++) assertNotNull(follower.get(key("k", i)), "key " + i);
+                for (int i = 0; i < 50; i++) assertNull(follower.get(key("stray", i)), "stray key " + i);
+            }
+        }
+    }
+
+    /**
+     * A follower that was down while the leader flushed past its retained WAL is
+     * bootstrapped again, value-log files included, and then tails the live stream.
+     */
+    @Test
+    void followerBehindTheRetainedWalIsBootstrappedFromASnapshot(@TempDir Path dir) throws Exception {
+        Config cfg = config().setWalRetentionBytes(0).setValueLogThreshold(100);
+        byte[] large = new byte[500];
+        LeaderFollowerReplicator repl = LeaderFollowerReplicator.leader(0, cfg);
+        try (StorageEngine leader = new StorageEngine(dir.resolve("leader"), cfg, repl)) {
+            leader.start();
+            for (int i = 0; i < 100; i++) leader.put(key("k", i), value(i));
+            try (StorageEngine follower = follower(dir.resolve("follower"), repl)) {
+                await("the follower has every record", () -> follower.lastSequence() == leader.lastSequence());
+            }
+
+            long resumeFrom = leader.lastSequence() + 1;
+            for (int i = 0; i < 2_000; i++) leader.put(key("big", i), large); // flushes drop the old segments
+            leader.delete(key("k", 0));
+            assertTrue(leader.firstRetainedSequence() > resumeFrom, "the follower's position must be gone");
+
+            try (StorageEngine follower = follower(dir.resolve("follower"), repl)) {
+                await("the follower installed the snapshot", () -> follower.lastSequence() == leader.lastSequence());
+                leader.put(key("k", 100), value(100)); // streamed after the snapshot
+                await("the follower tails the stream again", () -> follower.get(key("k", 100)) != null);
+
+                assertNull(follower.get(key("k", 0)));
+                for (int i = 1; i < 100; i++) assertArrayEquals(value(i), follower.get(key("k", i)), "key " + i);
+                for (int i = 0; i < 2_000; i += 37) assertArrayEquals(large, follower.get(key("big", i)), "big " + i);
+            }
+        }
+    }
+}
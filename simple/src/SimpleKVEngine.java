@@ -12,11 +12,15 @@ import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
 
 public class SimpleKVEngine {
 
@@ -59,6 +63,7 @@ public class SimpleKVEngine {
             URI uri = ex.getRequestURI();
             Map<String,String> q = parseQuery(uri.getRawQuery());
             String key = q.get("key");
+            boolean sync = !"false".equals(q.get("sync"));
             if (key == null || key.isEmpty()) {
                 send(ex, 400, "missing key");
                 return;
@@ -68,7 +73,7 @@ public class SimpleKVEngine {
                 switch (ex.getRequestMethod()) {
                     case "PUT": {
                         byte[] v = readAll(ex.getRequestBody());
-                        engine.put(key, v);
+                        engine.put(key, v, sync);
                         send(ex, 200, "OK");
                         return;
                     }
@@ -79,7 +84,7 @@ public class SimpleKVEngine {
                         return;
                     }
                     case "DELETE": {
-                        engine.delete(key);
+                        engine.delete(key, sync);
                         send(ex, 200, "OK");
                         return;
                     }
@@ -107,16 +112,14 @@ public class SimpleKVEngine {
             if (start.compareTo(end) > 0) { send(ex, 400, "start > end"); return; }
 
             try {
-                SortedMap<String, Long> slice = engine.rangeIndex(start, end);
+                SortedMap<String, byte[]> slice = engine.range(start, end);
                 ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
                 ex.sendResponseHeaders(200, 0);
                 BufferedWriter w = new BufferedWriter(new OutputStreamWriter(ex.getResponseBody(), StandardCharsets.UTF_8));
-                for (String k : slice.keySet()) {
-                    byte[] val = engine.get(k);
-                    if (val == null) continue; // deleted
-                    w.write(k);
+                for (Map.Entry<String, byte[]> e : slice.entrySet()) {
+                    w.write(e.getKey());
                     w.write('\t');
-                    w.write(new String(val, StandardCharsets.UTF_8));
+                    w.write(new String(e.getValue(), StandardCharsets.UTF_8));
                     w.write('\n');
                 }
                 w.flush();
@@ -133,6 +136,7 @@ public class SimpleKVEngine {
         @Override
         public void handle(HttpExchange ex) throws IOException {
             if (!"POST".equals(ex.getRequestMethod())) { send(ex, 405, "method not allowed"); return; }
+            boolean sync = !"false".equals(parseQuery(ex.getRequestURI().getRawQuery()).get("sync"));
             int count = 0;
             try (BufferedReader r = new BufferedReader(new InputStreamReader(ex.getRequestBody(), StandardCharsets.UTF_8))) {
                 String line;
@@ -146,7 +150,7 @@ public class SimpleKVEngine {
                     batch.add(new AbstractMap.SimpleImmutableEntry<>(k, v));
                     count++;
                 }
-                engine.batchPut(batch);
+                engine.batchPut(batch, sync);
                 send(ex, 200, "OK " + count);
             } catch (IOException ioe) {
                 send(ex, 500, "io error: " + ioe.getMessage());
@@ -160,203 +164,804 @@ public class SimpleKVEngine {
     // Storage Engine (compact)
     // ===========================
     static class StorageEngine {
+        private static final int HEADER = 1 + 4 + 4;
+        private static final int OFFSET_BITS = 40; // 1 TiB per segment
+        private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+        private static final int HINT_MAGIC = 0x534B5648; // "SKVH"
+        private static final int HINT_HEADER = 4 + 8 + 4;
+        private static final long MAP_WINDOW = 1L << 30;
+
         private final Path dir;
-        private final Path logPath;
-        private final Path indexPath;
-        private RandomAccessFile logRaf;
-        private FileChannel logChannel;
-        // in-memory index: key -> file offset
-        // TreeMap allows range queries
-        private final TreeMap<String, Long> index = new TreeMap<>();
+        private final long segmentBytes;
+        private final double mergeGarbageRatio;
+        // segment id -> segment, oldest first; the last one is the active segment appends go to
+        private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+        private Segment active;
+        private int nextSegmentId;
+        // in-memory index: key -> location (segment id << 40 | file offset) of its live value
+        // sorted for range queries; readers never lock, writers mutate it under writeLock
+        // (replaced once by the bulk build in start())
+        private ConcurrentSkipListMap<String, Long> index = new ConcurrentSkipListMap<>();
         private final Object writeLock = new Object();
+        private final Object mergeLock = new Object();
+        private ScheduledExecutorService merger;
 
         StorageEngine(Path dir) {
+            this(dir, 64L << 20, 0.5);
+        }
+
+        /**
+         * @param segmentBytes      size after which the active segment is closed and a new one started
+         * @param mergeGarbageRatio share of overwritten or deleted records that triggers a background merge
+         */
+        StorageEngine(Path dir, long segmentBytes, double mergeGarbageRatio) {
             this.dir = dir;
-            this.logPath = dir.resolve("store.log");
-            this.indexPath = dir.resolve("index.db");
+            this.segmentBytes = segmentBytes;
+            this.mergeGarbageRatio = mergeGarbageRatio;
         }
 
         void start() throws IOException {
             Files.createDirectories(dir);
-            openLog();
-            if (Files.exists(indexPath)) {
-                try {
-                    loadIndex();
-                } catch (Exception e) {
-                    System.err.println("index load failed, rebuilding from log: " + e.getMessage());
-                    rebuildIndexFromLog();
+            Path legacy = dir.resolve("store.log");
+            if (Files.exists(legacy)) {
+                // single-file store from before segments: it becomes segment 0
+                Files.move(legacy, segmentPath(0), StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.deleteIfExists(dir.resolve("index.db")); // text index from before hint files
+            openSegments();
+            List<Segment> unhinted = loadIndex();
+            merger = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "simplekv-merge");
+                t.setDaemon(true);
+                return t;
+            });
+            for (Segment seg : unhinted) merger.execute(() -> writeHintFor(seg));
+            merger.scheduleWithFixedDelay(this::mergeIfWorthwhile, 10, 10, TimeUnit.SECONDS);
+        }
+
+        void openSegments() throws IOException {
+            List<Path> hints = new ArrayList<>();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "store-*")) {
+                for (Path p : ds) {
+                    String name = p.getFileName().toString();
+                    if (name.endsWith(".tmp")) {
+                        Files.deleteIfExists(p); // interrupted merge or hint write
+                    } else if (name.endsWith(".log")) {
+                        int id = Integer.parseInt(name.substring("store-".length(), name.length() - ".log".length()));
+                        segments.put(id, new Segment(id, p));
+                    } else if (name.endsWith(".hint")) {
+                        hints.add(p);
+                    }
                 }
-            } else {
-                rebuildIndexFromLog();
             }
+            for (Path p : hints) {
+                String name = p.getFileName().toString();
+                int id = Integer.parseInt(name.substring("store-".length(), name.length() - ".hint".length()));
+                if (!segments.containsKey(id)) Files.deleteIfExists(p); // segment merged away before the hint
+            }
+            if (segments.isEmpty()) segments.put(1, new Segment(1, segmentPath(1)));
+            active = segments.lastEntry().getValue();
+            nextSegmentId = active.id + 1;
         }
 
-        void openLog() throws FileNotFoundException {
-            logRaf = new RandomAccessFile(logPath.toFile(), "rw");
-            logChannel = logRaf.getChannel();
+        void close() throws IOException {
+            if (merger != null) {
+                merger.shutdown(); // lets queued hint writes finish
+                try {
+                    merger.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (mergeLock) {
+                synchronized (writeLock) {
+                    for (Segment s : segments.values()) s.ch.close();
+                }
+            }
         }
 
-        // Put: append a record and update in-memory index and index file
+        // Put: append a record and update the in-memory index
         void put(String key, byte[] value) throws IOException {
+            put(key, value, true);
+        }
+
+        /** With {@code sync} false the record reaches the OS but is not forced to disk before returning. */
+        void put(String key, byte[] value, boolean sync) throws IOException {
             if (key == null || key.isEmpty()) throw new IllegalArgumentException("empty key");
-            if (value == null) value = new byte[0];
-            synchronized (writeLock) {
-                long pos = logChannel.size();
-                // record format: [byte type][int klen][int vlen][key bytes][value bytes]
-                ByteBuffer hdr = ByteBuffer.allocate(1 + 4 + 4);
-                hdr.put((byte)0).putInt(key.getBytes(StandardCharsets.UTF_8).length).putInt(value.length).flip();
-                logChannel.position(pos);
-                logChannel.write(hdr);
-                logChannel.write(ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8)));
-                if (value.length > 0) logChannel.write(ByteBuffer.wrap(value));
-                logChannel.force(true);
-                index.put(key, pos);
-                appendIndexEntry(key, pos);
-            }
+            PendingWrite w = new PendingWrite(sync);
+            w.add((byte)0, key, value == null ? new byte[0] : value);
+            commit(w);
         }
 
         byte[] get(String key) throws IOException {
-            Long pos;
-            synchronized (writeLock) { pos = index.get(key); }
-            if (pos == null) return null;
-            return readValueAt(pos);
+            while (true) {
+                Long loc = index.get(key);
+                if (loc == null) return null;
+                try {
+                    return readValueAt(loc);
+                } catch (ClosedChannelException e) {
+                    // the segment was merged away after the lookup; the index now points at the copy
+                    if (loc.equals(index.get(key))) throw e;
+                }
+            }
         }
 
         void delete(String key) throws IOException {
+            delete(key, true);
+        }
+
+        void delete(String key, boolean sync) throws IOException {
             if (key == null || key.isEmpty()) throw new IllegalArgumentException("empty key");
-            synchronized (writeLock) {
-                long pos = logChannel.size();
-                byte[] kb = key.getBytes(StandardCharsets.UTF_8);
-                ByteBuffer hdr = ByteBuffer.allocate(1 + 4 + 4);
-                hdr.put((byte)1).putInt(kb.length).putInt(0).flip(); // tombstone type=1
-                logChannel.position(pos);
-                logChannel.write(hdr);
-                logChannel.write(ByteBuffer.wrap(kb));
-                logChannel.force(true);
-                index.put(key, pos); // tombstone at this offset; get() will return null
-                appendIndexEntry(key, pos);
-            }
+            PendingWrite w = new PendingWrite(sync);
+            w.add((byte)1, key, new byte[0]); // tombstone type=1
+            commit(w);
         }
 
-        // Batch put optimized to write single append for many entries
+        // Batch put: the whole batch goes out in one write of its group
         void batchPut(List<Map.Entry<String, byte[]>> entries) throws IOException {
+            batchPut(entries, true);
+        }
+
+        void batchPut(List<Map.Entry<String, byte[]>> entries, boolean sync) throws IOException {
             if (entries == null || entries.isEmpty()) return;
+            PendingWrite w = new PendingWrite(sync);
+            for (Map.Entry<String, byte[]> e : entries) {
+                byte[] v = e.getValue(); if (v == null) v = new byte[0];
+                w.add((byte)0, e.getKey(), v);
+            }
+            commit(w);
+        }
+
+        // ------------------
+        // Group commit
+        // ------------------
+        // Writers queue their encoded records; the writer at the head of the queue writes everything
+        // queued behind it with one gathering write and at most one force, then wakes the others.
+        private static final long MAX_GROUP_BYTES = 1 << 20;
+        private final ArrayDeque<PendingWrite> writers = new ArrayDeque<>();
+        private long groupForces; // under writeLock
+
+        // One caller's records, encoded before it queues up.
+        static final class PendingWrite {
+            final boolean sync;
+            final List<String> keys = new ArrayList<>();
+            final List<ByteBuffer> buffers = new ArrayList<>(); // per record: header + key, then value
+            final BitSet tombstones = new BitSet();
+            long bytes;
+            boolean done;
+            IOException error;
+
+            PendingWrite(boolean sync) {
+                this.sync = sync;
+            }
+
+            void add(byte type, String key, byte[] value) {
+                byte[] kb = key.getBytes(StandardCharsets.UTF_8);
+                // record format: [byte type][int klen][int vlen][key bytes][value bytes]
+                ByteBuffer head = ByteBuffer.allocate(HEADER + kb.length);
+                head.put(type).putInt(kb.length).putInt(value.length).put(kb).flip();
+                if (type == 1) tombstones.set(keys.size());
+                keys.add(key);
+                buffers.add(head);
+                buffers.add(ByteBuffer.wrap(value));
+                bytes += HEADER + kb.length + value.length;
+            }
+        }
+
+        private void commit(PendingWrite w) throws IOException {
+            boolean interrupted = false;
+            List<PendingWrite> group = new ArrayList<>();
+            synchronized (writers) {
+                writers.add(w);
+                while (!w.done && writers.peekFirst() != w) {
+                    try {
+                        writers.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true; // the record is queued; wait for its outcome anyway
+                    }
+                }
+                if (interrupted) Thread.currentThread().interrupt();
+                if (w.done) {
+                    if (w.error != null) throw new IOException("group commit failed: " + w.error.getMessage(), w.error);
+                    return;
+                }
+                long bytes = 0;
+                for (PendingWrite p : writers) {
+                    if (!group.isEmpty() && bytes + p.bytes > MAX_GROUP_BYTES) break;
+                    group.add(p);
+                    bytes += p.bytes;
+                }
+            }
+            IOException error = null;
+            try {
+                writeGroup(group);
+            } catch (IOException e) {
+                error = e;
+            }
+            synchronized (writers) {
+                for (PendingWrite p : group) {
+                    writers.pollFirst();
+                    p.error = error;
+                    p.done = true;
+                }
+                writers.notifyAll();
+            }
+            if (error != null) throw error;
+        }
+
+        /** Forces issued by group commits so far; one per group with a syncing writer in it. */
+        long groupForces() {
             synchronized (writeLock) {
-                long pos = logChannel.size();
-                logChannel.position(pos);
-                for (Map.Entry<String, byte[]> e : entries) {
-                    String k = e.getKey();
-                    byte[] v = e.getValue(); if (v == null) v = new byte[0];
-                    byte[] kb = k.getBytes(StandardCharsets.UTF_8);
-                    ByteBuffer hdr = ByteBuffer.allocate(1 + 4 + 4);
-                    hdr.put((byte)0).putInt(kb.length).putInt(v.length).flip();
-                    logChannel.write(hdr);
-                    logChannel.write(ByteBuffer.wrap(kb));
-                    if (v.length > 0) logChannel.write(ByteBuffer.wrap(v));
-                    index.put(k, pos);
-                    appendIndexEntry(k, pos);
-                    pos = logChannel.position();
-                }
-                logChannel.force(true);
-            }
-        }
-
-        // Range index (snapshot)
-        SortedMap<String, Long> rangeIndex(String start, String end) {
+                return groupForces;
+            }
+        }
+
+        private void writeGroup(List<PendingWrite> group) throws IOException {
+            boolean sync = false;
+            List<ByteBuffer> buffers = new ArrayList<>();
+            long bytes = 0;
+            for (PendingWrite p : group) {
+                sync |= p.sync;
+                buffers.addAll(p.buffers);
+                bytes += p.bytes;
+            }
+            ByteBuffer[] bufs = buffers.toArray(new ByteBuffer[0]);
+            // held across the write so a merge cannot roll the segment between the append and the index update
             synchronized (writeLock) {
-                return index.subMap(start, true, end, true);
+                if (active.size >= segmentBytes) roll();
+                long pos = active.size;
+                for (long left = bytes; left > 0; ) left -= active.ch.write(bufs);
+                active.size += bytes;
+                if (sync) {
+                    active.ch.force(true);
+                    groupForces++;
+                }
+                for (PendingWrite p : group) {
+                    for (int i = 0; i < p.keys.size(); i++) {
+                        long loc = loc(active.id, pos);
+                        if (p.tombstones.get(i)) indexRemove(p.keys.get(i), loc);
+                        else indexPut(p.keys.get(i), loc);
+                        pos += p.buffers.get(2 * i).capacity() + p.buffers.get(2 * i + 1).capacity();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Live entries in [start, end]. Takes the locations from the index without locking, then reads
+         * the values in file order through a read window, so neighbouring records share one read.
+         */
+        SortedMap<String, byte[]> range(String start, String end) throws IOException {
+            List<Map.Entry<String, Long>> hits = new ArrayList<>(index.subMap(start, true, end, true).entrySet());
+            hits.sort(Map.Entry.comparingByValue()); // segment, then offset
+            TreeMap<String, byte[]> out = new TreeMap<>();
+            WindowReader reader = new WindowReader();
+            for (int i = 0; i < hits.size(); i++) {
+                String key = hits.get(i).getKey();
+                long loc = hits.get(i).getValue();
+                long next = i + 1 < hits.size() ? hits.get(i + 1).getValue() : -1;
+                byte[] v;
+                try {
+                    v = reader.value(loc, next);
+                } catch (ClosedChannelException e) {
+                    v = get(key); // merged away meanwhile
+                }
+                if (v != null) out.put(key, v);
+            }
+            return out;
+        }
+
+        // Positional reads through a window of up to 64 KiB, refilled only when a record falls outside it.
+        final class WindowReader {
+            private static final int WINDOW = 1 << 16;
+            private ByteBuffer buf = ByteBuffer.allocate(WINDOW);
+            private long start = -1; // location of buf[0]
+            private int len;
+
+            // Value of the record at loc, or null for a tombstone; next is the location read after it, or -1.
+            byte[] value(long loc, long next) throws IOException {
+                if (!holds(loc, HEADER)) fill(loc, HEADER, next);
+                int at = (int) (loc - start);
+                byte type = buf.get(at);
+                int klen = buf.getInt(at + 1);
+                int vlen = buf.getInt(at + 5);
+                if (type == 1) return null;
+                if (!holds(loc, HEADER + klen + vlen)) {
+                    fill(loc, HEADER + klen + vlen, next);
+                    at = 0;
+                }
+                byte[] v = new byte[vlen];
+                buf.get(at + HEADER + klen, v);
+                return v;
+            }
+
+            private boolean holds(long loc, int n) {
+                return start >= 0 && segmentOf(loc) == segmentOf(start) && loc >= start && loc + n <= start + len;
+            }
+
+            // Reads at least n bytes at loc; a whole window if the next record is close enough to share it.
+            private void fill(long loc, int n, long next) throws IOException {
+                Segment seg = segments.get(segmentOf(loc));
+                if (seg == null) throw new ClosedChannelException();
+                boolean near = next >= 0 && segmentOf(next) == segmentOf(loc) && next - loc < WINDOW;
+                int size = Math.max(n, near ? WINDOW : 512);
+                if (buf.capacity() < size) buf = ByteBuffer.allocate(size);
+                buf.clear().limit(size);
+                long pos = offsetOf(loc);
+                while (buf.position() < n) {
+                    if (seg.ch.read(buf, pos + buf.position()) < 0) throw new EOFException("record at " + pos + " in segment " + seg.id);
+                }
+                start = loc;
+                len = buf.position();
             }
         }
 
         // ------------------
-        // On-disk index helpers
+        // Segments
         // ------------------
-        private void appendIndexEntry(String key, long offset) {
-            // Append line "key\toffset\n" to indexPath. Open+append is simple and avoids keeping index file in memory.
-            try (FileChannel idx = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
-                String line = key + "\t" + offset + "\n";
-                idx.write(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
-                idx.force(true);
-            } catch (IOException e) {
-                // best-effort: index file error shouldn't lose data in log; surface to stderr
-                System.err.println("Failed to append index entry: " + e.getMessage());
+        static final class Segment {
+            final int id;
+            final Path path;
+            final FileChannel ch;
+            // bytes appended, records appended and records since overwritten or deleted; guarded by writeLock
+            long size;
+            long records;
+            long dead;
+
+            Segment(int id, Path path) throws IOException {
+                this.id = id;
+                this.path = path;
+                this.ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                this.size = ch.size();
+                ch.position(size); // appends continue from here without seeking
             }
         }
 
-        private void loadIndex() throws IOException {
-            index.clear();
-            try (BufferedReader r = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8)) {
-                String line;
-                while ((line = r.readLine()) != null) {
-                    if (line.isEmpty()) continue;
-                    int tab = line.lastIndexOf('\t');
-                    if (tab <= 0) continue;
-                    String k = line.substring(0, tab);
-                    long off = Long.parseLong(line.substring(tab + 1));
-                    index.put(k, off);
+        static long loc(int segment, long offset) { return (long) segment << OFFSET_BITS | offset; }
+        static int segmentOf(long loc) { return (int) (loc >>> OFFSET_BITS); }
+        static long offsetOf(long loc) { return loc & OFFSET_MASK; }
+
+        private Path segmentPath(int id) {
+            return dir.resolve(String.format("store-%06d.log", id));
+        }
+
+        private Path hintPath(int id) {
+            return dir.resolve(String.format("store-%06d.hint", id));
+        }
+
+        // Closes the active segment; it stays readable and becomes a merge candidate. Caller holds writeLock.
+        private void roll() throws IOException {
+            active.ch.force(true);
+            Segment closed = active;
+            int id = nextSegmentId++;
+            active = new Segment(id, segmentPath(id));
+            segments.put(id, active);
+            merger.execute(() -> writeHintFor(closed));
+        }
+
+        // Points key at loc and keeps the per-segment garbage counts. Caller holds writeLock.
+        private void indexPut(String key, long loc) {
+            segments.get(segmentOf(loc)).records++;
+            markDead(index.put(key, loc));
+        }
+
+        // Drops key after its tombstone was written at loc. Caller holds writeLock.
+        private void indexRemove(String key, long loc) {
+            Segment seg = segments.get(segmentOf(loc));
+            seg.records++;
+            seg.dead++; // only needed until the values it shadows are merged away
+            markDead(index.remove(key));
+        }
+
+        private void markDead(Long loc) {
+            if (loc == null) return;
+            Segment seg = segments.get(segmentOf(loc));
+            if (seg != null) seg.dead++;
+        }
+
+        private void mergeIfWorthwhile() {
+            try {
+                long records = 0, dead = 0;
+                synchronized (writeLock) {
+                    for (Segment s : segments.values()) {
+                        records += s.records;
+                        dead += s.dead;
+                    }
                 }
+                if (dead > 0 && dead >= records * mergeGarbageRatio) merge();
+            } catch (Exception e) {
+                System.err.println("merge failed: " + e.getMessage());
             }
-            // basic sanity: if log shorter than max offset, we will rebuild
-            if (!index.isEmpty()) {
-                long maxOff = index.values().stream().mapToLong(Long::longValue).max().orElse(0L);
-                if (maxOff >= logChannel.size()) {
-                    throw new IOException("index refers to offsets beyond log size; rebuild required");
+        }
+
+        /**
+         * Rewrites the live records of every closed segment into one new segment and swaps it into the
+         * index, while writes continue to a fresh active segment. Tombstones are dropped, as every older
+         * record is part of the merge.
+         */
+        void merge() throws IOException {
+            synchronized (mergeLock) {
+                int outId;
+                List<Segment> inputs;
+                synchronized (writeLock) {
+                    // the output id sorts after every input and before the new active segment, so
+                    // replaying segments in id order still lets newer records win
+                    outId = nextSegmentId++;
+                    roll();
+                    inputs = new ArrayList<>(segments.headMap(outId).values());
+                }
+
+                Path out = segmentPath(outId);
+                Path tmp = out.resolveSibling(out.getFileName() + ".tmp");
+                List<Move> moved = new ArrayList<>();
+                try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+                     DataOutputStream os = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+                    long pos = 0;
+                    for (Segment seg : inputs) {
+                        try (RecordReader r = new RecordReader(seg)) {
+                            while (r.next()) {
+                                if (r.type == 1) continue;
+                                long from = loc(seg.id, r.offset);
+                                String key = new String(r.key, StandardCharsets.UTF_8);
+                                Long cur = index.get(key);
+                                if (cur == null || cur != from) continue; // overwritten or deleted since
+                                os.writeByte(r.type);
+                                os.writeInt(r.key.length);
+                                os.writeInt(r.value.length);
+                                os.write(r.key);
+                                os.write(r.value);
+                                moved.add(new Move(key, from, loc(outId, pos)));
+                                pos += HEADER + r.key.length + r.value.length;
+                            }
+                        }
+                    }
+                    os.flush();
+                    fos.getFD().sync();
+                }
+
+                Segment merged = null;
+                if (moved.isEmpty()) {
+                    Files.delete(tmp);
+                } else {
+                    Files.move(tmp, out, StandardCopyOption.ATOMIC_MOVE);
+                    merged = new Segment(outId, out);
+                    moved.sort(Comparator.comparing(Move::key));
+                    String[] keys = new String[moved.size()];
+                    long[] offsets = new long[moved.size()];
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = moved.get(i).key;
+                        offsets[i] = offsetOf(moved.get(i).to);
+                    }
+                    writeHint(new Hint(outId, keys.length, keys, offsets, new boolean[keys.length]));
+                }
+                synchronized (writeLock) {
+                    if (merged != null) segments.put(outId, merged);
+                    for (Move m : moved) {
+                        merged.records++;
+                        if (!index.replace(m.key, m.from, m.to)) merged.dead++; // overwritten while we copied
+                    }
+                    for (Segment s : inputs) segments.remove(s.id);
+                }
+                // readers still holding an old location retry against the index (see get)
+                for (Segment s : inputs) {
+                    s.ch.close();
+                    Files.deleteIfExists(s.path);
+                    Files.deleteIfExists(hintPath(s.id));
                 }
             }
         }
 
-        private void rebuildIndexFromLog() throws IOException {
-            index.clear();
-            try (RandomAccessFile raf = new RandomAccessFile(logPath.toFile(), "r")) {
-                long pos = 0;
-                while (pos < raf.length()) {
-                    raf.seek(pos);
-                    int type;
-                    try {
-                        type = raf.readUnsignedByte();
-                    } catch (EOFException eof) { break; }
-                    int klen = raf.readInt();
-                    int vlen = raf.readInt();
-                    byte[] kb = new byte[klen];
-                    raf.readFully(kb);
-                    String key = new String(kb, StandardCharsets.UTF_8);
-                    // move pointer past value
-                    raf.seek(raf.getFilePointer() + vlen);
-                    index.put(key, pos);
-                    pos = raf.getFilePointer();
-                }
-            } catch (FileNotFoundException e) {
-                // no log yet; ignore
-            }
-            // rewrite index file from scratch for speed next startup
-            try (FileChannel idx = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
-                StringBuilder sb = new StringBuilder();
-                for (Map.Entry<String, Long> e : index.entrySet()) {
-                    sb.append(e.getKey()).append('\t').append(e.getValue()).append('\n');
-                }
-                idx.write(ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8)));
-                idx.force(true);
+        private record Move(String key, long from, long to) {}
+
+        // Sequential reader over one segment's records; stops at a torn record left by an interrupted append.
+        static final class RecordReader implements Closeable {
+            private final DataInputStream in;
+            private final long end;
+            private long next;
+            long offset;
+            byte type;
+            byte[] key;
+            byte[] value;
+
+            RecordReader(Segment seg) throws IOException {
+                this.end = seg.ch.size();
+                this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(seg.path), 1 << 16));
+            }
+
+            boolean next() throws IOException {
+                if (next + HEADER > end) return false;
+                type = in.readByte();
+                int klen = in.readInt();
+                int vlen = in.readInt();
+                if (klen < 0 || vlen < 0 || next + HEADER + klen + vlen > end) return false;
+                key = new byte[klen];
+                in.readFully(key);
+                value = new byte[vlen];
+                in.readFully(value);
+                offset = next;
+                next += HEADER + klen + vlen;
+                return true;
+            }
+
+            /** End of the last complete record read; anything after it is a torn tail. */
+            long validEnd() {
+                return next;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        }
+
+        // ------------------
+        // Hint files
+        // ------------------
+        // store-NNNNNN.hint: the last record of each key in a closed segment, sorted by key.
+        // format: [int magic][long records in segment][int count]
+        //         count x [int klen][key bytes][byte type][long offset]
+        //         [int crc32c of everything before]
+
+        static final class Hint {
+            final int segmentId;
+            final long records;
+            final String[] keys;
+            final long[] offsets;
+            final boolean[] tombstones;
+
+            Hint(int segmentId, long records, String[] keys, long[] offsets, boolean[] tombstones) {
+                this.segmentId = segmentId;
+                this.records = records;
+                this.keys = keys;
+                this.offsets = offsets;
+                this.tombstones = tombstones;
+            }
+        }
+
+        // Runs on the merge thread once a segment is closed.
+        private void writeHintFor(Segment seg) {
+            try {
+                if (segments.get(seg.id) != seg) return; // merged away already
+                TreeMap<String, Long> last = new TreeMap<>(); // key -> offset, or ~offset for a tombstone
+                long records = 0;
+                try (RecordReader r = new RecordReader(seg)) {
+                    while (r.next()) {
+                        records++;
+                        last.put(new String(r.key, StandardCharsets.UTF_8), r.type == 1 ? ~r.offset : r.offset);
+                    }
+                }
+                String[] keys = new String[last.size()];
+                long[] offsets = new long[keys.length];
+                boolean[] tombstones = new boolean[keys.length];
+                int i = 0;
+                for (Map.Entry<String, Long> e : last.entrySet()) {
+                    long off = e.getValue();
+                    keys[i] = e.getKey();
+                    tombstones[i] = off < 0;
+                    offsets[i++] = off < 0 ? ~off : off;
+                }
+                writeHint(new Hint(seg.id, records, keys, offsets, tombstones));
             } catch (IOException e) {
-                System.err.println("Failed to write index file after rebuild: " + e.getMessage());
+                System.err.println("Failed to write hint for segment " + seg.id + ": " + e.getMessage());
+            }
+        }
+
+        private void writeHint(Hint h) throws IOException {
+            Path path = hintPath(h.segmentId);
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            CRC32C crc = new CRC32C();
+            try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+                 DataOutputStream os = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fos, 1 << 16), crc))) {
+                os.writeInt(HINT_MAGIC);
+                os.writeLong(h.records);
+                os.writeInt(h.keys.length);
+                for (int i = 0; i < h.keys.length; i++) {
+                    byte[] kb = h.keys[i].getBytes(StandardCharsets.UTF_8);
+                    os.writeInt(kb.length);
+                    os.write(kb);
+                    os.writeByte(h.tombstones[i] ? 1 : 0);
+                    os.writeLong(h.offsets[i]);
+                }
+                os.writeInt((int) crc.getValue());
+                os.flush();
+                fos.getFD().sync();
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        // Maps the hint file and checks it; null if missing or unusable, so the segment gets scanned instead.
+        private Hint readHint(Segment seg) {
+            Path path = hintPath(seg.id);
+            if (!Files.exists(path)) return null;
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+                long end = ch.size() - 4;
+                if (end < HINT_HEADER) throw new IOException("truncated");
+                CRC32C crc = new CRC32C();
+                for (long pos = 0; pos < end; pos += MAP_WINDOW) {
+                    crc.update(ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_WINDOW, end - pos)));
+                }
+                ByteBuffer trailer = ByteBuffer.allocate(4);
+                ch.read(trailer, end);
+                if (trailer.flip().getInt() != (int) crc.getValue()) throw new IOException("checksum mismatch");
+
+                MappedCursor in = new MappedCursor(ch, end);
+                ByteBuffer b = in.need(HINT_HEADER);
+                if (b.getInt() != HINT_MAGIC) throw new IOException("bad magic");
+                long records = b.getLong();
+                int count = b.getInt();
+                long segmentSize = seg.ch.size();
+                String[] keys = new String[count];
+                long[] offsets = new long[count];
+                boolean[] tombstones = new boolean[count];
+                for (int i = 0; i < count; i++) {
+                    int klen = in.need(4).getInt();
+                    b = in.need(klen + 1 + 8);
+                    byte[] kb = new byte[klen];
+                    b.get(kb);
+                    keys[i] = new String(kb, StandardCharsets.UTF_8);
+                    tombstones[i] = b.get() == 1;
+                    offsets[i] = b.getLong();
+                    if (offsets[i] >= segmentSize) throw new IOException("offset beyond segment");
+                }
+                return new Hint(seg.id, records, keys, offsets, tombstones);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("hint for segment " + seg.id + " unusable, scanning segment: " + e.getMessage());
+                return null;
+            }
+        }
+
+        // Windows of at most MAP_WINDOW bytes over a file, remapped as the reader moves on.
+        static final class MappedCursor {
+            private final FileChannel ch;
+            private final long end;
+            private long base;
+            private MappedByteBuffer buf;
+
+            MappedCursor(FileChannel ch, long end) throws IOException {
+                this.ch = ch;
+                this.end = end;
+                this.buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(MAP_WINDOW, end));
+            }
+
+            // Makes at least n bytes readable at the current position.
+            ByteBuffer need(int n) throws IOException {
+                if (buf.remaining() < n) {
+                    base += buf.position();
+                    if (base + n > end) throw new IOException("truncated");
+                    buf = ch.map(FileChannel.MapMode.READ_ONLY, base, Math.min(MAP_WINDOW, end - base));
+                }
+                return buf;
+            }
+        }
+
+        /**
+         * Builds the index from the hint files, scanning only segments without one (the active
+         * segment, or a segment whose hint was not written yet). Returns the closed segments that
+         * still need a hint.
+         */
+        private List<Segment> loadIndex() throws IOException {
+            Segment[] all = segments.values().toArray(new Segment[0]);
+            Hint[] hints = new Hint[all.length];
+            for (int i = 0; i < all.length - 1; i++) hints[i] = readHint(all[i]);
+            // the hinted prefix is merged in key order, one insert per live key
+            int i = 0;
+            while (i < all.length && hints[i] != null) i++;
+            index = mergeHints(Arrays.asList(hints).subList(0, i));
+            // the rest is replayed in order, so later records win
+            List<Segment> unhinted = new ArrayList<>();
+            for (int j = 0; j < i; j++) all[j].records = hints[j].records;
+            for (; i < all.length; i++) {
+                Segment seg = all[i];
+                Hint h = hints[i];
+                if (h != null) {
+                    seg.records = h.records;
+                    for (int j = 0; j < h.keys.length; j++) {
+                        if (h.tombstones[j]) index.remove(h.keys[j]);
+                        else index.put(h.keys[j], loc(seg.id, h.offsets[j]));
+                    }
+                    continue;
+                }
+                long records = 0;
+                long validEnd;
+                try (RecordReader r = new RecordReader(seg)) {
+                    while (r.next()) {
+                        records++;
+                        String key = new String(r.key, StandardCharsets.UTF_8);
+                        if (r.type == 1) index.remove(key);
+                        else index.put(key, loc(seg.id, r.offset));
+                    }
+                    validEnd = r.validEnd();
+                }
+                seg.records = records;
+                if (seg == active && validEnd < seg.size) {
+                    // a torn append: cut it off, or new records would land behind it and be unreadable
+                    System.err.println("segment " + seg.id + ": dropping " + (seg.size - validEnd) + " bytes of torn tail");
+                    seg.ch.truncate(validEnd);
+                    seg.ch.force(true);
+                    seg.size = validEnd;
+                    seg.ch.position(validEnd);
+                }
+                if (seg != active) unhinted.add(seg);
+            }
+            // whatever the index does not point at is garbage
+            int[] ids = new int[all.length];
+            for (int j = 0; j < all.length; j++) {
+                ids[j] = all[j].id;
+                all[j].dead = all[j].records;
+            }
+            for (long loc : index.values()) all[Arrays.binarySearch(ids, segmentOf(loc))].dead--;
+            return unhinted;
+        }
+
+        // k-way merge of sorted hints, oldest first; the newest version of each key wins and tombstones drop out.
+        private static ConcurrentSkipListMap<String, Long> mergeHints(List<Hint> hints) {
+            ConcurrentSkipListMap<String, Long> merged = new ConcurrentSkipListMap<>();
+            PriorityQueue<HintCursor> heads = new PriorityQueue<>();
+            for (int i = 0; i < hints.size(); i++) {
+                if (hints.get(i).keys.length > 0) heads.add(new HintCursor(hints.get(i), i));
+            }
+            while (!heads.isEmpty()) {
+                HintCursor c = heads.poll();
+                String key = c.key();
+                if (!c.hint.tombstones[c.pos]) merged.put(key, loc(c.hint.segmentId, c.hint.offsets[c.pos]));
+                if (++c.pos < c.hint.keys.length) heads.add(c);
+                while (!heads.isEmpty() && key.equals(heads.peek().key())) {
+                    HintCursor older = heads.poll();
+                    if (++older.pos < older.hint.keys.length) heads.add(older);
+                }
             }
+            return merged;
         }
 
-        private byte[] readValueAt(long pos) throws IOException {
+        static final class HintCursor implements Comparable<HintCursor> {
+            final Hint hint;
+            final int age; // position among the merged hints, oldest first
+            int pos;
+
+            HintCursor(Hint hint, int age) {
+                this.hint = hint;
+                this.age = age;
+            }
+
+            String key() {
+                return hint.keys[pos];
+            }
+
+            @Override
+            public int compareTo(HintCursor o) {
+                int c = key().compareTo(o.key());
+                return c != 0 ? c : Integer.compare(o.age, age); // same key: newer segment first
+            }
+        }
+
+        private byte[] readValueAt(long loc) throws IOException {
+            Segment seg = segments.get(segmentOf(loc));
+            if (seg == null) throw new ClosedChannelException();
+            long pos = offsetOf(loc);
             try {
-                // read header
-                ByteBuffer hdr = ByteBuffer.allocate(1 + 4 + 4);
-                logChannel.read(hdr, pos);
-                hdr.flip();
-                byte type = hdr.get();
-                int klen = hdr.getInt();
-                int vlen = hdr.getInt();
-                long valPos = pos + 1 + 4 + 4 + klen;
+                // read header, and with it the whole record if it is small
+                ByteBuffer rec = ByteBuffer.allocate(512);
+                seg.ch.read(rec, pos);
+                rec.flip();
+                byte type = rec.get();
+                int klen = rec.getInt();
+                int vlen = rec.getInt();
                 if (type == 1) return null; // tombstone
-                ByteBuffer vb = ByteBuffer.allocate(vlen);
-                logChannel.read(vb, valPos);
-                return vb.array();
+                byte[] v = new byte[vlen];
+                int have = Math.max(0, Math.min(vlen, rec.limit() - HEADER - klen));
+                if (have > 0) rec.get(HEADER + klen, v, 0, have);
+                if (have < vlen) {
+                    ByteBuffer rest = ByteBuffer.wrap(v, have, vlen - have);
+                    long valPos = pos + HEADER + klen + have;
+                    while (rest.hasRemaining()) {
+                        if (seg.ch.read(rest, valPos + rest.position() - have) < 0) throw new EOFException();
+                    }
+                }
+                return v;
+            } catch (ClosedChannelException e) {
+                throw e;
             } catch (IOException e) {
-                throw new IOException("failed to read value at " + pos + ": " + e.getMessage(), e);
+                throw new IOException("failed to read value at " + pos + " in segment " + seg.id + ": " + e.getMessage(), e);
             }
         }
     }
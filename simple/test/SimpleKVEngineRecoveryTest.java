@@ -0,0 +1,412 @@
+// SimpleKVEngineRecoveryTest.java
+// Crash/reopen and concurrency checks for SimpleKVEngine's storage; standard library only, like the engine.
+// Build: javac -d out src/SimpleKVEngine.java test/SimpleKVEngineRecoveryTest.java
+// Run:   java -cp out SimpleKVEngineRecoveryTest
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SimpleKVEngineRecoveryTest {
+
+    public static void main(String[] args) throws Exception {
+        int failed = 0;
+        failed += run("tornTailIsTruncatedSoLaterWritesSurvive", SimpleKVEngineRecoveryTest::tornTailIsTruncatedSoLaterWritesSurvive);
+        failed += run("garbageLengthsAreTreatedAsTornTail", SimpleKVEngineRecoveryTest::garbageLengthsAreTreatedAsTornTail);
+        failed += run("reopenAcrossSegmentsKeepsLatestValues", SimpleKVEngineRecoveryTest::reopenAcrossSegmentsKeepsLatestValues);
+        failed += run("corruptHintFallsBackToScan", SimpleKVEngineRecoveryTest::corruptHintFallsBackToScan);
+        failed += run("missingHintsAreRewrittenAfterStart", SimpleKVEngineRecoveryTest::missingHintsAreRewrittenAfterStart);
+        failed += run("mergeLeavesOneHintPerClosedSegment", SimpleKVEngineRecoveryTest::mergeLeavesOneHintPerClosedSegment);
+        failed += run("queuedWritersShareOneForce", SimpleKVEngineRecoveryTest::queuedWritersShareOneForce);
+        failed += run("unsyncedWritesSkipTheForceButReachTheFile", SimpleKVEngineRecoveryTest::unsyncedWritesSkipTheForceButReachTheFile);
+        failed += run("groupWriteErrorReachesEveryWaiter", SimpleKVEngineRecoveryTest::groupWriteErrorReachesEveryWaiter);
+        failed += run("readsRacingMergesSeeEveryValue", SimpleKVEngineRecoveryTest::readsRacingMergesSeeEveryValue);
+        if (failed > 0) {
+            System.err.println(failed + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("all tests passed");
+    }
+
+    interface Check { void run(Path dir) throws Exception; }
+
+    static int run(String name, Check check) throws Exception {
+        Path dir = Files.createTempDirectory("simplekv-test");
+        try {
+            check.run(dir);
+            System.out.println("PASS " + name);
+            return 0;
+        } catch (AssertionError | Exception e) {
+            System.out.println("FAIL " + name + ": " + e);
+            e.printStackTrace();
+            return 1;
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    /** A crash mid-append leaves a partial record; writes after the next start must survive the one after. */
+    static void tornTailIsTruncatedSoLaterWritesSurvive(Path dir) throws Exception {
+        SimpleKVEngine.StorageEngine e = open(dir);
+        for (int i = 0; i < 100; i++) e.put("k" + i, bytes("v" + i));
+        e.close();
+
+        Path seg = onlySegment(dir);
+        long intact = Files.size(seg);
+        appendTornRecord(seg, "k-torn", "a value that never finished");
+
+        e = open(dir);
+        check(Files.size(seg) == intact, "torn tail truncated on open: " + Files.size(seg) + " vs " + intact);
+        check(e.get("k-torn") == null, "torn record is not visible");
+        e.put("after", bytes("crash"));
+        e.delete("k0");
+        e.close();
+
+        e = open(dir);
+        check("crash".equals(str(e.get("after"))), "write after recovery survives the next restart");
+        check(e.get("k0") == null, "delete after recovery survives the next restart");
+        for (int i = 1; i < 100; i++) check(("v" + i).equals(str(e.get("k" + i))), "k" + i);
+        e.close();
+    }
+
+    static void garbageLengthsAreTreatedAsTornTail(Path dir) throws Exception {
+        SimpleKVEngine.StorageEngine e = open(dir);
+        e.put("a", bytes("1"));
+        e.close();
+        Path seg = onlySegment(dir);
+        long intact = Files.size(seg);
+        try (FileChannel ch = FileChannel.open(seg, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ch.write(ByteBuffer.allocate(9).put((byte) 0).putInt(-5).putInt(3).flip());
+        }
+        e = open(dir);
+        check(Files.size(seg) == intact, "negative length dropped");
+        e.put("b", bytes("2"));
+        e.close();
+        e = open(dir);
+        check("1".equals(str(e.get("a"))) && "2".equals(str(e.get("b"))), "both records readable");
+        e.close();
+    }
+
+    /** Small segments, so most are closed and hinted; overwrites and deletes span segments. */
+    static void reopenAcrossSegmentsKeepsLatestValues(Path dir) throws Exception {
+        Map<String, String> model = new HashMap<>();
+        Random r = new Random(7);
+        SimpleKVEngine.StorageEngine e = new SimpleKVEngine.StorageEngine(dir, 4096, 0.5);
+        e.start();
+        for (int i = 0; i < 5000; i++) {
+            String k = "k" + r.nextInt(500);
+            if (r.nextInt(10) == 0) {
+                e.delete(k, false);
+                model.remove(k);
+            } else {
+                String v = "v" + i;
+                e.put(k, bytes(v), false);
+                model.put(k, v);
+            }
+        }
+        e.close();
+        for (int round = 0; round < 2; round++) {
+            e = new SimpleKVEngine.StorageEngine(dir, 4096, 0.5);
+            e.start();
+            for (int i = 0; i < 500; i++) check(Objects.equals(model.get("k" + i), str(e.get("k" + i))), "k" + i);
+            // the index built from the hints answers ordered scans too
+            SortedMap<String, String> expected = new TreeMap<>(model).subMap("k2", true, "k3", true);
+            SortedMap<String, byte[]> got = e.range("k2", "k3");
+            check(got.keySet().equals(expected.keySet()), "range keys " + got.keySet());
+            for (Map.Entry<String, String> en : expected.entrySet()) check(en.getValue().equals(str(got.get(en.getKey()))), en.getKey());
+            e.close();
+        }
+    }
+
+    static void corruptHintFallsBackToScan(Path dir) throws Exception {
+        SimpleKVEngine.StorageEngine e = new SimpleKVEngine.StorageEngine(dir, 1024, 0.5);
+        e.start();
+        for (int i = 0; i < 500; i++) e.put("k" + i, bytes("v" + i), false);
+        e.close(); // waits for the hint writes
+        List<Path> hints = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "store-*.hint")) {
+            for (Path p : ds) hints.add(p);
+        }
+        check(!hints.isEmpty(), "closed segments have hints");
+        for (Path h : hints) {
+            byte[] b = Files.readAllBytes(h);
+            b[b.length / 2] ^= 0x5A;
+            Files.write(h, b);
+        }
+        e = new SimpleKVEngine.StorageEngine(dir, 1024, 0.5);
+        e.start();
+        for (int i = 0; i < 500; i++) check(("v" + i).equals(str(e.get("k" + i))), "k" + i);
+        e.close();
+    }
+
+    /** Segments without a hint (lost, or from before hint files) are scanned, then hinted in the background. */
+    static void missingHintsAreRewrittenAfterStart(Path dir) throws Exception {
+        SimpleKVEngine.StorageEngine e = new SimpleKVEngine.StorageEngine(dir, 1024, 0.5);
+        e.start();
+        for (int i = 0; i < 500; i++) e.put("k" + i, bytes("v" + i), false);
+        e.close();
+        int hinted = list(dir, "store-*.hint").size();
+        check(hinted > 0, "closed segments have hints");
+        for (Path h : list(dir, "store-*.hint")) Files.delete(h);
+        Files.write(dir.resolve("index.db"), bytes("k1 9\n")); // text index of the old format
+
+        e = new SimpleKVEngine.StorageEngine(dir, 1024, 0.5);
+        e.start();
+        for (int i = 0; i < 500; i++) check(("v" + i).equals(str(e.get("k" + i))), "k" + i);
+        e.close(); // waits for the hint writes
+        check(!Files.exists(dir.resolve("index.db")), "the text index is dropped");
+        check(list(dir, "store-*.hint").size() == hinted, "every closed segment is hinted again");
+
+        e = new SimpleKVEngine.StorageEngine(dir, 1024, 0.5);
+        e.start();
+        for (int i = 0; i < 500; i++) check(("v" + i).equals(str(e.get("k" + i))), "k" + i);
+        e.close();
+    }
+
+    static void mergeLeavesOneHintPerClosedSegment(Path dir) throws Exception {
+        SimpleKVEngine.StorageEngine e = new SimpleKVEngine.StorageEngine(dir, 1024, 0.5);
+        e.start();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 200; i++) e.put("k" + i, bytes("v" + round + "-" + i), false);
+        }
+        for (int i = 0; i < 200; i += 4) e.delete("k" + i, false);
+        e.merge();
+        e.close();
+        Files.write(dir.resolve("store-999999.hint"), new byte[64]); // hint of a segment merged away
+
+        e = new SimpleKVEngine.StorageEngine(dir, 1024, 0.5);
+        e.start();
+        for (int i = 0; i < 200; i++) {
+            String expected = i % 4 == 0 ? null : "v2-" + i;
+            check(Objects.equals(expected, str(e.get("k" + i))), "k" + i);
+        }
+        e.close();
+        List<Path> logs = list(dir, "store-*.log");
+        Set<String> hinted = new HashSet<>();
+        for (Path h : list(dir, "store-*.hint")) hinted.add(h.getFileName().toString().replace(".hint", ".log"));
+        for (String h : hinted) check(Files.exists(dir.resolve(h)), "hint without a segment: " + h);
+        check(hinted.size() == logs.size() - 1, hinted.size() + " hints for " + logs.size() + " segments");
+    }
+
+    /**
+     * Writers queued behind a group that is still writing go out together as the next group,
+     * with one force: the first writer's group, then everyone else's.
+     */
+    static void queuedWritersShareOneForce(Path dir) throws Exception {
+        SimpleKVEngine.StorageEngine e = open(dir);
+        long before = e.groupForces();
+        List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+        Thread[] ts;
+        synchronized (writeLock(e)) { // the first group waits here while the others queue
+            ts = startWriters(e, 8, true, errors);
+            awaitParked(ts);
+        }
+        for (Thread t : ts) t.join();
+        check(errors.isEmpty(), "writes failed: " + errors);
+        check(e.groupForces() - before == 2, (e.groupForces() - before) + " forces for 8 writers");
+        for (int i = 0; i < ts.length; i++) check(("v" + i).equals(str(e.get("w" + i))), "w" + i);
+        e.close();
+    }
+
+    static void unsyncedWritesSkipTheForceButReachTheFile(Path dir) throws Exception {
+        SimpleKVEngine.StorageEngine e = open(dir);
+        for (int i = 0; i < 100; i++) e.put("k" + i, bytes("v" + i), false);
+        e.batchPut(List.of(Map.entry("b1", bytes("1")), Map.entry("b2", bytes("2"))), false);
+        e.delete("k0", false);
+        check(e.groupForces() == 0, e.groupForces() + " forces without a syncing writer");
+        check(e.get("k0") == null && "v1".equals(str(e.get("k1"))), "unsynced writes are visible at once");
+        e.put("synced", bytes("s"), true); // forces the records written before it too
+        check(e.groupForces() == 1, e.groupForces() + " forces after one synced write");
+        e.close();
+
+        e = open(dir);
+        check(e.get("k0") == null, "unsynced delete survives a restart");
+        for (int i = 1; i < 100; i++) check(("v" + i).equals(str(e.get("k" + i))), "k" + i);
+        check("2".equals(str(e.get("b2"))) && "s".equals(str(e.get("synced"))), "batch and synced write");
+        e.close();
+    }
+
+    /**
+     * Every segment after the first is blocked by a directory, so each group fails to roll; the
+     * writers that only waited for their group's leader must get its error, not a silent success.
+     */
+    static void groupWriteErrorReachesEveryWaiter(Path dir) throws Exception {
+        SimpleKVEngine.StorageEngine e = new SimpleKVEngine.StorageEngine(dir, 1, 0.5);
+        e.start();
+        e.put("first", bytes("1")); // fills segment 1, so the next group rolls
+        List<Path> blocked = new ArrayList<>();
+        for (int id = 2; id < 12; id++) blocked.add(Files.createDirectory(dir.resolve(String.format("store-%06d.log", id))));
+
+        List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+        Thread[] ts;
+        synchronized (writeLock(e)) {
+            ts = startWriters(e, 8, true, errors);
+            awaitParked(ts);
+        }
+        for (Thread t : ts) t.join();
+        check(errors.size() == ts.length, errors.size() + " of " + ts.length + " writers saw the failure");
+        int waited = 0;
+        for (Exception x : errors) if (x.getMessage().startsWith("group commit failed")) waited++;
+        check(waited == ts.length - 2, waited + " errors handed to waiting writers: " + errors);
+        for (int i = 0; i < ts.length; i++) check(e.get("w" + i) == null, "failed write w" + i + " is not visible");
+
+        for (Path p : blocked) Files.delete(p);
+        e.put("after", bytes("2"));
+        check("1".equals(str(e.get("first"))) && "2".equals(str(e.get("after"))), "writes go on after the failure");
+        e.close();
+    }
+
+    /**
+     * GETs and range scans keep running while merges copy their values and delete the segments
+     * they were read from; a read that hits a closed segment retries against the index.
+     */
+    static void readsRacingMergesSeeEveryValue(Path dir) throws Exception {
+        SimpleKVEngine.StorageEngine e = new SimpleKVEngine.StorageEngine(dir, 4096, 0.5);
+        e.start();
+        TreeMap<String, String> model = new TreeMap<>();
+        for (int i = 0; i < 300; i++) model.put("k" + i, "v" + i);
+        for (Map.Entry<String, String> en : model.entrySet()) e.put(en.getKey(), bytes(en.getValue()), false);
+        SortedMap<String, String> slice = model.subMap("k1", true, "k2", true);
+
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> ts = new ArrayList<>();
+        ts.add(new Thread(() -> { // rewrites the same values, so every merge has garbage to drop
+            try {
+                while (!stop.get()) {
+                    for (Map.Entry<String, String> en : model.entrySet()) e.put(en.getKey(), bytes(en.getValue()), false);
+                }
+            } catch (Throwable t) {
+                errors.add(t);
+            }
+        }));
+        for (int r = 0; r < 2; r++) {
+            ts.add(new Thread(() -> {
+                try {
+                    while (!stop.get()) {
+                        for (Map.Entry<String, String> en : model.entrySet()) {
+                            check(en.getValue().equals(str(e.get(en.getKey()))), "get " + en.getKey());
+                        }
+                    }
+                } catch (Throwable t) {
+                    errors.add(t);
+                }
+            }));
+        }
+        ts.add(new Thread(() -> {
+            try {
+                while (!stop.get()) {
+                    SortedMap<String, byte[]> got = e.range("k1", "k2");
+                    check(got.keySet().equals(slice.keySet()), "range keys " + got.keySet());
+                    for (Map.Entry<String, String> en : slice.entrySet()) check(en.getValue().equals(str(got.get(en.getKey()))), "range " + en.getKey());
+                }
+            } catch (Throwable t) {
+                errors.add(t);
+            }
+        }));
+        for (Thread t : ts) t.start();
+        try {
+            for (int i = 0; i < 20 && errors.isEmpty(); i++) {
+                e.merge();
+                Thread.sleep(20);
+            }
+        } finally {
+            stop.set(true);
+            for (Thread t : ts) t.join();
+        }
+        check(errors.isEmpty(), "reads failed during merges: " + errors);
+        for (Map.Entry<String, String> en : model.entrySet()) check(en.getValue().equals(str(e.get(en.getKey()))), en.getKey());
+        e.close();
+    }
+
+    // ------------------ helpers ------------------
+
+    /** Writers w0.. each putting one key; failures are collected in {@code errors}. */
+    static Thread[] startWriters(SimpleKVEngine.StorageEngine e, int n, boolean sync, List<Exception> errors) {
+        Thread[] ts = new Thread[n];
+        for (int i = 0; i < n; i++) {
+            int id = i;
+            ts[i] = new Thread(() -> {
+                try {
+                    e.put("w" + id, bytes("v" + id), sync);
+                } catch (IOException x) {
+                    errors.add(x);
+                }
+            });
+            ts[i].start();
+        }
+        return ts;
+    }
+
+    /** Waits until every thread is blocked: the first group's writer on the write lock, the rest queued behind it. */
+    static void awaitParked(Thread[] ts) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        for (Thread t : ts) {
+            while (t.getState() != Thread.State.BLOCKED && t.getState() != Thread.State.WAITING) {
+                check(System.nanoTime() < deadline, t.getName() + " never queued: " + t.getState());
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    /** The engine's append lock; holding it keeps the writer at the head of the queue from writing. */
+    static Object writeLock(SimpleKVEngine.StorageEngine e) throws ReflectiveOperationException {
+        Field f = SimpleKVEngine.StorageEngine.class.getDeclaredField("writeLock");
+        f.setAccessible(true);
+        return f.get(e);
+    }
+
+    static List<Path> list(Path dir, String glob) throws IOException {
+        List<Path> out = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, glob)) {
+            for (Path p : ds) out.add(p);
+        }
+        out.sort(null);
+        return out;
+    }
+
+    static SimpleKVEngine.StorageEngine open(Path dir) throws IOException {
+        SimpleKVEngine.StorageEngine e = new SimpleKVEngine.StorageEngine(dir);
+        e.start();
+        return e;
+    }
+
+    static Path onlySegment(Path dir) throws IOException {
+        List<Path> segs = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "store-*.log")) {
+            for (Path p : ds) segs.add(p);
+        }
+        check(segs.size() == 1, "one segment: " + segs);
+        return segs.get(0);
+    }
+
+    /** The header and part of the key of a record, as if the process died during the write. */
+    static void appendTornRecord(Path seg, String key, String value) throws IOException {
+        byte[] k = bytes(key), v = bytes(value);
+        ByteBuffer full = ByteBuffer.allocate(9 + k.length + v.length).put((byte) 0).putInt(k.length).putInt(v.length).put(k).put(v);
+        full.flip().limit(9 + k.length / 2);
+        try (FileChannel ch = FileChannel.open(seg, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ch.write(full);
+        }
+    }
+
+    static void check(boolean ok, String what) {
+        if (!ok) throw new AssertionError(what);
+    }
+
+    static byte[] bytes(String s) { return s.getBytes(StandardCharsets.UTF_8); }
+
+    static String str(byte[] b) { return b == null ? null : new String(b, StandardCharsets.UTF_8); }
+
+    static void deleteTree(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (var walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}